@@ -0,0 +1,109 @@
+package dev.hstoklosa.jwtext.service;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the sign and verify throughput of HS256, ES256 and Ed25519 on a single thread.
+ *
+ * The verifyJjwt benchmark verifies the same token with a JJWT parser, which looks up and
+ * initialises a Signature for every token, as a baseline for the per-thread contexts of the
+ * token services. Run with "mvn -Pjmh test-compile exec:exec".
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SigningBenchmark {
+
+    private static final String SECRET = "c29tZWxvbmdzZWNyZXRzdHJpbmdmb3JleGFtcGxl";
+
+    private static final TokenParameters PARAMS = TokenParameters.builder("user:1", "access", Duration.ofDays(1))
+            .claim("role", "admin")
+            .build();
+
+    /** Signing algorithm of the benchmarked token service. */
+    @Param({"HS256", "ES256", "Ed25519"})
+    public String algorithm;
+
+    /** Service signing and verifying the tokens. */
+    private TokenService tokenService;
+
+    /** JJWT parser verifying the tokens, the baseline of verify. */
+    private JwtParser parser;
+
+    /** Token verified by the verify benchmarks. */
+    private String token;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        switch (algorithm) {
+            case "HS256" -> {
+                tokenService = new TokenServiceImpl(SECRET);
+                parser = Jwts.parser()
+                        .verifyWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                        .build();
+            }
+            case "ES256" -> setup(keyPair("EC", new ECGenParameterSpec("secp256r1")));
+            case "Ed25519" -> setup(keyPair("Ed25519", null));
+            default -> throw new IllegalArgumentException("Unknown algorithm " + algorithm);
+        }
+        token = tokenService.create(PARAMS);
+    }
+
+    private void setup(final KeyPair keyPair) {
+        tokenService = new AsymmetricTokenServiceImpl(keyPair);
+        parser = Jwts.parser().verifyWith(keyPair.getPublic()).build();
+    }
+
+    @Benchmark
+    public String sign() {
+        return tokenService.create(PARAMS);
+    }
+
+    @Benchmark
+    public Map<String, Object> verify() {
+        return tokenService.claims((CharSequence) token);
+    }
+
+    @Benchmark
+    public Object verifyJjwt() {
+        return parser.parseSignedClaims(token).getPayload();
+    }
+
+    private static KeyPair keyPair(
+            final String algorithm,
+            final ECGenParameterSpec spec
+    ) throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        if (spec != null) {
+            generator.initialize(spec);
+        }
+        return generator.generateKeyPair();
+    }
+}
@@ -0,0 +1,61 @@
+package dev.hstoklosa.jwtext.audit;
+
+/**
+ * Change of the issued tokens recorded by an AuditSink. The code of an event is written to the
+ * audit log and never changes.
+ */
+public enum AuditEvent {
+
+    /** A token was created and stored, until is its expiration. */
+    CREATED(1),
+
+    /** A stored token was removed, only its hash is known. */
+    INVALIDATED(2),
+
+    /** The stored tokens of a subject and type were removed. */
+    INVALIDATED_TYPE(3),
+
+    /** All stored tokens of a subject were removed. */
+    INVALIDATED_SUBJECT(4),
+
+    /** The stored tokens carrying a claim value were removed, see AuditSink.recordClaim. */
+    INVALIDATED_CLAIM(5),
+
+    /** The tokens of a subject issued before until were revoked. */
+    REVOKED(6),
+
+    /** A reference token was removed, only the hash of its handle is known. */
+    INVALIDATED_REFERENCE(7);
+
+    /** Code of the event in the audit log. */
+    private final byte code;
+
+    AuditEvent(final int code) {
+        this.code = (byte) code;
+    }
+
+    /**
+     * Returns the code of the event in the audit log.
+     *
+     * @return the code
+     */
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * Returns the event of a code read from the audit log.
+     *
+     * @param code the code of the event
+     * @return the event
+     * @throws IllegalArgumentException if no event has the code
+     */
+    public static AuditEvent of(final byte code) {
+        for (AuditEvent event : values()) {
+            if (event.code == code) {
+                return event;
+            }
+        }
+        throw new IllegalArgumentException("Unknown audit event code " + code);
+    }
+}
@@ -0,0 +1,218 @@
+package dev.hstoklosa.jwtext.audit;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.EVENT;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.FLAGS;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.FLAG_CLAIM;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.FLAG_TRUNCATED;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.HEADER_BYTES;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.HEADER_CAPACITY;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.HEADER_DROPPED;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.HEADER_NEXT_SEQUENCE;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.HEADER_RECORD_BYTES;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.HEADER_VERSION;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.LONG;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.MAGIC;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.RECORDED_AT;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.RECORD_BYTES;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.SEQUENCE;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.SUBJECT;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.SUBJECT_BYTES;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.SUBJECT_LENGTH;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.TOKEN_HASH;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.TOKEN_HASH_BYTES;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.TYPE;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.TYPE_BYTES;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.TYPE_LENGTH;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.UNTIL;
+import static dev.hstoklosa.jwtext.audit.MappedAuditSink.VERSION;
+
+/**
+ * Reader of the audit log written by MappedAuditSink, also while it is written.
+ *
+ * The records are read in order of their sequence. Records overwritten or rewritten while they
+ * are read are skipped, so a gap in the sequence of the result means the ring buffer wrapped
+ * around before the record was read. Run the class to export a log as CSV:
+ * <pre>
+ * java -cp jwt-ext.jar dev.hstoklosa.jwtext.audit.AuditLogReader audit.log &gt; audit.csv
+ * </pre>
+ */
+public final class AuditLogReader {
+
+    /** Columns of the CSV export. */
+    private static final String CSV_HEADER = "sequence,recordedAt,event,subject,type,claim,value,tokenHash,until,truncated";
+
+    /** Mapping of the whole file. */
+    private final ByteBuffer buffer;
+
+    /** Number of records kept in the file. */
+    private final long capacity;
+
+    /**
+     * Maps the provided audit log for reading.
+     *
+     * @param file the audit log file
+     * @throws IllegalArgumentException if the file is not an audit log of a known layout
+     */
+    public AuditLogReader(final Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IllegalArgumentException(file + " is not an audit log");
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open audit log " + file, e);
+        }
+        if ((long) LONG.getAcquire(buffer, 0) != MAGIC) {
+            throw new IllegalArgumentException(file + " is not an audit log");
+        }
+        if (buffer.getInt(HEADER_VERSION) != VERSION || buffer.getInt(HEADER_RECORD_BYTES) != RECORD_BYTES) {
+            throw new IllegalArgumentException(file + " has an unsupported layout");
+        }
+        this.capacity = buffer.getLong(HEADER_CAPACITY);
+    }
+
+    /**
+     * Returns the records currently kept in the file, oldest first.
+     *
+     * @return the records in order of their sequence
+     */
+    public List<AuditRecord> read() {
+        long next = (long) LONG.getAcquire(buffer, HEADER_NEXT_SEQUENCE);
+        long first = Math.max(1, next - capacity);
+
+        List<AuditRecord> records = new ArrayList<>((int) (next - first));
+        for (long sequence = first; sequence < next; sequence++) {
+            AuditRecord record = read(sequence);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Returns the number of changes the writers of the file dropped, as of their last write.
+     *
+     * @return the number of dropped changes
+     */
+    public long getDropped() {
+        return buffer.getLong(HEADER_DROPPED);
+    }
+
+    /**
+     * Writes the records of the file as CSV, with a header line.
+     *
+     * @param out the stream the CSV is written to
+     */
+    public void export(final PrintStream out) {
+        out.println(CSV_HEADER);
+        for (AuditRecord record : read()) {
+            out.println(String.join(
+                    ",",
+                    String.valueOf(record.sequence()),
+                    String.valueOf(record.recordedAt()),
+                    record.event().name(),
+                    csv(record.subject()),
+                    csv(record.type()),
+                    csv(record.claim()),
+                    csv(record.value()),
+                    record.tokenHash(),
+                    String.valueOf(record.until()),
+                    String.valueOf(record.truncated())
+            ));
+        }
+    }
+
+    /**
+     * Exports the audit log given as the only argument as CSV to the standard output. The number
+     * of dropped changes is reported on the standard error.
+     *
+     * @param args the path of the audit log
+     */
+    public static void main(final String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: AuditLogReader <audit log>");
+            System.exit(2);
+        }
+        AuditLogReader reader = new AuditLogReader(Path.of(args[0]));
+        reader.export(System.out);
+        System.err.println("Dropped changes: " + reader.getDropped());
+    }
+
+    /**
+     * Reads the record of a sequence.
+     *
+     * @return the record, or null if its slot holds another sequence before or after reading it
+     */
+    private AuditRecord read(final long sequence) {
+        int offset = HEADER_BYTES + (int) (sequence % capacity) * RECORD_BYTES;
+        if ((long) LONG.getAcquire(buffer, offset + SEQUENCE) != sequence) {
+            return null;
+        }
+
+        long recordedAt = buffer.getLong(offset + RECORDED_AT);
+        long until = buffer.getLong(offset + UNTIL);
+        byte code = buffer.get(offset + EVENT);
+        byte flags = buffer.get(offset + FLAGS);
+        String subject = string(offset + SUBJECT, Math.min(buffer.get(offset + SUBJECT_LENGTH) & 0xFF, SUBJECT_BYTES));
+        String type = string(offset + TYPE, Math.min(buffer.get(offset + TYPE_LENGTH) & 0xFF, TYPE_BYTES));
+        boolean claim = (flags & FLAG_CLAIM) != 0;
+        byte[] hash = new byte[TOKEN_HASH_BYTES];
+        buffer.get(offset + TOKEN_HASH, hash);
+
+        VarHandle.loadLoadFence();
+        if ((long) LONG.getAcquire(buffer, offset + SEQUENCE) != sequence) {
+            return null;
+        }
+        return new AuditRecord(
+                sequence,
+                recordedAt,
+                AuditEvent.of(code),
+                claim ? "" : subject,
+                claim ? "" : type,
+                claim ? type : "",
+                claim ? subject : "",
+                isZero(hash) ? "" : HexFormat.of().formatHex(hash),
+                until,
+                (flags & FLAG_TRUNCATED) != 0
+        );
+    }
+
+    private String string(
+            final int offset,
+            final int length
+    ) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isZero(final byte[] bytes) {
+        for (byte b : bytes) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String csv(final String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,30 @@
+package dev.hstoklosa.jwtext.audit;
+
+/**
+ * Record of the audit log read by AuditLogReader.
+ *
+ * @param sequence the number of the record, starting at 1 and increasing without gaps
+ * @param recordedAt the time of the change in epoch milliseconds
+ * @param event the kind of change
+ * @param subject the subject of the change, empty if unknown
+ * @param type the token type of the change, empty if it applies to every type
+ * @param claim the name of the claim of an INVALIDATED_CLAIM change, empty otherwise
+ * @param value the value of the claim of an INVALIDATED_CLAIM change, empty otherwise
+ * @param tokenHash the first 16 bytes of the SHA-256 hash of the token in hex, empty without a token
+ * @param until the expiration of a created token or the watermark of a revocation in epoch
+ *              milliseconds, 0 otherwise
+ * @param truncated whether the subject, type, claim or value was cut to fit the record
+ */
+public record AuditRecord(
+        long sequence,
+        long recordedAt,
+        AuditEvent event,
+        String subject,
+        String type,
+        String claim,
+        String value,
+        String tokenHash,
+        long until,
+        boolean truncated
+) {
+}
@@ -0,0 +1,48 @@
+package dev.hstoklosa.jwtext.audit;
+
+/**
+ * Receiver of the changes PersistentTokenServiceImpl makes to the issued tokens.
+ *
+ * Sinks are called on the thread of the change, after it was applied, so implementations must
+ * return quickly and must not throw.
+ */
+@FunctionalInterface
+public interface AuditSink {
+
+    /** Sink discarding every change. */
+    AuditSink NONE = (event, subject, type, token, until) -> {
+    };
+
+    /**
+     * Records a change of the issued tokens.
+     *
+     * @param event the kind of change
+     * @param subject the subject of the change, or null if unknown
+     * @param type the token type of the change, or null if it applies to every type
+     * @param token the created or removed token, or null if the change applies to stored tokens
+     * @param until the expiration of a created token or the watermark of a revocation in epoch
+     *              milliseconds, 0 otherwise
+     */
+    void record(
+            AuditEvent event,
+            String subject,
+            String type,
+            String token,
+            long until
+    );
+
+    /**
+     * Records the removal of the stored tokens carrying a claim value. By default the change is
+     * recorded as an INVALIDATED_CLAIM event without subject and type, sinks keeping the claim
+     * override this method.
+     *
+     * @param claim the name of the claim
+     * @param value the value of the claim
+     */
+    default void recordClaim(
+            final String claim,
+            final String value
+    ) {
+        record(AuditEvent.INVALIDATED_CLAIM, null, null, null, 0);
+    }
+}
@@ -0,0 +1,445 @@
+package dev.hstoklosa.jwtext.audit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AuditSink writing fixed-layout binary records to a memory-mapped ring buffer file (thread-safe).
+ *
+ * Callers only add the change to a bounded queue and never wait: when the queue is full or the
+ * sink is closed, the change is dropped and counted. A single background thread, started with the
+ * first change, hashes the tokens and writes the records, so the file holds the latest capacity
+ * records in order. Records reach the page cache
+ * as soon as they are written and survive a crash of the process; they are forced to the storage
+ * device when the sink is closed. Read the file with AuditLogReader, also while it is written.
+ *
+ * The file starts with a header of {@value #HEADER_BYTES} bytes: the magic number, the layout
+ * version, the record size, the capacity, the sequence of the next record and the number of
+ * dropped changes. Every record of {@value #RECORD_BYTES} bytes holds its sequence, the time of
+ * the change, the until time, the event code, flags, the lengths of the subject and type, the
+ * first 16 bytes of the SHA-256 hash of the token, and the UTF-8 bytes of the type and subject,
+ * cut at a character boundary if they are longer than their fields. Claim invalidations set the
+ * claim flag and hold the claim and its value in the fields of the type and subject instead. The
+ * record of sequence s is
+ * at slot s modulo capacity; its sequence is cleared while it is rewritten, so readers skip
+ * records that change under them.
+ */
+public class MappedAuditSink implements AuditSink, AutoCloseable {
+
+    /** Default number of records kept in the file. */
+    public static final int DEFAULT_CAPACITY = 65_536;
+
+    /** Default number of changes waiting for the writer before changes are dropped. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 8_192;
+
+    /** Magic number at the beginning of an audit log ("JWTAUDIT"). */
+    static final long MAGIC = 0x4A57544155444954L;
+
+    /** Version of the file layout. */
+    static final int VERSION = 2;
+
+    /** Size of the file header. */
+    static final int HEADER_BYTES = 64;
+
+    /** Size of a record. */
+    static final int RECORD_BYTES = 128;
+
+    /** Maximum number of records kept in the file, bound by the size of a single mapping. */
+    public static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_BYTES) / RECORD_BYTES;
+
+    static final int HEADER_VERSION = 8;
+    static final int HEADER_RECORD_BYTES = 12;
+    static final int HEADER_CAPACITY = 16;
+    static final int HEADER_NEXT_SEQUENCE = 24;
+    static final int HEADER_DROPPED = 32;
+
+    static final int SEQUENCE = 0;
+    static final int RECORDED_AT = 8;
+    static final int UNTIL = 16;
+    static final int EVENT = 24;
+    static final int FLAGS = 25;
+    static final int SUBJECT_LENGTH = 26;
+    static final int TYPE_LENGTH = 27;
+    static final int TOKEN_HASH = 32;
+    static final int TYPE = 48;
+    static final int SUBJECT = 72;
+
+    static final int CLAIM_LENGTH = TYPE_LENGTH;
+    static final int VALUE_LENGTH = SUBJECT_LENGTH;
+    static final int CLAIM = TYPE;
+    static final int VALUE = SUBJECT;
+
+    static final int TOKEN_HASH_BYTES = 16;
+    static final int TYPE_BYTES = SUBJECT - TYPE;
+    static final int SUBJECT_BYTES = RECORD_BYTES - SUBJECT;
+    static final int CLAIM_BYTES = TYPE_BYTES;
+    static final int VALUE_BYTES = SUBJECT_BYTES;
+
+    /** Flag set if the subject, type, claim or value was cut to fit the record. */
+    static final int FLAG_TRUNCATED = 1;
+
+    /** Flag set if the record holds a claim and its value instead of a subject and type. */
+    static final int FLAG_CLAIM = 2;
+
+    /** Zeros clearing the unused bytes of a field and the hash of changes without a token. */
+    private static final byte[] ZEROS = new byte[SUBJECT_BYTES];
+
+    /** Ordered access to the sequences of the mapped file, shared with readers in other processes. */
+    static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    /** Time the writer waits for new changes before checking again. */
+    private static final long WRITE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final System.Logger LOGGER = System.getLogger(MappedAuditSink.class.getName());
+
+    /** File the records are written to. */
+    private final FileChannel channel;
+
+    /** Mapping of the whole file. */
+    private final MappedByteBuffer buffer;
+
+    /** Number of records kept in the file. */
+    private final long capacity;
+
+    /** Maximum number of changes waiting for the writer. */
+    private final int queueCapacity;
+
+    /** Changes waiting for the writer in order of arrival. */
+    private final Queue<Change> queue;
+
+    /** Number of waiting changes, reserved before a change is enqueued. */
+    private final AtomicInteger queued;
+
+    /** Number of changes dropped because the queue was full or the sink was closed. */
+    private final LongAdder dropped;
+
+    /** Hash of the tokens, used by the writer only. */
+    private final MessageDigest digest;
+
+    /** Thread writing the records, started with the first change. */
+    private volatile Thread writer;
+
+    /** Sequence of the next record, used by the writer only. */
+    private long nextSequence;
+
+    /** Set once the sink is closed. */
+    private volatile boolean closed;
+
+    /**
+     * Creates an object writing to the provided file with the default capacity and queue capacity.
+     *
+     * @param file the audit log file
+     */
+    public MappedAuditSink(final Path file) {
+        this(file, DEFAULT_CAPACITY, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates an object writing to the provided file. An existing file with the same capacity is
+     * appended to, continuing its sequence.
+     *
+     * @param file the audit log file
+     * @param capacity the number of records kept in the file, at most MAX_CAPACITY
+     * @param queueCapacity the number of changes waiting for the writer before changes are dropped
+     */
+    public MappedAuditSink(
+            final Path file,
+            final int capacity,
+            final int queueCapacity
+    ) {
+        if (capacity <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Capacity and queue capacity must be positive");
+        }
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must not exceed " + MAX_CAPACITY);
+        }
+        this.capacity = capacity;
+        this.queueCapacity = queueCapacity;
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.queued = new AtomicInteger();
+        this.dropped = new LongAdder();
+        this.digest = sha256();
+
+        long size = HEADER_BYTES + (long) capacity * RECORD_BYTES;
+        try {
+            boolean exists = Files.exists(file) && Files.size(file) > 0;
+            this.channel = FileChannel.open(
+                    file,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE
+            );
+            if (exists && channel.size() != size) {
+                channel.close();
+                throw new IllegalArgumentException("Audit log " + file + " has a different capacity");
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open audit log " + file, e);
+        }
+
+        if (buffer.getLong(0) == MAGIC) {
+            if (buffer.getInt(HEADER_VERSION) != VERSION
+                    || buffer.getInt(HEADER_RECORD_BYTES) != RECORD_BYTES
+                    || buffer.getLong(HEADER_CAPACITY) != capacity) {
+                close(channel);
+                throw new IllegalArgumentException("Audit log " + file + " has a different layout");
+            }
+            this.nextSequence = buffer.getLong(HEADER_NEXT_SEQUENCE);
+            this.dropped.add(buffer.getLong(HEADER_DROPPED));
+        } else {
+            buffer.putInt(HEADER_VERSION, VERSION);
+            buffer.putInt(HEADER_RECORD_BYTES, RECORD_BYTES);
+            buffer.putLong(HEADER_CAPACITY, capacity);
+            LONG.setRelease(buffer, HEADER_NEXT_SEQUENCE, 1L);
+            buffer.putLong(HEADER_DROPPED, 0);
+            LONG.setRelease(buffer, 0, MAGIC);
+            this.nextSequence = 1;
+        }
+    }
+
+    /**
+     * Adds the change to the queue of the writer, or drops it if the queue is full.
+     */
+    @Override
+    public void record(
+            final AuditEvent event,
+            final String subject,
+            final String type,
+            final String token,
+            final long until
+    ) {
+        enqueue(new Change(event, subject, type, null, null, token, until, System.currentTimeMillis()));
+    }
+
+    /**
+     * Adds the claim invalidation to the queue of the writer, or drops it if the queue is full.
+     */
+    @Override
+    public void recordClaim(
+            final String claim,
+            final String value
+    ) {
+        enqueue(new Change(AuditEvent.INVALIDATED_CLAIM, null, null, claim, value, null, 0, System.currentTimeMillis()));
+    }
+
+    /**
+     * Returns the number of changes dropped because the queue was full or the sink was closed,
+     * including the drops recorded in the file by earlier sinks.
+     *
+     * @return the number of dropped changes
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of changes waiting for the writer.
+     *
+     * @return the number of queued changes
+     */
+    public int size() {
+        return queued.get();
+    }
+
+    /**
+     * Stops accepting changes, writes the queued ones and forces the file to the storage device.
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            thread = writer;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drain();
+        buffer.force();
+        close(channel);
+    }
+
+    /**
+     * Adds a change to the queue. A change added while the sink is closed may miss the final
+     * drain, so it is taken back and counted as dropped unless the drain already wrote it.
+     */
+    private void enqueue(final Change change) {
+        if (closed || !reserve()) {
+            dropped.increment();
+            return;
+        }
+        queue.add(change);
+        if (writer == null) {
+            startWriter();
+        }
+        if (closed && queue.remove(change)) {
+            queued.decrementAndGet();
+            dropped.increment();
+        }
+    }
+
+    private synchronized void startWriter() {
+        if (writer != null || closed) {
+            return;
+        }
+        Thread thread = new Thread(this::runWriter, "jwt-ext-audit-writer");
+        thread.setDaemon(true);
+        thread.start();
+        writer = thread;
+    }
+
+    private boolean reserve() {
+        while (true) {
+            int current = queued.get();
+            if (current >= queueCapacity) {
+                return false;
+            }
+            if (queued.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void runWriter() {
+        while (!closed) {
+            try {
+                if (!drain()) {
+                    LockSupport.parkNanos(this, WRITE_INTERVAL_NANOS);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Failed to write audit records", e);
+                LockSupport.parkNanos(this, WRITE_INTERVAL_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Writes the queued changes and publishes the sequence of the next record.
+     *
+     * @return true if any change was written
+     */
+    private boolean drain() {
+        boolean written = false;
+        for (Change change = queue.poll(); change != null; change = queue.poll()) {
+            queued.decrementAndGet();
+            write(change);
+            written = true;
+        }
+        if (written) {
+            buffer.putLong(HEADER_DROPPED, dropped.sum());
+            LONG.setRelease(buffer, HEADER_NEXT_SEQUENCE, nextSequence);
+        }
+        return written;
+    }
+
+    private void write(final Change change) {
+        long sequence = nextSequence++;
+        int offset = HEADER_BYTES + (int) (sequence % capacity) * RECORD_BYTES;
+
+        LONG.setRelease(buffer, offset + SEQUENCE, 0L);
+        VarHandle.storeStoreFence();
+
+        buffer.putLong(offset + RECORDED_AT, change.recordedAt());
+        buffer.putLong(offset + UNTIL, change.until());
+        buffer.put(offset + EVENT, change.event().getCode());
+        int flags;
+        if (change.claim() != null) {
+            int claimLength = put(change.claim(), offset + CLAIM, CLAIM_BYTES);
+            int valueLength = put(change.value(), offset + VALUE, VALUE_BYTES);
+            buffer.put(offset + CLAIM_LENGTH, (byte) Math.abs(claimLength));
+            buffer.put(offset + VALUE_LENGTH, (byte) Math.abs(valueLength));
+            flags = FLAG_CLAIM | (claimLength < 0 || valueLength < 0 ? FLAG_TRUNCATED : 0);
+        } else {
+            int subjectLength = put(change.subject(), offset + SUBJECT, SUBJECT_BYTES);
+            int typeLength = put(change.type(), offset + TYPE, TYPE_BYTES);
+            buffer.put(offset + SUBJECT_LENGTH, (byte) Math.abs(subjectLength));
+            buffer.put(offset + TYPE_LENGTH, (byte) Math.abs(typeLength));
+            flags = subjectLength < 0 || typeLength < 0 ? FLAG_TRUNCATED : 0;
+        }
+        buffer.put(offset + FLAGS, (byte) flags);
+
+        byte[] hash = change.token() == null
+                ? ZEROS
+                : digest.digest(change.token().getBytes(StandardCharsets.UTF_8));
+        buffer.put(offset + TOKEN_HASH, hash, 0, TOKEN_HASH_BYTES);
+
+        LONG.setRelease(buffer, offset + SEQUENCE, sequence);
+    }
+
+    /**
+     * Writes the UTF-8 bytes of value at offset, cut at a character boundary to fit the field.
+     *
+     * @return the number of bytes written, negated if value was cut
+     */
+    private int put(
+            final String value,
+            final int offset,
+            final int field
+    ) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, field);
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        buffer.put(offset, bytes, 0, length);
+        buffer.put(offset + length, ZEROS, 0, field - length);
+        return length < bytes.length ? -length : length;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void close(final FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to close audit log", e);
+        }
+    }
+
+    /**
+     * Change waiting for the writer, a claim invalidation if claim is not null.
+     */
+    private record Change(
+            AuditEvent event,
+            String subject,
+            String type,
+            String claim,
+            String value,
+            String token,
+            long until,
+            long recordedAt
+    ) {
+    }
+}
@@ -0,0 +1,204 @@
+package dev.hstoklosa.jwtext.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+
+/**
+ * Bounded, expiry-aware in-process cache (thread-safe).
+ *
+ * Entries are evicted in least-recently-used order once the maximum size is reached, and are
+ * treated as absent once their expiration has passed. Hits, misses and evictions are counted so
+ * that the cache can be sized from live traffic.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of cached values
+ */
+public class LocalCache<K, V> {
+
+    /** Expiration of entries that never expire. */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    /** Maximum number of entries. */
+    private final int maximumSize;
+
+    /** Entries in access order, the eldest entry is evicted first. */
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    /** Number of lookups that found a live entry. */
+    private final LongAdder hits;
+
+    /** Number of lookups that found no live entry. */
+    private final LongAdder misses;
+
+    /** Number of entries evicted to respect the maximum size. */
+    private final LongAdder evictions;
+
+    /**
+     * Creates a cache holding at most the provided number of entries.
+     *
+     * @param maximumSize the maximum number of entries
+     */
+    public LocalCache(final int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, Entry<V>> eldest) {
+                if (size() > LocalCache.this.maximumSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value of a key.
+     *
+     * @param key the key to look up
+     * @return the cached value, or null if absent or expired
+     */
+    public V get(final K key) {
+        V value;
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expiresAt() <= System.currentTimeMillis()) {
+                entries.remove(key);
+                entry = null;
+            }
+            value = entry == null ? null : entry.value();
+        }
+        (value == null ? misses : hits).increment();
+        return value;
+    }
+
+    /**
+     * Caches a value that never expires.
+     *
+     * @param key the key of the value
+     * @param value the value to cache
+     */
+    public void put(
+            final K key,
+            final V value
+    ) {
+        put(key, value, NEVER);
+    }
+
+    /**
+     * Caches a value until the provided expiration.
+     *
+     * @param key the key of the value
+     * @param value the value to cache
+     * @param expiresAt the expiration in epoch milliseconds
+     */
+    public void put(
+            final K key,
+            final V value,
+            final long expiresAt
+    ) {
+        synchronized (entries) {
+            entries.put(key, new Entry<>(value, expiresAt));
+        }
+    }
+
+    /**
+     * Removes the entry of a key.
+     *
+     * @param key the key to remove
+     * @return true if an entry was removed, false otherwise
+     */
+    public boolean remove(final K key) {
+        synchronized (entries) {
+            return entries.remove(key) != null;
+        }
+    }
+
+    /**
+     * Removes every entry matching the predicate.
+     *
+     * @param predicate the predicate applied to keys and values
+     * @return true if any entry was removed, false otherwise
+     */
+    public boolean removeIf(final BiPredicate<? super K, ? super V> predicate) {
+        synchronized (entries) {
+            return entries.entrySet()
+                    .removeIf(entry -> predicate.test(entry.getKey(), entry.getValue().value()));
+        }
+    }
+
+    /** Removes every entry. */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the number of entries, including expired entries that have not been looked up since.
+     *
+     * @return the number of cached entries
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Returns the maximum number of entries.
+     *
+     * @return the maximum size of the cache
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Returns the number of lookups that found a live entry.
+     *
+     * @return the number of hits
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that found no live entry.
+     *
+     * @return the number of misses
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries evicted to respect the maximum size.
+     *
+     * @return the number of evictions
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * A cached value together with its expiration.
+     *
+     * @param value the cached value
+     * @param expiresAt the expiration in epoch milliseconds
+     * @param <V> the type of the value
+     */
+    private record Entry<V>(
+            V value,
+            long expiresAt
+    ) {
+    }
+}
@@ -0,0 +1,103 @@
+package dev.hstoklosa.jwtext.cache;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent loads of the same key (thread-safe).
+ *
+ * The first caller of a key runs the load, callers arriving while it is in flight wait for it
+ * and receive the same result or exception. Nothing is cached once the load completes. Writers
+ * invalidate the key after changing it, so callers arriving after a write never join a load that
+ * was started before it.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of loaded values
+ */
+public class RequestCoalescer<K, V> {
+
+    /** Loads in flight by key. */
+    private final Map<K, CompletableFuture<V>> inFlight;
+
+    /** Number of calls served by a load started by another caller. */
+    private final LongAdder coalesced;
+
+    /** Creates an object. */
+    public RequestCoalescer() {
+        this.inFlight = new ConcurrentHashMap<>();
+        this.coalesced = new LongAdder();
+    }
+
+    /**
+     * Returns the value of a key, joining a load of the key already in flight.
+     *
+     * @param key the key to load
+     * @param loader the load run if none is in flight
+     * @return the loaded value
+     */
+    public V load(
+            final K key,
+            final Supplier<V> loader
+    ) {
+        CompletableFuture<V> load = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, load);
+        if (running != null) {
+            coalesced.increment();
+            return join(running);
+        }
+
+        try {
+            V value = loader.get();
+            load.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, load);
+        }
+    }
+
+    /**
+     * Detaches the load of a key in flight, so that later callers start a new one.
+     *
+     * @param key the changed key
+     */
+    public void invalidate(final K key) {
+        inFlight.remove(key);
+    }
+
+    /**
+     * Detaches every load in flight.
+     */
+    public void invalidateAll() {
+        inFlight.clear();
+    }
+
+    /**
+     * Returns the number of calls served by a load started by another caller.
+     *
+     * @return the number of coalesced calls
+     */
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    private V join(final CompletableFuture<V> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
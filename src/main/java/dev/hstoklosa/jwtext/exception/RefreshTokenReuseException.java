@@ -0,0 +1,30 @@
+package dev.hstoklosa.jwtext.exception;
+
+import io.jsonwebtoken.ClaimJwtException;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Header;
+
+/**
+ * Exception indicating that a validly signed refresh token was presented for rotation
+ * although it is no longer the current refresh token of its subject, e.g. because it
+ * was already rotated. Every stored token of the subject is removed when it is thrown.
+ */
+public class RefreshTokenReuseException extends ClaimJwtException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates an exception for the reused refresh token.
+     *
+     * @param header the header of the reused token
+     * @param claims the claims of the reused token
+     * @param message the exception message
+     */
+    public RefreshTokenReuseException(
+            final Header header,
+            final Claims claims,
+            final String message
+    ) {
+        super(header, claims, message);
+    }
+}
@@ -0,0 +1,29 @@
+package dev.hstoklosa.jwtext.exception;
+
+import io.jsonwebtoken.ClaimJwtException;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Header;
+
+/**
+ * Exception indicating that a JWT token was issued before the revocation watermark
+ * of its subject and must be rejected even though its signature is valid.
+ */
+public class RevokedJwtException extends ClaimJwtException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates an exception for the revoked token.
+     *
+     * @param header the header of the revoked token
+     * @param claims the claims of the revoked token
+     * @param message the exception message
+     */
+    public RevokedJwtException(
+            final Header header,
+            final Claims claims,
+            final String message
+    ) {
+        super(header, claims, message);
+    }
+}
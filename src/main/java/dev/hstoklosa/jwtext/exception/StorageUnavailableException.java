@@ -0,0 +1,32 @@
+package dev.hstoklosa.jwtext.exception;
+
+/**
+ * Exception indicating that a token storage could not be reached in time, or that calls to it
+ * are short-circuited because its circuit breaker is open.
+ */
+public class StorageUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates an exception with the provided message.
+     *
+     * @param message the exception message
+     */
+    public StorageUnavailableException(final String message) {
+        super(message);
+    }
+
+    /**
+     * Creates an exception with the provided message and cause.
+     *
+     * @param message the exception message
+     * @param cause the failure of the storage call
+     */
+    public StorageUnavailableException(
+            final String message,
+            final Throwable cause
+    ) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,173 @@
+package dev.hstoklosa.jwtext.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dictionary of short aliases for long claim names.
+ *
+ * Claims are written to tokens under their aliases and expanded back to their full names when
+ * tokens are read, so that tokens stay small on the wire and in storage while callers keep using
+ * descriptive names. Registered claims such as "sub" or "exp" are already short and cannot be
+ * aliased, and no alias may shadow another claim name of the dictionary or the token type claim,
+ * which is written under its own alias. Tokens must be read with the same dictionary they were
+ * created with.
+ */
+public final class ClaimAliases {
+
+    /** Dictionary without aliases, claims are written under their full names. */
+    public static final ClaimAliases NONE = new ClaimAliases(Map.of());
+
+    /** Claims registered by RFC 7519, which are not aliased. */
+    private static final Set<String> REGISTERED_CLAIMS = Set.of("iss", "sub", "aud", "exp", "nbf", "iat", "jti");
+
+    /** Claim holding the token type, see TokenServiceImpl.TOKEN_TYPE_KEY. */
+    private static final String TYPE_CLAIM = "tokenType";
+
+    /** Aliases by full claim name. */
+    private final Map<String, String> aliases;
+
+    /** Full claim names by alias. */
+    private final Map<String, String> claims;
+
+    private ClaimAliases(final Map<String, String> aliases) {
+        Map<String, String> claims = new HashMap<>();
+        aliases.forEach((claim, alias) -> claims.put(alias, claim));
+        this.aliases = Collections.unmodifiableMap(new LinkedHashMap<>(aliases));
+        this.claims = Collections.unmodifiableMap(claims);
+    }
+
+    /**
+     * Creates a builder for a ClaimAliases instance.
+     *
+     * @return an empty ClaimAliasesBuilder
+     */
+    public static ClaimAliasesBuilder builder() {
+        return new ClaimAliasesBuilder();
+    }
+
+    /**
+     * Returns the name a claim is written under.
+     *
+     * @param claim the full name of the claim
+     * @return the alias of the claim, or the claim itself if it has no alias
+     */
+    public String alias(final String claim) {
+        return aliases.getOrDefault(claim, claim);
+    }
+
+    /**
+     * Returns the full name of a claim read from a token.
+     *
+     * @param name the name the claim was written under
+     * @return the full name of the claim, or the name itself if it is not an alias
+     */
+    public String claim(final String name) {
+        return claims.getOrDefault(name, name);
+    }
+
+    /**
+     * Replaces the full claim names by their aliases.
+     *
+     * @param claims the claims by full name
+     * @return the claims by the names they are written under
+     * @throws IllegalArgumentException if a claim without an alias is named like an alias
+     */
+    public Map<String, Object> compact(final Map<String, Object> claims) {
+        if (aliases.isEmpty()) {
+            return claims;
+        }
+        Map<String, Object> compacted = new HashMap<>(claims.size());
+        claims.forEach((claim, value) -> {
+            if (!aliases.containsKey(claim) && this.claims.containsKey(claim)) {
+                throw new IllegalArgumentException(
+                        "Claim '" + claim + "' is named like the alias of '" + this.claims.get(claim) + "'"
+                );
+            }
+            compacted.put(alias(claim), value);
+        });
+        return compacted;
+    }
+
+    /**
+     * Replaces the aliases of claims read from a token by their full names.
+     *
+     * @param claims the claims by the names they were written under
+     * @return the claims by full name
+     */
+    public Map<String, Object> expand(final Map<String, Object> claims) {
+        Map<String, Object> expanded = new HashMap<>(claims.size());
+        claims.forEach((name, value) -> expanded.put(claim(name), value));
+        return expanded;
+    }
+
+    /**
+     * Returns the aliases of the dictionary.
+     *
+     * @return the aliases by full claim name
+     */
+    public Map<String, String> getAliases() {
+        return aliases;
+    }
+
+    public static class ClaimAliasesBuilder {
+
+        /** Aliases by full claim name in order of registration. */
+        private final Map<String, String> aliases = new LinkedHashMap<>();
+
+        private ClaimAliasesBuilder() {
+        }
+
+        /**
+         * Registers an alias for a claim.
+         *
+         * @param claim the full name of the claim
+         * @param alias the short name the claim is written under
+         * @return the current ClaimAliasesBuilder instance with the alias registered.
+         * @throws IllegalArgumentException if the claim is registered or already aliased, or the
+         *                                  alias is registered, already used, or names another claim
+         */
+        public ClaimAliasesBuilder alias(
+                final String claim,
+                final String alias
+        ) {
+            if (REGISTERED_CLAIMS.contains(claim) || REGISTERED_CLAIMS.contains(alias)) {
+                throw new IllegalArgumentException("Registered claims cannot be aliased");
+            }
+            if (aliases.containsKey(claim) || aliases.containsKey(alias)
+                    || aliases.containsValue(alias) || aliases.containsValue(claim)) {
+                throw new IllegalArgumentException(
+                        "Alias '" + alias + "' of claim '" + claim + "' clashes with an existing alias"
+                );
+            }
+            aliases.put(claim, alias);
+            return this;
+        }
+
+        /**
+         * Constructs and returns the final ClaimAliases instance.
+         *
+         * @return a ClaimAliases object containing the registered aliases.
+         * @throws IllegalArgumentException if a registered claim is aliased or used as an alias,
+         *                                  or another claim is aliased to the token type claim or
+         *                                  its alias
+         */
+        public ClaimAliases build() {
+            String typeAlias = aliases.getOrDefault(TYPE_CLAIM, TYPE_CLAIM);
+            aliases.forEach((claim, alias) -> {
+                if (REGISTERED_CLAIMS.contains(claim) || REGISTERED_CLAIMS.contains(alias)) {
+                    throw new IllegalArgumentException("Registered claims cannot be aliased");
+                }
+                if (!claim.equals(TYPE_CLAIM) && (alias.equals(TYPE_CLAIM) || alias.equals(typeAlias))) {
+                    throw new IllegalArgumentException(
+                            "Alias '" + alias + "' of claim '" + claim + "' clashes with the token type claim"
+                    );
+                }
+            });
+            return aliases.isEmpty() ? NONE : new ClaimAliases(aliases);
+        }
+    }
+}
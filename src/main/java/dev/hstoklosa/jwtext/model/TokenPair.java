@@ -0,0 +1,13 @@
+package dev.hstoklosa.jwtext.model;
+
+/**
+ * Access and refresh JWT tokens issued together.
+ *
+ * @param accessToken the access JWT token
+ * @param refreshToken the refresh JWT token
+ */
+public record TokenPair(
+        String accessToken,
+        String refreshToken
+) {
+}
@@ -0,0 +1,28 @@
+package dev.hstoklosa.jwtext.model;
+
+import java.util.Map;
+
+/**
+ * Result of verifying a single JWT token in bulk.
+ *
+ * @param token the verified JWT token
+ * @param status the outcome of the verification
+ * @param claims the claims of the token if its signature is valid, otherwise null
+ * @param message the reason of a failed verification, otherwise null
+ */
+public record VerificationResult(
+        String token,
+        VerificationStatus status,
+        Map<String, Object> claims,
+        String message
+) {
+
+    /**
+     * Checks whether the token passed the verification.
+     *
+     * @return true if the token is valid, false otherwise
+     */
+    public boolean isValid() {
+        return status == VerificationStatus.VALID;
+    }
+}
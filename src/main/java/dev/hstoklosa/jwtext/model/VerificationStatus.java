@@ -0,0 +1,26 @@
+package dev.hstoklosa.jwtext.model;
+
+/**
+ * Outcome of verifying a JWT token.
+ */
+public enum VerificationStatus {
+
+    /** The signature is valid and the token is within its validity period. */
+    VALID,
+
+    /** The signature is valid, but the token has expired. */
+    EXPIRED,
+
+    /** The signature is valid, but the token is not valid yet. */
+    NOT_YET_VALID,
+
+    /** The signature is valid, but the token was issued before its subject was revoked. */
+    REVOKED,
+
+    /** The signature does not match the token. */
+    BAD_SIGNATURE,
+
+    /** The token cannot be parsed or is not a signed JWT. */
+    MALFORMED
+
+}
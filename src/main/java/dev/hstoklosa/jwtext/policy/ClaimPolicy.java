@@ -0,0 +1,285 @@
+package dev.hstoklosa.jwtext.policy;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Compiled set of rules on the claims of a token, evaluated against a single verified payload.
+ *
+ * Policies are immutable and thread-safe: build them once, e.g. per endpoint, and evaluate them
+ * for every request with TokenService.evaluate, which verifies the token once however many rules
+ * the policy has. Expected values are normalised when the policy is built. Numbers match
+ * regardless of their type, so that 3 matches a claim read back as 3L, and the members of
+ * multi-valued claims are taken from JSON arrays or space-separated strings, the format of the
+ * OAuth "scope" claim. A missing claim fails every rule except a custom one accepting null.
+ */
+public final class ClaimPolicy {
+
+    /** Rules in the order they were declared. */
+    private final Rule[] rules;
+
+    private ClaimPolicy(final List<Rule> rules) {
+        this.rules = rules.toArray(new Rule[0]);
+    }
+
+    /**
+     * Creates a builder for a ClaimPolicy instance.
+     *
+     * @return an empty ClaimPolicyBuilder
+     */
+    public static ClaimPolicyBuilder builder() {
+        return new ClaimPolicyBuilder();
+    }
+
+    /**
+     * Evaluates every rule against the claims.
+     *
+     * @param claims the claims of a verified token by full name
+     * @return the result listing the violated rules
+     */
+    public PolicyResult evaluate(final Map<String, Object> claims) {
+        List<PolicyResult.Violation> violations = List.of();
+        for (Rule rule : rules) {
+            Object value = claims.get(rule.claim());
+            if (!rule.predicate().test(value)) {
+                if (violations.isEmpty()) {
+                    violations = new ArrayList<>(rules.length);
+                }
+                violations.add(new PolicyResult.Violation(rule.claim(), rule.description(), value));
+            }
+        }
+        return new PolicyResult(violations.isEmpty() ? violations : List.copyOf(violations), claims);
+    }
+
+    /**
+     * Checks whether the claims satisfy every rule, stopping at the first violated one.
+     *
+     * @param claims the claims of a verified token by full name
+     * @return true if every rule is satisfied, otherwise false
+     */
+    public boolean test(final Map<String, Object> claims) {
+        for (Rule rule : rules) {
+            if (!rule.predicate().test(claims.get(rule.claim()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether two claim values are equal, comparing numbers by value.
+     */
+    private static boolean same(
+            final Object expected,
+            final Object actual
+    ) {
+        if (expected instanceof BigDecimal number) {
+            return actual instanceof Number && number.compareTo(decimal(actual)) == 0;
+        }
+        return Objects.equals(expected, actual);
+    }
+
+    /**
+     * Returns the value a claim value is compared by.
+     */
+    private static Object normalise(final Object value) {
+        return value instanceof Number ? decimal(value) : value;
+    }
+
+    private static BigDecimal decimal(final Object number) {
+        return number instanceof BigDecimal decimal ? decimal : new BigDecimal(number.toString());
+    }
+
+    /**
+     * Returns the members of a multi-valued claim, or null if the claim is missing.
+     */
+    private static Collection<?> members(final Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Collection<?> collection) {
+            return collection;
+        }
+        if (value instanceof String string) {
+            return Arrays.asList(string.trim().split("\\s+"));
+        }
+        return List.of(value);
+    }
+
+    private static boolean containsMember(
+            final Collection<?> members,
+            final Object expected
+    ) {
+        for (Object member : members) {
+            if (same(expected, member)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A rule on a single claim.
+     *
+     * @param claim the full name of the claim
+     * @param description the description of the rule reported in violations
+     * @param predicate the condition on the value of the claim
+     */
+    private record Rule(
+            String claim,
+            String description,
+            ClaimPredicate predicate
+    ) {
+    }
+
+    public static class ClaimPolicyBuilder {
+
+        /** Rules in order of declaration. */
+        private final List<Rule> rules = new ArrayList<>();
+
+        private ClaimPolicyBuilder() {
+        }
+
+        /**
+         * Requires the claim to be present.
+         *
+         * @param claim the full name of the claim
+         * @return the current ClaimPolicyBuilder instance with the rule added.
+         */
+        public ClaimPolicyBuilder present(final String claim) {
+            return rule(claim, "present", Objects::nonNull);
+        }
+
+        /**
+         * Requires the claim to equal the value.
+         *
+         * @param claim the full name of the claim
+         * @param value the expected value
+         * @return the current ClaimPolicyBuilder instance with the rule added.
+         */
+        public ClaimPolicyBuilder equalTo(
+                final String claim,
+                final Object value
+        ) {
+            Object expected = normalise(Objects.requireNonNull(value, "value"));
+            return rule(claim, "equalTo " + value, actual -> same(expected, actual));
+        }
+
+        /**
+         * Requires the claim to equal one of the values.
+         *
+         * @param claim the full name of the claim
+         * @param values the accepted values
+         * @return the current ClaimPolicyBuilder instance with the rule added.
+         */
+        public ClaimPolicyBuilder oneOf(
+                final String claim,
+                final Object... values
+        ) {
+            List<Object> accepted = normalised(values);
+            return rule(claim, "oneOf " + accepted, actual -> {
+                for (Object expected : accepted) {
+                    if (same(expected, actual)) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        }
+
+        /**
+         * Requires the multi-valued claim, e.g. "roles", to contain the value.
+         *
+         * @param claim the full name of the claim
+         * @param value the required member
+         * @return the current ClaimPolicyBuilder instance with the rule added.
+         */
+        public ClaimPolicyBuilder contains(
+                final String claim,
+                final Object value
+        ) {
+            Object expected = normalise(Objects.requireNonNull(value, "value"));
+            return rule(claim, "contains " + value, actual -> {
+                Collection<?> members = members(actual);
+                return members != null && containsMember(members, expected);
+            });
+        }
+
+        /**
+         * Requires the multi-valued claim, e.g. "scope", to contain every value, i.e. the values
+         * to be a subset of the claim.
+         *
+         * @param claim the full name of the claim
+         * @param values the required members
+         * @return the current ClaimPolicyBuilder instance with the rule added.
+         */
+        public ClaimPolicyBuilder containsAll(
+                final String claim,
+                final Object... values
+        ) {
+            List<Object> required = normalised(values);
+            Set<Object> requiredSet = new HashSet<>(required);
+            boolean comparable = required.stream().noneMatch(BigDecimal.class::isInstance);
+            return rule(claim, "containsAll " + required, actual -> {
+                Collection<?> members = members(actual);
+                if (members == null) {
+                    return false;
+                }
+                if (comparable) {
+                    Set<?> present = members instanceof Set<?> set ? set : new HashSet<>(members);
+                    return present.containsAll(requiredSet);
+                }
+                return required.stream().allMatch(expected -> containsMember(members, expected));
+            });
+        }
+
+        /**
+         * Requires the claim to satisfy a custom condition.
+         *
+         * @param claim the full name of the claim
+         * @param description the description of the condition reported in violations
+         * @param predicate the condition on the value of the claim, which is null if the claim
+         *                  is missing
+         * @return the current ClaimPolicyBuilder instance with the rule added.
+         */
+        public ClaimPolicyBuilder matches(
+                final String claim,
+                final String description,
+                final ClaimPredicate predicate
+        ) {
+            return rule(claim, description, predicate);
+        }
+
+        /**
+         * Constructs and returns the final ClaimPolicy instance.
+         *
+         * @return a ClaimPolicy object containing the declared rules.
+         */
+        public ClaimPolicy build() {
+            return new ClaimPolicy(rules);
+        }
+
+        private ClaimPolicyBuilder rule(
+                final String claim,
+                final String description,
+                final ClaimPredicate predicate
+        ) {
+            rules.add(new Rule(Objects.requireNonNull(claim, "claim"), description, predicate));
+            return this;
+        }
+
+        private static List<Object> normalised(final Object[] values) {
+            return Arrays.stream(values)
+                    .map(value -> normalise(Objects.requireNonNull(value, "value")))
+                    .collect(Collectors.toUnmodifiableList());
+        }
+    }
+}
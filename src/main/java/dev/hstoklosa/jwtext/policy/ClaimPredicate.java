@@ -0,0 +1,17 @@
+package dev.hstoklosa.jwtext.policy;
+
+/**
+ * Condition on the value of a single claim, evaluated as part of a ClaimPolicy.
+ */
+@FunctionalInterface
+public interface ClaimPredicate {
+
+    /**
+     * Checks the value of the claim.
+     *
+     * @param value the value of the claim as read from the token, null if the claim is missing
+     * @return true if the value satisfies the condition, otherwise false
+     */
+    boolean test(Object value);
+
+}
@@ -0,0 +1,39 @@
+package dev.hstoklosa.jwtext.policy;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of evaluating a ClaimPolicy against the claims of a verified token.
+ *
+ * @param violations the rules the claims did not satisfy, in the order they were declared
+ * @param claims the claims the policy was evaluated against
+ */
+public record PolicyResult(
+        List<Violation> violations,
+        Map<String, Object> claims
+) {
+
+    /**
+     * Checks whether the claims satisfied every rule of the policy.
+     *
+     * @return true if there are no violations, otherwise false
+     */
+    public boolean isAllowed() {
+        return violations.isEmpty();
+    }
+
+    /**
+     * A rule the claims did not satisfy.
+     *
+     * @param claim the name of the claim
+     * @param rule the description of the rule, e.g. "equalTo acme"
+     * @param actual the value of the claim, null if the claim is missing
+     */
+    public record Violation(
+            String claim,
+            String rule,
+            Object actual
+    ) {
+    }
+}
@@ -1,13 +1,41 @@
 package dev.hstoklosa.jwtext.redis;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Default implementation of the RedisSchema interface that provides
  * a standardised way to generate Redis key patterns for JWT token storage.
  *
+ * Token keys follow the pattern "tokens:{subject}:{type}", the other keys the default layout of
+ * RedisSchema. The binary keys are written into a single array from prefixes encoded once.
+ * Subjects, types and claims are usually ASCII and copied char by char; other values fall back to
+ * encoding the String key.
+ *
  * @see RedisSchema
  */
 public class DefaultRedisSchema implements RedisSchema {
 
+    /** Prefix of token keys. */
+    private static final byte[] TOKENS_PREFIX = bytes("tokens:");
+
+    /** Prefix of subject index keys. */
+    private static final byte[] SUBJECTS_PREFIX = bytes("subjects:");
+
+    /** Prefix of claim index keys. */
+    private static final byte[] CLAIMS_PREFIX = bytes("claims:");
+
+    /** Prefix of the keys of the claim index keys of a token. */
+    private static final byte[] INDEXED_PREFIX = bytes("indexed:");
+
+    /** Separator between the parts of a key. */
+    private static final byte[] SEPARATOR = bytes(":");
+
+    /** Suffix of subject and claim index keys. */
+    private static final byte[] TOKENS_SUFFIX = bytes(":tokens");
+
+    /** Empty part of a key. */
+    private static final byte[] NONE = new byte[0];
+
     /**
      * Generates a Redis key for storing tokens associated with a specific subject and type.
      * The key follows the pattern "tokens:{subject}:{type}".
@@ -20,4 +48,117 @@ public class DefaultRedisSchema implements RedisSchema {
     public String subjectTokenKey(final String subject, final String type) {
         return "tokens:" + subject + ":" + type;
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes the key "tokens:{subject}:{type}" in UTF-8.
+     *
+     * @param subject the identifier of the subject (user/entity) associated with the token
+     * @param type the type of token (e.g., "access", "refresh")
+     * @return the bytes of the key returned by subjectTokenKey
+     */
+    @Override
+    public byte[] subjectTokenKeyBytes(
+            final String subject,
+            final String type
+    ) {
+        byte[] key = asciiKey(TOKENS_PREFIX, subject, SEPARATOR, type, NONE);
+        return key != null ? key : bytes(subjectTokenKey(subject, type));
+    }
+
+    /**
+     * Writes the key "subjects:{subject}:tokens" in UTF-8.
+     *
+     * @param subject the identifier of the subject (user/entity) associated with the tokens
+     * @return the bytes of the key returned by subjectIndexKey
+     */
+    @Override
+    public byte[] subjectIndexKeyBytes(final String subject) {
+        byte[] key = asciiKey(SUBJECTS_PREFIX, subject, NONE, "", TOKENS_SUFFIX);
+        return key != null ? key : bytes(subjectIndexKey(subject));
+    }
+
+    /**
+     * Writes the key "claims:{claim}:{value}:tokens" in UTF-8.
+     *
+     * @param claim the name of the indexed claim
+     * @param value the value of the claim
+     * @return the bytes of the key returned by claimIndexKey
+     */
+    @Override
+    public byte[] claimIndexKeyBytes(
+            final String claim,
+            final String value
+    ) {
+        byte[] key = asciiKey(CLAIMS_PREFIX, claim, SEPARATOR, value, TOKENS_SUFFIX);
+        return key != null ? key : bytes(claimIndexKey(claim, value));
+    }
+
+    /**
+     * Writes the key "indexed:{tokenKey}" by prefixing the bytes of the token key.
+     *
+     * @param tokenKey the Redis key of the token, encoded in UTF-8
+     * @return the bytes of the key returned by tokenClaimsKey
+     */
+    @Override
+    public byte[] tokenClaimsKeyBytes(final byte[] tokenKey) {
+        byte[] key = new byte[INDEXED_PREFIX.length + tokenKey.length];
+        System.arraycopy(INDEXED_PREFIX, 0, key, 0, INDEXED_PREFIX.length);
+        System.arraycopy(tokenKey, 0, key, INDEXED_PREFIX.length, tokenKey.length);
+        return key;
+    }
+
+    /**
+     * Writes prefix, first, infix, second and suffix into a single array.
+     *
+     * @return the key, or null if first or second contains a non-ASCII char
+     */
+    private static byte[] asciiKey(
+            final byte[] prefix,
+            final String first,
+            final byte[] infix,
+            final String second,
+            final byte[] suffix
+    ) {
+        byte[] key = new byte[prefix.length + first.length() + infix.length + second.length() + suffix.length];
+        System.arraycopy(prefix, 0, key, 0, prefix.length);
+        int position = writeAscii(first, key, prefix.length);
+        if (position < 0) {
+            return null;
+        }
+        System.arraycopy(infix, 0, key, position, infix.length);
+        position = writeAscii(second, key, position + infix.length);
+        if (position < 0) {
+            return null;
+        }
+        System.arraycopy(suffix, 0, key, position, suffix.length);
+        return key;
+    }
+
+    /**
+     * Copies the chars of value into key at position.
+     *
+     * @return the position after value, or -1 if value contains a non-ASCII char
+     */
+    private static int writeAscii(
+            final String value,
+            final byte[] key,
+            final int position
+    ) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                return -1;
+            }
+            key[position + i] = (byte) c;
+        }
+        return position + length;
+    }
+
+    /**
+     * Encodes a value in UTF-8.
+     */
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,89 @@
+package dev.hstoklosa.jwtext.redis;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with power-of-two microsecond buckets (thread-safe).
+ *
+ * Bucket 0 counts latencies below one microsecond and bucket i counts latencies below 2^i
+ * microseconds, the last bucket counts everything above.
+ */
+public class LatencyHistogram {
+
+    /** Number of buckets, the last but one ends at about 1 second. */
+    public static final int BUCKETS = 22;
+
+    /** Number of recorded latencies per bucket. */
+    private final AtomicLongArray counts;
+
+    /** Creates an empty histogram. */
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(final long nanos) {
+        long micros = nanos / 1000;
+        int bucket = micros == 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+        counts.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+    }
+
+    /**
+     * Returns the number of latencies recorded in a bucket.
+     *
+     * @param bucket the bucket number
+     * @return the number of recorded latencies
+     */
+    public long count(final int bucket) {
+        return counts.get(bucket);
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return the total count
+     */
+    public long count() {
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            total += counts.get(bucket);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the exclusive upper bound of a bucket.
+     *
+     * @param bucket the bucket number
+     * @return the upper bound in nanoseconds, or Long.MAX_VALUE for the last bucket
+     */
+    public static long upperBoundNanos(final int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) * 1000;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile.
+     *
+     * @param percentile the percentile between 0 and 100
+     * @return the upper bound in nanoseconds, or 0 if nothing was recorded
+     */
+    public long percentileNanos(final double percentile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank && seen > 0) {
+                return upperBoundNanos(bucket);
+            }
+        }
+        return upperBoundNanos(BUCKETS - 1);
+    }
+}
@@ -0,0 +1,189 @@
+package dev.hstoklosa.jwtext.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Runs Redis commands on pooled connections and records how long they wait for one (thread-safe).
+ *
+ * Every request is split into the wait for a connection and the command itself. After every
+ * window of requests, the share of latency spent waiting is compared with the adaptive threshold
+ * of the options, and the pool is reported or grown if it is exceeded.
+ */
+public class RedisPoolMonitor {
+
+    /** Number of requests after which the borrow-wait share is evaluated. */
+    static final int WINDOW = 1024;
+
+    private static final System.Logger LOGGER = System.getLogger(RedisPoolMonitor.class.getName());
+
+    /** Pool of Redis connections. */
+    private final JedisPool jedisPool;
+
+    /** Settings of the adaptive mode. */
+    private final RedisPoolOptions options;
+
+    /** Histogram of the time spent waiting for a connection. */
+    private final LatencyHistogram borrowWaits;
+
+    /** Number of requests. */
+    private final LongAdder requests;
+
+    /** Number of requests that failed to borrow a connection, e.g. after the maximum wait. */
+    private final LongAdder failedBorrows;
+
+    /** Number of requests in the current window. */
+    private final AtomicLong windowRequests;
+
+    /** Time spent waiting for a connection in the current window. */
+    private final AtomicLong windowWaitNanos;
+
+    /** Total time of requests in the current window. */
+    private final AtomicLong windowTotalNanos;
+
+    /** Borrow-wait share of the last evaluated window. */
+    private volatile double borrowWaitShare;
+
+    /**
+     * Creates a monitor that only records borrow waits.
+     *
+     * @param jedisPool the pool of Redis connections
+     */
+    public RedisPoolMonitor(final JedisPool jedisPool) {
+        this(jedisPool, RedisPoolOptions.builder().build());
+    }
+
+    /**
+     * Creates a monitor that reacts to borrow waits as configured in the options.
+     *
+     * @param jedisPool the pool of Redis connections
+     * @param options the settings of the adaptive mode
+     */
+    public RedisPoolMonitor(
+            final JedisPool jedisPool,
+            final RedisPoolOptions options
+    ) {
+        this.jedisPool = jedisPool;
+        this.options = options;
+        this.borrowWaits = new LatencyHistogram();
+        this.requests = new LongAdder();
+        this.failedBorrows = new LongAdder();
+        this.windowRequests = new AtomicLong();
+        this.windowWaitNanos = new AtomicLong();
+        this.windowTotalNanos = new AtomicLong();
+    }
+
+    /**
+     * Runs a command on a pooled connection. A request that fails to borrow a connection is
+     * recorded with the whole time it waited, so an exhausted pool shows up in the borrow
+     * waits instead of as an instant request.
+     *
+     * @param command the command to run
+     * @param <T> the type of the result
+     * @return the result of the command
+     */
+    public <T> T execute(final Function<Jedis, T> command) {
+        long start = System.nanoTime();
+        Jedis jedis;
+        try {
+            jedis = jedisPool.getResource();
+        } catch (RuntimeException e) {
+            long waited = System.nanoTime() - start;
+            failedBorrows.increment();
+            record(waited, waited);
+            throw e;
+        }
+
+        long borrowed = System.nanoTime();
+        try (jedis) {
+            return command.apply(jedis);
+        } finally {
+            record(borrowed - start, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the current state of the pool.
+     *
+     * @return the pool statistics
+     */
+    public RedisPoolStatistics getStatistics() {
+        return new RedisPoolStatistics(
+                jedisPool.getNumActive(),
+                jedisPool.getNumIdle(),
+                jedisPool.getNumWaiters(),
+                jedisPool.getMaxTotal(),
+                requests.sum(),
+                borrowWaits.percentileNanos(50),
+                borrowWaits.percentileNanos(99),
+                borrowWaitShare
+        );
+    }
+
+    /**
+     * Returns the number of requests that failed to borrow a connection, e.g. because none
+     * was returned to the pool within its maximum wait.
+     *
+     * @return the number of failed borrows
+     */
+    public long getFailedBorrows() {
+        return failedBorrows.sum();
+    }
+
+    /**
+     * Returns the histogram of the time spent waiting for a connection.
+     *
+     * @return the borrow-wait histogram
+     */
+    public LatencyHistogram getBorrowWaits() {
+        return borrowWaits;
+    }
+
+    private void record(
+            final long waitNanos,
+            final long totalNanos
+    ) {
+        borrowWaits.record(waitNanos);
+        requests.increment();
+        windowWaitNanos.addAndGet(waitNanos);
+        windowTotalNanos.addAndGet(totalNanos);
+        if (windowRequests.incrementAndGet() % WINDOW == 0) {
+            evaluate(windowWaitNanos.getAndSet(0), windowTotalNanos.getAndSet(0));
+        }
+    }
+
+    private void evaluate(
+            final long waitNanos,
+            final long totalNanos
+    ) {
+        double share = totalNanos == 0 ? 0 : (double) waitNanos / totalNanos;
+        borrowWaitShare = share;
+        if (options.getAdaptiveMode() == RedisPoolOptions.AdaptiveMode.OFF
+                || share <= options.getAdaptiveThreshold()) {
+            return;
+        }
+
+        int maxTotal = jedisPool.getMaxTotal();
+        if (options.getAdaptiveMode() == RedisPoolOptions.AdaptiveMode.GROW
+                && maxTotal < options.getAdaptiveMaxTotal()) {
+            int grown = Math.min(maxTotal * 2, options.getAdaptiveMaxTotal());
+            jedisPool.setMaxTotal(grown);
+            jedisPool.setMaxIdle(Math.max(jedisPool.getMaxIdle(), grown));
+            LOGGER.log(
+                    System.Logger.Level.INFO,
+                    "Redis pool grown from {0} to {1} connections, {2}% of request latency was spent waiting",
+                    maxTotal, grown, Math.round(share * 100)
+            );
+            return;
+        }
+        LOGGER.log(
+                System.Logger.Level.WARNING,
+                "{0}% of Redis request latency is spent waiting for one of {1} connections ({2} waiters)",
+                Math.round(share * 100), maxTotal, jedisPool.getNumWaiters()
+        );
+    }
+}
@@ -0,0 +1,137 @@
+package dev.hstoklosa.jwtext.redis;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Protocol;
+
+import java.time.Duration;
+
+/**
+ * Settings of the Redis connection pool and of its monitoring.
+ *
+ * Every setting has a default, so only the ones that differ have to be provided:
+ *
+ * <pre>{@code
+ * RedisPoolOptions options = RedisPoolOptions.builder()
+ *         .maxTotal(32)
+ *         .maxWait(Duration.ofMillis(500))
+ *         .adaptiveMode(RedisPoolOptions.AdaptiveMode.GROW)
+ *         .build();
+ * }</pre>
+ */
+@Builder
+@Getter
+public class RedisPoolOptions {
+
+    /**
+     * Reaction to borrow waits taking a significant share of request latency.
+     */
+    public enum AdaptiveMode {
+
+        /** Borrow waits are only recorded. */
+        OFF,
+
+        /** A warning is logged. */
+        WARN,
+
+        /** The pool is doubled up to the adaptive maximum, then a warning is logged. */
+        GROW
+
+    }
+
+    /** The maximum number of connections. */
+    @Builder.Default
+    private int maxTotal = JedisPoolConfig.DEFAULT_MAX_TOTAL;
+
+    /** The maximum number of idle connections. */
+    @Builder.Default
+    private int maxIdle = JedisPoolConfig.DEFAULT_MAX_IDLE;
+
+    /** The minimum number of idle connections. */
+    @Builder.Default
+    private int minIdle = JedisPoolConfig.DEFAULT_MIN_IDLE;
+
+    /** The maximum time to wait for a connection when the pool is exhausted. */
+    @Builder.Default
+    private Duration maxWait = Duration.ofSeconds(2);
+
+    /** The timeout of establishing a connection. */
+    @Builder.Default
+    private Duration connectionTimeout = Duration.ofMillis(Protocol.DEFAULT_TIMEOUT);
+
+    /** The timeout of reading a reply. */
+    @Builder.Default
+    private Duration socketTimeout = Duration.ofMillis(Protocol.DEFAULT_TIMEOUT);
+
+    /** Whether connections are validated with PING before they are borrowed. */
+    @Builder.Default
+    private boolean testOnBorrow = false;
+
+    /** Whether idle connections are validated in the background. */
+    @Builder.Default
+    private boolean testWhileIdle = true;
+
+    /** Whether the pool is registered as a JMX bean. */
+    @Builder.Default
+    private boolean jmxEnabled = false;
+
+    /** Reaction to borrow waits exceeding the adaptive threshold. */
+    @Builder.Default
+    private AdaptiveMode adaptiveMode = AdaptiveMode.OFF;
+
+    /** Share of request latency spent waiting for a connection that triggers the adaptive mode. */
+    @Builder.Default
+    private double adaptiveThreshold = 0.25;
+
+    /** The maximum number of connections the adaptive mode may grow the pool to. */
+    @Builder.Default
+    private int adaptiveMaxTotal = 64;
+
+    /**
+     * Creates the configuration of a connection pool.
+     *
+     * @return the pool configuration
+     */
+    public JedisPoolConfig toPoolConfig() {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(maxTotal);
+        config.setMaxIdle(maxIdle);
+        config.setMinIdle(minIdle);
+        config.setMaxWait(maxWait);
+        config.setTestOnBorrow(testOnBorrow);
+        config.setTestWhileIdle(testWhileIdle);
+        config.setJmxEnabled(jmxEnabled);
+        return config;
+    }
+
+    /**
+     * Creates a connection pool.
+     *
+     * @param host the host of the Redis server
+     * @param port the port of the Redis server
+     * @param user the user of the Redis server, or null
+     * @param password the password of the Redis server, or null
+     * @return the connection pool
+     */
+    public JedisPool createPool(
+            final String host,
+            final int port,
+            final String user,
+            final String password
+    ) {
+        return new JedisPool(
+                toPoolConfig(),
+                host,
+                port,
+                (int) connectionTimeout.toMillis(),
+                (int) socketTimeout.toMillis(),
+                user,
+                password,
+                Protocol.DEFAULT_DATABASE,
+                null
+        );
+    }
+}
@@ -0,0 +1,25 @@
+package dev.hstoklosa.jwtext.redis;
+
+/**
+ * Snapshot of the state of a Redis connection pool.
+ *
+ * @param active the number of borrowed connections
+ * @param idle the number of idle connections
+ * @param waiters the number of threads waiting for a connection
+ * @param maxTotal the maximum number of connections
+ * @param requests the number of requests run on the pool
+ * @param medianBorrowWaitNanos the median time spent waiting for a connection, rounded up to a bucket
+ * @param p99BorrowWaitNanos the 99th percentile of the time spent waiting for a connection, rounded up to a bucket
+ * @param borrowWaitShare the share of request latency spent waiting for a connection in the last window
+ */
+public record RedisPoolStatistics(
+        int active,
+        int idle,
+        int waiters,
+        int maxTotal,
+        long requests,
+        long medianBorrowWaitNanos,
+        long p99BorrowWaitNanos,
+        double borrowWaitShare
+) {
+}
@@ -1,7 +1,13 @@
 package dev.hstoklosa.jwtext.redis;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Interface defining the schema for Redis token storage.
+ *
+ * The keys read and written on every token operation are also available encoded in UTF-8, for
+ * the binary commands of Jedis. By default they encode the String keys; schemas may override
+ * them to write the key bytes directly, without building and encoding a String per call.
  */
 public interface RedisSchema {
 
@@ -16,4 +22,206 @@ public interface RedisSchema {
             String subject,
             String type
     );
+
+    /**
+     * Generates the Redis key used for storing a JWT token, encoded in UTF-8.
+     *
+     * @param subject the JWT token subject (the "sub" claim)
+     * @param type the token type identifier
+     * @return the bytes of the key returned by subjectTokenKey
+     */
+    default byte[] subjectTokenKeyBytes(
+            final String subject,
+            final String type
+    ) {
+        return subjectTokenKey(subject, type).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the glob-style pattern matching every key generated by subjectTokenKey, e.g. to
+     * subscribe to keyspace notifications of token keys. The default follows the layout of
+     * DefaultRedisSchema, "tokens:*", and must be overridden together with subjectTokenKey.
+     *
+     * @return the pattern of token keys
+     */
+    default String subjectTokenKeyPattern() {
+        return "tokens:*";
+    }
+
+    /**
+     * Recovers the subject and type a token key was generated from. The default splits a key
+     * of the layout of DefaultRedisSchema, "tokens:{subject}:{type}", at its last colon, and
+     * must be overridden together with subjectTokenKey.
+     *
+     * @param key a Redis key
+     * @return the subject and type of the token key, or null if the key is not a token key
+     */
+    default TokenKey parseSubjectTokenKey(final String key) {
+        int separator = key.lastIndexOf(':');
+        if (!key.startsWith("tokens:") || separator < "tokens:".length()) {
+            return null;
+        }
+        return new TokenKey(key.substring("tokens:".length(), separator), key.substring(separator + 1));
+    }
+
+    /**
+     * Generates the Redis key of the sorted set indexing all token keys of a subject. The
+     * default follows the layout of DefaultRedisSchema, "subjects:{subject}:tokens".
+     *
+     * @param subject the JWT token subject (the "sub" claim)
+     * @return the Redis key of the subject index
+     */
+    default String subjectIndexKey(final String subject) {
+        return "subjects:" + subject + ":tokens";
+    }
+
+    /**
+     * Generates the Redis key of the subject index, encoded in UTF-8.
+     *
+     * @param subject the JWT token subject (the "sub" claim)
+     * @return the bytes of the key returned by subjectIndexKey
+     */
+    default byte[] subjectIndexKeyBytes(final String subject) {
+        return subjectIndexKey(subject).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generates the Redis key of the sorted set indexing the token keys carrying a claim value.
+     * The default follows the layout of DefaultRedisSchema, "claims:{claim}:{value}:tokens".
+     *
+     * @param claim the name of the indexed claim
+     * @param value the value of the claim
+     * @return the Redis key of the claim index
+     */
+    default String claimIndexKey(
+            final String claim,
+            final String value
+    ) {
+        return "claims:" + claim + ":" + value + ":tokens";
+    }
+
+    /**
+     * Generates the Redis key of a claim index, encoded in UTF-8.
+     *
+     * @param claim the name of the indexed claim
+     * @param value the value of the claim
+     * @return the bytes of the key returned by claimIndexKey
+     */
+    default byte[] claimIndexKeyBytes(
+            final String claim,
+            final String value
+    ) {
+        return claimIndexKey(claim, value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generates the Redis key of the set holding the claim index keys a token is currently
+     * indexed under. The default follows the layout of DefaultRedisSchema, "indexed:{tokenKey}".
+     *
+     * @param tokenKey the Redis key of the token
+     * @return the Redis key of the token's claim index keys
+     */
+    default String tokenClaimsKey(final String tokenKey) {
+        return "indexed:" + tokenKey;
+    }
+
+    /**
+     * Generates the Redis key of the claim index keys of a token, encoded in UTF-8.
+     *
+     * @param tokenKey the Redis key of the token, encoded in UTF-8
+     * @return the bytes of the key returned by tokenClaimsKey
+     */
+    default byte[] tokenClaimsKeyBytes(final byte[] tokenKey) {
+        return tokenClaimsKey(new String(tokenKey, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generates the Redis key holding the JWT token a reference handle refers to. References are
+     * indexed in the subject index of their token. The default follows the layout of
+     * DefaultRedisSchema, "references:{handle}".
+     *
+     * @param handle the reference handle
+     * @return the Redis key of the reference
+     */
+    default String referenceKey(final String handle) {
+        return "references:" + handle;
+    }
+
+    /**
+     * Returns the glob-style pattern matching every key generated by referenceKey, e.g. to
+     * subscribe to keyspace notifications of references. The default follows the layout of
+     * DefaultRedisSchema, "references:*", and must be overridden together with referenceKey.
+     *
+     * @return the pattern of reference keys
+     */
+    default String referenceKeyPattern() {
+        return "references:*";
+    }
+
+    /**
+     * Recovers the handle a reference key was generated from. The default strips the prefix of
+     * the layout of DefaultRedisSchema, and must be overridden together with referenceKey.
+     *
+     * @param key a Redis key
+     * @return the handle of the reference key, or null if the key is not a reference key
+     */
+    default String parseReferenceKey(final String key) {
+        return key.startsWith("references:") ? key.substring("references:".length()) : null;
+    }
+
+    /**
+     * Generates the Redis key of the sorted set holding the session keys of a subject, scored by
+     * the issue time of their tokens. The default follows the layout of DefaultRedisSchema,
+     * "sessions:{subject}".
+     *
+     * @param subject the JWT token subject (the "sub" claim)
+     * @return the Redis key of the sessions of the subject
+     */
+    default String subjectSessionsKey(final String subject) {
+        return "sessions:" + subject;
+    }
+
+    /**
+     * Generates the Redis key of the hash describing a single session. The default follows the
+     * layout of DefaultRedisSchema, "session:{sessionId}".
+     *
+     * @param sessionId the identifier of the session, derived from its token by the storage
+     * @return the Redis key of the session
+     */
+    default String sessionKey(final String sessionId) {
+        return "session:" + sessionId;
+    }
+
+    /**
+     * Generates the Redis key holding the revocation watermark of a subject. The default
+     * follows the layout of DefaultRedisSchema, "revocations:{subject}".
+     *
+     * @param subject the JWT token subject (the "sub" claim)
+     * @return the Redis key of the revocation watermark
+     */
+    default String revocationKey(final String subject) {
+        return "revocations:" + subject;
+    }
+
+    /**
+     * Returns the Redis channel on which revoked subjects are published. The default follows
+     * the layout of DefaultRedisSchema, "revocations".
+     *
+     * @return the name of the revocation channel
+     */
+    default String revocationChannel() {
+        return "revocations";
+    }
+
+    /**
+     * Subject and type a token key was generated from.
+     *
+     * @param subject the JWT token subject (the "sub" claim)
+     * @param type the token type identifier
+     */
+    record TokenKey(
+            String subject,
+            String type
+    ) {
+    }
 }
@@ -0,0 +1,189 @@
+package dev.hstoklosa.jwtext.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Lua script invoked by its SHA1 digest with EVALSHA, so that its body is sent to the server only
+ * once rather than on every call.
+ *
+ * The body starts with a comment naming the script and its version, so that every version has a
+ * distinct digest and can be told apart in SCRIPT and SLOWLOG output. Scripts unknown to the server,
+ * e.g. after a restart or SCRIPT FLUSH, are loaded with SCRIPT LOAD and invoked again (thread-safe).
+ */
+public final class RedisScript {
+
+    /** Name of the script. */
+    private final String name;
+
+    /** Version of the script body. */
+    private final int version;
+
+    /** Body of the script as loaded to the server. */
+    private final String body;
+
+    /** SHA1 digest of the body in hex, identifying the script on the server. */
+    private final String sha;
+
+    /** SHA1 digest of the body in hex, encoded for the binary commands. */
+    private final byte[] shaBytes;
+
+    /**
+     * Creates a script, see RedisScriptRegistry.register.
+     *
+     * @param name the name of the script
+     * @param version the version of the script body
+     * @param source the Lua source of the script
+     */
+    RedisScript(
+            final String name,
+            final int version,
+            final String source
+    ) {
+        this.name = name;
+        this.version = version;
+        this.body = "-- jwt-ext " + name + " v" + version + "\n" + source;
+        this.sha = sha1(body);
+        this.shaBytes = sha.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Invokes the script, loading it first if the server does not know it.
+     *
+     * @param jedis the connection
+     * @param keys the keys of the script
+     * @param args the arguments of the script
+     * @return the reply of the script
+     */
+    public Object eval(
+            final Jedis jedis,
+            final List<String> keys,
+            final List<String> args
+    ) {
+        try {
+            return jedis.evalsha(sha, keys, args);
+        } catch (JedisNoScriptException e) {
+            load(jedis);
+            return jedis.evalsha(sha, keys, args);
+        }
+    }
+
+    /**
+     * Queues an invocation of the script on a pipeline. The response throws a
+     * JedisNoScriptException if the server does not know the script, the invocation can then be
+     * repeated after loading it.
+     *
+     * @param pipeline the pipeline
+     * @param keys the keys of the script
+     * @param args the arguments of the script
+     * @return the response of the script
+     */
+    public Response<Object> eval(
+            final Pipeline pipeline,
+            final List<String> keys,
+            final List<String> args
+    ) {
+        return pipeline.evalsha(sha, keys, args);
+    }
+
+    /**
+     * Invokes the script with keys and arguments encoded by the caller, loading it first if the
+     * server does not know it. Bulk string replies of the script are returned as byte arrays.
+     *
+     * @param jedis the connection
+     * @param keys the keys of the script
+     * @param args the arguments of the script
+     * @return the reply of the script
+     */
+    public Object evalBinary(
+            final Jedis jedis,
+            final List<byte[]> keys,
+            final List<byte[]> args
+    ) {
+        try {
+            return jedis.evalsha(shaBytes, keys, args);
+        } catch (JedisNoScriptException e) {
+            load(jedis);
+            return jedis.evalsha(shaBytes, keys, args);
+        }
+    }
+
+    /**
+     * Queues an invocation of the script with keys and arguments encoded by the caller on a
+     * pipeline, see eval(Pipeline, List, List).
+     *
+     * @param pipeline the pipeline
+     * @param keys the keys of the script
+     * @param args the arguments of the script
+     * @return the response of the script
+     */
+    public Response<Object> evalBinary(
+            final Pipeline pipeline,
+            final List<byte[]> keys,
+            final List<byte[]> args
+    ) {
+        return pipeline.evalsha(shaBytes, keys, args);
+    }
+
+    /**
+     * Loads the script to the server.
+     *
+     * @param jedis the connection
+     */
+    public void load(final Jedis jedis) {
+        jedis.scriptLoad(body);
+    }
+
+    /**
+     * Returns the name of the script.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the version of the script body.
+     *
+     * @return the version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the body of the script as loaded to the server.
+     *
+     * @return the body including its version comment
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * Returns the SHA1 digest identifying the script on the server.
+     *
+     * @return the digest in lowercase hex
+     */
+    public String getSha() {
+        return sha;
+    }
+
+    private static String sha1(final String body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return HexFormat.of().formatHex(digest.digest(body.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+}
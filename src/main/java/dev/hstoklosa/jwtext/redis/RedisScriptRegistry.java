@@ -0,0 +1,60 @@
+package dev.hstoklosa.jwtext.redis;
+
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of the Lua scripts of a storage, loading all of them to a server at once (thread-safe).
+ *
+ * Scripts are loaded on their first invocation anyway, so loading them up front only moves the
+ * SCRIPT LOAD round trips out of the first requests, e.g. at startup.
+ */
+public final class RedisScriptRegistry {
+
+    /** Registered scripts in order of registration. */
+    private final List<RedisScript> scripts = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registers a script.
+     *
+     * @param name the name of the script, unique within the registry
+     * @param version the version of the script body, to be increased whenever the body changes
+     * @param source the Lua source of the script
+     * @return the registered script
+     * @throws IllegalArgumentException if a script of the same name is registered
+     */
+    public RedisScript register(
+            final String name,
+            final int version,
+            final String source
+    ) {
+        RedisScript script = new RedisScript(name, version, source);
+        synchronized (scripts) {
+            if (scripts.stream().anyMatch(registered -> registered.getName().equals(name))) {
+                throw new IllegalArgumentException("Script '" + name + "' is already registered");
+            }
+            scripts.add(script);
+        }
+        return script;
+    }
+
+    /**
+     * Loads every registered script to the server.
+     *
+     * @param jedis the connection
+     */
+    public void load(final Jedis jedis) {
+        scripts.forEach(script -> script.load(jedis));
+    }
+
+    /**
+     * Returns the registered scripts.
+     *
+     * @return the scripts in order of registration
+     */
+    public List<RedisScript> getScripts() {
+        return List.copyOf(scripts);
+    }
+}
@@ -0,0 +1,87 @@
+package dev.hstoklosa.jwtext.service;
+
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.interfaces.ECKey;
+import java.security.interfaces.EdECKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+
+/**
+ * JWS signature algorithm of an asymmetric key together with the JCA algorithm implementing it.
+ *
+ * ECDSA signatures are produced and verified in the IEEE P1363 format, the fixed-length
+ * concatenation of R and S that JWS uses, so that no DER transcoding is needed.
+ *
+ * @param name the JWS name of the algorithm, e.g. "ES256"
+ * @param jcaName the name of the JCA Signature algorithm
+ * @param signatureLength the length of signatures in bytes
+ */
+record AsymmetricAlgorithm(
+        String name,
+        String jcaName,
+        int signatureLength
+) {
+
+    /** Parameters of the P-256 curve of ES256. */
+    private static final ECParameterSpec P256 = curve("secp256r1");
+
+    /** Parameters of the P-384 curve of ES384. */
+    private static final ECParameterSpec P384 = curve("secp384r1");
+
+    /** Parameters of the P-521 curve of ES512. */
+    private static final ECParameterSpec P521 = curve("secp521r1");
+
+    /**
+     * Returns the algorithm tokens are signed with using the provided key.
+     *
+     * @param key an EC key on P-256, P-384 or P-521, or an Ed25519 or Ed448 key
+     * @return the algorithm of the key
+     * @throws IllegalArgumentException if the key is of another type or on another curve
+     */
+    static AsymmetricAlgorithm of(final Key key) {
+        if (key instanceof ECKey ecKey) {
+            ECParameterSpec params = ecKey.getParams();
+            if (matches(params, P256)) {
+                return new AsymmetricAlgorithm("ES256", "SHA256withECDSAinP1363Format", 64);
+            }
+            if (matches(params, P384)) {
+                return new AsymmetricAlgorithm("ES384", "SHA384withECDSAinP1363Format", 96);
+            }
+            if (matches(params, P521)) {
+                return new AsymmetricAlgorithm("ES512", "SHA512withECDSAinP1363Format", 132);
+            }
+            throw new IllegalArgumentException("EC keys must be on the P-256, P-384 or P-521 curve.");
+        }
+        if (key instanceof EdECKey edKey) {
+            String curve = edKey.getParams().getName();
+            return new AsymmetricAlgorithm("EdDSA", curve, "Ed448".equals(curve) ? 114 : 64);
+        }
+        throw new IllegalArgumentException("Unsupported key algorithm " + key.getAlgorithm() + ", expected EC or EdDSA.");
+    }
+
+    /**
+     * Compares the curve, generator, order and cofactor of EC parameters, as keys of different
+     * providers may carry equal parameters in different objects.
+     */
+    private static boolean matches(
+            final ECParameterSpec params,
+            final ECParameterSpec curve
+    ) {
+        return params.getCurve().equals(curve.getCurve())
+                && params.getGenerator().equals(curve.getGenerator())
+                && params.getOrder().equals(curve.getOrder())
+                && params.getCofactor() == curve.getCofactor();
+    }
+
+    private static ECParameterSpec curve(final String name) {
+        try {
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec(name));
+            return parameters.getParameterSpec(ECParameterSpec.class);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Curve " + name + " is not available", e);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package dev.hstoklosa.jwtext.service;
+
+import dev.hstoklosa.jwtext.model.ClaimAliases;
+import dev.hstoklosa.jwtext.model.TokenParameters;
+import dev.hstoklosa.jwtext.model.VerificationResult;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.io.Serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ServiceLoader;
+import java.util.function.Consumer;
+
+import static dev.hstoklosa.jwtext.service.TokenServiceImpl.TOKEN_TYPE_KEY;
+
+/**
+ * Implementation of TokenService signing tokens with an EC (ES256, ES384, ES512) or EdDSA
+ * (Ed25519, Ed448) private key and verifying them with the public key.
+ *
+ * Services that only verify tokens are created from the public key alone, so the private key
+ * never has to leave the issuer. The JCA Signature objects are prepared once per thread and
+ * reused, and the encoded header is computed once, so that neither signing nor verification
+ * looks up providers or initialises keys per token.
+ */
+public class AsymmetricTokenServiceImpl implements TokenService {
+
+    /** Algorithm of the key pair. */
+    private final AsymmetricAlgorithm algorithm;
+
+    /** Per-thread Signature initialised for signing, null for verification-only services. */
+    private final ThreadLocal<Signature> signers;
+
+    /** Verifier of tokens, shared by all verifications. */
+    private final SignatureTokenVerifier verifier;
+
+    /** Aliases the claims are written under. */
+    private final ClaimAliases claimAliases;
+
+    /** JSON serializer discovered like the JJWT builder discovers it. */
+    private final Serializer<Map<String, ?>> serializer;
+
+    /** Base64url-encoded header of created tokens followed by a dot. */
+    private final String encodedHeader;
+
+    /**
+     * Creates an AsymmetricTokenServiceImpl object signing and verifying tokens.
+     *
+     * @param keyPair the EC or EdDSA key pair
+     */
+    public AsymmetricTokenServiceImpl(final KeyPair keyPair) {
+        this(keyPair, ClaimAliases.NONE);
+    }
+
+    /**
+     * Creates an AsymmetricTokenServiceImpl object signing and verifying tokens, writing claims
+     * under the provided aliases.
+     *
+     * @param keyPair the EC or EdDSA key pair
+     * @param claimAliases the aliases claims are written under
+     */
+    public AsymmetricTokenServiceImpl(
+            final KeyPair keyPair,
+            final ClaimAliases claimAliases
+    ) {
+        this(keyPair.getPrivate(), keyPair.getPublic(), claimAliases);
+    }
+
+    /**
+     * Creates an AsymmetricTokenServiceImpl object only verifying tokens.
+     *
+     * @param publicKey the EC or EdDSA public key
+     */
+    public AsymmetricTokenServiceImpl(final PublicKey publicKey) {
+        this(publicKey, ClaimAliases.NONE);
+    }
+
+    /**
+     * Creates an AsymmetricTokenServiceImpl object only verifying tokens, reading claims written
+     * under the provided aliases.
+     *
+     * @param publicKey the EC or EdDSA public key
+     * @param claimAliases the aliases claims are written under
+     */
+    public AsymmetricTokenServiceImpl(
+            final PublicKey publicKey,
+            final ClaimAliases claimAliases
+    ) {
+        this(null, publicKey, claimAliases);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AsymmetricTokenServiceImpl(
+            final PrivateKey privateKey,
+            final PublicKey publicKey,
+            final ClaimAliases claimAliases
+    ) {
+        this.algorithm = AsymmetricAlgorithm.of(publicKey);
+        if (privateKey != null && !algorithm.equals(AsymmetricAlgorithm.of(privateKey))) {
+            throw new IllegalArgumentException("Private and public key must be of the same algorithm.");
+        }
+        this.signers = privateKey == null ? null : ThreadLocal.withInitial(() -> {
+            try {
+                Signature signature = Signature.getInstance(algorithm.jcaName());
+                signature.initSign(privateKey);
+                return signature;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to initialise " + algorithm.jcaName(), e);
+            }
+        });
+        this.verifier = new SignatureTokenVerifier(publicKey);
+        this.claimAliases = claimAliases;
+        this.serializer = ServiceLoader.load(Serializer.class)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No JSON serializer found on the classpath"));
+        this.encodedHeader = encode(serialize(Map.of("alg", algorithm.name()))) + ".";
+    }
+
+    /**
+     * Creates a JWT token signed with the private key.
+     *
+     * @param params the parameters for JWT token
+     * @return the JWT token as a String
+     * @throws UnsupportedOperationException if the service was created from a public key only
+     */
+    @Override
+    public String create(final TokenParameters params) {
+        if (signers == null) {
+            throw new UnsupportedOperationException("Tokens can only be created with a private key.");
+        }
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put(Claims.SUBJECT, params.getSubject());
+        if (params.getClaims() != null) {
+            claims.putAll(claimAliases.compact(params.getClaims()));
+        }
+        claims.put(claimAliases.alias(TOKEN_TYPE_KEY), params.getType());
+        if (params.getIssuedAt() != null) {
+            claims.put(Claims.ISSUED_AT, params.getIssuedAt().getTime() / 1000);
+        }
+        if (params.getExpiredAt() != null) {
+            claims.put(Claims.EXPIRATION, params.getExpiredAt().getTime() / 1000);
+        }
+
+        String signingInput = encodedHeader + encode(serialize(claims));
+        try {
+            Signature signature = signers.get();
+            signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            return signingInput + "." + encode(signature.sign());
+        } catch (GeneralSecurityException e) {
+            signers.remove();
+            throw new IllegalStateException("Unable to compute JWT signature", e);
+        }
+    }
+
+    @Override
+    public void createAll(
+            final Collection<TokenParameters> params,
+            final Consumer<String> consumer
+    ) {
+        BulkOperations.forEachChunk(
+                params.iterator(),
+                chunk -> BulkOperations.mapParallel(chunk, this::create),
+                consumer
+        );
+    }
+
+    @Override
+    public void verifyAll(
+            final Iterable<String> tokens,
+            final Consumer<VerificationResult> consumer
+    ) {
+        BulkOperations.forEachChunk(
+                tokens.iterator(),
+                chunk -> BulkOperations.mapParallel(
+                        chunk,
+                        token -> BulkOperations.verify(token, this::claims, claimAliases)
+                ),
+                consumer
+        );
+    }
+
+    @Override
+    public boolean isExpired(final String token) {
+        return isExpired(
+                token,
+                new Date()
+        );
+    }
+
+    @Override
+    public boolean isExpired(
+            final String token,
+            final Date date
+    ) {
+        try {
+            return verifier.verify(token)
+                    .claims()
+                    .getExpiration()
+                    .before(date);
+        } catch (ExpiredJwtException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public boolean has(
+            final String token,
+            final String key,
+            final Object value
+    ) {
+        return Objects.equals(
+                verifier.verify(token).claims().get(claimAliases.alias(key)),
+                value
+        );
+    }
+
+    @Override
+    public String getSubject(final String token) {
+        return verifier.verify(token)
+                .claims()
+                .getSubject();
+    }
+
+    @Override
+    public Map<String, Object> claims(final String token) {
+        return claims((CharSequence) token);
+    }
+
+    @Override
+    public Map<String, Object> claims(final CharSequence token) {
+        return claimAliases.expand(verifier.verify(token).claims());
+    }
+
+    @Override
+    public Map<String, Object> claims(
+            final byte[] token,
+            final int offset,
+            final int length
+    ) {
+        return claimAliases.expand(verifier.verify(token, offset, length).claims());
+    }
+
+    @Override
+    public Map<String, Object> claims(final ByteBuffer token) {
+        return claimAliases.expand(verifier.verify(token).claims());
+    }
+
+    @Override
+    public String getType(final String token) {
+        return verifier.verify(token)
+                .claims()
+                .get(claimAliases.alias(TOKEN_TYPE_KEY), String.class);
+    }
+
+    /**
+     * Returns the JWS name of the algorithm tokens are signed with.
+     *
+     * @return the algorithm, e.g. "ES256" or "EdDSA"
+     */
+    public String getAlgorithm() {
+        return algorithm.name();
+    }
+
+    private byte[] serialize(final Map<String, ?> values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        serializer.serialize(values, out);
+        return out.toByteArray();
+    }
+
+    private static String encode(final byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
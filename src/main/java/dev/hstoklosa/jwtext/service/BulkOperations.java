@@ -0,0 +1,113 @@
+package dev.hstoklosa.jwtext.service;
+
+import dev.hstoklosa.jwtext.exception.RevokedJwtException;
+import dev.hstoklosa.jwtext.model.ClaimAliases;
+import dev.hstoklosa.jwtext.model.VerificationResult;
+import dev.hstoklosa.jwtext.model.VerificationStatus;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.PrematureJwtException;
+import io.jsonwebtoken.security.SecurityException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Helpers for processing large inputs in parallel while keeping their order.
+ *
+ * Inputs are consumed in chunks, so that only a single chunk and its results are held in memory.
+ * Each chunk is processed on the common fork-join pool and its results are passed to the consumer
+ * in input order on the calling thread.
+ */
+final class BulkOperations {
+
+    /** Number of items processed in parallel before their results are emitted. */
+    static final int CHUNK_SIZE = 4096;
+
+    private BulkOperations() {
+    }
+
+    /**
+     * Processes the items chunk by chunk and emits the results in input order.
+     *
+     * @param items the items to process
+     * @param chunkOperation the operation mapping a chunk to results of the same size and order
+     * @param consumer the consumer of the results
+     * @param <T> the type of the items
+     * @param <R> the type of the results
+     */
+    static <T, R> void forEachChunk(
+            final Iterator<? extends T> items,
+            final Function<List<T>, List<R>> chunkOperation,
+            final Consumer<? super R> consumer
+    ) {
+        List<T> chunk = new ArrayList<>(CHUNK_SIZE);
+        while (items.hasNext()) {
+            chunk.add(items.next());
+            if (chunk.size() == CHUNK_SIZE || !items.hasNext()) {
+                chunkOperation.apply(chunk).forEach(consumer);
+                chunk = new ArrayList<>(CHUNK_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Maps the items in parallel.
+     *
+     * @param items the items to map
+     * @param mapper the function applied to every item
+     * @param <T> the type of the items
+     * @param <R> the type of the results
+     * @return the results in input order
+     */
+    static <T, R> List<R> mapParallel(
+            final List<T> items,
+            final Function<? super T, ? extends R> mapper
+    ) {
+        return items.parallelStream()
+                .<R>map(mapper)
+                .toList();
+    }
+
+    /**
+     * Verifies a token and maps the outcome to a result instead of an exception.
+     *
+     * @param token the JWT token to verify
+     * @param verifier the function returning the claims of a valid token
+     * @param aliases the aliases expanded in claims of rejected tokens
+     * @return the result of the verification
+     */
+    static VerificationResult verify(
+            final String token,
+            final Function<String, Map<String, Object>> verifier,
+            final ClaimAliases aliases
+    ) {
+        try {
+            return new VerificationResult(token, VerificationStatus.VALID, verifier.apply(token), null);
+        } catch (ExpiredJwtException e) {
+            return result(token, VerificationStatus.EXPIRED, aliases.expand(e.getClaims()), e);
+        } catch (PrematureJwtException e) {
+            return result(token, VerificationStatus.NOT_YET_VALID, aliases.expand(e.getClaims()), e);
+        } catch (RevokedJwtException e) {
+            return result(token, VerificationStatus.REVOKED, aliases.expand(e.getClaims()), e);
+        } catch (SecurityException e) {
+            return result(token, VerificationStatus.BAD_SIGNATURE, null, e);
+        } catch (JwtException | IllegalArgumentException e) {
+            return result(token, VerificationStatus.MALFORMED, null, e);
+        }
+    }
+
+    private static VerificationResult result(
+            final String token,
+            final VerificationStatus status,
+            final Map<String, Object> claims,
+            final Exception cause
+    ) {
+        return new VerificationResult(token, status, claims, cause.getMessage());
+    }
+}
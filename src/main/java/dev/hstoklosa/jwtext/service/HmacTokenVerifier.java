@@ -0,0 +1,77 @@
+package dev.hstoklosa.jwtext.service;
+
+import io.jsonwebtoken.security.SignatureException;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+/**
+ * Verifies HMAC-signed JWT tokens directly from their bytes (thread-safe).
+ *
+ * The MAC is computed over the input buffer and compared with the presented signature in
+ * constant time.
+ */
+final class HmacTokenVerifier extends TokenVerifier {
+
+    /** Largest HMAC output in bytes (HS512). */
+    private static final int MAX_MAC_BYTES = 64;
+
+    /** Per-thread MAC initialised with the key. */
+    private final ThreadLocal<Mac> macs;
+
+    /** Per-thread scratch arrays for the computed and presented signatures. */
+    private final ThreadLocal<byte[][]> signatures;
+
+    /**
+     * Creates a verifier for tokens signed with the provided key.
+     *
+     * @param key the HMAC key, e.g. created with Keys.hmacShaKeyFor
+     */
+    HmacTokenVerifier(final SecretKey key) {
+        super("HS" + key.getAlgorithm().replaceAll("\\D", ""));
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(key.getAlgorithm());
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to initialise " + key.getAlgorithm(), e);
+            }
+        });
+        this.signatures = ThreadLocal.withInitial(() -> new byte[2][MAX_MAC_BYTES]);
+    }
+
+    @Override
+    void verifySignature(
+            final ByteBuffer token,
+            final int start,
+            final int secondDot,
+            final int end
+    ) {
+        Mac mac = macs.get();
+        byte[][] scratch = signatures.get();
+        int macLength = mac.getMacLength();
+        if (decodedLength(end - secondDot - 1) != macLength) {
+            throw new SignatureException("JWT signature does not match locally computed signature.");
+        }
+        decode(token, secondDot + 1, end, scratch[1]);
+
+        try {
+            mac.update(token.duplicate().position(start).limit(secondDot));
+            mac.doFinal(scratch[0], 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to compute JWT signature", e);
+        }
+
+        int difference = 0;
+        for (int i = 0; i < macLength; i++) {
+            difference |= scratch[0][i] ^ scratch[1][i];
+        }
+        if (difference != 0) {
+            throw new SignatureException("JWT signature does not match locally computed signature.");
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package dev.hstoklosa.jwtext.service;
+
+/**
+ * Source of the signing secrets of tenants, e.g. a database table or a secret manager.
+ *
+ * TenantTokenServiceImpl asks for the secret of a tenant when it first signs or verifies one of
+ * its tokens and keeps the derived key until it is evicted or invalidated, so implementations may
+ * block on remote calls.
+ */
+@FunctionalInterface
+public interface KeyProvider {
+
+    /**
+     * Returns the secret tokens of a tenant are signed with.
+     *
+     * @param tenant the identifier of the tenant
+     * @return the secret of the tenant, at least 32 bytes long, or null if the tenant is unknown
+     */
+    String getSecret(String tenant);
+
+}
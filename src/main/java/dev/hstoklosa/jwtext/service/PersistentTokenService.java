@@ -1,7 +1,10 @@
 package dev.hstoklosa.jwtext.service;
 
+import dev.hstoklosa.jwtext.model.TokenPair;
 import dev.hstoklosa.jwtext.model.TokenParameters;
 
+import java.util.Date;
+
 /**
  * Extension of TokenService that provides methods to 
  * invalidate tokens from the underlying storage mechanism.
@@ -23,4 +26,115 @@ public interface PersistentTokenService extends TokenService {
      * @return true if successfully removed, false otherwise
      */
     boolean invalidate(TokenParameters params);
-}
\ No newline at end of file
+
+    /**
+     * Invalidates all JWT tokens of a subject, regardless of their type.
+     *
+     * @param subject the subject whose JWT tokens should be invalidated
+     * @return true if any token was removed, false otherwise
+     */
+    boolean invalidateAll(String subject);
+
+    /**
+     * Invalidates all JWT tokens carrying a claim value, e.g. every token of a tenant or every
+     * token granted a deprecated scope. The claim must be indexed by the token storage.
+     *
+     * @param claim the name of an indexed claim
+     * @param value the value of the claim, or an element of a collection claim
+     * @return true if any token was removed, false otherwise
+     * @throws UnsupportedOperationException if the token storage does not index claims
+     * @throws IllegalArgumentException if the claim is not indexed
+     */
+    boolean invalidateByClaim(
+            String claim,
+            Object value
+    );
+
+    /**
+     * Revokes every JWT token of a subject issued until now, including tokens that are
+     * no longer in storage, and removes the stored tokens of the subject.
+     *
+     * @param subject the subject whose JWT tokens should be revoked
+     */
+    void revoke(String subject);
+
+    /**
+     * Revokes every JWT token of a subject issued before the provided date and removes
+     * the stored tokens of the subject. The "iat" claim has a precision of seconds, so tokens
+     * issued within the second of the date are revoked as well.
+     *
+     * @param subject the subject whose JWT tokens should be revoked
+     * @param issuedBefore the date before which issued JWT tokens are rejected
+     */
+    void revoke(
+            String subject,
+            Date issuedBefore
+    );
+
+    /**
+     * Rotates a refresh token: checks that the presented refresh token is the one currently
+     * stored for the refresh params, and replaces it with a new refresh token while storing a new
+     * access token, all in a single atomic storage operation.
+     *
+     * A validly signed refresh token that is no longer current indicates that it was stolen and
+     * used by someone else, so every stored token of its subject is removed.
+     *
+     * @param refreshToken the presented refresh token
+     * @param accessParams the parameters of the new access token
+     * @param refreshParams the parameters of the new refresh token, with the subject and type
+     *                      of the presented refresh token
+     * @return the new access and refresh tokens
+     * @throws dev.hstoklosa.jwtext.exception.RefreshTokenReuseException if the refresh token is not current
+     * @throws IllegalArgumentException if the refresh token does not match the refresh params
+     */
+    TokenPair rotate(
+            String refreshToken,
+            TokenParameters accessParams,
+            TokenParameters refreshParams
+    );
+
+    /**
+     * Creates and stores a new JWT token even if a token is already stored for the subject and
+     * type, e.g. for a login from another device. The token carries a random "jti" claim, so
+     * that sessions created within the same second differ. With a SessionTokenStorage the token
+     * is added to the sessions of its subject, evicting the oldest ones beyond the cap; with
+     * other storages it replaces the stored token.
+     *
+     * @param params the parameters of the JWT token
+     * @return the new JWT token
+     */
+    String createSession(TokenParameters params);
+
+    /**
+     * Creates a JWT token like create and hands out a short random reference handle to it
+     * instead. The handle is stored with the expiration of the token, so that callers can pass
+     * the handle around and resolve it to the token where its claims are needed. Invalidating
+     * the tokens of the subject or revoking it also removes its handles.
+     *
+     * @param params the parameters of the JWT token
+     * @return the reference handle of the JWT token
+     * @throws UnsupportedOperationException if the token storage does not store references
+     */
+    String createReference(TokenParameters params);
+
+    /**
+     * Resolves a reference handle to its JWT token. The token is verified and must still be the
+     * token stored for its subject and type, so invalidating or revoking it takes effect on the
+     * next resolution.
+     *
+     * @param handle the reference handle
+     * @return the JWT token, or null if the handle is unknown or its token was invalidated
+     * @throws io.jsonwebtoken.JwtException if the token is expired or revoked
+     * @throws UnsupportedOperationException if the token storage does not store references
+     */
+    String resolveReference(String handle);
+
+    /**
+     * Invalidates a reference handle, the JWT token it refers to stays valid.
+     *
+     * @param handle the reference handle
+     * @return true if successfully removed, false otherwise
+     * @throws UnsupportedOperationException if the token storage does not store references
+     */
+    boolean invalidateReference(String handle);
+}
@@ -1,19 +1,45 @@
 package dev.hstoklosa.jwtext.service;
 
+import dev.hstoklosa.jwtext.audit.AuditEvent;
+import dev.hstoklosa.jwtext.audit.AuditSink;
+import dev.hstoklosa.jwtext.exception.RefreshTokenReuseException;
+import dev.hstoklosa.jwtext.exception.RevokedJwtException;
+import dev.hstoklosa.jwtext.model.ClaimAliases;
+import dev.hstoklosa.jwtext.model.TokenPair;
 import dev.hstoklosa.jwtext.model.TokenParameters;
+import dev.hstoklosa.jwtext.model.VerificationResult;
+import dev.hstoklosa.jwtext.storage.ClaimIndexedTokenStorage;
+import dev.hstoklosa.jwtext.storage.ReferenceTokenStorage;
+import dev.hstoklosa.jwtext.storage.RevocationStorage;
+import dev.hstoklosa.jwtext.storage.RevocationStorageImpl;
 import dev.hstoklosa.jwtext.storage.TokenStorage;
 import dev.hstoklosa.jwtext.storage.TokenStorageImpl;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Header;
 import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import lombok.AccessLevel;
+import lombok.Builder;
 
 import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * Implementation of TokenService that manages JWT token creation, 
@@ -26,16 +52,53 @@ public class PersistentTokenServiceImpl implements PersistentTokenService {
      */
     private final SecretKey key;
 
+    /**
+     * The parser verifying JWT tokens with the secret key, shared by all verifications.
+     */
+    private final JwtParser parser;
+
+    /**
+     * The verifier of JWT tokens held as characters or bytes, shared by all verifications.
+     */
+    private final HmacTokenVerifier verifier;
+
     /**
      * The token storage mechanism for persisting and retrieving JWT tokens.
      */
     private final TokenStorage tokenStorage;
 
+    /**
+     * The storage of per-subject revocation watermarks checked on every verification.
+     */
+    private final RevocationStorage revocationStorage;
+
+    /**
+     * The aliases claims are written under.
+     */
+    private final ClaimAliases claimAliases;
+
+    /**
+     * The sink recording created and invalidated tokens.
+     */
+    private final AuditSink auditSink;
+
     /**
      * Constant representing the field name for the token type in a JWT token.
      */
     public static final String TOKEN_TYPE_KEY = "tokenType";
 
+    /**
+     * Number of random bytes of a reference handle.
+     */
+    private static final int REFERENCE_BYTES = 16;
+
+    /**
+     * The source of reference handles.
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final System.Logger LOGGER = System.getLogger(PersistentTokenServiceImpl.class.getName());
+
     /**
      * Constructs a PersistentTokenServiceImpl instance using a secret key. Internally, it initializes
      * TokenStorage using the default TokenStorageImpl.
@@ -43,8 +106,13 @@ public class PersistentTokenServiceImpl implements PersistentTokenService {
      * @param secret secret used for JWT token signing
      */
     public PersistentTokenServiceImpl(final String secret) {
-        this.key = Keys.hmacShaKeyFor(secret.getBytes());
-        this.tokenStorage = new TokenStorageImpl();
+        this(
+                Keys.hmacShaKeyFor(secret.getBytes()),
+                new TokenStorageImpl(),
+                new RevocationStorageImpl(),
+                ClaimAliases.NONE,
+                AuditSink.NONE
+        );
     }
 
     /**
@@ -58,8 +126,54 @@ public class PersistentTokenServiceImpl implements PersistentTokenService {
             final String secret,
             final TokenStorage tokenStorage
     ) {
-        this.key = Keys.hmacShaKeyFor(secret.getBytes());
+        this(
+                Keys.hmacShaKeyFor(secret.getBytes()),
+                tokenStorage,
+                new RevocationStorageImpl(),
+                ClaimAliases.NONE,
+                AuditSink.NONE
+        );
+    }
+
+    @Builder(
+        builderMethodName = "hiddenBuilder",
+        access = AccessLevel.PRIVATE
+    )
+    private PersistentTokenServiceImpl(
+            final SecretKey key,
+            final TokenStorage tokenStorage,
+            final RevocationStorage revocationStorage,
+            final ClaimAliases claimAliases,
+            final AuditSink auditSink
+    ) {
+        this.key = key;
+        this.parser = Jwts.parser()
+                .verifyWith(key)
+                .build();
+        this.verifier = new HmacTokenVerifier(key);
         this.tokenStorage = tokenStorage;
+        this.revocationStorage = revocationStorage;
+        this.claimAliases = claimAliases;
+        this.auditSink = auditSink;
+    }
+
+    /**
+     * Creates a builder for a PersistentTokenServiceImpl instance.
+     *
+     * The builder is pre-populated with the in-memory TokenStorageImpl and RevocationStorageImpl,
+     * either of which can be replaced before building, writes claims under their full names, and
+     * does not audit changes.
+     *
+     * @param secret secret used for JWT token signing
+     * @return a PersistentTokenServiceImplBuilder pre-populated with the default storages
+     */
+    public static PersistentTokenServiceImplBuilder builder(final String secret) {
+        return hiddenBuilder()
+                .key(Keys.hmacShaKeyFor(secret.getBytes()))
+                .tokenStorage(new TokenStorageImpl())
+                .revocationStorage(new RevocationStorageImpl())
+                .claimAliases(ClaimAliases.NONE)
+                .auditSink(AuditSink.NONE);
     }
 
     /**
@@ -79,20 +193,130 @@ public class PersistentTokenServiceImpl implements PersistentTokenService {
         if (token != null) {
             return token;
         }
+        token = sign(params);
+
+        tokenStorage.save(token, params);
+        auditCreated(token, params);
+        return token;
+    }
+
+    @Override
+    public String createSession(final TokenParameters params) {
+        String token = sign(params, UUID.randomUUID().toString());
+
+        tokenStorage.save(token, params);
+        auditCreated(token, params);
+        return token;
+    }
+
+    /**
+     * Creates JWT tokens for all provided parameters and passes them to the consumer in the
+     * order of the parameters.
+     *
+     * Parameters are processed in chunks: stored tokens of a chunk are read in a single batch,
+     * missing tokens are signed in parallel and saved in a single batch. Parameters with the same
+     * subject and type receive the same token, as they would when created one by one.
+     *
+     * @param params the parameters for JWT tokens
+     * @param consumer the consumer of the existing or created JWT tokens
+     */
+    @Override
+    public void createAll(
+            final Collection<TokenParameters> params,
+            final Consumer<String> consumer
+    ) {
+        BulkOperations.forEachChunk(
+                params.iterator(),
+                this::createChunk,
+                consumer
+        );
+    }
+
+    private List<String> createChunk(final List<TokenParameters> chunk) {
+        List<String> tokens = new ArrayList<>(tokenStorage.getAll(chunk));
+
+        Map<String, TokenParameters> missing = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            if (tokens.get(i) == null) {
+                missing.putIfAbsent(tokenKey(chunk.get(i)), chunk.get(i));
+            }
+        }
+        if (missing.isEmpty()) {
+            return tokens;
+        }
+
+        List<TokenParameters> unsigned = new ArrayList<>(missing.values());
+        List<String> signed = BulkOperations.mapParallel(unsigned, this::sign);
+
+        Map<String, TokenParameters> created = new LinkedHashMap<>();
+        Map<String, String> createdByKey = new HashMap<>();
+        for (int i = 0; i < unsigned.size(); i++) {
+            created.put(signed.get(i), unsigned.get(i));
+            createdByKey.put(tokenKey(unsigned.get(i)), signed.get(i));
+        }
+        tokenStorage.saveAll(created);
+        created.forEach(this::auditCreated);
+
+        for (int i = 0; i < chunk.size(); i++) {
+            if (tokens.get(i) == null) {
+                tokens.set(i, createdByKey.get(tokenKey(chunk.get(i))));
+            }
+        }
+        return tokens;
+    }
+
+    private String sign(final TokenParameters params) {
+        return sign(params, null);
+    }
+
+    private String sign(
+            final TokenParameters params,
+            final String id
+    ) {
         Claims claims = Jwts.claims()
                 .subject(params.getSubject())
-                .add(params.getClaims())
-                .add(TOKEN_TYPE_KEY, params.getType())
+                .add(claimAliases.compact(params.getClaims()))
+                .add(claimAliases.alias(TOKEN_TYPE_KEY), params.getType())
+                .id(id)
                 .build();
-        token = Jwts.builder()
+        return Jwts.builder()
                 .claims(claims)
                 .issuedAt(params.getIssuedAt())
                 .expiration(params.getExpiredAt())
                 .signWith(key)
                 .compact();
+    }
 
-        tokenStorage.save(token, params);
-        return token;
+    private void auditCreated(
+            final String token,
+            final TokenParameters params
+    ) {
+        auditSink.record(
+                AuditEvent.CREATED,
+                params.getSubject(),
+                params.getType(),
+                token,
+                params.getExpiredAt().getTime()
+        );
+    }
+
+    private String tokenKey(final TokenParameters params) {
+        return params.getSubject() + ":" + params.getType();
+    }
+
+    @Override
+    public void verifyAll(
+            final Iterable<String> tokens,
+            final Consumer<VerificationResult> consumer
+    ) {
+        BulkOperations.forEachChunk(
+                tokens.iterator(),
+                chunk -> BulkOperations.mapParallel(
+                        chunk,
+                        token -> BulkOperations.verify(token, this::claims, claimAliases)
+                ),
+                consumer
+        );
     }
 
     /**
@@ -115,16 +339,12 @@ public class PersistentTokenServiceImpl implements PersistentTokenService {
             final Date date
     ) {
         try {
-            Jws<Claims> claims = Jwts
-                    .parser()
-                    .verifyWith(key)
-                    .build()
-                    .parseSignedClaims(token);
+            Jws<Claims> claims = parse(token);
 
             return claims.getPayload()
                     .getExpiration()
                     .before(date);
-        } catch (ExpiredJwtException e) {
+        } catch (ExpiredJwtException | RevokedJwtException e) {
             return true;
         }
     }
@@ -143,15 +363,12 @@ public class PersistentTokenServiceImpl implements PersistentTokenService {
             final String key,
             final Object value
     ) {
-        Jws<Claims> claims = Jwts
-                .parser()
-                .verifyWith(this.key)
-                .build()
-                .parseSignedClaims(token);
+        Jws<Claims> claims = parse(token);
 
-        return claims.getPayload()
-                .get(key)
-                .equals(value);
+        return Objects.equals(
+                claims.getPayload().get(claimAliases.alias(key)),
+                value
+        );
     }
 
     /**
@@ -164,11 +381,7 @@ public class PersistentTokenServiceImpl implements PersistentTokenService {
     public String getSubject(
             final String token
     ) {
-        return Jwts
-                .parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token)
+        return parse(token)
                 .getPayload()
                 .getSubject();
     }
@@ -181,13 +394,9 @@ public class PersistentTokenServiceImpl implements PersistentTokenService {
      */
     @Override
     public String getType(final String token) {
-        return Jwts
-                .parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token)
+        return parse(token)
                 .getPayload()
-                .get(TOKEN_TYPE_KEY, String.class);
+                .get(claimAliases.alias(TOKEN_TYPE_KEY), String.class);
     }
 
     /**
@@ -198,22 +407,329 @@ public class PersistentTokenServiceImpl implements PersistentTokenService {
      */
     @Override
     public Map<String, Object> claims(final String token) {
-        Jws<Claims> claims = Jwts
-                .parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token);
+        Jws<Claims> claims = parse(token);
 
-        return new HashMap<>(claims.getPayload());
+        return claimAliases.expand(claims.getPayload());
+    }
+
+    /**
+     * Extracts all claims from a JWT token held as characters, without creating a String for it.
+     *
+     * @param token the characters of the JWT token
+     * @return a map of all claims contained within the token
+     */
+    @Override
+    public Map<String, Object> claims(final CharSequence token) {
+        return claimAliases.expand(checked(verifier.verify(token)));
+    }
+
+    /**
+     * Extracts all claims from a JWT token held in a slice of an array, without creating a
+     * String for it.
+     *
+     * @param token the array holding the JWT token
+     * @param offset the index of the first byte of the JWT token
+     * @param length the length of the JWT token
+     * @return a map of all claims contained within the token
+     */
+    @Override
+    public Map<String, Object> claims(
+            final byte[] token,
+            final int offset,
+            final int length
+    ) {
+        return claimAliases.expand(checked(verifier.verify(token, offset, length)));
+    }
+
+    /**
+     * Extracts all claims from a JWT token held in a buffer, without creating a String for it.
+     *
+     * @param token the buffer holding the JWT token
+     * @return a map of all claims contained within the token
+     */
+    @Override
+    public Map<String, Object> claims(final ByteBuffer token) {
+        return claimAliases.expand(checked(verifier.verify(token)));
     }
 
     @Override
     public boolean invalidate(final String token) {
-        return tokenStorage.remove(token);
+        boolean removed = tokenStorage.remove(token);
+        if (removed) {
+            auditSink.record(AuditEvent.INVALIDATED, null, null, token, 0);
+        }
+        return removed;
     }
 
     @Override
     public boolean invalidate(final TokenParameters params) {
-        return tokenStorage.remove(params);
+        boolean removed = tokenStorage.remove(params);
+        if (removed) {
+            auditSink.record(AuditEvent.INVALIDATED_TYPE, params.getSubject(), params.getType(), null, 0);
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean invalidateAll(final String subject) {
+        boolean removed = tokenStorage.removeAll(subject);
+        if (removed) {
+            auditSink.record(AuditEvent.INVALIDATED_SUBJECT, subject, null, null, 0);
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean invalidateByClaim(
+            final String claim,
+            final Object value
+    ) {
+        if (!(tokenStorage instanceof ClaimIndexedTokenStorage indexedStorage)) {
+            throw new UnsupportedOperationException("Token storage does not index claims");
+        }
+        boolean removed = indexedStorage.removeByClaim(claim, value);
+        if (removed) {
+            auditSink.recordClaim(claim, String.valueOf(value));
+        }
+        return removed;
+    }
+
+    @Override
+    public void revoke(final String subject) {
+        revoke(subject, new Date());
+    }
+
+    /**
+     * The watermark alone rejects the revoked tokens, so the revocation is audited once it is
+     * recorded and the removal of the stored tokens of the subject is best-effort.
+     */
+    @Override
+    public void revoke(
+            final String subject,
+            final Date issuedBefore
+    ) {
+        revocationStorage.revoke(subject, issuedBefore);
+        auditSink.record(AuditEvent.REVOKED, subject, null, null, issuedBefore.getTime());
+        try {
+            tokenStorage.removeAll(subject);
+        } catch (RuntimeException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "Failed to remove stored tokens of revoked subject", e);
+        }
+    }
+
+    /**
+     * Rotates a refresh token with a single compare-and-save on the token storage.
+     *
+     * The new tokens carry a random "jti" claim, so that a rotation within the same second as
+     * the previous one still yields a refresh token that differs from the presented one.
+     */
+    @Override
+    public TokenPair rotate(
+            final String refreshToken,
+            final TokenParameters accessParams,
+            final TokenParameters refreshParams
+    ) {
+        Jws<Claims> jws = parse(refreshToken);
+        Claims claims = jws.getPayload();
+        String type = claims.get(claimAliases.alias(TOKEN_TYPE_KEY), String.class);
+        if (!Objects.equals(claims.getSubject(), refreshParams.getSubject())
+                || !Objects.equals(type, refreshParams.getType())) {
+            throw new IllegalArgumentException(
+                    "Refresh token does not match the subject and type of the refresh params."
+            );
+        }
+
+        String accessToken = sign(accessParams, UUID.randomUUID().toString());
+        String newRefreshToken = sign(refreshParams, UUID.randomUUID().toString());
+        Map<String, TokenParameters> tokens = new LinkedHashMap<>();
+        tokens.put(newRefreshToken, refreshParams);
+        tokens.put(accessToken, accessParams);
+
+        if (!tokenStorage.compareAndSaveAll(refreshToken, refreshParams, tokens)) {
+            invalidateReused(accessParams, refreshParams);
+            throw new RefreshTokenReuseException(
+                    jws.getHeader(),
+                    claims,
+                    "Refresh token is no longer current, the tokens of its subject were invalidated."
+            );
+        }
+        tokens.forEach(this::auditCreated);
+        return new TokenPair(accessToken, newRefreshToken);
+    }
+
+    /**
+     * Invalidates all tokens of the subject of a reused refresh token. Storages that cannot
+     * remove tokens by subject lose at least the rotated access and refresh tokens.
+     */
+    private void invalidateReused(
+            final TokenParameters accessParams,
+            final TokenParameters refreshParams
+    ) {
+        try {
+            invalidateAll(refreshParams.getSubject());
+        } catch (UnsupportedOperationException e) {
+            invalidate(refreshParams);
+            invalidate(accessParams);
+        }
+    }
+
+    /**
+     * Stores the handle apart from the tokens, indexed under the subject of its token, so that it
+     * expires together with the token and is removed with the tokens of the subject.
+     */
+    @Override
+    public String createReference(final TokenParameters params) {
+        ReferenceTokenStorage referenceStorage = referenceStorage();
+        String token = create(params);
+
+        byte[] bytes = new byte[REFERENCE_BYTES];
+        RANDOM.nextBytes(bytes);
+        String handle = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        referenceStorage.saveReference(handle, token, params);
+        return handle;
+    }
+
+    @Override
+    public String resolveReference(final String handle) {
+        String token = referenceStorage().getReference(handle);
+        if (token == null) {
+            return null;
+        }
+
+        Claims claims = parse(token).getPayload();
+        TokenParameters params = TokenParameters.builder(
+                claims.getSubject(),
+                claims.get(claimAliases.alias(TOKEN_TYPE_KEY), String.class),
+                Duration.ZERO
+        ).build();
+        return tokenStorage.exists(token, params) ? token : null;
+    }
+
+    /**
+     * Records the removal with the hash of the handle, as the handle itself grants access to
+     * the token.
+     */
+    @Override
+    public boolean invalidateReference(final String handle) {
+        boolean removed = referenceStorage().removeReference(handle);
+        if (removed) {
+            auditSink.record(AuditEvent.INVALIDATED_REFERENCE, null, null, handle, 0);
+        }
+        return removed;
+    }
+
+    private ReferenceTokenStorage referenceStorage() {
+        if (!(tokenStorage instanceof ReferenceTokenStorage referenceStorage)) {
+            throw new UnsupportedOperationException("Token storage does not store references");
+        }
+        return referenceStorage;
+    }
+
+    /**
+     * Verifies the signature of a JWT token and rejects it if it was issued before the
+     * revocation watermark of its subject.
+     *
+     * The "iat" claim only has a precision of seconds, so the watermark is rounded up to whole
+     * seconds. Tokens issued within the same second as the revocation are rejected, as they may
+     * have been issued before it.
+     *
+     * @param token the JWT token string to parse
+     * @return the verified JWT token
+     * @throws RevokedJwtException if the token was issued before the watermark of its subject
+     */
+    private Jws<Claims> parse(final String token) {
+        Jws<Claims> jws = parser.parseSignedClaims(token);
+        checkRevocation(jws.getHeader(), jws.getPayload());
+        return jws;
+    }
+
+    private Claims checked(final TokenVerifier.VerifiedToken token) {
+        checkRevocation(token.header(), token.claims());
+        return token.claims();
+    }
+
+    private void checkRevocation(
+            final Header header,
+            final Claims claims
+    ) {
+        Date revokedBefore = revocationStorage.getRevokedBefore(claims.getSubject());
+        if (revokedBefore != null) {
+            // "iat" is in seconds, a token issued within the second of the watermark may precede it
+            long watermark = Math.ceilDiv(revokedBefore.getTime(), 1000) * 1000;
+            if (claims.getIssuedAt() == null || claims.getIssuedAt().getTime() < watermark) {
+                throw new RevokedJwtException(
+                        header,
+                        claims,
+                        "JWT was issued before its subject was revoked at " + revokedBefore + "."
+                );
+            }
+        }
+    }
+
+    public static class PersistentTokenServiceImplBuilder {
+
+        /**
+         * Sets the storage used for persisting and retrieving JWT tokens.
+         *
+         * @param tokenStorage an implementation of the TokenStorage interface
+         * @return the current PersistentTokenServiceImplBuilder instance with the token storage set.
+         */
+        public PersistentTokenServiceImplBuilder tokenStorage(final TokenStorage tokenStorage) {
+            this.tokenStorage = tokenStorage;
+            return this;
+        }
+
+        /**
+         * Sets the storage of revocation watermarks. Wrap shared storages such as
+         * RedisRevocationStorageImpl in a CachedRevocationStorage so that verification
+         * does not need a round trip.
+         *
+         * @param revocationStorage an implementation of the RevocationStorage interface
+         * @return the current PersistentTokenServiceImplBuilder instance with the revocation storage set.
+         */
+        public PersistentTokenServiceImplBuilder revocationStorage(final RevocationStorage revocationStorage) {
+            this.revocationStorage = revocationStorage;
+            return this;
+        }
+
+        /**
+         * Sets the aliases claims are written under, so that tokens with long claim names stay
+         * small on the wire and in storage.
+         *
+         * @param claimAliases the dictionary of claim aliases
+         * @return the current PersistentTokenServiceImplBuilder instance with the claim aliases set.
+         */
+        public PersistentTokenServiceImplBuilder claimAliases(final ClaimAliases claimAliases) {
+            this.claimAliases = claimAliases;
+            return this;
+        }
+
+        /**
+         * Sets the sink recording every created token and every invalidation that removed
+         * tokens, e.g. a MappedAuditSink. The sink is called on the thread of the change.
+         *
+         * @param auditSink an implementation of the AuditSink interface
+         * @return the current PersistentTokenServiceImplBuilder instance with the audit sink set.
+         */
+        public PersistentTokenServiceImplBuilder auditSink(final AuditSink auditSink) {
+            this.auditSink = auditSink;
+            return this;
+        }
+
+        /**
+         * Constructs and returns the final PersistentTokenServiceImpl instance with all configured settings.
+         *
+         * @return a PersistentTokenServiceImpl using the configured key and storages.
+         */
+        public PersistentTokenServiceImpl build() {
+            return new PersistentTokenServiceImpl(
+                    key,
+                    tokenStorage,
+                    revocationStorage,
+                    claimAliases,
+                    auditSink
+            );
+        }
     }
 }
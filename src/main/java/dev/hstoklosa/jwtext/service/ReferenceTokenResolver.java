@@ -0,0 +1,140 @@
+package dev.hstoklosa.jwtext.service;
+
+import dev.hstoklosa.jwtext.cache.LocalCache;
+import dev.hstoklosa.jwtext.storage.TokenEvictionListener;
+
+import io.jsonwebtoken.Claims;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Resolves reference handles to the claims of their JWT tokens through a local cache (thread-safe).
+ *
+ * Meant for the edge of a system: requests carry short reference handles, the edge resolves them
+ * once and serves further requests with the same handle from the cache. Resolved claims are kept
+ * until the time-to-live or the expiration of the token passes, whichever comes first, so the
+ * time-to-live bounds how long an invalidated handle is still accepted by this resolver, unless
+ * the resolver is registered with a RedisKeyspaceSubscriber, which drops handles as soon as they
+ * are removed from Redis.
+ */
+public class ReferenceTokenResolver implements TokenEvictionListener {
+
+    /** Default maximum number of cached handles. */
+    public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    /** Default time after which a cached handle is resolved again. */
+    public static final Duration DEFAULT_TTL = Duration.ofSeconds(5);
+
+    /** Service the handles are resolved with. */
+    private final PersistentTokenService tokenService;
+
+    /** Claims of resolved handles. */
+    private final LocalCache<String, Map<String, Object>> cache;
+
+    /** Time after which a cached handle is resolved again. */
+    private final Duration ttl;
+
+    /**
+     * Creates an object with the default cache size and time-to-live.
+     *
+     * @param tokenService the service the handles are resolved with
+     */
+    public ReferenceTokenResolver(final PersistentTokenService tokenService) {
+        this(tokenService, DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL);
+    }
+
+    /**
+     * Creates an object with the provided cache size and time-to-live.
+     *
+     * @param tokenService the service the handles are resolved with
+     * @param maximumSize the maximum number of cached handles
+     * @param ttl the time after which a cached handle is resolved again
+     */
+    public ReferenceTokenResolver(
+            final PersistentTokenService tokenService,
+            final int maximumSize,
+            final Duration ttl
+    ) {
+        this.tokenService = tokenService;
+        this.cache = new LocalCache<>(maximumSize);
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the claims of the JWT token a handle refers to.
+     *
+     * @param handle the reference handle
+     * @return the unmodifiable claims of the token, or null if the handle is unknown or its
+     *         token was invalidated
+     * @throws io.jsonwebtoken.JwtException if the token is expired or revoked
+     */
+    public Map<String, Object> claims(final String handle) {
+        Map<String, Object> cached = cache.get(handle);
+        if (cached != null) {
+            return cached;
+        }
+
+        String token = tokenService.resolveReference(handle);
+        if (token == null) {
+            return null;
+        }
+        Map<String, Object> claims = Collections.unmodifiableMap(tokenService.claims(token));
+        cache.put(handle, claims, expiration(claims.get(Claims.EXPIRATION)));
+        return claims;
+    }
+
+    /**
+     * Drops a handle from the cache, e.g. after it was invalidated on this node.
+     *
+     * @param handle the reference handle
+     */
+    public void invalidate(final String handle) {
+        cache.remove(handle);
+    }
+
+    /**
+     * Ignores tokens, handles are dropped once their references are removed or expired.
+     */
+    @Override
+    public void onEvict(
+            final String subject,
+            final String type
+    ) {
+    }
+
+    /**
+     * Drops the handle of a removed or expired reference.
+     */
+    @Override
+    public void onEvictReference(final String handle) {
+        cache.remove(handle);
+    }
+
+    @Override
+    public void onReset() {
+        cache.clear();
+    }
+
+    /**
+     * Returns the cache of resolved handles, e.g. to read its hit ratio.
+     *
+     * @return the cache of claims by handle
+     */
+    public LocalCache<String, Map<String, Object>> getCache() {
+        return cache;
+    }
+
+    private long expiration(final Object expiration) {
+        long cachedUntil = System.currentTimeMillis() + ttl.toMillis();
+        if (expiration instanceof Date date) {
+            return Math.min(date.getTime(), cachedUntil);
+        }
+        if (expiration instanceof Number seconds) {
+            return Math.min(seconds.longValue() * 1000, cachedUntil);
+        }
+        return cachedUntil;
+    }
+}
@@ -0,0 +1,83 @@
+package dev.hstoklosa.jwtext.service;
+
+import io.jsonwebtoken.security.SignatureException;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+
+/**
+ * Verifies JWT tokens signed with an EC or EdDSA private key directly from their bytes
+ * (thread-safe).
+ *
+ * Each thread initialises its own Signature with the public key once and reuses it, instead of
+ * looking up the provider and initialising the key for every token.
+ */
+final class SignatureTokenVerifier extends TokenVerifier {
+
+    /** Algorithm of the public key. */
+    private final AsymmetricAlgorithm algorithm;
+
+    /** Per-thread Signature initialised for verification with the public key. */
+    private final ThreadLocal<Signature> verifiers;
+
+    /** Per-thread scratch array for the presented signature. */
+    private final ThreadLocal<byte[]> signatures;
+
+    /**
+     * Creates a verifier for tokens signed with the private key of the provided public key.
+     *
+     * @param key the public key, e.g. from a key pair generated for ES256 or Ed25519
+     */
+    SignatureTokenVerifier(final PublicKey key) {
+        this(key, AsymmetricAlgorithm.of(key));
+    }
+
+    private SignatureTokenVerifier(
+            final PublicKey key,
+            final AsymmetricAlgorithm algorithm
+    ) {
+        super(algorithm.name());
+        this.algorithm = algorithm;
+        this.verifiers = ThreadLocal.withInitial(() -> {
+            try {
+                Signature signature = Signature.getInstance(algorithm.jcaName());
+                signature.initVerify(key);
+                return signature;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to initialise " + algorithm.jcaName(), e);
+            }
+        });
+        this.signatures = ThreadLocal.withInitial(() -> new byte[algorithm.signatureLength()]);
+    }
+
+    @Override
+    void verifySignature(
+            final ByteBuffer token,
+            final int start,
+            final int secondDot,
+            final int end
+    ) {
+        int length = algorithm.signatureLength();
+        if (decodedLength(end - secondDot - 1) != length) {
+            throw new SignatureException("JWT signature does not match locally computed signature.");
+        }
+        byte[] scratch = signatures.get();
+        decode(token, secondDot + 1, end, scratch);
+
+        boolean valid;
+        try {
+            Signature signature = verifiers.get();
+            signature.update(token.duplicate().position(start).limit(secondDot));
+            valid = signature.verify(scratch, 0, length);
+        } catch (GeneralSecurityException e) {
+            // The state of a Signature that failed is unspecified, the next call starts afresh
+            verifiers.remove();
+            valid = false;
+        }
+        if (!valid) {
+            throw new SignatureException("JWT signature does not match locally computed signature.");
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package dev.hstoklosa.jwtext.service;
+
+import dev.hstoklosa.jwtext.cache.LocalCache;
+import dev.hstoklosa.jwtext.cache.RequestCoalescer;
+import dev.hstoklosa.jwtext.model.ClaimAliases;
+import dev.hstoklosa.jwtext.model.TokenParameters;
+import dev.hstoklosa.jwtext.model.VerificationResult;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Header;
+import io.jsonwebtoken.IncorrectClaimException;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.io.Deserializer;
+import lombok.AccessLevel;
+import lombok.Builder;
+
+import java.io.InputStreamReader;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ServiceLoader;
+import java.util.function.Consumer;
+
+/**
+ * Implementation of TokenService signing the tokens of every tenant with the tenant's own secret.
+ *
+ * The tenant of a created token is taken from the tenant claim of its parameters and written to
+ * the tenant header parameter as well. A single parser verifies the tokens of every tenant, its
+ * key locator picks the key of the tenant named by the header while the header is parsed, so a
+ * token naming another tenant fails verification with that tenant's key. Tokens without the
+ * header are verified with the key of the tenant named by their claim. A verified token whose
+ * header and claim name different tenants is rejected.
+ *
+ * Secrets are loaded lazily from the KeyProvider. The derived key and the parser of a tenant are
+ * kept in a bounded LRU cache, and concurrent loads of the same tenant share a single call to
+ * the provider, so that thousands of tenants share one instance without per-call setup. Tenants
+ * unknown to the provider are remembered for a shorter time, so tokens naming a made-up tenant
+ * do not reach the provider on every verification.
+ */
+public class TenantTokenServiceImpl implements TokenService {
+
+    /** Default name of the header parameter naming the tenant. */
+    public static final String DEFAULT_TENANT_HEADER = "tid";
+
+    /** Default name of the claim naming the tenant. */
+    public static final String DEFAULT_TENANT_CLAIM = "tenant";
+
+    /** Default maximum number of tenants with prepared keys. */
+    public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    /** Default time after which the secret of a tenant is loaded again, e.g. after a rotation. */
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+
+    /** Default time after which a tenant unknown to the provider is looked up again. */
+    public static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofSeconds(30);
+
+    /** Source of the secrets of tenants. */
+    private final KeyProvider keyProvider;
+
+    /** Name of the header parameter naming the tenant. */
+    private final String tenantHeader;
+
+    /** Name of the claim naming the tenant. */
+    private final String tenantClaim;
+
+    /** Time after which the secret of a tenant is loaded again. */
+    private final Duration ttl;
+
+    /** Time after which a tenant unknown to the provider is looked up again. */
+    private final Duration negativeTtl;
+
+    /** Aliases the claims are written under. */
+    private final ClaimAliases claimAliases;
+
+    /** Services holding the prepared key and parser of a tenant. */
+    private final LocalCache<String, TokenServiceImpl> services;
+
+    /** Tenants unknown to the provider, cached until they are looked up again. */
+    private final LocalCache<String, Boolean> unknownTenants;
+
+    /** Loads of tenants in flight, shared by concurrent callers of the same tenant. */
+    private final RequestCoalescer<String, TokenServiceImpl> loads;
+
+    /** Parser verifying the tokens of every tenant with the key located by their header. */
+    private final JwtParser parser;
+
+    /** JSON deserializer used to read the tenant before verification. */
+    private final Deserializer<Map<String, ?>> deserializer;
+
+    @SuppressWarnings("unchecked")
+    @Builder(
+        builderMethodName = "hiddenBuilder",
+        access = AccessLevel.PRIVATE
+    )
+    private TenantTokenServiceImpl(
+            final KeyProvider keyProvider,
+            final String tenantHeader,
+            final String tenantClaim,
+            final int maximumSize,
+            final Duration ttl,
+            final Duration negativeTtl,
+            final ClaimAliases claimAliases
+    ) {
+        this.keyProvider = keyProvider;
+        this.tenantHeader = tenantHeader;
+        this.tenantClaim = tenantClaim;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.claimAliases = claimAliases;
+        this.services = new LocalCache<>(maximumSize);
+        this.unknownTenants = new LocalCache<>(maximumSize);
+        this.loads = new RequestCoalescer<>();
+        this.parser = Jwts.parser()
+                .keyLocator(header -> locateKey(header))
+                .build();
+        this.deserializer = ServiceLoader.load(Deserializer.class)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No JSON deserializer found on the classpath"));
+    }
+
+    /**
+     * Creates a builder for a TenantTokenServiceImpl instance.
+     *
+     * The builder is pre-populated with the default tenant header and claim, cache size and
+     * time-to-live, and writes claims under their full names.
+     *
+     * @param keyProvider the source of the secrets of tenants
+     * @return a TenantTokenServiceImplBuilder pre-populated with the defaults
+     */
+    public static TenantTokenServiceImplBuilder builder(final KeyProvider keyProvider) {
+        return hiddenBuilder()
+                .keyProvider(keyProvider)
+                .tenantHeader(DEFAULT_TENANT_HEADER)
+                .tenantClaim(DEFAULT_TENANT_CLAIM)
+                .maximumSize(DEFAULT_MAXIMUM_SIZE)
+                .ttl(DEFAULT_TTL)
+                .negativeTtl(DEFAULT_NEGATIVE_TTL)
+                .claimAliases(ClaimAliases.NONE);
+    }
+
+    /**
+     * Creates a JWT token signed with the secret of the tenant named by the tenant claim.
+     *
+     * @param params the parameters for JWT token, including the tenant claim
+     * @return the JWT token as a String
+     * @throws IllegalArgumentException if the params do not name a tenant or the tenant is unknown
+     */
+    @Override
+    public String create(final TokenParameters params) {
+        Object tenant = params.getClaims() == null ? null : params.getClaims().get(tenantClaim);
+        if (tenant == null) {
+            throw new IllegalArgumentException("Token parameters do not name a tenant in claim '" + tenantClaim + "'");
+        }
+        try {
+            return tenantService(tenant.toString()).create(params);
+        } catch (UnsupportedJwtException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void createAll(
+            final Collection<TokenParameters> params,
+            final Consumer<String> consumer
+    ) {
+        BulkOperations.forEachChunk(
+                params.iterator(),
+                chunk -> BulkOperations.mapParallel(chunk, this::create),
+                consumer
+        );
+    }
+
+    @Override
+    public void verifyAll(
+            final Iterable<String> tokens,
+            final Consumer<VerificationResult> consumer
+    ) {
+        BulkOperations.forEachChunk(
+                tokens.iterator(),
+                chunk -> BulkOperations.mapParallel(
+                        chunk,
+                        token -> BulkOperations.verify(token, this::claims, claimAliases)
+                ),
+                consumer
+        );
+    }
+
+    @Override
+    public boolean isExpired(final String token) {
+        return isExpired(token, new Date());
+    }
+
+    @Override
+    public boolean isExpired(
+            final String token,
+            final Date date
+    ) {
+        try {
+            return verify(token).getExpiration().before(date);
+        } catch (ExpiredJwtException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public boolean has(
+            final String token,
+            final String key,
+            final Object value
+    ) {
+        return Objects.equals(verify(token).get(claimAliases.alias(key)), value);
+    }
+
+    @Override
+    public String getSubject(final String token) {
+        return verify(token).getSubject();
+    }
+
+    @Override
+    public Map<String, Object> claims(final String token) {
+        return claimAliases.expand(verify(token));
+    }
+
+    @Override
+    public String getType(final String token) {
+        return verify(token).get(claimAliases.alias(TokenServiceImpl.TOKEN_TYPE_KEY), String.class);
+    }
+
+    /**
+     * Returns the tenant a token names, without verifying it.
+     *
+     * @param token the JWT token
+     * @return the tenant named by the header, or by the claim for tokens without the header
+     * @throws io.jsonwebtoken.MalformedJwtException if the token does not name a tenant
+     */
+    public String getTenant(final String token) {
+        int firstDot = token.indexOf('.');
+        int secondDot = firstDot < 0 ? -1 : token.indexOf('.', firstDot + 1);
+        if (secondDot < 0) {
+            throw new MalformedJwtException("JWT must consist of three segments.");
+        }
+
+        Object tenant = segment(token, 0, firstDot).get(tenantHeader);
+        if (tenant == null) {
+            tenant = segment(token, firstDot + 1, secondDot).get(claimAliases.alias(tenantClaim));
+        }
+        if (tenant == null) {
+            throw new MalformedJwtException("JWT does not name a tenant.");
+        }
+        return tenant.toString();
+    }
+
+    /**
+     * Drops the prepared key of a tenant, e.g. after its secret was rotated, so that the secret
+     * is loaded again on the next use.
+     *
+     * @param tenant the identifier of the tenant
+     */
+    public void invalidate(final String tenant) {
+        loads.invalidate(tenant);
+        services.remove(tenant);
+        unknownTenants.remove(tenant);
+    }
+
+    /**
+     * Returns the cache of prepared keys, e.g. to read its hit ratio.
+     *
+     * @return the cache of services by tenant
+     */
+    public LocalCache<String, TokenServiceImpl> getCache() {
+        return services;
+    }
+
+    /**
+     * Verifies a token with the key of the tenant named by its header, or by its claim for
+     * tokens without the header, and checks that the header and the claim name the same tenant.
+     */
+    private Claims verify(final String token) {
+        Jws<Claims> jws;
+        try {
+            jws = parser.parseSignedClaims(token);
+        } catch (MissingTenantHeaderException e) {
+            jws = tenantService(getTenant(token)).parse(token);
+        }
+
+        Object headerTenant = jws.getHeader().get(tenantHeader);
+        Object claimTenant = jws.getPayload().get(claimAliases.alias(tenantClaim));
+        if (headerTenant != null && claimTenant != null && !headerTenant.toString().equals(claimTenant.toString())) {
+            throw new IncorrectClaimException(
+                    jws.getHeader(),
+                    jws.getPayload(),
+                    tenantClaim,
+                    claimTenant,
+                    "JWT names tenant '" + headerTenant + "' in its header but '" + claimTenant + "' in its claim."
+            );
+        }
+        return jws.getPayload();
+    }
+
+    private Key locateKey(final Header header) {
+        Object tenant = header.get(tenantHeader);
+        if (tenant == null) {
+            throw new MissingTenantHeaderException();
+        }
+        return tenantService(tenant.toString()).getKey();
+    }
+
+    private TokenServiceImpl tenantService(final String tenant) {
+        TokenServiceImpl service = services.get(tenant);
+        if (service != null) {
+            return service;
+        }
+        if (unknownTenants.get(tenant) != null) {
+            throw unknownTenant(tenant);
+        }
+        return loads.load(tenant, () -> {
+            String secret = keyProvider.getSecret(tenant);
+            if (secret == null) {
+                unknownTenants.put(tenant, Boolean.TRUE, System.currentTimeMillis() + negativeTtl.toMillis());
+                throw unknownTenant(tenant);
+            }
+            TokenServiceImpl loaded = new TokenServiceImpl(secret, claimAliases, Map.of(tenantHeader, tenant));
+            services.put(tenant, loaded, System.currentTimeMillis() + ttl.toMillis());
+            return loaded;
+        });
+    }
+
+    private static UnsupportedJwtException unknownTenant(final String tenant) {
+        return new UnsupportedJwtException("Unknown tenant '" + tenant + "'.");
+    }
+
+    private Map<String, ?> segment(
+            final String token,
+            final int from,
+            final int to
+    ) {
+        try {
+            byte[] json = Base64.getUrlDecoder().decode(token.substring(from, to));
+            return deserializer.deserialize(
+                    new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8)
+            );
+        } catch (RuntimeException e) {
+            throw new MalformedJwtException("Unable to read JWT JSON value.", e);
+        }
+    }
+
+    public static class TenantTokenServiceImplBuilder {
+
+        /**
+         * Sets the header parameter naming the tenant, written to created tokens and read first
+         * on verification.
+         *
+         * @param tenantHeader the name of the header parameter
+         * @return the current TenantTokenServiceImplBuilder instance with the tenant header set.
+         */
+        public TenantTokenServiceImplBuilder tenantHeader(final String tenantHeader) {
+            this.tenantHeader = tenantHeader;
+            return this;
+        }
+
+        /**
+         * Sets the claim naming the tenant, read from the parameters of created tokens and from
+         * tokens without the tenant header.
+         *
+         * @param tenantClaim the name of the claim
+         * @return the current TenantTokenServiceImplBuilder instance with the tenant claim set.
+         */
+        public TenantTokenServiceImplBuilder tenantClaim(final String tenantClaim) {
+            this.tenantClaim = tenantClaim;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of tenants whose prepared keys are kept, the least recently
+         * used tenant being dropped first.
+         *
+         * @param maximumSize the maximum number of cached tenants
+         * @return the current TenantTokenServiceImplBuilder instance with the cache size set.
+         */
+        public TenantTokenServiceImplBuilder maximumSize(final int maximumSize) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Sets the time after which the secret of a tenant is loaded from the KeyProvider again.
+         *
+         * @param ttl the time-to-live of prepared keys
+         * @return the current TenantTokenServiceImplBuilder instance with the time-to-live set.
+         */
+        public TenantTokenServiceImplBuilder ttl(final Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * Sets the time after which a tenant unknown to the KeyProvider is looked up again, e.g.
+         * once the tenant was onboarded.
+         *
+         * @param negativeTtl the time-to-live of unknown tenants
+         * @return the current TenantTokenServiceImplBuilder instance with the negative time-to-live set.
+         */
+        public TenantTokenServiceImplBuilder negativeTtl(final Duration negativeTtl) {
+            this.negativeTtl = negativeTtl;
+            return this;
+        }
+
+        /**
+         * Sets the aliases claims are written under, so that tokens with long claim names stay
+         * small on the wire and in storage.
+         *
+         * @param claimAliases the dictionary of claim aliases
+         * @return the current TenantTokenServiceImplBuilder instance with the claim aliases set.
+         */
+        public TenantTokenServiceImplBuilder claimAliases(final ClaimAliases claimAliases) {
+            this.claimAliases = claimAliases;
+            return this;
+        }
+
+        /**
+         * Constructs and returns the final TenantTokenServiceImpl instance with all configured settings.
+         *
+         * @return a TenantTokenServiceImpl using the configured key provider and cache.
+         */
+        public TenantTokenServiceImpl build() {
+            return new TenantTokenServiceImpl(
+                    keyProvider,
+                    tenantHeader,
+                    tenantClaim,
+                    maximumSize,
+                    ttl,
+                    negativeTtl,
+                    claimAliases
+            );
+        }
+    }
+
+    /**
+     * Thrown by the key locator for tokens without the tenant header, which are verified with
+     * the key of the tenant named by their claim instead.
+     */
+    private static final class MissingTenantHeaderException extends UnsupportedJwtException {
+
+        private static final long serialVersionUID = 1L;
+
+        private MissingTenantHeaderException() {
+            super("JWT does not name a tenant in its header.");
+        }
+    }
+}
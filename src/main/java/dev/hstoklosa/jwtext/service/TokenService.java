@@ -1,9 +1,18 @@
 package dev.hstoklosa.jwtext.service;
 
+import dev.hstoklosa.jwtext.model.ClaimAliases;
 import dev.hstoklosa.jwtext.model.TokenParameters;
+import dev.hstoklosa.jwtext.model.VerificationResult;
+import dev.hstoklosa.jwtext.policy.ClaimPolicy;
+import dev.hstoklosa.jwtext.policy.PolicyResult;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public interface TokenService {
 
@@ -15,6 +24,49 @@ public interface TokenService {
      */
     String create(TokenParameters params);
 
+    /**
+     * Creates JWT tokens for all provided parameters and passes them to the consumer in the
+     * order of the parameters. Implementations sign the tokens in parallel; the default
+     * creates them one by one.
+     *
+     * @param params the parameters for JWT tokens
+     * @param consumer the consumer of the created JWT tokens
+     */
+    default void createAll(
+            Collection<TokenParameters> params,
+            Consumer<String> consumer
+    ) {
+        params.forEach(tokenParams -> consumer.accept(create(tokenParams)));
+    }
+
+    /**
+     * Verifies all provided JWT tokens and passes a result for each of them to the consumer in
+     * the order of the tokens. Invalid tokens do not throw, their result carries the reason
+     * instead. Implementations verify the tokens in parallel; the default verifies them one by one.
+     *
+     * @param tokens the JWT tokens to verify
+     * @param consumer the consumer of the verification results
+     */
+    default void verifyAll(
+            Iterable<String> tokens,
+            Consumer<VerificationResult> consumer
+    ) {
+        tokens.forEach(token -> consumer.accept(BulkOperations.verify(token, this::claims, ClaimAliases.NONE)));
+    }
+
+    /**
+     * Verifies all JWT tokens of the stream, see {@link #verifyAll(Iterable, Consumer)}.
+     *
+     * @param tokens the JWT tokens to verify
+     * @param consumer the consumer of the verification results
+     */
+    default void verifyAll(
+            Stream<String> tokens,
+            Consumer<VerificationResult> consumer
+    ) {
+        verifyAll(tokens::iterator, consumer);
+    }
+
     /**
      * Checks whether a token is expired based on current time.
      *
@@ -41,7 +93,7 @@ public interface TokenService {
      * @param token the passed JWT token
      * @param key the key of a payload
      * @param value the value of a payload
-     * @return true if the key-value pair exists, otherwise false
+     * @return true if the key-value pair exists, false if the value differs or the key is missing
      */
     boolean has(
         String token,
@@ -49,6 +101,22 @@ public interface TokenService {
         Object value
     );
 
+    /**
+     * Evaluates a claim policy against the payload of a JWT token, verifying the token once for
+     * all rules of the policy. Prefer this to several calls of has, each of which verifies the
+     * token again.
+     *
+     * @param token the JWT token
+     * @param policy the compiled claim policy
+     * @return the result listing the rules the claims violate
+     */
+    default PolicyResult evaluate(
+            String token,
+            ClaimPolicy policy
+    ) {
+        return policy.evaluate(claims(token));
+    }
+
     /**
      * Returns the "sub" claim of a received JWT token.
      *
@@ -65,6 +133,49 @@ public interface TokenService {
      */
     Map<String, Object> claims(String token);
 
+    /**
+     * Returns the payload of a JWT token held as characters, e.g. in a reused buffer.
+     * Implementations verify the token without creating a String for it; the default
+     * converts it to a String first.
+     *
+     * @param token the characters of the JWT token
+     * @return the key-value pairs from the payload
+     */
+    default Map<String, Object> claims(CharSequence token) {
+        return claims(token.toString());
+    }
+
+    /**
+     * Returns the payload of a JWT token held as ASCII bytes in a slice of an array.
+     * Implementations verify the token without creating a String for it; the default
+     * converts it to a String first.
+     *
+     * @param token the array holding the JWT token
+     * @param offset the index of the first byte of the JWT token
+     * @param length the length of the JWT token
+     * @return the key-value pairs from the payload
+     */
+    default Map<String, Object> claims(
+            byte[] token,
+            int offset,
+            int length
+    ) {
+        return claims(new String(token, offset, length, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Returns the payload of a JWT token held as ASCII bytes between the position and limit
+     * of a buffer, e.g. a header read by a network server. The position of the buffer is left
+     * unchanged. Implementations verify the token without creating a String for it; the default
+     * converts it to a String first.
+     *
+     * @param token the buffer holding the JWT token
+     * @return the key-value pairs from the payload
+     */
+    default Map<String, Object> claims(ByteBuffer token) {
+        return claims(StandardCharsets.US_ASCII.decode(token.duplicate()).toString());
+    }
+
 
     /**
      * Returns the type of a JWT token.
@@ -1,24 +1,42 @@
 package dev.hstoklosa.jwtext.service;
 
+import dev.hstoklosa.jwtext.model.ClaimAliases;
 import dev.hstoklosa.jwtext.model.TokenParameters;
+import dev.hstoklosa.jwtext.model.VerificationResult;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import io.jsonwebtoken.ExpiredJwtException;
 
 import javax.crypto.SecretKey;
 
+import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 public class TokenServiceImpl implements TokenService {
 
     /** Secret key for verifying tokens. */
     private final SecretKey key;
 
+    /** Parser verifying tokens with the secret key, shared by all verifications. */
+    private final JwtParser parser;
+
+    /** Verifier of tokens held as characters or bytes, shared by all verifications. */
+    private final HmacTokenVerifier verifier;
+
+    /** Aliases the claims are written under. */
+    private final ClaimAliases claimAliases;
+
+    /** Parameters added to the header of created tokens. */
+    private final Map<String, Object> headers;
+
      /** Field name specifying the type in a token. */
     public static final String TOKEN_TYPE_KEY = "tokenType";
 
@@ -28,17 +46,55 @@ public class TokenServiceImpl implements TokenService {
      * @param secret the secret of a key used for token generation.
      */
     public TokenServiceImpl(final String secret) {
+        this(secret, ClaimAliases.NONE);
+    }
+
+    /**
+     * Creates a TokenServiceImpl object writing claims under the provided aliases.
+     *
+     * @param secret the secret of a key used for token generation.
+     * @param claimAliases the aliases claims are written under.
+     */
+    public TokenServiceImpl(
+            final String secret,
+            final ClaimAliases claimAliases
+    ) {
+        this(secret, claimAliases, Map.of());
+    }
+
+    /**
+     * Creates a TokenServiceImpl object adding the provided parameters to the header of created
+     * tokens, e.g. the tenant a token was signed for.
+     *
+     * @param secret the secret of a key used for token generation.
+     * @param claimAliases the aliases claims are written under.
+     * @param headers the parameters added to the header of created tokens.
+     */
+    TokenServiceImpl(
+            final String secret,
+            final ClaimAliases claimAliases,
+            final Map<String, Object> headers
+    ) {
         this.key = Keys.hmacShaKeyFor(secret.getBytes());
+        this.parser = Jwts.parser()
+                .verifyWith(key)
+                .build();
+        this.verifier = new HmacTokenVerifier(key);
+        this.claimAliases = claimAliases;
+        this.headers = Map.copyOf(headers);
     }
 
     @Override
     public String create(final TokenParameters params) {
         Claims claims = Jwts.claims()
                 .subject(params.getSubject())
-                .add(params.getClaims())
-                .add(TOKEN_TYPE_KEY, params.getType())
+                .add(claimAliases.compact(params.getClaims()))
+                .add(claimAliases.alias(TOKEN_TYPE_KEY), params.getType())
                 .build();
         return Jwts.builder()
+                .header()
+                .add(headers)
+                .and()
                 .claims(claims)
                 .issuedAt(params.getIssuedAt())
                 .expiration(params.getExpiredAt())
@@ -46,6 +102,33 @@ public class TokenServiceImpl implements TokenService {
                 .compact();
     }
 
+    @Override
+    public void createAll(
+            final Collection<TokenParameters> params,
+            final Consumer<String> consumer
+    ) {
+        BulkOperations.forEachChunk(
+                params.iterator(),
+                chunk -> BulkOperations.mapParallel(chunk, this::create),
+                consumer
+        );
+    }
+
+    @Override
+    public void verifyAll(
+            final Iterable<String> tokens,
+            final Consumer<VerificationResult> consumer
+    ) {
+        BulkOperations.forEachChunk(
+                tokens.iterator(),
+                chunk -> BulkOperations.mapParallel(
+                        chunk,
+                        token -> BulkOperations.verify(token, this::claims, claimAliases)
+                ),
+                consumer
+        );
+    }
+
     @Override
     public boolean isExpired(final String token) {
         return isExpired(
@@ -60,11 +143,7 @@ public class TokenServiceImpl implements TokenService {
             final Date date
     ) {
         try {
-            Jws<Claims> claims = Jwts
-                    .parser()
-                    .verifyWith(key)
-                    .build()
-                    .parseSignedClaims(token);
+            Jws<Claims> claims = parser.parseSignedClaims(token);
             return claims.getPayload()
                     .getExpiration()
                     .before(date);
@@ -79,22 +158,16 @@ public class TokenServiceImpl implements TokenService {
             final String key,
             final Object value
     ) {
-        Jws<Claims> claims = Jwts
-                .parser()
-                .verifyWith(this.key)
-                .build()
-                .parseSignedClaims(token);
-        return claims.getPayload()
-                .get(key)
-                .equals(value);
+        Jws<Claims> claims = parser.parseSignedClaims(token);
+        return Objects.equals(
+                claims.getPayload().get(claimAliases.alias(key)),
+                value
+        );
     }
 
     @Override
     public String getSubject(final String token) {
-        return Jwts
-                .parser()
-                .verifyWith(key)
-                .build()
+        return parser
                 .parseSignedClaims(token)
                 .getPayload()
                 .getSubject();
@@ -102,22 +175,54 @@ public class TokenServiceImpl implements TokenService {
 
     @Override
     public Map<String, Object> claims(final String token) {
-        Jws<Claims> claims = Jwts
-                .parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token);
-        return new HashMap<>(claims.getPayload());
+        Jws<Claims> claims = parser.parseSignedClaims(token);
+        return claimAliases.expand(claims.getPayload());
+    }
+
+    @Override
+    public Map<String, Object> claims(final CharSequence token) {
+        return claimAliases.expand(verifier.verify(token).claims());
+    }
+
+    @Override
+    public Map<String, Object> claims(
+            final byte[] token,
+            final int offset,
+            final int length
+    ) {
+        return claimAliases.expand(verifier.verify(token, offset, length).claims());
+    }
+
+    @Override
+    public Map<String, Object> claims(final ByteBuffer token) {
+        return claimAliases.expand(verifier.verify(token).claims());
+    }
+
+    /**
+     * Returns the key verifying the tokens of this service, e.g. to locate it by the header of
+     * a token.
+     *
+     * @return the secret key of the service
+     */
+    SecretKey getKey() {
+        return key;
+    }
+
+    /**
+     * Verifies a token with the key of this service.
+     *
+     * @param token the JWT token
+     * @return the verified token
+     */
+    Jws<Claims> parse(final String token) {
+        return parser.parseSignedClaims(token);
     }
 
     @Override
     public String getType(final String token) {
-        return Jwts
-                .parser()
-                .verifyWith(key)
-                .build()
+        return parser
                 .parseSignedClaims(token)
                 .getPayload()
-                .get(TOKEN_TYPE_KEY, String.class);
+                .get(claimAliases.alias(TOKEN_TYPE_KEY), String.class);
     }
 }
\ No newline at end of file
@@ -0,0 +1,286 @@
+package dev.hstoklosa.jwtext.service;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Header;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.PrematureJwtException;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.io.Deserializer;
+import io.jsonwebtoken.security.SignatureException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Verifies signed JWT tokens directly from their bytes (thread-safe).
+ *
+ * The signature is checked over the input buffer itself, and the signature and header segments
+ * are decoded into per-thread scratch arrays, so that no String is created for the token. Only the
+ * payload is decoded into a new array to be deserialized into claims. The header of tokens issued
+ * with the key is decoded once and recognised by its encoded bytes afterwards. Tokens are checked
+ * like the JJWT parser does: the algorithm must match the key, and the token must not be expired
+ * or used before its "nbf" claim.
+ *
+ * Subclasses check the signature with a per-thread instance of their JCA primitive, initialised
+ * with the key once.
+ */
+abstract class TokenVerifier {
+
+    /** Values of base64url characters, -1 for characters outside the alphabet. */
+    private static final byte[] BASE64URL = new byte[128];
+
+    static {
+        Arrays.fill(BASE64URL, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64URL[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    /** JWS name of the algorithm of the key, e.g. "HS256". */
+    private final String algorithm;
+
+    /** Per-thread scratch array for tokens passed as characters. */
+    private final ThreadLocal<byte[]> characters;
+
+    /** JSON deserializer discovered like the JJWT parser discovers it. */
+    private final Deserializer<Map<String, ?>> deserializer;
+
+    /** Last header found valid, reused while tokens carry the same encoded header. */
+    private volatile TrustedHeader trustedHeader;
+
+    /**
+     * Creates a verifier for tokens signed with the provided algorithm.
+     *
+     * @param algorithm the JWS name of the algorithm of the key, e.g. "HS256"
+     */
+    @SuppressWarnings("unchecked")
+    TokenVerifier(final String algorithm) {
+        this.algorithm = algorithm;
+        this.characters = ThreadLocal.withInitial(() -> new byte[1024]);
+        this.deserializer = ServiceLoader.load(Deserializer.class)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No JSON deserializer found on the classpath"));
+    }
+
+    /**
+     * Verifies a token held in a buffer between its position and limit. The position of the
+     * buffer is left unchanged.
+     *
+     * @param token the buffer holding the token
+     * @return the header and claims of the verified token
+     */
+    VerifiedToken verify(final ByteBuffer token) {
+        int start = token.position();
+        int end = token.limit();
+        int firstDot = indexOf(token, start, end);
+        int secondDot = firstDot < 0 ? -1 : indexOf(token, firstDot + 1, end);
+        if (secondDot < 0 || indexOf(token, secondDot + 1, end) >= 0) {
+            throw new MalformedJwtException("JWT must consist of exactly three segments.");
+        }
+
+        verifySignature(token, start, secondDot, end);
+        Header header = header(token, start, firstDot);
+
+        byte[] payload = new byte[decodedLength(secondDot - firstDot - 1)];
+        decode(token, firstDot + 1, secondDot, payload);
+        Claims claims = Jwts.claims()
+                .add(deserialize(payload))
+                .build();
+
+        long now = System.currentTimeMillis();
+        Date expiration = claims.getExpiration();
+        if (expiration != null && now > expiration.getTime()) {
+            throw new ExpiredJwtException(header, claims, "JWT expired at " + expiration + ".");
+        }
+        Date notBefore = claims.getNotBefore();
+        if (notBefore != null && now < notBefore.getTime()) {
+            throw new PrematureJwtException(header, claims, "JWT must not be accepted before " + notBefore + ".");
+        }
+        return new VerifiedToken(header, claims);
+    }
+
+    /**
+     * Verifies a token held in a slice of an array.
+     *
+     * @param token the array holding the token
+     * @param offset the index of the first byte of the token
+     * @param length the length of the token
+     * @return the header and claims of the verified token
+     */
+    VerifiedToken verify(
+            final byte[] token,
+            final int offset,
+            final int length
+    ) {
+        return verify(ByteBuffer.wrap(token, offset, length));
+    }
+
+    /**
+     * Verifies a token held as characters, which are copied into a per-thread array.
+     *
+     * @param token the characters of the token
+     * @return the header and claims of the verified token
+     */
+    VerifiedToken verify(final CharSequence token) {
+        int length = token.length();
+        byte[] bytes = characters.get();
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+            characters.set(bytes);
+        }
+        for (int i = 0; i < length; i++) {
+            char c = token.charAt(i);
+            if (c > 127) {
+                throw new MalformedJwtException("JWT must consist of ASCII characters.");
+            }
+            bytes[i] = (byte) c;
+        }
+        return verify(ByteBuffer.wrap(bytes, 0, length));
+    }
+
+    /**
+     * Checks the signature segment between the second dot and the end against the signing input
+     * between the start and the second dot.
+     *
+     * @throws SignatureException if the signature does not match
+     */
+    abstract void verifySignature(
+            ByteBuffer token,
+            int start,
+            int secondDot,
+            int end
+    );
+
+    private Header header(
+            final ByteBuffer token,
+            final int start,
+            final int firstDot
+    ) {
+        TrustedHeader trusted = trustedHeader;
+        if (trusted != null && trusted.matches(token, start, firstDot)) {
+            return trusted.header();
+        }
+
+        byte[] decoded = new byte[decodedLength(firstDot - start)];
+        decode(token, start, firstDot, decoded);
+        Map<String, ?> values = deserialize(decoded);
+        if (!algorithm.equals(values.get("alg"))) {
+            throw new UnsupportedJwtException("JWT algorithm " + values.get("alg") + " does not match " + algorithm + ".");
+        }
+        if (values.containsKey("crit") || values.containsKey("zip") || values.containsKey("enc")) {
+            throw new UnsupportedJwtException("JWT with critical, compression or encryption parameters is not supported.");
+        }
+
+        byte[] encoded = new byte[firstDot - start];
+        token.get(start, encoded);
+        Header header = Jwts.header().add(values).build();
+        trustedHeader = new TrustedHeader(encoded, header);
+        return header;
+    }
+
+    private Map<String, ?> deserialize(final byte[] json) {
+        try {
+            return deserializer.deserialize(
+                    new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8)
+            );
+        } catch (RuntimeException e) {
+            throw new MalformedJwtException("Unable to read JWT JSON value.", e);
+        }
+    }
+
+    private static int indexOf(
+            final ByteBuffer token,
+            final int from,
+            final int to
+    ) {
+        for (int i = from; i < to; i++) {
+            if (token.get(i) == '.') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int decodedLength(final int encodedLength) {
+        if (encodedLength % 4 == 1) {
+            throw new MalformedJwtException("Invalid base64url segment length.");
+        }
+        return encodedLength / 4 * 3 + Math.max(0, encodedLength % 4 - 1);
+    }
+
+    /**
+     * Decodes an unpadded base64url segment of the buffer into the array.
+     */
+    static void decode(
+            final ByteBuffer source,
+            final int from,
+            final int to,
+            final byte[] target
+    ) {
+        int bits = 0;
+        int bitCount = 0;
+        int written = 0;
+        for (int i = from; i < to; i++) {
+            byte c = source.get(i);
+            int value = c < 0 ? -1 : BASE64URL[c];
+            if (value < 0) {
+                throw new MalformedJwtException("Invalid base64url character in JWT.");
+            }
+            bits = bits << 6 | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                target[written++] = (byte) (bits >> bitCount);
+            }
+        }
+    }
+
+    /**
+     * Header and claims of a verified token.
+     *
+     * @param header the header of the token
+     * @param claims the claims of the token
+     */
+    record VerifiedToken(
+            Header header,
+            Claims claims
+    ) {
+    }
+
+    /**
+     * A header found valid together with its encoded bytes.
+     *
+     * @param encoded the base64url-encoded header segment
+     * @param header the decoded header
+     */
+    private record TrustedHeader(
+            byte[] encoded,
+            Header header
+    ) {
+
+        boolean matches(
+                final ByteBuffer token,
+                final int start,
+                final int end
+        ) {
+            if (end - start != encoded.length) {
+                return false;
+            }
+            for (int i = 0; i < encoded.length; i++) {
+                if (token.get(start + i) != encoded[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.cache.LocalCache;
+
+import java.time.Duration;
+import java.util.Date;
+
+/**
+ * RevocationStorage decorator that keeps watermarks in a small local cache.
+ *
+ * Cached watermarks, including the absence of one, are evicted as soon as the underlying storage
+ * pushes a change, so verifying a token normally costs a local lookup only. The time-to-live bounds
+ * staleness should a push notification be lost (thread-safe).
+ */
+public class CachedRevocationStorage implements RevocationStorage {
+
+    /** Default maximum number of cached watermarks. */
+    public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    /** Default time after which a cached watermark is reloaded. */
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(1);
+
+    /** Cached value of subjects without a watermark. */
+    private static final Long NONE = 0L;
+
+    /** Storage holding the watermarks. */
+    private final RevocationStorage delegate;
+
+    /** Cached watermarks in epoch milliseconds by subject. */
+    private final LocalCache<String, Long> cache;
+
+    /** Time after which a cached watermark is reloaded. */
+    private final Duration ttl;
+
+    /** Incremented on every invalidation, guards against caching a value read before it. */
+    private long generation;
+
+    /**
+     * Creates an object with the default cache size and time-to-live.
+     *
+     * @param delegate the storage holding the watermarks
+     */
+    public CachedRevocationStorage(final RevocationStorage delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL);
+    }
+
+    /**
+     * Creates an object with the provided cache size and time-to-live.
+     *
+     * @param delegate the storage holding the watermarks
+     * @param maximumSize the maximum number of cached watermarks
+     * @param ttl the time after which a cached watermark is reloaded
+     */
+    public CachedRevocationStorage(
+            final RevocationStorage delegate,
+            final int maximumSize,
+            final Duration ttl
+    ) {
+        this.delegate = delegate;
+        this.cache = new LocalCache<>(maximumSize);
+        this.ttl = ttl;
+        delegate.addListener(new RevocationListener() {
+            @Override
+            public void onRevoke(final String subject) {
+                invalidate(subject);
+            }
+
+            @Override
+            public void onReset() {
+                invalidate(null);
+            }
+        });
+    }
+
+    @Override
+    public void revoke(
+            final String subject,
+            final Date issuedBefore
+    ) {
+        delegate.revoke(subject, issuedBefore);
+        invalidate(subject);
+    }
+
+    @Override
+    public Date getRevokedBefore(final String subject) {
+        Long watermark = cache.get(subject);
+        if (watermark == null) {
+            long observed = currentGeneration();
+            Date revokedBefore = delegate.getRevokedBefore(subject);
+            watermark = revokedBefore == null ? NONE : revokedBefore.getTime();
+            cacheIfCurrent(subject, watermark, observed);
+        }
+        return NONE.equals(watermark) ? null : new Date(watermark);
+    }
+
+    @Override
+    public void addListener(final RevocationListener listener) {
+        delegate.addListener(listener);
+    }
+
+    private synchronized long currentGeneration() {
+        return generation;
+    }
+
+    private synchronized void cacheIfCurrent(
+            final String subject,
+            final Long watermark,
+            final long observed
+    ) {
+        if (generation == observed) {
+            cache.put(subject, watermark, System.currentTimeMillis() + ttl.toMillis());
+        }
+    }
+
+    private synchronized void invalidate(final String subject) {
+        generation++;
+        if (subject == null) {
+            cache.clear();
+        } else {
+            cache.remove(subject);
+        }
+    }
+
+    /**
+     * Returns the cache holding the watermarks, e.g. to read its hit ratio.
+     *
+     * @return the local watermark cache
+     */
+    public LocalCache<String, Long> getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,68 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.cache.LocalCache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A token kept in the local cache of a storage together with its subject and expiration.
+ *
+ * @param subject the subject of the token
+ * @param token the JWT token
+ * @param expiresAt the expiration of the token in epoch milliseconds
+ */
+public record CachedToken(
+        String subject,
+        String token,
+        long expiresAt
+) {
+
+    /** Expiration claim of a JSON payload, registered claims cannot be aliased. */
+    private static final Pattern EXPIRATION = Pattern.compile("\"exp\"\\s*:\\s*(\\d{1,15})");
+
+    /**
+     * Creates a cached token expiring with the "exp" claim of the token, e.g. for a token read
+     * from a storage without its parameters. The payload is decoded without verifying the
+     * signature, the expiration only bounds how long the token is kept locally.
+     *
+     * @param subject the subject of the token
+     * @param token the JWT token
+     * @return the cached token, expiring at LocalCache.NEVER if the token has no readable
+     *         expiration
+     */
+    public static CachedToken of(
+            final String subject,
+            final String token
+    ) {
+        return new CachedToken(subject, token, expiration(token));
+    }
+
+    /**
+     * Reads the earliest "exp" value of the payload, so that a nested object with an "exp"
+     * member can only shorten the time a token is kept.
+     */
+    private static long expiration(final String token) {
+        int from = token.indexOf('.');
+        int to = from < 0 ? -1 : token.indexOf('.', from + 1);
+        if (to < 0) {
+            return LocalCache.NEVER;
+        }
+
+        String payload;
+        try {
+            payload = new String(Base64.getUrlDecoder().decode(token.substring(from + 1, to)), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return LocalCache.NEVER;
+        }
+
+        long expiresAt = LocalCache.NEVER;
+        Matcher matcher = EXPIRATION.matcher(payload);
+        while (matcher.find()) {
+            expiresAt = Math.min(expiresAt, Long.parseLong(matcher.group(1)) * 1000);
+        }
+        return expiresAt;
+    }
+}
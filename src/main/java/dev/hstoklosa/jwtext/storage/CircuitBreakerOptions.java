@@ -0,0 +1,74 @@
+package dev.hstoklosa.jwtext.storage;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Settings of a CircuitBreakerTokenStorage.
+ *
+ * Every setting has a default, so only the ones that differ have to be provided:
+ *
+ * <pre>{@code
+ * CircuitBreakerOptions options = CircuitBreakerOptions.builder()
+ *         .timeout(Duration.ofMillis(50))
+ *         .readFallback(CircuitBreakerOptions.ReadFallback.FAIL_OPEN)
+ *         .build();
+ * }</pre>
+ */
+@Builder
+@Getter
+public class CircuitBreakerOptions {
+
+    /**
+     * Reaction to reads that cannot reach the storage, because it failed or the breaker is open.
+     */
+    public enum ReadFallback {
+
+        /**
+         * Reads are served from a local copy of recently read and saved tokens, tokens missing
+         * from it fail like FAIL_CLOSED.
+         */
+        LOCAL_CACHE,
+
+        /**
+         * Every token is reported as stored and none is returned, so tokens are accepted on
+         * their signature alone.
+         */
+        FAIL_OPEN,
+
+        /** Reads throw a StorageUnavailableException. */
+        FAIL_CLOSED
+
+    }
+
+    /** The deadline of a single storage call. */
+    @Builder.Default
+    private Duration timeout = Duration.ofMillis(250);
+
+    /** The number of consecutive failed calls that opens the breaker. */
+    @Builder.Default
+    private int failureThreshold = 5;
+
+    /** The time the breaker stays open before a single call probes the storage. */
+    @Builder.Default
+    private Duration openDuration = Duration.ofSeconds(10);
+
+    /** The maximum number of calls in flight, further calls fail without waiting. */
+    @Builder.Default
+    private int maxConcurrentCalls = 64;
+
+    /** Reaction to reads that cannot reach the storage. */
+    @Builder.Default
+    private ReadFallback readFallback = ReadFallback.LOCAL_CACHE;
+
+    /** The maximum number of tokens kept for the LOCAL_CACHE fallback. */
+    @Builder.Default
+    private int cacheMaximumSize = 10_000;
+
+    /** The time a token is kept for the LOCAL_CACHE fallback after it was last read or saved. */
+    @Builder.Default
+    private Duration cacheTtl = Duration.ofMinutes(5);
+
+}
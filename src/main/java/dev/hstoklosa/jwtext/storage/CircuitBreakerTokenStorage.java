@@ -0,0 +1,585 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.cache.LocalCache;
+import dev.hstoklosa.jwtext.exception.StorageUnavailableException;
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TokenStorage decorator that bounds the time spent on a slow or failing storage, usually
+ * RedisTokenStorageImpl (thread-safe if the wrapped storage is).
+ *
+ * Every call runs with a deadline on a bounded set of threads, so request threads never wait
+ * longer than the timeout and cannot pile up behind the connection pool. After a number of
+ * consecutive failed or timed out calls the breaker opens and calls fail right away. Once the
+ * open duration passes, a single call probes the storage: its success closes the breaker, its
+ * failure keeps it open for another open duration. Calls completing after the breaker opened,
+ * and calls rejected because too many are in flight, do not change its state.
+ *
+ * Reads that cannot reach the storage fall back according to the ReadFallback of the options.
+ * Writes and removals are never faked and throw a StorageUnavailableException instead. Register
+ * the object with a RedisKeyspaceSubscriber to keep the local copy of the LOCAL_CACHE fallback in
+ * sync with tokens expired or removed by other nodes. Lookups by claim and of references have no
+ * fallback, removals by claim clear the local copy.
+ */
+public class CircuitBreakerTokenStorage
+        implements ClaimIndexedTokenStorage, ReferenceTokenStorage, TokenEvictionListener, AutoCloseable {
+
+    private static final System.Logger LOGGER = System.getLogger(CircuitBreakerTokenStorage.class.getName());
+
+    /**
+     * State of the breaker.
+     */
+    public enum State {
+
+        /** Calls reach the storage. */
+        CLOSED,
+
+        /** Calls fail right away. */
+        OPEN,
+
+        /** A single call probes the storage, others fail right away. */
+        HALF_OPEN
+
+    }
+
+    /** Storage the calls are made to. */
+    private final TokenStorage storage;
+
+    /** Settings of the breaker. */
+    private final CircuitBreakerOptions options;
+
+    /** Threads running the storage calls. */
+    private final ThreadPoolExecutor executor;
+
+    /** Local copy of tokens for the LOCAL_CACHE fallback, by subject and type. */
+    private final LocalCache<String, CachedToken> cache;
+
+    /** Number of calls that failed or timed out. */
+    private final LongAdder failedCalls;
+
+    /** Number of calls failed right away, because the breaker was open or too many were in flight. */
+    private final LongAdder rejectedCalls;
+
+    /** Number of reads served by the fallback. */
+    private final LongAdder fallbackReads;
+
+    /** State of the breaker, changed while holding the monitor of this object. */
+    private volatile State state;
+
+    /** Number of consecutive failed calls, changed while holding the monitor of this object. */
+    private volatile int consecutiveFailures;
+
+    /** Time the breaker was opened at in nanoseconds. */
+    private long openedAt;
+
+    /** Whether the probing call of the half-open state is in flight. */
+    private boolean probing;
+
+    /**
+     * Number of times the breaker was opened, changed while holding the monitor of this object.
+     * A call only affects the breaker if it was not opened since the call started.
+     */
+    private volatile long openings;
+
+    /** Incremented on every change, guards against caching a token read before it. */
+    private long generation;
+
+    /**
+     * Creates an object with the default options.
+     *
+     * @param storage the storage the calls are made to
+     */
+    public CircuitBreakerTokenStorage(final TokenStorage storage) {
+        this(storage, CircuitBreakerOptions.builder().build());
+    }
+
+    /**
+     * Creates an object with the provided options.
+     *
+     * @param storage the storage the calls are made to
+     * @param options the settings of the breaker
+     */
+    public CircuitBreakerTokenStorage(
+            final TokenStorage storage,
+            final CircuitBreakerOptions options
+    ) {
+        this.storage = storage;
+        this.options = options;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                0,
+                options.getMaxConcurrentCalls(),
+                60,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "jwt-ext-circuit-breaker-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        this.cache = new LocalCache<>(options.getCacheMaximumSize());
+        this.failedCalls = new LongAdder();
+        this.rejectedCalls = new LongAdder();
+        this.fallbackReads = new LongAdder();
+        this.state = State.CLOSED;
+    }
+
+    @Override
+    public void save(
+            final String token,
+            final TokenParameters params
+    ) {
+        evict(params);
+        call(() -> {
+            storage.save(token, params);
+            return null;
+        });
+        cache(token, params);
+    }
+
+    @Override
+    public void saveAll(final Map<String, TokenParameters> tokens) {
+        tokens.values().forEach(this::evict);
+        call(() -> {
+            storage.saveAll(tokens);
+            return null;
+        });
+        tokens.forEach(this::cache);
+    }
+
+    @Override
+    public boolean compareAndSaveAll(
+            final String expectedToken,
+            final TokenParameters expectedParams,
+            final Map<String, TokenParameters> tokens
+    ) {
+        evict(expectedParams);
+        boolean saved = call(() -> storage.compareAndSaveAll(expectedToken, expectedParams, tokens));
+        if (saved) {
+            tokens.forEach(this::cache);
+        }
+        return saved;
+    }
+
+    @Override
+    public boolean exists(
+            final String token,
+            final TokenParameters params
+    ) {
+        long observed = currentGeneration();
+        try {
+            boolean exists = call(() -> storage.exists(token, params));
+            if (exists) {
+                cache(token, params, observed);
+            }
+            return exists;
+        } catch (StorageUnavailableException e) {
+            return switch (options.getReadFallback()) {
+                case LOCAL_CACHE -> token.equals(cached(params, e));
+                case FAIL_OPEN -> fallback(true);
+                case FAIL_CLOSED -> throw e;
+            };
+        }
+    }
+
+    @Override
+    public String get(final TokenParameters params) {
+        long observed = currentGeneration();
+        try {
+            String token = call(() -> storage.get(params));
+            cache(token, params, observed);
+            return token;
+        } catch (StorageUnavailableException e) {
+            return fallback(params, e);
+        }
+    }
+
+    @Override
+    public List<String> getAll(final List<TokenParameters> params) {
+        long observed = currentGeneration();
+        try {
+            List<String> tokens = call(() -> storage.getAll(params));
+            for (int i = 0; i < params.size(); i++) {
+                cache(tokens.get(i), params.get(i), observed);
+            }
+            return tokens;
+        } catch (StorageUnavailableException e) {
+            List<String> tokens = new ArrayList<>(params.size());
+            for (TokenParameters tokenParams : params) {
+                tokens.add(fallback(tokenParams, e));
+            }
+            return tokens;
+        }
+    }
+
+    @Override
+    public boolean touch(
+            final TokenParameters params,
+            final Date expiresAt
+    ) {
+        return call(() -> storage.touch(params, expiresAt));
+    }
+
+    @Override
+    public boolean remove(final String token) {
+        synchronized (this) {
+            generation++;
+            cache.removeIf((key, cached) -> cached.token().equals(token));
+        }
+        return call(() -> storage.remove(token));
+    }
+
+    @Override
+    public boolean remove(final TokenParameters params) {
+        evict(params);
+        return call(() -> storage.remove(params));
+    }
+
+    @Override
+    public boolean removeAll(final String subject) {
+        synchronized (this) {
+            generation++;
+            cache.removeIf((key, cached) -> cached.subject().equals(subject));
+        }
+        return call(() -> storage.removeAll(subject));
+    }
+
+    @Override
+    public Set<String> getIndexedClaims() {
+        return ClaimIndexes.indexedClaims(storage);
+    }
+
+    @Override
+    public List<String> findByClaim(
+            final String claim,
+            final Object value
+    ) {
+        ClaimIndexedTokenStorage indexed = ClaimIndexes.indexed(storage);
+        ClaimIndexes.requireIndexed(indexed.getIndexedClaims(), claim);
+        return call(() -> indexed.findByClaim(claim, value));
+    }
+
+    @Override
+    public boolean removeByClaim(
+            final String claim,
+            final Object value
+    ) {
+        ClaimIndexedTokenStorage indexed = ClaimIndexes.indexed(storage);
+        ClaimIndexes.requireIndexed(indexed.getIndexedClaims(), claim);
+        synchronized (this) {
+            generation++;
+            cache.clear();
+        }
+        return call(() -> indexed.removeByClaim(claim, value));
+    }
+
+    @Override
+    public void saveReference(
+            final String handle,
+            final String token,
+            final TokenParameters params
+    ) {
+        ReferenceTokenStorage references = ClaimIndexes.references(storage);
+        call(() -> {
+            references.saveReference(handle, token, params);
+            return null;
+        });
+    }
+
+    @Override
+    public String getReference(final String handle) {
+        ReferenceTokenStorage references = ClaimIndexes.references(storage);
+        return call(() -> references.getReference(handle));
+    }
+
+    @Override
+    public boolean removeReference(final String handle) {
+        ReferenceTokenStorage references = ClaimIndexes.references(storage);
+        return call(() -> references.removeReference(handle));
+    }
+
+    @Override
+    public synchronized void onEvict(
+            final String subject,
+            final String type
+    ) {
+        generation++;
+        cache.remove(subject + ":" + type);
+    }
+
+    @Override
+    public synchronized void onReset() {
+        generation++;
+        cache.clear();
+    }
+
+    /**
+     * Returns the state of the breaker.
+     *
+     * @return the current state
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the number of storage calls that failed or exceeded the timeout.
+     *
+     * @return the number of failed calls
+     */
+    public long getFailedCalls() {
+        return failedCalls.sum();
+    }
+
+    /**
+     * Returns the number of calls failed without reaching the storage, because the breaker was
+     * open or too many calls were in flight.
+     *
+     * @return the number of rejected calls
+     */
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    /**
+     * Returns the number of reads answered by the fallback instead of the storage.
+     *
+     * @return the number of fallback reads
+     */
+    public long getFallbackReads() {
+        return fallbackReads.sum();
+    }
+
+    /**
+     * Stops the threads running the storage calls, calls still in flight are interrupted.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private <T> T call(final Callable<T> operation) {
+        Permit permit = permit();
+        if (permit == null) {
+            rejectedCalls.increment();
+            throw new StorageUnavailableException("Token storage circuit breaker is open");
+        }
+
+        Future<T> future;
+        try {
+            future = executor.submit(operation);
+        } catch (RejectedExecutionException e) {
+            rejectedCalls.increment();
+            onRejected(permit);
+            throw new StorageUnavailableException("Too many token storage calls in flight", e);
+        }
+
+        try {
+            T result = future.get(options.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+            onSuccess(permit);
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            failedCalls.increment();
+            onFailure(permit);
+            throw new StorageUnavailableException("Token storage call exceeded " + options.getTimeout(), e);
+        } catch (ExecutionException e) {
+            failedCalls.increment();
+            onFailure(permit);
+            throw new StorageUnavailableException("Token storage call failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            onFailure(permit);
+            throw new StorageUnavailableException("Interrupted while waiting for the token storage", e);
+        }
+    }
+
+    /**
+     * Returns the permit of a call to reach the storage.
+     *
+     * @return the permit, or null if the call must fail right away
+     */
+    private Permit permit() {
+        if (state == State.CLOSED) {
+            return new Permit(false, openings);
+        }
+        synchronized (this) {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= options.getOpenDuration().toNanos()) {
+                state = State.HALF_OPEN;
+                probing = false;
+            }
+            if (state == State.HALF_OPEN && !probing) {
+                probing = true;
+                return new Permit(true, openings);
+            }
+            return state == State.CLOSED ? new Permit(false, openings) : null;
+        }
+    }
+
+    /**
+     * Closes the breaker if the call was the probe of the half-open state, calls started before
+     * the breaker opened leave it open.
+     */
+    private void onSuccess(final Permit permit) {
+        if (!permit.probe() && state == State.CLOSED && consecutiveFailures == 0) {
+            return;
+        }
+        synchronized (this) {
+            if (permit.openings() != openings) {
+                return;
+            }
+            if (permit.probe() && state == State.HALF_OPEN) {
+                LOGGER.log(System.Logger.Level.INFO, "Token storage recovered, closing circuit breaker");
+                state = State.CLOSED;
+                probing = false;
+            }
+            if (state == State.CLOSED) {
+                consecutiveFailures = 0;
+            }
+        }
+    }
+
+    /**
+     * Opens the breaker once the failure threshold is reached, or if the call was the probe of
+     * the half-open state.
+     */
+    private synchronized void onFailure(final Permit permit) {
+        if (permit.openings() != openings || state == State.HALF_OPEN && !permit.probe()) {
+            return;
+        }
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || state == State.CLOSED && consecutiveFailures >= options.getFailureThreshold()) {
+            LOGGER.log(
+                    System.Logger.Level.WARNING,
+                    "Token storage failed {0} consecutive calls, opening circuit breaker for {1}",
+                    consecutiveFailures,
+                    options.getOpenDuration()
+            );
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            probing = false;
+            openings++;
+        }
+    }
+
+    /**
+     * Lets another call probe the storage if the probe was rejected by the executor, which says
+     * nothing about the storage.
+     */
+    private synchronized void onRejected(final Permit permit) {
+        if (permit.probe() && permit.openings() == openings && state == State.HALF_OPEN) {
+            probing = false;
+        }
+    }
+
+    private String fallback(
+            final TokenParameters params,
+            final StorageUnavailableException failure
+    ) {
+        return switch (options.getReadFallback()) {
+            case LOCAL_CACHE -> cached(params, failure);
+            case FAIL_OPEN -> fallback(null);
+            case FAIL_CLOSED -> throw failure;
+        };
+    }
+
+    private <T> T fallback(final T result) {
+        fallbackReads.increment();
+        return result;
+    }
+
+    private String cached(
+            final TokenParameters params,
+            final StorageUnavailableException failure
+    ) {
+        CachedToken cached = cache.get(cacheKey(params));
+        if (cached == null) {
+            throw failure;
+        }
+        return fallback(cached.token());
+    }
+
+    private void cache(
+            final String token,
+            final TokenParameters params
+    ) {
+        synchronized (this) {
+            generation++;
+            cache(params, generation, new CachedToken(params.getSubject(), token, params.getExpiredAt().getTime()));
+        }
+    }
+
+    /**
+     * Caches a token read from the storage until the "exp" claim of the token, or removes the
+     * cached token if none was read.
+     */
+    private void cache(
+            final String token,
+            final TokenParameters params,
+            final long observed
+    ) {
+        cache(params, observed, token == null ? null : CachedToken.of(params.getSubject(), token));
+    }
+
+    private synchronized void cache(
+            final TokenParameters params,
+            final long observed,
+            final CachedToken cached
+    ) {
+        if (options.getReadFallback() != CircuitBreakerOptions.ReadFallback.LOCAL_CACHE || generation != observed) {
+            return;
+        }
+        if (cached == null) {
+            cache.remove(cacheKey(params));
+            return;
+        }
+        cache.put(
+                cacheKey(params),
+                cached,
+                Math.min(cached.expiresAt(), System.currentTimeMillis() + options.getCacheTtl().toMillis())
+        );
+    }
+
+    private synchronized void evict(final TokenParameters params) {
+        generation++;
+        cache.remove(cacheKey(params));
+    }
+
+    private synchronized long currentGeneration() {
+        return generation;
+    }
+
+    private String cacheKey(final TokenParameters params) {
+        return params.getSubject() + ":" + params.getType();
+    }
+
+    /**
+     * Permit of a call to reach the storage.
+     *
+     * @param probe whether the call probes the storage in the half-open state
+     * @param openings the number of times the breaker was opened when the call started
+     */
+    private record Permit(
+            boolean probe,
+            long openings
+    ) {
+    }
+}
@@ -0,0 +1,52 @@
+package dev.hstoklosa.jwtext.storage;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * TokenStorage that keeps secondary indexes on selected claims of the stored tokens.
+ *
+ * Indexes are maintained on every save from the claims of the TokenParameters, so that tokens
+ * carrying a claim value can be found and removed in time proportional to the number of matches
+ * rather than the number of stored tokens. A claim holding a collection, e.g. a list of scopes,
+ * is indexed under each of its elements. Values are compared by their string form.
+ */
+public interface ClaimIndexedTokenStorage extends TokenStorage {
+
+    /**
+     * Returns the names of the indexed claims.
+     *
+     * @return the indexed claims
+     */
+    Set<String> getIndexedClaims();
+
+    /**
+     * Return the stored tokens carrying the provided claim value.
+     *
+     * @param claim     the name of an indexed claim
+     * @param value     the value of the claim, or an element of a collection claim
+     * @return          the stored JWT tokens carrying the value
+     * @throws IllegalArgumentException if the claim is not indexed
+     * @throws UnsupportedOperationException if the storage decorates a storage not indexing claims
+     */
+    List<String> findByClaim(
+            String claim,
+            Object value
+    );
+
+    /**
+     * Removes the stored tokens carrying the provided claim value.
+     *
+     * @param claim     the name of an indexed claim
+     * @param value     the value of the claim, or an element of a collection claim
+     * @return          true  - if any JWT token was removed,
+     *                  false - otherwise
+     * @throws IllegalArgumentException if the claim is not indexed
+     * @throws UnsupportedOperationException if the storage decorates a storage not indexing claims
+     */
+    boolean removeByClaim(
+            String claim,
+            Object value
+    );
+
+}
@@ -0,0 +1,103 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Helpers shared by the ClaimIndexedTokenStorage implementations and decorators, which also
+ * pass reference handles through to a ReferenceTokenStorage.
+ */
+final class ClaimIndexes {
+
+    private ClaimIndexes() {
+    }
+
+    /**
+     * Returns the index entries of the indexed claims carried by the params.
+     *
+     * @param indexedClaims the names of the indexed claims
+     * @param params the params of a JWT token
+     * @return the indexed claims and their values, a claim holding a collection once per element
+     */
+    static List<Map.Entry<String, String>> entries(
+            final Set<String> indexedClaims,
+            final TokenParameters params
+    ) {
+        Map<String, Object> claims = params.getClaims();
+        if (indexedClaims.isEmpty() || claims == null) {
+            return List.of();
+        }
+
+        List<Map.Entry<String, String>> entries = new ArrayList<>();
+        for (String claim : indexedClaims) {
+            Object value = claims.get(claim);
+            if (value instanceof Collection<?> values) {
+                values.stream()
+                        .distinct()
+                        .forEach(element -> entries.add(Map.entry(claim, String.valueOf(element))));
+            } else if (value != null) {
+                entries.add(Map.entry(claim, String.valueOf(value)));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the names of the claims indexed by a decorated storage.
+     *
+     * @param storage the decorated storage
+     * @return the indexed claims, empty if the storage does not index claims
+     */
+    static Set<String> indexedClaims(final TokenStorage storage) {
+        return storage instanceof ClaimIndexedTokenStorage indexed ? indexed.getIndexedClaims() : Set.of();
+    }
+
+    /**
+     * Returns a decorated storage as a storage indexing claims.
+     *
+     * @param storage the decorated storage
+     * @return the decorated storage
+     * @throws UnsupportedOperationException if the storage does not index claims
+     */
+    static ClaimIndexedTokenStorage indexed(final TokenStorage storage) {
+        if (!(storage instanceof ClaimIndexedTokenStorage indexed)) {
+            throw new UnsupportedOperationException("Token storage does not index claims");
+        }
+        return indexed;
+    }
+
+    /**
+     * Returns a decorated storage as a storage of reference handles.
+     *
+     * @param storage the decorated storage
+     * @return the decorated storage
+     * @throws UnsupportedOperationException if the storage does not store references
+     */
+    static ReferenceTokenStorage references(final TokenStorage storage) {
+        if (!(storage instanceof ReferenceTokenStorage references)) {
+            throw new UnsupportedOperationException("Token storage does not store references");
+        }
+        return references;
+    }
+
+    /**
+     * Checks that a claim is indexed.
+     *
+     * @param indexedClaims the names of the indexed claims
+     * @param claim the name of the queried claim
+     * @throws IllegalArgumentException if the claim is not indexed
+     */
+    static void requireIndexed(
+            final Set<String> indexedClaims,
+            final String claim
+    ) {
+        if (!indexedClaims.contains(claim)) {
+            throw new IllegalArgumentException("Claim '" + claim + "' is not indexed");
+        }
+    }
+}
@@ -0,0 +1,581 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Implementation of TokenStorage that persists tokens to a directory on the local file system.
+ *
+ * Every save and remove is appended to a write-ahead log. Once the log has grown past a threshold,
+ * the live, unexpired tokens are written to a compact snapshot and the log is truncated. On startup
+ * the snapshot is memory-mapped and only the log written since it is replayed (thread-safe). Files
+ * are mapped in windows of at most 2 GB, so they are not bound by the size of a single mapping.
+ */
+public class FileTokenStorageImpl implements TokenStorage, AutoCloseable {
+
+    /** Default number of log records after which a snapshot is written. */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 100_000;
+
+    /** Name of the snapshot file within the storage directory. */
+    static final String SNAPSHOT_FILE = "tokens.snapshot";
+
+    /** Name of the log file within the storage directory. */
+    static final String LOG_FILE = "tokens.log";
+
+    /** Magic number at the beginning of a snapshot ("JWTS"). */
+    private static final int SNAPSHOT_MAGIC = 0x4A575453;
+
+    /** Version of the snapshot layout. */
+    private static final int SNAPSHOT_VERSION = 1;
+
+    /** Log operation storing a token. */
+    private static final byte SAVE = 1;
+
+    /** Log operation removing a token. */
+    private static final byte REMOVE = 2;
+
+    /** Size of the length and checksum preceding every log record. */
+    private static final int LOG_RECORD_HEADER_BYTES = 8;
+
+    /** Maximum number of bytes mapped at once, the capacity of a MappedByteBuffer. */
+    private static final long MAP_WINDOW_BYTES = Integer.MAX_VALUE;
+
+    /** Inner map of key-value pairs. */
+    private final Map<String, Entry> tokens;
+
+    /** Keys of the stored tokens grouped by their subject. */
+    private final Map<String, Set<String>> subjectKeys;
+
+    /** Directory holding the snapshot and the log. */
+    private final Path directory;
+
+    /** Number of log records after which a snapshot is written. */
+    private final int compactionThreshold;
+
+    /** Whether every log append is forced to the storage device before returning. */
+    private final boolean syncWrites;
+
+    /** Channel the log is appended to. */
+    private final FileChannel log;
+
+    /** Number of records in the log since the last snapshot. */
+    private int logRecords;
+
+    /**
+     * Creates an object storing its files in the provided directory.
+     *
+     * @param directory the directory holding the snapshot and the log
+     */
+    public FileTokenStorageImpl(final Path directory) {
+        this(directory, DEFAULT_COMPACTION_THRESHOLD, false);
+    }
+
+    /**
+     * Creates an object storing its files in the provided directory.
+     *
+     * @param directory the directory holding the snapshot and the log
+     * @param compactionThreshold the number of log records after which a snapshot is written
+     * @param syncWrites true to force every log append to the storage device, false to leave
+     *                   flushing to the operating system
+     */
+    public FileTokenStorageImpl(
+            final Path directory,
+            final int compactionThreshold,
+            final boolean syncWrites
+    ) {
+        if (compactionThreshold <= 0) {
+            throw new IllegalArgumentException("Compaction threshold must be positive");
+        }
+        this.tokens = new HashMap<>();
+        this.subjectKeys = new HashMap<>();
+        this.directory = directory;
+        this.compactionThreshold = compactionThreshold;
+        this.syncWrites = syncWrites;
+
+        try {
+            Files.createDirectories(directory);
+            loadSnapshot();
+            this.log = FileChannel.open(
+                    directory.resolve(LOG_FILE),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE
+            );
+            replayLog();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open token storage in " + directory, e);
+        }
+    }
+
+    private String subjectTokenKey(
+            final String subject,
+            final String type
+    ) {
+        return "tokens:" + subject + ":" + type;
+    }
+
+    @Override
+    public synchronized void save(
+            final String token,
+            final TokenParameters params
+    ) {
+        Entry entry = new Entry(
+                params.getSubject(),
+                params.getType(),
+                token,
+                params.getExpiredAt().getTime()
+        );
+        append(SAVE, entry);
+        put(entry);
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized boolean compareAndSaveAll(
+            final String expectedToken,
+            final TokenParameters expectedParams,
+            final Map<String, TokenParameters> tokens
+    ) {
+        if (!exists(expectedToken, expectedParams)) {
+            return false;
+        }
+        tokens.forEach(this::save);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean exists(
+            final String token,
+            final TokenParameters params
+    ) {
+        return token.equals(get(params));
+    }
+
+    @Override
+    public synchronized String get(final TokenParameters params) {
+        Entry entry = tokens.get(subjectTokenKey(params.getSubject(), params.getType()));
+        if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        return entry.token();
+    }
+
+    @Override
+    public synchronized boolean touch(
+            final TokenParameters params,
+            final Date expiresAt
+    ) {
+        Entry entry = tokens.get(subjectTokenKey(params.getSubject(), params.getType()));
+        if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+            return false;
+        }
+        Entry touched = new Entry(entry.subject(), entry.type(), entry.token(), expiresAt.getTime());
+        append(SAVE, touched);
+        put(touched);
+        compactIfNeeded();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(final String token) {
+        List<Entry> entries = new ArrayList<>();
+        for (Entry entry : tokens.values()) {
+            if (entry.token().equals(token)) {
+                entries.add(entry);
+            }
+        }
+        for (Entry entry : entries) {
+            append(REMOVE, entry);
+            delete(entry);
+        }
+        compactIfNeeded();
+
+        return !entries.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean remove(final TokenParameters params) {
+        Entry entry = tokens.get(subjectTokenKey(params.getSubject(), params.getType()));
+        if (entry == null) {
+            return false;
+        }
+        append(REMOVE, entry);
+        delete(entry);
+        compactIfNeeded();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean removeAll(final String subject) {
+        Set<String> keys = subjectKeys.get(subject);
+        if (keys == null) {
+            return false;
+        }
+
+        for (String tokenKey : List.copyOf(keys)) {
+            Entry entry = tokens.get(tokenKey);
+            append(REMOVE, entry);
+            delete(entry);
+        }
+        compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * Writes the live, unexpired tokens to a new snapshot and truncates the log.
+     *
+     * The snapshot is written to a temporary file and atomically moved into place before the
+     * log is truncated, so a crash at any point leaves a snapshot and log that replay to the
+     * same state.
+     */
+    public synchronized void compact() {
+        long now = System.currentTimeMillis();
+        tokens.values().stream()
+                .filter(entry -> entry.isExpired(now))
+                .toList()
+                .forEach(this::delete);
+
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(
+                temporary,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        )) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024)
+            );
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(tokens.size());
+            for (Entry entry : tokens.values()) {
+                writeString(out, entry.subject());
+                writeString(out, entry.type());
+                writeString(out, entry.token());
+                out.writeLong(entry.expiresAt());
+            }
+            out.flush();
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write token snapshot", e);
+        }
+
+        try {
+            Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory();
+            log.truncate(0);
+            log.force(true);
+            logRecords = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to replace token snapshot", e);
+        }
+    }
+
+    /**
+     * Returns the number of tokens held, including expired tokens that have not been compacted away yet.
+     *
+     * @return the number of stored tokens
+     */
+    public synchronized int size() {
+        return tokens.size();
+    }
+
+    /** Closes the log file, further modifications will fail. */
+    @Override
+    public synchronized void close() {
+        try {
+            log.force(true);
+            log.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to close token log", e);
+        }
+    }
+
+    /**
+     * Forces the directory entries to the storage device, so that the renamed snapshot survives
+     * a crash before the log is truncated. Directories cannot be opened on some platforms, e.g.
+     * Windows, where the rename is durable once it returns.
+     */
+    private void syncDirectory() throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (AccessDeniedException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    private void put(final Entry entry) {
+        String tokenKey = subjectTokenKey(entry.subject(), entry.type());
+        tokens.put(tokenKey, entry);
+        subjectKeys.computeIfAbsent(entry.subject(), subject -> new HashSet<>())
+                .add(tokenKey);
+    }
+
+    private void delete(final Entry entry) {
+        String tokenKey = subjectTokenKey(entry.subject(), entry.type());
+        tokens.remove(tokenKey);
+        Set<String> keys = subjectKeys.get(entry.subject());
+        if (keys != null && keys.remove(tokenKey) && keys.isEmpty()) {
+            subjectKeys.remove(entry.subject());
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (logRecords >= compactionThreshold) {
+            compact();
+        }
+    }
+
+    private void append(
+            final byte operation,
+            final Entry entry
+    ) {
+        byte[] subject = entry.subject().getBytes(StandardCharsets.UTF_8);
+        byte[] type = entry.type().getBytes(StandardCharsets.UTF_8);
+        byte[] token = operation == SAVE ? entry.token().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int payloadLength = 1 + 4 + subject.length + 4 + type.length + (operation == SAVE ? 4 + token.length + 8 : 0);
+
+        ByteBuffer record = ByteBuffer.allocate(LOG_RECORD_HEADER_BYTES + payloadLength);
+        record.position(LOG_RECORD_HEADER_BYTES);
+        record.put(operation)
+                .putInt(subject.length).put(subject)
+                .putInt(type.length).put(type);
+        if (operation == SAVE) {
+            record.putInt(token.length).put(token)
+                    .putLong(entry.expiresAt());
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), LOG_RECORD_HEADER_BYTES, payloadLength);
+        record.putInt(0, payloadLength)
+                .putInt(4, (int) crc.getValue())
+                .rewind();
+
+        try {
+            log.position(log.size());
+            while (record.hasRemaining()) {
+                log.write(record);
+            }
+            if (syncWrites) {
+                log.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to append to token log", e);
+        }
+        logRecords++;
+    }
+
+    private void loadSnapshot() throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshot)) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            MappedReader reader = new MappedReader(channel, MAP_WINDOW_BYTES);
+            if (reader.getInt() != SNAPSHOT_MAGIC || reader.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported token snapshot " + snapshot);
+            }
+            int count = reader.getInt();
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(
+                        reader.getString(),
+                        reader.getString(),
+                        reader.getString(),
+                        reader.getLong()
+                );
+                if (!entry.isExpired(now)) {
+                    put(entry);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated token snapshot " + snapshot, e);
+        }
+    }
+
+    /**
+     * Applies the records appended since the last snapshot. A torn or corrupted record can only
+     * be the result of an interrupted append, so the log is cut off right before it.
+     */
+    private void replayLog() throws IOException {
+        long size = log.size();
+        if (size == 0) {
+            return;
+        }
+
+        MappedReader reader = new MappedReader(log, MAP_WINDOW_BYTES);
+        CRC32 crc = new CRC32();
+        long valid = 0;
+        while (reader.remaining() >= LOG_RECORD_HEADER_BYTES) {
+            int payloadLength = reader.getInt();
+            int checksum = reader.getInt();
+            if (payloadLength <= 0 || payloadLength > reader.remaining()) {
+                break;
+            }
+            ByteBuffer payload = reader.getBuffer(payloadLength);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            byte operation = payload.get();
+            String subject = readString(payload);
+            String type = readString(payload);
+            if (operation == SAVE) {
+                put(new Entry(subject, type, readString(payload), payload.getLong()));
+            } else {
+                delete(new Entry(subject, type, null, 0));
+            }
+            valid = reader.position();
+            logRecords++;
+        }
+
+        if (valid < size) {
+            log.truncate(valid);
+        }
+    }
+
+    private static void writeString(
+            final DataOutputStream out,
+            final String value
+    ) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sequential reader of a file mapped in windows. A window is remapped at the current position
+     * whenever the next read does not fit into it, so a single read may not exceed the window.
+     */
+    static final class MappedReader {
+
+        private final FileChannel channel;
+
+        private final long size;
+
+        private final long window;
+
+        /** Position of the current window within the file. */
+        private long base;
+
+        private MappedByteBuffer buffer;
+
+        MappedReader(
+                final FileChannel channel,
+                final long window
+        ) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.window = window;
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, window));
+        }
+
+        /** Returns the position of the reader within the file. */
+        long position() {
+            return base + buffer.position();
+        }
+
+        /** Returns the number of bytes between the position and the end of the file. */
+        long remaining() {
+            return size - position();
+        }
+
+        int getInt() throws IOException {
+            return ensure(Integer.BYTES).getInt();
+        }
+
+        long getLong() throws IOException {
+            return ensure(Long.BYTES).getLong();
+        }
+
+        String getString() throws IOException {
+            byte[] bytes = new byte[getInt()];
+            ensure(bytes.length).get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /** Returns the next length bytes as a buffer of their own and moves past them. */
+        ByteBuffer getBuffer(final int length) throws IOException {
+            ByteBuffer bytes = ensure(length).slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            return bytes;
+        }
+
+        /**
+         * Returns the window holding the next length bytes, mapping a new window at the position
+         * if the current one ends before them.
+         *
+         * @throws BufferUnderflowException if the file ends before them
+         */
+        private MappedByteBuffer ensure(final int length) throws IOException {
+            if (length < 0 || length > remaining()) {
+                throw new BufferUnderflowException();
+            }
+            if (buffer.remaining() < length) {
+                if (length > window) {
+                    throw new IOException("Record of " + length + " bytes exceeds the mapping window");
+                }
+                base = position();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(size - base, window));
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * A stored token together with the key it is stored under and its expiration.
+     *
+     * @param subject the subject of the token
+     * @param type the type of the token
+     * @param token the JWT token
+     * @param expiresAt the expiration of the token in epoch milliseconds
+     */
+    private record Entry(
+            String subject,
+            String type,
+            String token,
+            long expiresAt
+    ) {
+
+        boolean isExpired(final long now) {
+            return expiresAt <= now;
+        }
+    }
+}
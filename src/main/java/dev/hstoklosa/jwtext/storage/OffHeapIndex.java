@@ -0,0 +1,220 @@
+package dev.hstoklosa.jwtext.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Open-addressing hash index kept in direct memory.
+ *
+ * Every slot holds a 64-bit hash and a 64-bit record address. Collisions are resolved by linear
+ * probing and removals use backward-shift deletion, so no tombstones are left behind. Equal hashes
+ * may occupy several slots; callers walk the probe run and decide which address they are after.
+ */
+final class OffHeapIndex {
+
+    /** Number of bytes taken by a single slot: the hash followed by the address. */
+    private static final int SLOT_BYTES = 16;
+
+    /** Largest power-of-two number of slots whose table still fits into a single ByteBuffer. */
+    private static final int MAX_SLOTS = 1 << 26;
+
+    /** Slot table, addresses are stored incremented by one so that zero marks an empty slot. */
+    private ByteBuffer slots;
+
+    /** Mask applied to hashes to obtain a slot number. */
+    private int mask;
+
+    /** Number of occupied slots. */
+    private int size;
+
+    /**
+     * Creates an index with the given initial number of slots.
+     *
+     * @param initialSlots the initial number of slots, rounded up to a power of two
+     */
+    OffHeapIndex(final int initialSlots) {
+        int capacity = Integer.highestOneBit(Math.max(16, initialSlots - 1) << 1);
+        this.slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Returns the slot at which the probe run for the hash starts.
+     *
+     * @param hash the hash of the entry
+     * @return the home slot of the hash
+     */
+    int home(final long hash) {
+        return (int) hash & mask;
+    }
+
+    /**
+     * Returns the slot following the provided one in probe order.
+     *
+     * @param slot the current slot
+     * @return the next slot
+     */
+    int next(final int slot) {
+        return (slot + 1) & mask;
+    }
+
+    /**
+     * Checks whether the slot is unoccupied, which terminates a probe run.
+     *
+     * @param slot the slot to check
+     * @return true if the slot is empty, false otherwise
+     */
+    boolean isEmpty(final int slot) {
+        return slots.getLong(slot * SLOT_BYTES + 8) == 0;
+    }
+
+    /**
+     * Returns the hash stored in an occupied slot.
+     *
+     * @param slot the slot to read
+     * @return the stored hash
+     */
+    long hash(final int slot) {
+        return slots.getLong(slot * SLOT_BYTES);
+    }
+
+    /**
+     * Returns the record address stored in an occupied slot.
+     *
+     * @param slot the slot to read
+     * @return the stored address
+     */
+    long address(final int slot) {
+        return slots.getLong(slot * SLOT_BYTES + 8) - 1;
+    }
+
+    /**
+     * Adds a hash-address pair, growing the table when its load factor exceeds 3/4.
+     *
+     * @param hash the hash of the entry
+     * @param address the address of the record
+     */
+    void insert(
+            final long hash,
+            final long address
+    ) {
+        if ((size + 1L) * 4 > (mask + 1L) * 3) {
+            grow();
+        }
+        put(hash, address);
+        size++;
+    }
+
+    /**
+     * Points the slot holding the given hash-address pair at a new address.
+     *
+     * @param hash the hash of the entry
+     * @param oldAddress the address currently stored
+     * @param newAddress the address to store instead
+     * @return true if the pair was found, false otherwise
+     */
+    boolean replace(
+            final long hash,
+            final long oldAddress,
+            final long newAddress
+    ) {
+        int slot = find(hash, oldAddress);
+        if (slot < 0) {
+            return false;
+        }
+        slots.putLong(slot * SLOT_BYTES + 8, newAddress + 1);
+        return true;
+    }
+
+    /**
+     * Removes the given hash-address pair.
+     *
+     * @param hash the hash of the entry
+     * @param address the address of the record
+     * @return true if the pair was found and removed, false otherwise
+     */
+    boolean delete(
+            final long hash,
+            final long address
+    ) {
+        int slot = find(hash, address);
+        if (slot < 0) {
+            return false;
+        }
+        int hole = slot;
+        int current = next(hole);
+        while (!isEmpty(current)) {
+            int home = home(hash(current));
+            boolean reachable = hole <= current
+                    ? hole < home && home <= current
+                    : hole < home || home <= current;
+            if (!reachable) {
+                slots.putLong(hole * SLOT_BYTES, hash(current));
+                slots.putLong(hole * SLOT_BYTES + 8, address(current) + 1);
+                hole = current;
+            }
+            current = next(current);
+        }
+        slots.putLong(hole * SLOT_BYTES, 0);
+        slots.putLong(hole * SLOT_BYTES + 8, 0);
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns the number of occupied slots.
+     *
+     * @return the number of entries in the index
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of direct memory bytes taken by the slot table.
+     *
+     * @return the size of the slot table in bytes
+     */
+    long capacityBytes() {
+        return slots.capacity();
+    }
+
+    private int find(
+            final long hash,
+            final long address
+    ) {
+        for (int slot = home(hash); !isEmpty(slot); slot = next(slot)) {
+            if (hash(slot) == hash && address(slot) == address) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void put(
+            final long hash,
+            final long address
+    ) {
+        int slot = home(hash);
+        while (!isEmpty(slot)) {
+            slot = next(slot);
+        }
+        slots.putLong(slot * SLOT_BYTES, hash);
+        slots.putLong(slot * SLOT_BYTES + 8, address + 1);
+    }
+
+    private void grow() {
+        int capacity = mask + 1;
+        if (capacity >= MAX_SLOTS) {
+            throw new IllegalStateException("Off-heap index cannot hold more than " + size + " entries");
+        }
+        ByteBuffer previous = slots;
+        slots = ByteBuffer.allocateDirect(capacity * 2 * SLOT_BYTES);
+        mask = capacity * 2 - 1;
+        for (int slot = 0; slot < capacity; slot++) {
+            long address = previous.getLong(slot * SLOT_BYTES + 8);
+            if (address != 0) {
+                put(previous.getLong(slot * SLOT_BYTES), address - 1);
+            }
+        }
+    }
+}
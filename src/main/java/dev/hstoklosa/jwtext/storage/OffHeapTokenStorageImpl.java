@@ -0,0 +1,620 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Implementation of TokenStorage that keeps subjects, types and tokens outside the Java heap.
+ *
+ * Records are appended to an arena of direct ByteBuffers of a fixed total capacity and located
+ * through an open-addressing index that lives in direct memory as well, so the heap footprint does
+ * not grow with the number of stored tokens. Space held by overwritten, removed and expired records
+ * is reclaimed by compacting the arena in place once it runs out of room (thread-safe).
+ */
+public class OffHeapTokenStorageImpl implements TokenStorage {
+
+    /** Default capacity of the arena in bytes (64 MiB). */
+    public static final long DEFAULT_CAPACITY_BYTES = 64L * 1024 * 1024;
+
+    /** Largest size of a single arena chunk, ByteBuffers are indexed by int. */
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    /** Initial number of slots in the index. */
+    private static final int INITIAL_INDEX_SLOTS = 1024;
+
+    /** Offset of the record status byte. */
+    private static final int STATUS = 0;
+
+    /** Offset of the hash of the subject and type. */
+    private static final int HASH = 1;
+
+    /** Offset of the hash of the subject. */
+    private static final int SUBJECT_HASH = 9;
+
+    /** Offset of the subject length. */
+    private static final int SUBJECT_LENGTH = 17;
+
+    /** Offset of the type length. */
+    private static final int TYPE_LENGTH = 21;
+
+    /** Offset of the token length. */
+    private static final int TOKEN_LENGTH = 25;
+
+    /** Offset of the expiration timestamp in epoch milliseconds. */
+    private static final int EXPIRES_AT = 29;
+
+    /** Size of the record header, the subject, type and token bytes follow it. */
+    private static final int HEADER_BYTES = 37;
+
+    /** Status of a record that has been overwritten or removed. */
+    private static final byte DEAD = 0;
+
+    /** Status of a record that is referenced by the index. */
+    private static final byte LIVE = 1;
+
+    /** Marker returned when no record matches. */
+    private static final long NOT_FOUND = -1;
+
+    /** Total number of bytes the arena may take. */
+    private final long capacityBytes;
+
+    /** Size of every arena chunk but the last one. */
+    private final int chunkBytes;
+
+    /** Arena chunks, allocated lazily as records are appended. */
+    private final ByteBuffer[] chunks;
+
+    /** Number of bytes written into every chunk. */
+    private final int[] chunkUsed;
+
+    /** Index of subject and type hashes to record addresses. */
+    private final OffHeapIndex index;
+
+    /** Index of subject hashes to the addresses of all records of the subject. */
+    private final OffHeapIndex subjectIndex;
+
+    /** Guards the arena and the index. */
+    private final ReadWriteLock lock;
+
+    /** Chunk that new records are appended to. */
+    private int currentChunk;
+
+    /** Reusable buffer for moving records during compaction. */
+    private byte[] scratch;
+
+    /** Creates an object with the default capacity. */
+    public OffHeapTokenStorageImpl() {
+        this(DEFAULT_CAPACITY_BYTES);
+    }
+
+    /**
+     * Creates an object with the provided arena capacity.
+     *
+     * @param capacityBytes the number of direct memory bytes available for token records
+     */
+    public OffHeapTokenStorageImpl(final long capacityBytes) {
+        if (capacityBytes <= HEADER_BYTES) {
+            throw new IllegalArgumentException("Capacity must be larger than " + HEADER_BYTES + " bytes");
+        }
+        int chunkCount = (int) ((capacityBytes + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+        this.capacityBytes = capacityBytes;
+        this.chunkBytes = (int) Math.min(capacityBytes, MAX_CHUNK_BYTES);
+        this.chunks = new ByteBuffer[chunkCount];
+        this.chunkUsed = new int[chunkCount];
+        this.index = new OffHeapIndex(INITIAL_INDEX_SLOTS);
+        this.subjectIndex = new OffHeapIndex(INITIAL_INDEX_SLOTS);
+        this.lock = new ReentrantReadWriteLock();
+        this.scratch = new byte[256];
+    }
+
+    @Override
+    public void save(
+            final String token,
+            final TokenParameters params
+    ) {
+        byte[] subject = encode(params.getSubject());
+        byte[] type = encode(params.getType());
+        byte[] value = encode(token);
+        long hash = hash(subject, type);
+        long subjectHash = hash(subject);
+        long expiresAt = params.getExpiredAt().getTime();
+
+        lock.writeLock().lock();
+        try {
+            long existing = find(hash, subject, type);
+            if (existing != NOT_FOUND) {
+                if (tokenLength(existing) == value.length) {
+                    ByteBuffer chunk = chunk(existing);
+                    int position = position(existing);
+                    chunk.put(position + HEADER_BYTES + subject.length + type.length, value);
+                    chunk.putLong(position + EXPIRES_AT, expiresAt);
+                    return;
+                }
+                release(existing, hash);
+            }
+
+            long address = allocate(HEADER_BYTES + subject.length + type.length + value.length);
+            ByteBuffer chunk = chunk(address);
+            int position = position(address);
+            chunk.put(position + STATUS, LIVE)
+                    .putLong(position + HASH, hash)
+                    .putLong(position + SUBJECT_HASH, subjectHash)
+                    .putInt(position + SUBJECT_LENGTH, subject.length)
+                    .putInt(position + TYPE_LENGTH, type.length)
+                    .putInt(position + TOKEN_LENGTH, value.length)
+                    .putLong(position + EXPIRES_AT, expiresAt)
+                    .put(position + HEADER_BYTES, subject)
+                    .put(position + HEADER_BYTES + subject.length, type)
+                    .put(position + HEADER_BYTES + subject.length + type.length, value);
+            index.insert(hash, address);
+            subjectIndex.insert(subjectHash, address);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean compareAndSaveAll(
+            final String expectedToken,
+            final TokenParameters expectedParams,
+            final Map<String, TokenParameters> tokens
+    ) {
+        lock.writeLock().lock();
+        try {
+            if (!exists(expectedToken, expectedParams)) {
+                return false;
+            }
+            saveAll(tokens);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean exists(
+            final String token,
+            final TokenParameters params
+    ) {
+        byte[] subject = encode(params.getSubject());
+        byte[] type = encode(params.getType());
+        byte[] value = encode(token);
+
+        lock.readLock().lock();
+        try {
+            long address = find(hash(subject, type), subject, type);
+            if (address == NOT_FOUND || isExpired(address, System.currentTimeMillis())) {
+                return false;
+            }
+            return tokenEquals(address, value);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String get(final TokenParameters params) {
+        byte[] subject = encode(params.getSubject());
+        byte[] type = encode(params.getType());
+
+        lock.readLock().lock();
+        try {
+            long address = find(hash(subject, type), subject, type);
+            if (address == NOT_FOUND || isExpired(address, System.currentTimeMillis())) {
+                return null;
+            }
+            return token(address);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean touch(
+            final TokenParameters params,
+            final Date expiresAt
+    ) {
+        byte[] subject = encode(params.getSubject());
+        byte[] type = encode(params.getType());
+
+        lock.writeLock().lock();
+        try {
+            long address = find(hash(subject, type), subject, type);
+            if (address == NOT_FOUND || isExpired(address, System.currentTimeMillis())) {
+                return false;
+            }
+            chunk(address).putLong(position(address) + EXPIRES_AT, expiresAt.getTime());
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(final String token) {
+        byte[] value = encode(token);
+        boolean deleted = false;
+
+        lock.writeLock().lock();
+        try {
+            for (int c = 0; c < chunks.length && chunks[c] != null; c++) {
+                ByteBuffer chunk = chunks[c];
+                for (int position = 0; position < chunkUsed[c]; position += length(chunk, position)) {
+                    long address = address(c, position);
+                    if (chunk.get(position + STATUS) == LIVE && tokenEquals(address, value)) {
+                        release(address, chunk.getLong(position + HASH));
+                        deleted = true;
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        return deleted;
+    }
+
+    @Override
+    public boolean remove(final TokenParameters params) {
+        byte[] subject = encode(params.getSubject());
+        byte[] type = encode(params.getType());
+        long hash = hash(subject, type);
+
+        lock.writeLock().lock();
+        try {
+            long address = find(hash, subject, type);
+            if (address == NOT_FOUND) {
+                return false;
+            }
+            release(address, hash);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean removeAll(final String subject) {
+        byte[] subjectBytes = encode(subject);
+        long subjectHash = hash(subjectBytes);
+        boolean deleted = false;
+
+        lock.writeLock().lock();
+        try {
+            long address;
+            while ((address = findBySubject(subjectHash, subjectBytes)) != NOT_FOUND) {
+                deleted = true;
+                release(address, chunk(address).getLong(position(address) + HASH));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Returns the number of records referenced by the index, including expired records
+     * that have not been compacted away yet.
+     *
+     * @return the number of stored tokens
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of arena bytes currently taken by live and not yet reclaimed records.
+     *
+     * @return the number of used arena bytes
+     */
+    public long usedBytes() {
+        lock.readLock().lock();
+        try {
+            long used = 0;
+            for (int c = 0; c <= currentChunk && c < chunks.length; c++) {
+                used += chunkUsed[c];
+            }
+            return used;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the configured capacity of the arena.
+     *
+     * @return the capacity in bytes
+     */
+    public long capacityBytes() {
+        return capacityBytes;
+    }
+
+    private long find(
+            final long hash,
+            final byte[] subject,
+            final byte[] type
+    ) {
+        for (int slot = index.home(hash); !index.isEmpty(slot); slot = index.next(slot)) {
+            if (index.hash(slot) == hash && keyEquals(index.address(slot), subject, type)) {
+                return index.address(slot);
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private long findBySubject(
+            final long subjectHash,
+            final byte[] subject
+    ) {
+        for (int slot = subjectIndex.home(subjectHash); !subjectIndex.isEmpty(slot); slot = subjectIndex.next(slot)) {
+            long address = subjectIndex.address(slot);
+            if (subjectIndex.hash(slot) == subjectHash && subjectEquals(address, subject)) {
+                return address;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private void release(
+            final long address,
+            final long hash
+    ) {
+        ByteBuffer chunk = chunk(address);
+        int position = position(address);
+        chunk.put(position + STATUS, DEAD);
+        index.delete(hash, address);
+        subjectIndex.delete(chunk.getLong(position + SUBJECT_HASH), address);
+    }
+
+    private long allocate(final int length) {
+        if (length > chunkBytes) {
+            throw new IllegalArgumentException(
+                    "Token record of " + length + " bytes exceeds the arena chunk size of " + chunkBytes + " bytes"
+            );
+        }
+        long address = append(length);
+        if (address == NOT_FOUND) {
+            compact();
+            address = append(length);
+        }
+        if (address == NOT_FOUND) {
+            throw new IllegalStateException("Off-heap token storage is full (" + capacityBytes + " bytes)");
+        }
+        return address;
+    }
+
+    private long append(final int length) {
+        while (currentChunk < chunks.length) {
+            if (chunkUsed[currentChunk] + length <= chunkCapacity(currentChunk)) {
+                if (chunks[currentChunk] == null) {
+                    chunks[currentChunk] = ByteBuffer.allocateDirect(chunkCapacity(currentChunk));
+                }
+                long address = address(currentChunk, chunkUsed[currentChunk]);
+                chunkUsed[currentChunk] += length;
+                return address;
+            }
+            currentChunk++;
+        }
+        currentChunk = chunks.length - 1;
+        return NOT_FOUND;
+    }
+
+    /**
+     * Slides every live, unexpired record towards the start of the arena, dropping dead and
+     * expired records on the way. Records only ever move backwards, so the copy never overtakes
+     * the record that is being read.
+     */
+    private void compact() {
+        long now = System.currentTimeMillis();
+        int targetChunk = 0;
+        int targetPosition = 0;
+
+        for (int c = 0; c < chunks.length && chunks[c] != null; c++) {
+            ByteBuffer chunk = chunks[c];
+            int used = chunkUsed[c];
+            for (int position = 0; position < used; ) {
+                int length = length(chunk, position);
+                long address = address(c, position);
+                if (chunk.get(position + STATUS) == LIVE) {
+                    long hash = chunk.getLong(position + HASH);
+                    if (isExpired(address, now)) {
+                        release(address, hash);
+                    } else {
+                        if (targetPosition + length > chunkCapacity(targetChunk)) {
+                            chunkUsed[targetChunk] = targetPosition;
+                            targetChunk++;
+                            targetPosition = 0;
+                        }
+                        long target = address(targetChunk, targetPosition);
+                        if (target != address) {
+                            long subjectHash = chunk.getLong(position + SUBJECT_HASH);
+                            move(chunk, position, chunks[targetChunk], targetPosition, length);
+                            index.replace(hash, address, target);
+                            subjectIndex.replace(subjectHash, address, target);
+                        }
+                        targetPosition += length;
+                    }
+                }
+                position += length;
+            }
+        }
+
+        chunkUsed[targetChunk] = targetPosition;
+        for (int c = targetChunk + 1; c < chunks.length; c++) {
+            chunkUsed[c] = 0;
+        }
+        currentChunk = targetChunk;
+    }
+
+    private void move(
+            final ByteBuffer source,
+            final int sourcePosition,
+            final ByteBuffer target,
+            final int targetPosition,
+            final int length
+    ) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        source.get(sourcePosition, scratch, 0, length);
+        target.put(targetPosition, scratch, 0, length);
+    }
+
+    private boolean keyEquals(
+            final long address,
+            final byte[] subject,
+            final byte[] type
+    ) {
+        ByteBuffer chunk = chunk(address);
+        int position = position(address);
+        return chunk.getInt(position + SUBJECT_LENGTH) == subject.length
+                && chunk.getInt(position + TYPE_LENGTH) == type.length
+                && bytesEqual(chunk, position + HEADER_BYTES, subject)
+                && bytesEqual(chunk, position + HEADER_BYTES + subject.length, type);
+    }
+
+    private boolean subjectEquals(
+            final long address,
+            final byte[] subject
+    ) {
+        ByteBuffer chunk = chunk(address);
+        int position = position(address);
+        return chunk.getInt(position + SUBJECT_LENGTH) == subject.length
+                && bytesEqual(chunk, position + HEADER_BYTES, subject);
+    }
+
+    private boolean tokenEquals(
+            final long address,
+            final byte[] value
+    ) {
+        ByteBuffer chunk = chunk(address);
+        int position = position(address);
+        return chunk.getInt(position + TOKEN_LENGTH) == value.length
+                && bytesEqual(chunk, tokenPosition(chunk, position), value);
+    }
+
+    private String token(final long address) {
+        ByteBuffer chunk = chunk(address);
+        int position = position(address);
+        byte[] value = new byte[chunk.getInt(position + TOKEN_LENGTH)];
+        chunk.get(tokenPosition(chunk, position), value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private int tokenLength(final long address) {
+        return chunk(address).getInt(position(address) + TOKEN_LENGTH);
+    }
+
+    private boolean isExpired(
+            final long address,
+            final long now
+    ) {
+        return chunk(address).getLong(position(address) + EXPIRES_AT) <= now;
+    }
+
+    private ByteBuffer chunk(final long address) {
+        return chunks[(int) (address >>> 32)];
+    }
+
+    private int chunkCapacity(final int chunk) {
+        return (int) Math.min(chunkBytes, capacityBytes - (long) chunk * chunkBytes);
+    }
+
+    private static int position(final long address) {
+        return (int) address;
+    }
+
+    private static long address(
+            final int chunk,
+            final int position
+    ) {
+        return (long) chunk << 32 | position;
+    }
+
+    private static int length(
+            final ByteBuffer chunk,
+            final int position
+    ) {
+        return HEADER_BYTES
+                + chunk.getInt(position + SUBJECT_LENGTH)
+                + chunk.getInt(position + TYPE_LENGTH)
+                + chunk.getInt(position + TOKEN_LENGTH);
+    }
+
+    private static int tokenPosition(
+            final ByteBuffer chunk,
+            final int position
+    ) {
+        return position + HEADER_BYTES
+                + chunk.getInt(position + SUBJECT_LENGTH)
+                + chunk.getInt(position + TYPE_LENGTH);
+    }
+
+    private static boolean bytesEqual(
+            final ByteBuffer chunk,
+            final int position,
+            final byte[] bytes
+    ) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (chunk.get(position + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] encode(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long hash(final byte[] subject) {
+        return mix(fnv(0xcbf29ce484222325L, subject));
+    }
+
+    private static long hash(
+            final byte[] subject,
+            final byte[] type
+    ) {
+        long hash = fnv(0xcbf29ce484222325L, subject);
+        hash = (hash ^ 0xff) * 0x100000001b3L;
+        return mix(fnv(hash, type));
+    }
+
+    /** Continues a 64-bit FNV-1a hash over the bytes. */
+    private static long fnv(
+            final long seed,
+            final byte[] bytes
+    ) {
+        long hash = seed;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Finishes a hash with the MurmurHash3 mixer so that the low bits used for
+     * slot selection are well distributed.
+     */
+    private static long mix(final long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb34a7fc5afd2L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,346 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.redis.DefaultRedisSchema;
+import dev.hstoklosa.jwtext.redis.LatencyHistogram;
+import dev.hstoklosa.jwtext.redis.RedisSchema;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Subscriber to Redis keyspace notifications of token keys, keeping local copies of tokens in
+ * sync with the shared storage.
+ *
+ * Registering a listener starts a background subscriber receiving the events of keys matching the
+ * token key pattern of the schema that replace, expire or remove a token ("set", "expire",
+ * "pexpire", "expired" and "del"), and passes the subject and type of each such key to the
+ * listeners, e.g. TieredTokenStorageImpl. Events of reference keys are passed as handles, e.g. to
+ * ReferenceTokenResolver. Redis must publish generic,
+ * string and expired keyspace events ("Kg$x" in notify-keyspace-events), which
+ * enableNotifications sets where CONFIG is permitted.
+ *
+ * Keyspace notifications are fire-and-forget, so events published while the subscriber is
+ * disconnected are lost and listeners are reset after every reconnect. To measure the delay of
+ * events and detect lost ones while connected, the subscriber periodically deletes a probe key of
+ * its own and records when its event arrives (thread-safe).
+ */
+public class RedisKeyspaceSubscriber implements AutoCloseable {
+
+    /** Default interval of probes measuring the delay of events. */
+    public static final Duration DEFAULT_PROBE_INTERVAL = Duration.ofSeconds(5);
+
+    /** Subject of the probe keys, never passed to listeners. */
+    public static final String PROBE_SUBJECT = "jwt-ext-keyspace-probe";
+
+    /** Keyspace event classes the subscriber relies on. */
+    private static final String REQUIRED_EVENTS = "Kg$x";
+
+    /** Events after which a local copy of the token may be stale. */
+    private static final Set<String> EVICTING_EVENTS = Set.of("set", "expire", "pexpire", "expired", "del");
+
+    /** Delay before the subscriber reconnects after losing its connection. */
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    /** Pool of Redis connections. */
+    private final JedisPool jedisPool;
+
+    /** Schema of the token keys. */
+    private final RedisSchema redisSchema;
+
+    /** Prefix of the keyspace channels of the database, followed by the key. */
+    private final String channelPrefix;
+
+    /** Interval of probes, zero to disable them. */
+    private final Duration probeInterval;
+
+    /** Key deleted by the probes of this subscriber. */
+    private final String probeKey;
+
+    /** Listeners notified about evicted tokens. */
+    private final List<TokenEvictionListener> listeners;
+
+    /** Delay between deleting the probe key and receiving its event. */
+    private final LatencyHistogram lag;
+
+    /** Number of received events of token and reference keys. */
+    private final LongAdder events;
+
+    /** Number of probes sent. */
+    private final LongAdder probes;
+
+    /** Number of probes whose event did not arrive before the next probe. */
+    private final LongAdder missedProbes;
+
+    /** Number of reconnects after which events may have been missed. */
+    private final LongAdder reconnects;
+
+    /** Time the outstanding probe was sent at in nanoseconds, zero if none is outstanding. */
+    private volatile long probeSentAt;
+
+    /** Subscription to the keyspace channels, present while the subscriber is connected. */
+    private volatile JedisPubSub subscription;
+
+    /** Background thread receiving events. */
+    private Thread subscriber;
+
+    /** Background thread sending probes. */
+    private Thread prober;
+
+    /** Whether the object has been closed. */
+    private volatile boolean closed;
+
+    /**
+     * Creates an object for database 0 with the DefaultRedisSchema and the default probe interval.
+     *
+     * @param jedisPool JedisPool object
+     */
+    public RedisKeyspaceSubscriber(final JedisPool jedisPool) {
+        this(jedisPool, new DefaultRedisSchema(), 0, DEFAULT_PROBE_INTERVAL);
+    }
+
+    /**
+     * Creates an object with the provided settings.
+     *
+     * @param jedisPool     JedisPool object
+     * @param redisSchema   RedisSchema object the token keys were generated with
+     * @param database      the index of the database holding the token keys
+     * @param probeInterval the interval of probes measuring the delay of events, zero to disable them
+     */
+    public RedisKeyspaceSubscriber(
+            final JedisPool jedisPool,
+            final RedisSchema redisSchema,
+            final int database,
+            final Duration probeInterval
+    ) {
+        this.jedisPool = jedisPool;
+        this.redisSchema = redisSchema;
+        this.channelPrefix = "__keyspace@" + database + "__:";
+        this.probeInterval = probeInterval;
+        this.probeKey = redisSchema.subjectTokenKey(PROBE_SUBJECT, UUID.randomUUID().toString());
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.lag = new LatencyHistogram();
+        this.events = new LongAdder();
+        this.probes = new LongAdder();
+        this.missedProbes = new LongAdder();
+        this.reconnects = new LongAdder();
+    }
+
+    /**
+     * Adds the event classes the subscriber relies on to the notify-keyspace-events setting of
+     * the server, keeping the classes already enabled.
+     *
+     * @throws JedisException if the server does not permit CONFIG, e.g. on managed services,
+     *                        where the setting has to be changed in the service configuration
+     */
+    public void enableNotifications() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            String flags = jedis.configGet("notify-keyspace-events").getOrDefault("notify-keyspace-events", "");
+            StringBuilder enabled = new StringBuilder(flags);
+            for (char flag : REQUIRED_EVENTS.toCharArray()) {
+                boolean covered = flags.indexOf(flag) >= 0 || flag != 'K' && flags.indexOf('A') >= 0;
+                if (!covered) {
+                    enabled.append(flag);
+                }
+            }
+            jedis.configSet("notify-keyspace-events", enabled.toString());
+        }
+    }
+
+    /**
+     * Registers a listener and starts the background subscriber if it is not running yet.
+     *
+     * @param listener the listener notified about evicted tokens
+     */
+    public void addListener(final TokenEvictionListener listener) {
+        listeners.add(listener);
+        subscribe();
+    }
+
+    /**
+     * Returns the counters of received events and probes.
+     *
+     * @return the statistics of the subscriber
+     */
+    public Statistics getStatistics() {
+        return new Statistics(
+                events.sum(),
+                probes.sum(),
+                missedProbes.sum(),
+                reconnects.sum(),
+                lag.percentileNanos(50),
+                lag.percentileNanos(99)
+        );
+    }
+
+    /**
+     * Stops the background threads, listeners are no longer notified.
+     */
+    @Override
+    public void close() {
+        Thread subscriberThread;
+        Thread proberThread;
+        synchronized (this) {
+            closed = true;
+            subscriberThread = subscriber;
+            proberThread = prober;
+        }
+        JedisPubSub current = subscription;
+        if (current != null && current.isSubscribed()) {
+            current.punsubscribe();
+        }
+        if (subscriberThread != null) {
+            subscriberThread.interrupt();
+        }
+        if (proberThread != null) {
+            LockSupport.unpark(proberThread);
+        }
+    }
+
+    private synchronized void subscribe() {
+        if (subscriber != null || closed) {
+            return;
+        }
+        subscriber = new Thread(this::listen, "jwt-ext-keyspace-subscriber");
+        subscriber.setDaemon(true);
+        subscriber.start();
+        if (!probeInterval.isZero()) {
+            prober = new Thread(this::probe, "jwt-ext-keyspace-prober");
+            prober.setDaemon(true);
+            prober.start();
+        }
+    }
+
+    /**
+     * Keeps a subscription to the keyspace channels of token and reference keys open until closed.
+     */
+    private void listen() {
+        boolean reconnect = false;
+        while (!closed) {
+            boolean resubscribed = reconnect;
+            JedisPubSub pubSub = new JedisPubSub() {
+                @Override
+                public void onPSubscribe(
+                        final String pattern,
+                        final int subscribedChannels
+                ) {
+                    if (resubscribed && subscribedChannels == 1) {
+                        reconnects.increment();
+                        listeners.forEach(TokenEvictionListener::onReset);
+                    }
+                }
+
+                @Override
+                public void onPMessage(
+                        final String pattern,
+                        final String channel,
+                        final String event
+                ) {
+                    onEvent(channel.substring(channelPrefix.length()), event);
+                }
+            };
+            subscription = pubSub;
+
+            try (Jedis jedis = jedisPool.getResource()) {
+                if (!closed) {
+                    jedis.psubscribe(
+                            pubSub,
+                            channelPrefix + redisSchema.subjectTokenKeyPattern(),
+                            channelPrefix + redisSchema.referenceKeyPattern()
+                    );
+                }
+            } catch (JedisException e) {
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            reconnect = true;
+        }
+    }
+
+    private void onEvent(
+            final String key,
+            final String event
+    ) {
+        if (key.equals(probeKey)) {
+            long sentAt = probeSentAt;
+            if ("del".equals(event) && sentAt != 0) {
+                lag.record(System.nanoTime() - sentAt);
+                probeSentAt = 0;
+            }
+            return;
+        }
+        if (!EVICTING_EVENTS.contains(event)) {
+            return;
+        }
+
+        String handle = redisSchema.parseReferenceKey(key);
+        if (handle != null) {
+            events.increment();
+            listeners.forEach(listener -> listener.onEvictReference(handle));
+            return;
+        }
+        RedisSchema.TokenKey tokenKey = redisSchema.parseSubjectTokenKey(key);
+        if (tokenKey == null || PROBE_SUBJECT.equals(tokenKey.subject())) {
+            return;
+        }
+        events.increment();
+        listeners.forEach(listener -> listener.onEvict(tokenKey.subject(), tokenKey.type()));
+    }
+
+    /**
+     * Deletes the probe key once per interval. A probe whose event has not arrived by the next
+     * one is counted as missed.
+     */
+    private void probe() {
+        while (!closed) {
+            LockSupport.parkNanos(probeInterval.toNanos());
+            if (closed) {
+                return;
+            }
+            if (probeSentAt != 0) {
+                missedProbes.increment();
+            }
+            try (Jedis jedis = jedisPool.getResource()) {
+                jedis.set(probeKey, "");
+                probeSentAt = System.nanoTime();
+                jedis.del(probeKey);
+                probes.increment();
+            } catch (JedisException e) {
+                probeSentAt = 0;
+            }
+        }
+    }
+
+    /**
+     * Counters of a RedisKeyspaceSubscriber.
+     *
+     * @param events the number of events of token and reference keys passed to the listeners
+     * @param probes the number of probes sent
+     * @param missedProbes the number of probes whose event did not arrive before the next probe
+     * @param reconnects the number of reconnects after which events may have been missed
+     * @param medianLagNanos the median delay of probe events, rounded up to a bucket
+     * @param p99LagNanos the 99th percentile of the delay of probe events, rounded up to a bucket
+     */
+    public record Statistics(
+            long events,
+            long probes,
+            long missedProbes,
+            long reconnects,
+            long medianLagNanos,
+            long p99LagNanos
+    ) {
+    }
+}
@@ -0,0 +1,218 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.redis.DefaultRedisSchema;
+import dev.hstoklosa.jwtext.redis.RedisSchema;
+import dev.hstoklosa.jwtext.redis.RedisScript;
+import dev.hstoklosa.jwtext.redis.RedisScriptRegistry;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Implementation of RevocationStorage with Redis integration.
+ *
+ * Watermarks are stored as plain keys and every change is published on the revocation channel
+ * of the schema. Registering a listener starts a background subscriber, so that every node can
+ * evict its cached watermarks as soon as another node revokes a subject.
+ */
+public class RedisRevocationStorageImpl implements RevocationStorage, AutoCloseable {
+
+    /**
+     * Scripts of the storage, the version of a script is increased whenever its body changes.
+     */
+    private static final RedisScriptRegistry SCRIPTS = new RedisScriptRegistry();
+
+    /**
+     * Moves a watermark forward, optionally expires it, and publishes the subject.
+     */
+    private static final RedisScript REVOKE_SCRIPT = SCRIPTS.register("revoke", 1, """
+            local current = tonumber(redis.call('get', KEYS[1]) or '0')
+            if tonumber(ARGV[1]) > current then
+              redis.call('set', KEYS[1], ARGV[1])
+            end
+            if tonumber(ARGV[4]) > 0 then
+              redis.call('pexpire', KEYS[1], ARGV[4])
+            end
+            redis.call('publish', ARGV[2], ARGV[3])
+            return 1
+            """);
+
+    /** Delay before the subscriber reconnects after losing its connection. */
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    /**
+     * Pool of Redis connections.
+     */
+    private final JedisPool jedisPool;
+
+    /**
+     * Schema of keys for storing watermarks.
+     */
+    private final RedisSchema redisSchema;
+
+    /**
+     * Time a watermark is kept after it was last moved, zero to keep it forever.
+     */
+    private final Duration retention;
+
+    /**
+     * Listeners notified about moved watermarks.
+     */
+    private final List<RevocationListener> listeners;
+
+    /**
+     * Subscription to the revocation channel, present while the subscriber is connected.
+     */
+    private volatile JedisPubSub subscription;
+
+    /**
+     * Background thread receiving revoked subjects.
+     */
+    private Thread subscriber;
+
+    /**
+     * Whether the object has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Creates an object with the provided JedisPool and DefaultRedisSchema that keeps watermarks forever.
+     *
+     * @param jedisPool     JedisPool object
+     */
+    public RedisRevocationStorageImpl(final JedisPool jedisPool) {
+        this(jedisPool, new DefaultRedisSchema(), Duration.ZERO);
+    }
+
+    /**
+     * Creates an object with the provided JedisPool and RedisSchema.
+     *
+     * @param jedisPool     JedisPool object
+     * @param redisSchema   RedisSchema object
+     * @param retention     time a watermark is kept after it was last moved, should exceed the
+     *                      longest token lifetime; zero keeps watermarks forever
+     */
+    public RedisRevocationStorageImpl(
+            final JedisPool jedisPool,
+            final RedisSchema redisSchema,
+            final Duration retention
+    ) {
+        this.jedisPool = jedisPool;
+        this.redisSchema = redisSchema;
+        this.retention = retention;
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    @Override
+    public void revoke(
+            final String subject,
+            final Date issuedBefore
+    ) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            REVOKE_SCRIPT.eval(
+                    jedis,
+                    List.of(redisSchema.revocationKey(subject)),
+                    List.of(
+                            String.valueOf(issuedBefore.getTime()),
+                            redisSchema.revocationChannel(),
+                            subject,
+                            String.valueOf(retention.toMillis())
+                    )
+            );
+        }
+    }
+
+    @Override
+    public Date getRevokedBefore(final String subject) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            String watermark = jedis.get(redisSchema.revocationKey(subject));
+            return watermark == null ? null : new Date(Long.parseLong(watermark));
+        }
+    }
+
+    @Override
+    public void addListener(final RevocationListener listener) {
+        listeners.add(listener);
+        subscribe();
+    }
+
+    /**
+     * Stops the background subscriber, listeners are no longer notified.
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            thread = subscriber;
+        }
+        JedisPubSub current = subscription;
+        if (current != null && current.isSubscribed()) {
+            current.unsubscribe();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private synchronized void subscribe() {
+        if (subscriber != null || closed) {
+            return;
+        }
+        subscriber = new Thread(this::listen, "jwt-ext-revocation-subscriber");
+        subscriber.setDaemon(true);
+        subscriber.start();
+    }
+
+    /**
+     * Keeps a subscription to the revocation channel open until closed. Messages published while
+     * the subscriber was disconnected are lost, so listeners are reset after every reconnect.
+     */
+    private void listen() {
+        boolean reconnect = false;
+        while (!closed) {
+            boolean resubscribed = reconnect;
+            JedisPubSub pubSub = new JedisPubSub() {
+                @Override
+                public void onSubscribe(
+                        final String channel,
+                        final int subscribedChannels
+                ) {
+                    if (resubscribed) {
+                        listeners.forEach(RevocationListener::onReset);
+                    }
+                }
+
+                @Override
+                public void onMessage(
+                        final String channel,
+                        final String subject
+                ) {
+                    listeners.forEach(listener -> listener.onRevoke(subject));
+                }
+            };
+            subscription = pubSub;
+
+            try (Jedis jedis = jedisPool.getResource()) {
+                if (!closed) {
+                    jedis.subscribe(pubSub, redisSchema.revocationChannel());
+                }
+            } catch (JedisException e) {
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            reconnect = true;
+        }
+    }
+}
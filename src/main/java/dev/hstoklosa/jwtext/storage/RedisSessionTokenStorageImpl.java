@@ -0,0 +1,533 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+import dev.hstoklosa.jwtext.redis.DefaultRedisSchema;
+import dev.hstoklosa.jwtext.redis.RedisPoolMonitor;
+import dev.hstoklosa.jwtext.redis.RedisPoolOptions;
+import dev.hstoklosa.jwtext.redis.RedisSchema;
+import dev.hstoklosa.jwtext.redis.RedisScript;
+import dev.hstoklosa.jwtext.redis.RedisScriptRegistry;
+
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Implementation of SessionTokenStorage with Redis integration.
+ *
+ * Each stored token is a hash holding its token, subject, type, expiration, the key of the
+ * token starting its session and a sequence ordering tokens issued at the same time, which
+ * expires together with the token. The hash is keyed by the
+ * first 16 bytes of the SHA-256 hash of the token rather than the token itself, so keys stay
+ * short and the sorted sets of subjects do not hold bearer tokens. The token keys of a
+ * subject are members of a sorted set scored by issue time. Saving or rotating a token prunes
+ * the expired members of the set and evicts the least recently issued sessions beyond the cap
+ * in the same Lua script, so concurrent logins of a subject cannot exceed the cap, and the set
+ * expires with the last of its tokens.
+ */
+public class RedisSessionTokenStorageImpl implements SessionTokenStorage {
+
+    /**
+     * Scripts of the storage, the version of a script is increased whenever its body changes.
+     */
+    private static final RedisScriptRegistry SCRIPTS = new RedisScriptRegistry();
+
+    /**
+     * Lua function shared by the scripts changing sessions. It drops the members of the sorted
+     * set of the first argument whose session expired, groups the live members by the session
+     * they continue, evicts the least recently issued sessions beyond the cap of the second
+     * argument, keeps the set alive until the last session expires, and returns the number of
+     * evicted sessions.
+     */
+    private static final String PRUNE_FUNCTION = """
+            local function prune(sessionsKey, maxSessions)
+              local chains, order = {}, {}
+              local members = redis.call('zrange', sessionsKey, 0, -1, 'WITHSCORES')
+              for i = 1, #members, 2 do
+                local key = members[i]
+                local session = redis.call('hmget', key, 'expiresAt', 'chain', 'sequence')
+                if session[1] then
+                  local id = session[2] or key
+                  local chain = chains[id]
+                  if not chain then
+                    chain = {keys = {}, issuedAt = 0, expiresAt = 0, sequence = 0}
+                    chains[id] = chain
+                    order[#order + 1] = chain
+                  end
+                  chain.keys[#chain.keys + 1] = key
+                  chain.issuedAt = math.max(chain.issuedAt, tonumber(members[i + 1]))
+                  chain.expiresAt = math.max(chain.expiresAt, tonumber(session[1]))
+                  chain.sequence = math.max(chain.sequence, tonumber(session[3] or 0))
+                else
+                  redis.call('zrem', sessionsKey, key)
+                end
+              end
+              table.sort(order, function(a, b)
+                if a.issuedAt ~= b.issuedAt then
+                  return a.issuedAt < b.issuedAt
+                end
+                return a.sequence < b.sequence
+              end)
+              local evicted = math.max(0, #order - maxSessions)
+              local last = 0
+              for i = 1, #order do
+                if i <= evicted then
+                  for _, key in ipairs(order[i].keys) do
+                    redis.call('del', key)
+                    redis.call('zrem', sessionsKey, key)
+                  end
+                else
+                  last = math.max(last, order[i].expiresAt)
+                end
+              end
+              if last > 0 then
+                redis.call('pexpireat', sessionsKey, last)
+              end
+              return evicted
+            end
+            """;
+
+    /**
+     * Lua function returning the key of the newest session of the type of the second argument
+     * in the sorted set of the first argument, or false if there is none. Sessions issued at the
+     * same time are ordered by their sequence.
+     */
+    private static final String NEWEST_FUNCTION = """
+            local function newest(sessionsKey, type)
+              local best, bestScore, bestSequence = false, 0, 0
+              local members = redis.call('zrevrange', sessionsKey, 0, -1, 'WITHSCORES')
+              for i = 1, #members, 2 do
+                local score = tonumber(members[i + 1])
+                if best and score < bestScore then
+                  break
+                end
+                local session = redis.call('hmget', members[i], 'type', 'sequence')
+                local sequence = tonumber(session[2] or 0)
+                if session[1] == type and (not best or sequence > bestSequence) then
+                  best, bestScore, bestSequence = members[i], score, sequence
+                end
+              end
+              return best
+            end
+            """;
+
+    /**
+     * Lua function returning the sequence of the next session saved to the sorted set of the
+     * first argument, one above the sequence of its newest member. Members are scored by issue
+     * time only, so the sequence orders sessions issued at the same time by order of saving.
+     */
+    private static final String SEQUENCE_FUNCTION = """
+            local function nextSequence(sessionsKey)
+              local last = 0
+              for _, key in ipairs(redis.call('zrange', sessionsKey, 0, -1)) do
+                last = math.max(last, tonumber(redis.call('hget', key, 'sequence') or 0))
+              end
+              return last + 1
+            end
+            """;
+
+    /**
+     * Adds the session of the second key to the sessions of the first key. The arguments are
+     * the token, subject, type, issue time and expiration of the session, and the cap.
+     */
+    private static final RedisScript SAVE_SCRIPT = SCRIPTS.register("session-save", 3, PRUNE_FUNCTION + SEQUENCE_FUNCTION + """
+            local sequence = nextSequence(KEYS[1])
+            redis.call('hset', KEYS[2], 'token', ARGV[1], 'subject', ARGV[2], 'type', ARGV[3], 'expiresAt', ARGV[5], 'chain', KEYS[2], 'sequence', sequence)
+            redis.call('pexpireat', KEYS[2], ARGV[5])
+            redis.call('zadd', KEYS[1], ARGV[4], KEYS[2])
+            return prune(KEYS[1], tonumber(ARGV[6]))
+            """);
+
+    /**
+     * Continues the session of the token of the second key with the tokens of the remaining
+     * keys, if the second key still holds the expected token. The arguments are the expected
+     * token, subject and type, the cap, then the token, type, issue time and expiration of each
+     * new token. The expected token and the tokens of its session with the type of a new token
+     * are deleted before the new tokens join the session. Returns -1 if the expected token is
+     * not stored, or the number of evicted sessions otherwise.
+     */
+    private static final RedisScript COMPARE_AND_SAVE_SCRIPT = SCRIPTS.register("session-compare-and-save", 2, PRUNE_FUNCTION + SEQUENCE_FUNCTION + """
+            local expected = redis.call('hmget', KEYS[2], 'token', 'subject', 'type', 'chain')
+            if expected[1] ~= ARGV[1] or expected[2] ~= ARGV[2] or expected[3] ~= ARGV[3]
+                or not redis.call('zscore', KEYS[1], KEYS[2]) then
+              return -1
+            end
+            local chain = expected[4] or KEYS[2]
+            local sequence = nextSequence(KEYS[1])
+            local types = {}
+            for i = 5, #ARGV, 4 do
+              types[ARGV[i + 1]] = true
+            end
+            for _, key in ipairs(redis.call('zrange', KEYS[1], 0, -1)) do
+              local session = redis.call('hmget', key, 'chain', 'type')
+              if key == KEYS[2] or (session[1] or key) == chain and types[session[2]] then
+                redis.call('del', key)
+                redis.call('zrem', KEYS[1], key)
+              end
+            end
+            local next = 3
+            for i = 5, #ARGV, 4 do
+              redis.call('hset', KEYS[next], 'token', ARGV[i], 'subject', ARGV[2], 'type', ARGV[i + 1], 'expiresAt', ARGV[i + 3], 'chain', chain, 'sequence', sequence)
+              sequence = sequence + 1
+              redis.call('pexpireat', KEYS[next], ARGV[i + 3])
+              redis.call('zadd', KEYS[1], ARGV[i + 2], KEYS[next])
+              next = next + 1
+            end
+            return prune(KEYS[1], tonumber(ARGV[4]))
+            """);
+
+    /**
+     * Returns the token of the newest session of the type of the first argument.
+     */
+    private static final RedisScript GET_SCRIPT = SCRIPTS.register("session-get", 2, NEWEST_FUNCTION + """
+            local key = newest(KEYS[1], ARGV[1])
+            return key and redis.call('hget', key, 'token')
+            """);
+
+    /**
+     * Moves the expiration of the newest session of the type of the first argument to the
+     * second argument, the third argument is the cap.
+     */
+    private static final RedisScript TOUCH_SCRIPT = SCRIPTS.register("session-touch", 3, PRUNE_FUNCTION + NEWEST_FUNCTION + """
+            local key = newest(KEYS[1], ARGV[1])
+            if not key then
+              return 0
+            end
+            redis.call('hset', key, 'expiresAt', ARGV[2])
+            redis.call('pexpireat', key, ARGV[2])
+            prune(KEYS[1], tonumber(ARGV[3]))
+            return 1
+            """);
+
+    /**
+     * Deletes the sessions of the type of the first argument, the second argument is the cap.
+     */
+    private static final RedisScript REMOVE_TYPE_SCRIPT = SCRIPTS.register("session-remove-type", 3, PRUNE_FUNCTION + """
+            local removed = 0
+            for _, key in ipairs(redis.call('zrange', KEYS[1], 0, -1)) do
+              if redis.call('hget', key, 'type') == ARGV[1] then
+                removed = removed + redis.call('del', key)
+                redis.call('zrem', KEYS[1], key)
+              end
+            end
+            prune(KEYS[1], tonumber(ARGV[2]))
+            return removed
+            """);
+
+    /**
+     * Deletes every session of the first key and the sorted set itself.
+     */
+    private static final RedisScript REMOVE_ALL_SCRIPT = SCRIPTS.register("session-remove-all", 1, """
+            local removed = 0
+            for _, key in ipairs(redis.call('zrange', KEYS[1], 0, -1)) do
+              removed = removed + redis.call('del', key)
+            end
+            redis.call('del', KEYS[1])
+            return removed
+            """);
+
+    /**
+     * Returns the tokens of the live sessions of the first key, oldest first and in order of
+     * saving if issued at the same time.
+     */
+    private static final RedisScript SESSIONS_SCRIPT = SCRIPTS.register("session-list", 2, """
+            local sessions = {}
+            local members = redis.call('zrange', KEYS[1], 0, -1, 'WITHSCORES')
+            for i = 1, #members, 2 do
+              local session = redis.call('hmget', members[i], 'token', 'sequence')
+              if session[1] then
+                sessions[#sessions + 1] = {token = session[1], issuedAt = tonumber(members[i + 1]), sequence = tonumber(session[2] or 0)}
+              end
+            end
+            table.sort(sessions, function(a, b)
+              if a.issuedAt ~= b.issuedAt then
+                return a.issuedAt < b.issuedAt
+              end
+              return a.sequence < b.sequence
+            end)
+            local tokens = {}
+            for i, session in ipairs(sessions) do
+              tokens[i] = session.token
+            end
+            return tokens
+            """);
+
+    /**
+     * Schema of keys for storing sessions.
+     */
+    private final RedisSchema redisSchema;
+
+    /**
+     * Monitor running commands on the pool of Redis connections.
+     */
+    private final RedisPoolMonitor poolMonitor;
+
+    /**
+     * Maximum number of live sessions per subject.
+     */
+    private final int maxSessions;
+
+    /**
+     * Number of sessions evicted by saves of this object.
+     */
+    private final LongAdder evictions;
+
+    /**
+     * Creates an object with the provided JedisPool, DefaultRedisSchema, and cap.
+     *
+     * @param jedisPool     JedisPool object
+     * @param maxSessions   the maximum number of live sessions per subject
+     */
+    public RedisSessionTokenStorageImpl(
+            final JedisPool jedisPool,
+            final int maxSessions
+    ) {
+        this(jedisPool, new DefaultRedisSchema(), RedisPoolOptions.builder().build(), maxSessions);
+    }
+
+    /**
+     * Creates an object with the provided JedisPool, RedisSchema, the adaptive mode of the
+     * RedisPoolOptions, and cap. The remaining options configure new pools only and are ignored.
+     *
+     * @param jedisPool     JedisPool object
+     * @param redisSchema   RedisSchema object
+     * @param options       RedisPoolOptions object
+     * @param maxSessions   the maximum number of live sessions per subject
+     */
+    public RedisSessionTokenStorageImpl(
+            final JedisPool jedisPool,
+            final RedisSchema redisSchema,
+            final RedisPoolOptions options,
+            final int maxSessions
+    ) {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("maxSessions must be positive");
+        }
+        this.redisSchema = redisSchema;
+        this.poolMonitor = new RedisPoolMonitor(jedisPool, options);
+        this.maxSessions = maxSessions;
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Returns the monitor of the connection pool, e.g. to read its statistics.
+     *
+     * @return the pool monitor
+     */
+    public RedisPoolMonitor getPoolMonitor() {
+        return poolMonitor;
+    }
+
+    /**
+     * Loads the scripts of the storage to the server, e.g. at startup. Scripts are also loaded
+     * on their first invocation, this only saves the first requests a round trip.
+     */
+    public void loadScripts() {
+        poolMonitor.execute(jedis -> {
+            SCRIPTS.load(jedis);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the scripts of the storage, e.g. to check their digests against SCRIPT EXISTS.
+     *
+     * @return the scripts in order of registration
+     */
+    public static List<RedisScript> getScripts() {
+        return SCRIPTS.getScripts();
+    }
+
+    @Override
+    public void save(
+            final String token,
+            final TokenParameters params
+    ) {
+        Long evicted = poolMonitor.execute(jedis -> (Long) SAVE_SCRIPT.eval(
+                jedis,
+                List.of(
+                        redisSchema.subjectSessionsKey(params.getSubject()),
+                        sessionKey(token)
+                ),
+                List.of(
+                        token,
+                        params.getSubject(),
+                        params.getType(),
+                        String.valueOf(params.getIssuedAt().getTime()),
+                        String.valueOf(params.getExpiredAt().getTime()),
+                        String.valueOf(maxSessions)
+                )
+        ));
+        if (evicted != null) {
+            evictions.add(evicted);
+        }
+    }
+
+    /**
+     * Continues the session of the expected token in a single Lua script, see
+     * SessionTokenStorage.compareAndSaveAll.
+     */
+    @Override
+    public boolean compareAndSaveAll(
+            final String expectedToken,
+            final TokenParameters expectedParams,
+            final Map<String, TokenParameters> tokens
+    ) {
+        SessionTokenStorageImpl.requireSubject(expectedParams.getSubject(), tokens);
+        List<String> keys = new ArrayList<>(tokens.size() + 2);
+        keys.add(redisSchema.subjectSessionsKey(expectedParams.getSubject()));
+        keys.add(sessionKey(expectedToken));
+        List<String> args = new ArrayList<>(tokens.size() * 4 + 4);
+        args.add(expectedToken);
+        args.add(expectedParams.getSubject());
+        args.add(expectedParams.getType());
+        args.add(String.valueOf(maxSessions));
+        tokens.forEach((token, params) -> {
+            keys.add(sessionKey(token));
+            args.add(token);
+            args.add(params.getType());
+            args.add(String.valueOf(params.getIssuedAt().getTime()));
+            args.add(String.valueOf(params.getExpiredAt().getTime()));
+        });
+
+        Long evicted = poolMonitor.execute(jedis -> (Long) COMPARE_AND_SAVE_SCRIPT.eval(jedis, keys, args));
+        if (evicted == null || evicted < 0) {
+            return false;
+        }
+        evictions.add(evicted);
+        return true;
+    }
+
+    @Override
+    public boolean exists(
+            final String token,
+            final TokenParameters params
+    ) {
+        List<String> session = poolMonitor.execute(jedis -> jedis.hmget(
+                sessionKey(token),
+                "subject",
+                "type"
+        ));
+        return params.getSubject().equals(session.get(0)) && params.getType().equals(session.get(1));
+    }
+
+    @Override
+    public String get(final TokenParameters params) {
+        return poolMonitor.execute(jedis -> (String) GET_SCRIPT.eval(
+                jedis,
+                List.of(redisSchema.subjectSessionsKey(params.getSubject())),
+                List.of(params.getType())
+        ));
+    }
+
+    @Override
+    public boolean touch(
+            final TokenParameters params,
+            final Date expiresAt
+    ) {
+        Long touched = poolMonitor.execute(jedis -> (Long) TOUCH_SCRIPT.eval(
+                jedis,
+                List.of(redisSchema.subjectSessionsKey(params.getSubject())),
+                List.of(
+                        params.getType(),
+                        String.valueOf(expiresAt.getTime()),
+                        String.valueOf(maxSessions)
+                )
+        ));
+        return touched != null && touched > 0;
+    }
+
+    /**
+     * Ends the session of a token. The subject is read from the session before it is removed
+     * from the sessions of the subject, so a session saved for the same token in between is
+     * removed as well.
+     */
+    @Override
+    public boolean remove(final String token) {
+        String sessionKey = sessionKey(token);
+        return poolMonitor.execute(jedis -> {
+            String subject = jedis.hget(sessionKey, "subject");
+            if (subject == null) {
+                return false;
+            }
+            Transaction transaction = jedis.multi();
+            Response<Long> deleted = transaction.del(sessionKey);
+            transaction.zrem(redisSchema.subjectSessionsKey(subject), sessionKey);
+            transaction.exec();
+            return deleted.get() > 0;
+        });
+    }
+
+    @Override
+    public boolean remove(final TokenParameters params) {
+        Long removed = poolMonitor.execute(jedis -> (Long) REMOVE_TYPE_SCRIPT.eval(
+                jedis,
+                List.of(redisSchema.subjectSessionsKey(params.getSubject())),
+                List.of(params.getType(), String.valueOf(maxSessions))
+        ));
+        return removed != null && removed > 0;
+    }
+
+    @Override
+    public boolean removeAll(final String subject) {
+        Long removed = poolMonitor.execute(jedis -> (Long) REMOVE_ALL_SCRIPT.eval(
+                jedis,
+                List.of(redisSchema.subjectSessionsKey(subject)),
+                List.of()
+        ));
+        return removed != null && removed > 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<String> getSessions(final String subject) {
+        return poolMonitor.execute(jedis -> (List<String>) SESSIONS_SCRIPT.eval(
+                jedis,
+                List.of(redisSchema.subjectSessionsKey(subject)),
+                List.of()
+        ));
+    }
+
+    @Override
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * Returns the number of sessions evicted by saves of this object. Other nodes sharing the
+     * server count their own evictions.
+     *
+     * @return the number of evicted sessions
+     */
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private String sessionKey(final String token) {
+        return redisSchema.sessionKey(sessionId(token));
+    }
+
+    /**
+     * Derives the identifier of the session of a token, the hex-encoded first 16 bytes of the
+     * SHA-256 hash of the token.
+     */
+    static String sessionId(final String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -1,36 +1,247 @@
 package dev.hstoklosa.jwtext.storage;
 
+import dev.hstoklosa.jwtext.cache.RequestCoalescer;
 import dev.hstoklosa.jwtext.model.TokenParameters;
 import dev.hstoklosa.jwtext.redis.DefaultRedisSchema;
+import dev.hstoklosa.jwtext.redis.RedisPoolMonitor;
+import dev.hstoklosa.jwtext.redis.RedisPoolOptions;
 import dev.hstoklosa.jwtext.redis.RedisSchema;
+import dev.hstoklosa.jwtext.redis.RedisSchema.TokenKey;
+import dev.hstoklosa.jwtext.redis.RedisScript;
+import dev.hstoklosa.jwtext.redis.RedisScriptRegistry;
 
-import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * Implementation of TokenStorage with Redis integration.
+ * Implementation of ClaimIndexedTokenStorage and ReferenceTokenStorage with Redis integration.
+ *
+ * Concurrent reads of the same token key share a single GET. Writes detach the shared read of
+ * their key, so reads started after a write has returned always observe it. Atomic operations
+ * run as Lua scripts invoked by their digest with EVALSHA, see RedisScript.
+ *
+ * Saves, reads, touches and removals by subject and type use the binary commands of Jedis with
+ * the keys encoded by the schema, e.g. DefaultRedisSchema writes them without building a String.
  */
-public class RedisTokenStorageImpl implements TokenStorage {
+public class RedisTokenStorageImpl implements ClaimIndexedTokenStorage, ReferenceTokenStorage {
+
+    /**
+     * Scripts of the storage, the version of a script is increased whenever its body changes.
+     */
+    private static final RedisScriptRegistry SCRIPTS = new RedisScriptRegistry();
+
+    /**
+     * Lua functions shared by the save scripts. A token is saved from a group of keys: its key,
+     * its subject index, and, if claims are indexed, the set of its claim index keys followed by
+     * the claim indexes to add it to. A reference is saved from its key and the subject index of
+     * its token, so removal by subject deletes it too. Indexes are sorted sets scored by expiration, so expired
+     * members are pruned and every index expires together with the last of its tokens. Claim
+     * index members left behind by an earlier save are not removed, they are skipped by queries
+     * as the token's set no longer lists the index.
+     */
+    private static final String SAVE_FUNCTIONS = """
+            local function index(indexKey, tokenKey, expiresAt, now)
+              redis.call('zremrangebyscore', indexKey, '-inf', '(' .. now)
+              redis.call('zadd', indexKey, expiresAt, tokenKey)
+              local last = redis.call('zrange', indexKey, -1, -1, 'withscores')
+              redis.call('pexpireat', indexKey, last[2])
+            end
+            local function save(first, last, token, expiresAt, now)
+              local tokenKey = KEYS[first]
+              redis.call('set', tokenKey, token)
+              redis.call('pexpireat', tokenKey, expiresAt)
+              index(KEYS[first + 1], tokenKey, expiresAt, now)
+              if last >= first + 2 then
+                local claimsKey = KEYS[first + 2]
+                redis.call('del', claimsKey)
+                for i = first + 3, last do
+                  index(KEYS[i], tokenKey, expiresAt, now)
+                  redis.call('sadd', claimsKey, KEYS[i])
+                end
+                if last >= first + 3 then
+                  redis.call('pexpireat', claimsKey, expiresAt)
+                end
+              end
+            end
+            """;
+
+    /**
+     * Saves a token from the group of keys described in SAVE_FUNCTIONS, the arguments are the
+     * token, its expiration, and the current time.
+     */
+    private static final RedisScript SAVE_SCRIPT = SCRIPTS.register("save", 1, SAVE_FUNCTIONS + """
+            save(1, #KEYS, ARGV[1], ARGV[2], ARGV[3])
+            return 1
+            """);
+
+    /**
+     * Saves tokens like SAVE_SCRIPT only if the first key holds the expected token. The
+     * remaining keys are the groups of the tokens, the arguments are the expected token, the
+     * current time, and triples of a token, its expiration, and the size of its key group.
+     */
+    private static final RedisScript COMPARE_AND_SAVE_SCRIPT = SCRIPTS.register("compare-and-save", 1, SAVE_FUNCTIONS + """
+            if redis.call('get', KEYS[1]) ~= ARGV[1] then
+              return 0
+            end
+            local first = 2
+            for i = 3, #ARGV, 3 do
+              local last = first + tonumber(ARGV[i + 2]) - 1
+              save(first, last, ARGV[i], ARGV[i + 1], ARGV[2])
+              first = last + 1
+            end
+            return 1
+            """);
+
+    /**
+     * Moves the expiration of a stored token and its score in the subject index and its claim
+     * indexes, and keeps every index alive until the last of its tokens expires.
+     */
+    private static final RedisScript TOUCH_SCRIPT = SCRIPTS.register("touch", 1, """
+            local function rescore(indexKey)
+              redis.call('zadd', indexKey, ARGV[1], KEYS[1])
+              local last = redis.call('zrange', indexKey, -1, -1, 'withscores')
+              redis.call('pexpireat', indexKey, last[2])
+            end
+            if redis.call('pexpireat', KEYS[1], ARGV[1]) == 0 then
+              return 0
+            end
+            rescore(KEYS[2])
+            if KEYS[3] and redis.call('pexpireat', KEYS[3], ARGV[1]) == 1 then
+              for _, indexKey in ipairs(redis.call('smembers', KEYS[3])) do
+                rescore(indexKey)
+              end
+            end
+            return 1
+            """);
+
+    /**
+     * Returns the tokens of the token keys still indexed under the claim index of the first key,
+     * and prunes the others. The remaining keys are pairs of a token key and its set of claim
+     * index keys.
+     */
+    private static final RedisScript FIND_BY_CLAIM_SCRIPT = SCRIPTS.register("find-by-claim", 1, """
+            local tokens = {}
+            for i = 2, #KEYS, 2 do
+              local token = false
+              if redis.call('sismember', KEYS[i + 1], KEYS[1]) == 1 then
+                token = redis.call('get', KEYS[i])
+              end
+              if token then
+                tokens[#tokens + 1] = token
+              else
+                redis.call('zrem', KEYS[1], KEYS[i])
+              end
+            end
+            return tokens
+            """);
+
+    /**
+     * Deletes the token keys still indexed under the claim index of the first key, with the same
+     * keys as FIND_BY_CLAIM_SCRIPT, and removes every given token key from the index.
+     */
+    private static final RedisScript REMOVE_BY_CLAIM_SCRIPT = SCRIPTS.register("remove-by-claim", 1, """
+            local deleted = 0
+            for i = 2, #KEYS, 2 do
+              if redis.call('sismember', KEYS[i + 1], KEYS[1]) == 1 then
+                deleted = deleted + redis.call('del', KEYS[i])
+                redis.call('del', KEYS[i + 1])
+              end
+              redis.call('zrem', KEYS[1], KEYS[i])
+            end
+            return deleted
+            """);
+
+    /**
+     * Deletes the token keys indexed under the subject index of the first key together with the
+     * index. The remaining keys are the members of the index as read before the call, and
+     * nothing is deleted if the index changed in between, which is reported by returning -1.
+     */
+    private static final RedisScript REMOVE_ALL_SCRIPT = SCRIPTS.register("remove-all", 2, """
+            local members = redis.call('zrange', KEYS[1], 0, -1)
+            if #members ~= #KEYS - 1 then
+              return -1
+            end
+            for i, key in ipairs(members) do
+              if key ~= KEYS[i + 1] then
+                return -1
+              end
+            end
+            local deleted = 0
+            for i = 2, #KEYS do
+              deleted = deleted + redis.call('del', KEYS[i])
+            end
+            redis.call('del', KEYS[1])
+            return deleted
+            """);
     
     /**
-     * Pool of Redis connections.
+     * Deletes the token key of the first key if it still holds the token of the first argument,
+     * removes it from the subject index of the second key, and deletes its set of claim index
+     * keys, the optional third key.
      */
-    private final JedisPool jedisPool;
+    private static final RedisScript REMOVE_SCRIPT = SCRIPTS.register("remove", 2, """
+            if redis.call('get', KEYS[1]) ~= ARGV[1] then
+              return 0
+            end
+            redis.call('del', KEYS[1])
+            redis.call('zrem', KEYS[2], KEYS[1])
+            if KEYS[3] then
+              redis.call('del', KEYS[3])
+            end
+            return 1
+            """);
+
+    /**
+     * Number of keys requested per SCAN call when looking up a token by its value.
+     */
+    private static final int SCAN_COUNT = 1_000;
+
+    /**
+     * Number of times the removal of the tokens of a subject is attempted while the subject
+     * index keeps changing.
+     */
+    private static final int REMOVE_ALL_ATTEMPTS = 16;
 
     /**
      * Schema of keys for storing tokens.
      */
     private final RedisSchema redisSchema;
 
+    /**
+     * Monitor running commands on the pool of Redis connections.
+     */
+    private final RedisPoolMonitor poolMonitor;
+
+    /**
+     * Reads of token keys in flight by subject and type, shared by concurrent callers of the
+     * same key.
+     */
+    private final RequestCoalescer<TokenKey, String> reads;
+
+    /**
+     * Names of the indexed claims.
+     */
+    private final Set<String> indexedClaims;
+
     /**
      * Creates an object with the provided JedisPool and DefaultRedisSchema.
      *
      * @param jedisPool     JedisPool object
      */
     public RedisTokenStorageImpl(final JedisPool jedisPool) {
-        this.jedisPool = jedisPool;
-        this.redisSchema = new DefaultRedisSchema();
+        this(jedisPool, new DefaultRedisSchema());
     }
 
     /**
@@ -43,8 +254,44 @@ public class RedisTokenStorageImpl implements TokenStorage {
             final JedisPool jedisPool,
             final RedisSchema redisSchema
     ) {
-        this.jedisPool = jedisPool;
+        this(jedisPool, redisSchema, RedisPoolOptions.builder().build());
+    }
+
+    /**
+     * Creates an object with the provided JedisPool, RedisSchema, and the adaptive mode of the
+     * RedisPoolOptions. The remaining options configure new pools only and are ignored.
+     *
+     * @param jedisPool     JedisPool object
+     * @param redisSchema   RedisSchema object
+     * @param options       RedisPoolOptions object
+     */
+    public RedisTokenStorageImpl(
+            final JedisPool jedisPool,
+            final RedisSchema redisSchema,
+            final RedisPoolOptions options
+    ) {
+        this(jedisPool, redisSchema, options, Set.of());
+    }
+
+    /**
+     * Creates an object with the provided JedisPool, RedisSchema, the adaptive mode of the
+     * RedisPoolOptions, and the claims to index.
+     *
+     * @param jedisPool     JedisPool object
+     * @param redisSchema   RedisSchema object
+     * @param options       RedisPoolOptions object
+     * @param indexedClaims the names of the claims to index
+     */
+    public RedisTokenStorageImpl(
+            final JedisPool jedisPool,
+            final RedisSchema redisSchema,
+            final RedisPoolOptions options,
+            final Set<String> indexedClaims
+    ) {
         this.redisSchema = redisSchema;
+        this.poolMonitor = new RedisPoolMonitor(jedisPool, options);
+        this.reads = new RequestCoalescer<>();
+        this.indexedClaims = Set.copyOf(indexedClaims);
     }
 
     /**
@@ -57,14 +304,22 @@ public class RedisTokenStorageImpl implements TokenStorage {
             final String host,
             final int port
     ) {
-        JedisPoolConfig config = new JedisPoolConfig();
-        config.setJmxEnabled(false);
-        this.jedisPool = new JedisPool(
-                config,
-                host,
-                port
-        );
-        this.redisSchema = new DefaultRedisSchema();
+        this(host, port, RedisPoolOptions.builder().build());
+    }
+
+    /**
+     * Creates an object with the provided host, port, and pool options.
+     *
+     * @param host the host of the Redis server
+     * @param port the port of the Redis server
+     * @param options the options of the connection pool
+     */
+    public RedisTokenStorageImpl(
+            final String host,
+            final int port,
+            final RedisPoolOptions options
+    ) {
+        this(host, port, null, null, options);
     }
 
     /**
@@ -81,16 +336,68 @@ public class RedisTokenStorageImpl implements TokenStorage {
             final String user,
             final String password
     ) {
-        JedisPoolConfig config = new JedisPoolConfig();
-        config.setJmxEnabled(false);
-        this.jedisPool = new JedisPool(
-                config,
-                host,
-                port,
-                user,
-                password
+        this(host, port, user, password, RedisPoolOptions.builder().build());
+    }
+
+    /**
+     * Creates an object with the provided host, port, user, password, and pool options.
+     *
+     * @param host the host of the Redis server
+     * @param port the port of the Redis server
+     * @param user the user of the Redis server
+     * @param password the password of the Redis server
+     * @param options the options of the connection pool
+     */
+    public RedisTokenStorageImpl(
+            final String host,
+            final int port,
+            final String user,
+            final String password,
+            final RedisPoolOptions options
+    ) {
+        this(
+                options.createPool(host, port, user, password),
+                new DefaultRedisSchema(),
+                options
         );
-        this.redisSchema = new DefaultRedisSchema();
+    }
+
+    /**
+     * Returns the monitor of the connection pool, e.g. to read its statistics.
+     *
+     * @return the pool monitor
+     */
+    public RedisPoolMonitor getPoolMonitor() {
+        return poolMonitor;
+    }
+
+    /**
+     * Loads the scripts of the storage to the server, e.g. at startup. Scripts are also loaded
+     * on their first invocation, this only saves the first requests a round trip.
+     */
+    public void loadScripts() {
+        poolMonitor.execute(jedis -> {
+            SCRIPTS.load(jedis);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the scripts of the storage, e.g. to check their digests against SCRIPT EXISTS.
+     *
+     * @return the scripts in order of registration
+     */
+    public static List<RedisScript> getScripts() {
+        return SCRIPTS.getScripts();
+    }
+
+    /**
+     * Returns the number of reads served by a concurrent read of the same token key.
+     *
+     * @return the number of coalesced reads
+     */
+    public long getCoalescedReads() {
+        return reads.coalesced();
     }
 
     @Override
@@ -98,15 +405,89 @@ public class RedisTokenStorageImpl implements TokenStorage {
             final String token,
             final TokenParameters params
     ) {
-        try (Jedis jedis = jedisPool.getResource()) {
-            String tokenKey = redisSchema.subjectTokenKey(
-                    params.getSubject(),
-                    params.getType()
-            );
+        List<byte[]> keys = saveKeys(params);
+        poolMonitor.execute(jedis -> SAVE_SCRIPT.evalBinary(
+                jedis,
+                keys,
+                List.of(
+                        bytes(token),
+                        bytes(params.getExpiredAt().getTime()),
+                        bytes(System.currentTimeMillis())
+                )
+        ));
+        reads.invalidate(tokenKey(params));
+    }
 
-            jedis.set(tokenKey, token);
-            jedis.pexpireAt(tokenKey, params.getExpiredAt().getTime());
+    @Override
+    public void saveAll(final Map<String, TokenParameters> tokens) {
+        if (tokens.isEmpty()) {
+            return;
         }
+        poolMonitor.execute(jedis -> {
+            byte[] now = bytes(System.currentTimeMillis());
+            List<Map.Entry<String, TokenParameters>> pending = new ArrayList<>(tokens.entrySet());
+            boolean reloaded = false;
+            while (!pending.isEmpty()) {
+                Pipeline pipeline = jedis.pipelined();
+                List<Response<Object>> responses = new ArrayList<>(pending.size());
+                pending.forEach(entry -> responses.add(SAVE_SCRIPT.evalBinary(
+                        pipeline,
+                        saveKeys(entry.getValue()),
+                        List.of(
+                                bytes(entry.getKey()),
+                                bytes(entry.getValue().getExpiredAt().getTime()),
+                                now
+                        )
+                )));
+                pipeline.sync();
+
+                List<Map.Entry<String, TokenParameters>> unloaded = new ArrayList<>();
+                for (int i = 0; i < responses.size(); i++) {
+                    try {
+                        responses.get(i).get();
+                    } catch (JedisNoScriptException e) {
+                        if (reloaded) {
+                            throw e;
+                        }
+                        unloaded.add(pending.get(i));
+                    }
+                }
+                if (!unloaded.isEmpty()) {
+                    SAVE_SCRIPT.load(jedis);
+                    reloaded = true;
+                }
+                pending = unloaded;
+            }
+            return null;
+        });
+        tokens.values().forEach(params -> reads.invalidate(tokenKey(params)));
+    }
+
+    @Override
+    public boolean compareAndSaveAll(
+            final String expectedToken,
+            final TokenParameters expectedParams,
+            final Map<String, TokenParameters> tokens
+    ) {
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> args = new ArrayList<>(2 + 3 * tokens.size());
+        keys.add(redisSchema.subjectTokenKeyBytes(
+                expectedParams.getSubject(),
+                expectedParams.getType()
+        ));
+        args.add(bytes(expectedToken));
+        args.add(bytes(System.currentTimeMillis()));
+        tokens.forEach((token, params) -> {
+            List<byte[]> group = saveKeys(params);
+            keys.addAll(group);
+            args.add(bytes(token));
+            args.add(bytes(params.getExpiredAt().getTime()));
+            args.add(bytes(group.size()));
+        });
+
+        Long saved = poolMonitor.execute(jedis -> (Long) COMPARE_AND_SAVE_SCRIPT.evalBinary(jedis, keys, args));
+        tokens.values().forEach(params -> reads.invalidate(tokenKey(params)));
+        return saved != null && saved == 1;
     }
 
     @Override
@@ -114,51 +495,293 @@ public class RedisTokenStorageImpl implements TokenStorage {
             final String token,
             final TokenParameters params
     ) {
-        try (Jedis jedis = jedisPool.getResource()) {
-            String tokenKey = redisSchema.subjectTokenKey(
-                    params.getSubject(),
-                    params.getType()
-            );
-            
-            return token.equals(jedis.get(tokenKey));
-        }
+        return token.equals(get(params));
     }
 
     @Override
     public String get(final TokenParameters params) {
-        try (Jedis jedis = jedisPool.getResource()) {
-            String tokenKey = redisSchema.subjectTokenKey(
-                    params.getSubject(),
-                    params.getType()
-            );
+        return reads.load(
+                tokenKey(params),
+                () -> string(poolMonitor.execute(jedis -> jedis.get(redisSchema.subjectTokenKeyBytes(
+                        params.getSubject(),
+                        params.getType()
+                ))))
+        );
+    }
 
-            return jedis.get(tokenKey);
+    @Override
+    public List<String> getAll(final List<TokenParameters> params) {
+        if (params.isEmpty()) {
+            return List.of();
+        }
+        byte[][] tokenKeys = new byte[params.size()][];
+        for (int i = 0; i < tokenKeys.length; i++) {
+            tokenKeys[i] = redisSchema.subjectTokenKeyBytes(
+                    params.get(i).getSubject(),
+                    params.get(i).getType()
+            );
         }
+
+        List<byte[]> tokens = poolMonitor.execute(jedis -> jedis.mget(tokenKeys));
+        List<String> result = new ArrayList<>(tokens.size());
+        tokens.forEach(token -> result.add(string(token)));
+        return result;
+    }
+
+    @Override
+    public boolean touch(
+            final TokenParameters params,
+            final Date expiresAt
+    ) {
+        byte[] tokenKey = redisSchema.subjectTokenKeyBytes(params.getSubject(), params.getType());
+        List<byte[]> keys = indexedClaims.isEmpty()
+                ? List.of(tokenKey, redisSchema.subjectIndexKeyBytes(params.getSubject()))
+                : List.of(
+                        tokenKey,
+                        redisSchema.subjectIndexKeyBytes(params.getSubject()),
+                        redisSchema.tokenClaimsKeyBytes(tokenKey)
+                );
+        Long touched = poolMonitor.execute(jedis -> (Long) TOUCH_SCRIPT.evalBinary(
+                jedis,
+                keys,
+                List.of(bytes(expiresAt.getTime()))
+        ));
+        return touched != null && touched == 1;
     }
 
+    /**
+     * Removes a token by its value. Token keys are not indexed by value, so the keys of the
+     * schema's token key pattern are scanned in batches with SCAN, and every key holding the
+     * token is deleted with REMOVE_SCRIPT, which checks the value again atomically.
+     */
     @Override
     public boolean remove(final String token) {
-        try (Jedis jedis = jedisPool.getResource()) {
-            String script = """
-                    local keys = redis.call('keys', ARGV[1])
-                    for _, key in ipairs(keys) do
-                      redis.call('del', key)
-                    end
-                    return #keys > 0
-                    """;
-            Long result = (Long) jedis.eval(script, 0, "*", token);
-            
-            return result != null && result > 0;
-        }
+        ScanParams scanParams = new ScanParams()
+                .match(redisSchema.subjectTokenKeyPattern())
+                .count(SCAN_COUNT);
+
+        boolean removed = poolMonitor.execute(jedis -> {
+            boolean deleted = false;
+            String cursor = ScanParams.SCAN_POINTER_START;
+            do {
+                ScanResult<String> page = jedis.scan(cursor, scanParams);
+                cursor = page.getCursor();
+                List<String> tokenKeys = page.getResult();
+                if (tokenKeys.isEmpty()) {
+                    continue;
+                }
+
+                List<String> tokens = jedis.mget(tokenKeys.toArray(String[]::new));
+                for (int i = 0; i < tokenKeys.size(); i++) {
+                    if (!token.equals(tokens.get(i))) {
+                        continue;
+                    }
+                    TokenKey parsed = redisSchema.parseSubjectTokenKey(tokenKeys.get(i));
+                    if (parsed == null) {
+                        continue;
+                    }
+                    Long result = (Long) REMOVE_SCRIPT.eval(jedis, removeKeys(tokenKeys.get(i), parsed), List.of(token));
+                    deleted |= result != null && result > 0;
+                }
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+            return deleted;
+        });
+        reads.invalidateAll();
+        return removed;
+    }
+
+    /**
+     * Returns the keys of REMOVE_SCRIPT for a token key.
+     */
+    private List<String> removeKeys(
+            final String tokenKey,
+            final TokenKey parsed
+    ) {
+        String indexKey = redisSchema.subjectIndexKey(parsed.subject());
+        return indexedClaims.isEmpty()
+                ? List.of(tokenKey, indexKey)
+                : List.of(tokenKey, indexKey, redisSchema.tokenClaimsKey(tokenKey));
     }
 
     @Override
     public boolean remove(final TokenParameters params) {
-        try (Jedis jedis = jedisPool.getResource()) {
-            String tokenKey = redisSchema.subjectTokenKey(
-                    params.getSubject(), params.getType()
+        byte[] tokenKey = redisSchema.subjectTokenKeyBytes(
+                params.getSubject(), params.getType()
+        );
+        byte[] indexKey = redisSchema.subjectIndexKeyBytes(params.getSubject());
+
+        boolean removed = poolMonitor.execute(jedis -> {
+            Transaction transaction = jedis.multi();
+            Response<Long> deleted = transaction.del(tokenKey);
+            transaction.zrem(indexKey, tokenKey);
+            transaction.exec();
+            return deleted.get() > 0;
+        });
+        reads.invalidate(tokenKey(params));
+        return removed;
+    }
+
+    /**
+     * Reads the members of the subject index and passes them to the Lua script as keys, so the
+     * script only touches keys it declares. The script is retried if a token of the subject was
+     * saved or removed in between, at most {@link #REMOVE_ALL_ATTEMPTS} times.
+     *
+     * @throws IllegalStateException if the subject index kept changing on every attempt
+     */
+    @Override
+    public boolean removeAll(final String subject) {
+        String indexKey = redisSchema.subjectIndexKey(subject);
+        boolean removed = poolMonitor.execute(jedis -> {
+            for (int attempt = 0; attempt < REMOVE_ALL_ATTEMPTS; attempt++) {
+                List<String> keys = new ArrayList<>();
+                keys.add(indexKey);
+                keys.addAll(jedis.zrange(indexKey, 0, -1));
+                Long deleted = (Long) REMOVE_ALL_SCRIPT.eval(jedis, keys, List.of());
+                if (deleted == null || deleted >= 0) {
+                    return deleted != null && deleted > 0;
+                }
+            }
+            throw new IllegalStateException(
+                    "Tokens of subject kept changing during removal after " + REMOVE_ALL_ATTEMPTS + " attempts"
             );
-            return jedis.del(tokenKey) > 0;
+        });
+        reads.invalidateAll();
+        return removed;
+    }
+
+    @Override
+    public void saveReference(
+            final String handle,
+            final String token,
+            final TokenParameters params
+    ) {
+        poolMonitor.execute(jedis -> SAVE_SCRIPT.evalBinary(
+                jedis,
+                List.of(
+                        bytes(redisSchema.referenceKey(handle)),
+                        redisSchema.subjectIndexKeyBytes(params.getSubject())
+                ),
+                List.of(
+                        bytes(token),
+                        bytes(params.getExpiredAt().getTime()),
+                        bytes(System.currentTimeMillis())
+                )
+        ));
+    }
+
+    @Override
+    public String getReference(final String handle) {
+        return poolMonitor.execute(jedis -> jedis.get(redisSchema.referenceKey(handle)));
+    }
+
+    /**
+     * Removes a reference. Its key is left in the subject index until the token expires, which
+     * is harmless as removal by subject skips missing keys.
+     */
+    @Override
+    public boolean removeReference(final String handle) {
+        return poolMonitor.execute(jedis -> jedis.del(redisSchema.referenceKey(handle)) > 0);
+    }
+
+    @Override
+    public Set<String> getIndexedClaims() {
+        return indexedClaims;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<String> findByClaim(
+            final String claim,
+            final Object value
+    ) {
+        ClaimIndexes.requireIndexed(indexedClaims, claim);
+        String indexKey = redisSchema.claimIndexKey(claim, String.valueOf(value));
+
+        return poolMonitor.execute(jedis -> {
+            List<String> tokenKeys = jedis.zrangeByScore(
+                    indexKey,
+                    String.valueOf(System.currentTimeMillis()),
+                    "+inf"
+            );
+            if (tokenKeys.isEmpty()) {
+                return List.of();
+            }
+            return (List<String>) FIND_BY_CLAIM_SCRIPT.eval(jedis, claimKeys(indexKey, tokenKeys), List.of());
+        });
+    }
+
+    /**
+     * Removes the tokens carrying the claim value. Their keys are left in their subject indexes
+     * until they expire, which is harmless as removal by subject skips missing keys.
+     */
+    @Override
+    public boolean removeByClaim(
+            final String claim,
+            final Object value
+    ) {
+        ClaimIndexes.requireIndexed(indexedClaims, claim);
+        String indexKey = redisSchema.claimIndexKey(claim, String.valueOf(value));
+
+        boolean removed = poolMonitor.execute(jedis -> {
+            List<String> tokenKeys = jedis.zrange(indexKey, 0, -1);
+            if (tokenKeys.isEmpty()) {
+                return false;
+            }
+            Long deleted = (Long) REMOVE_BY_CLAIM_SCRIPT.eval(jedis, claimKeys(indexKey, tokenKeys), List.of());
+            return deleted != null && deleted > 0;
+        });
+        reads.invalidateAll();
+        return removed;
+    }
+
+    /**
+     * Returns the keys a token is saved from, as described in SAVE_FUNCTIONS.
+     */
+    private List<byte[]> saveKeys(final TokenParameters params) {
+        byte[] tokenKey = redisSchema.subjectTokenKeyBytes(params.getSubject(), params.getType());
+        byte[] indexKey = redisSchema.subjectIndexKeyBytes(params.getSubject());
+        if (indexedClaims.isEmpty()) {
+            return List.of(tokenKey, indexKey);
+        }
+
+        List<Map.Entry<String, String>> entries = ClaimIndexes.entries(indexedClaims, params);
+        List<byte[]> keys = new ArrayList<>(3 + entries.size());
+        keys.add(tokenKey);
+        keys.add(indexKey);
+        keys.add(redisSchema.tokenClaimsKeyBytes(tokenKey));
+        entries.forEach(entry -> keys.add(redisSchema.claimIndexKeyBytes(entry.getKey(), entry.getValue())));
+        return keys;
+    }
+
+    /**
+     * Returns the keys of FIND_BY_CLAIM_SCRIPT and REMOVE_BY_CLAIM_SCRIPT.
+     */
+    private List<String> claimKeys(
+            final String indexKey,
+            final List<String> tokenKeys
+    ) {
+        List<String> keys = new ArrayList<>(1 + 2 * tokenKeys.size());
+        keys.add(indexKey);
+        for (String tokenKey : tokenKeys) {
+            keys.add(tokenKey);
+            keys.add(redisSchema.tokenClaimsKey(tokenKey));
         }
+        return keys;
+    }
+
+    private static TokenKey tokenKey(final TokenParameters params) {
+        return new TokenKey(params.getSubject(), params.getType());
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(final long value) {
+        return Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String string(final byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
     }
 }
@@ -0,0 +1,47 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+/**
+ * TokenStorage that also maps reference handles to JWT tokens.
+ *
+ * References are kept under their own keys, apart from the tokens stored by subject and type,
+ * and are indexed under the subject of their token, so that removing the tokens of a subject
+ * also removes its references.
+ */
+public interface ReferenceTokenStorage extends TokenStorage {
+
+    /**
+     * Saves a reference handle to a JWT token until the token expires.
+     *
+     * @param handle    the reference handle
+     * @param token     the JWT token the handle refers to
+     * @param params    the params of the token, its subject and expiration are used
+     * @throws UnsupportedOperationException if the storage decorates a storage not storing references
+     */
+    void saveReference(
+            String handle,
+            String token,
+            TokenParameters params
+    );
+
+    /**
+     * Returns the JWT token a reference handle refers to.
+     *
+     * @param handle    the reference handle
+     * @return          the JWT token, or null if the handle is unknown or expired
+     * @throws UnsupportedOperationException if the storage decorates a storage not storing references
+     */
+    String getReference(String handle);
+
+    /**
+     * Removes a reference handle, the JWT token it refers to is kept.
+     *
+     * @param handle    the reference handle
+     * @return          true  - if the handle was removed,
+     *                  false - otherwise
+     * @throws UnsupportedOperationException if the storage decorates a storage not storing references
+     */
+    boolean removeReference(String handle);
+
+}
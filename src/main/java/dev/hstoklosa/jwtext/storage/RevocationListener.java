@@ -0,0 +1,22 @@
+package dev.hstoklosa.jwtext.storage;
+
+/**
+ * Listener notified when revocation watermarks change.
+ */
+@FunctionalInterface
+public interface RevocationListener {
+
+    /**
+     * Called after the revocation watermark of a subject has been moved.
+     *
+     * @param subject the subject whose watermark changed
+     */
+    void onRevoke(String subject);
+
+    /**
+     * Called when notifications may have been missed, e.g. after the connection
+     * to the storage backend was re-established, so that any watermark may have changed.
+     */
+    default void onReset() {
+    }
+}
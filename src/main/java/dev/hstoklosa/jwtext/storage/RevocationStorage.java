@@ -0,0 +1,39 @@
+package dev.hstoklosa.jwtext.storage;
+
+import java.util.Date;
+
+/**
+ * Storage of per-subject revocation watermarks.
+ *
+ * A watermark states that every JWT token of a subject issued before a given instant is invalid,
+ * so a single write revokes any number of tokens without touching them individually.
+ */
+public interface RevocationStorage {
+
+    /**
+     * Moves the watermark of a subject forward. A watermark never moves backwards,
+     * an earlier instant than the stored one is ignored.
+     *
+     * @param subject the subject whose tokens are revoked
+     * @param issuedBefore the instant before which issued tokens are invalid
+     */
+    void revoke(
+            String subject,
+            Date issuedBefore
+    );
+
+    /**
+     * Returns the watermark of a subject.
+     *
+     * @param subject the subject of JWT tokens
+     * @return the instant before which issued tokens are invalid, or null if none is stored
+     */
+    Date getRevokedBefore(String subject);
+
+    /**
+     * Registers a listener notified whenever a watermark changes.
+     *
+     * @param listener the listener to register
+     */
+    void addListener(RevocationListener listener);
+}
@@ -0,0 +1,45 @@
+package dev.hstoklosa.jwtext.storage;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Basic in-memory implementation of the RevocationStorage interface (thread-safe).
+ */
+public class RevocationStorageImpl implements RevocationStorage {
+
+    /** Watermarks in epoch milliseconds by subject. */
+    private final Map<String, Long> watermarks;
+
+    /** Listeners notified about moved watermarks. */
+    private final List<RevocationListener> listeners;
+
+    /** Creates an object. */
+    public RevocationStorageImpl() {
+        this.watermarks = new ConcurrentHashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    @Override
+    public void revoke(
+            final String subject,
+            final Date issuedBefore
+    ) {
+        watermarks.merge(subject, issuedBefore.getTime(), Math::max);
+        listeners.forEach(listener -> listener.onRevoke(subject));
+    }
+
+    @Override
+    public Date getRevokedBefore(final String subject) {
+        Long watermark = watermarks.get(subject);
+        return watermark == null ? null : new Date(watermark);
+    }
+
+    @Override
+    public void addListener(final RevocationListener listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,100 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TokenStorage keeping several live sessions per subject, e.g. one per device, ordered by the
+ * issue time of their newest token.
+ *
+ * Saving a token starts a session instead of replacing the stored token, and compareAndSaveAll
+ * continues the session of the expected token, so rotating the tokens of a device keeps a
+ * single session. Once a subject has more live sessions than the cap of the storage, its least
+ * recently issued sessions are evicted within the same atomic save, so the storage held per
+ * subject stays bounded however many tokens a subject creates. The other operations apply to
+ * tokens as follows:
+ * <ul>
+ *     <li>exists checks the token;</li>
+ *     <li>get and touch apply to the newest token of the subject and type;</li>
+ *     <li>remove(String) removes the token from its session;</li>
+ *     <li>remove(TokenParameters) removes every token of the subject and type;</li>
+ *     <li>removeAll ends every session of the subject.</li>
+ * </ul>
+ *
+ * Use PersistentTokenService.createSession to issue a token per session, as create returns the
+ * newest stored token of the subject and type.
+ */
+public interface SessionTokenStorage extends TokenStorage {
+
+    /**
+     * Starts a session with a token, evicting the least recently issued sessions of the subject
+     * beyond the cap.
+     *
+     * @param token the JWT token of the session
+     * @param params the parameters of the token, its issue time orders the session
+     */
+    @Override
+    void save(
+            String token,
+            TokenParameters params
+    );
+
+    /**
+     * Atomically continues the session of the expected token if it is still stored: the
+     * expected token and the tokens of its session with the type of a new token are removed,
+     * and the new tokens join the session, evicting the least recently issued sessions of the
+     * subject beyond the cap. Nothing changes if the expected token is not stored, so rotating
+     * the same token twice fails without ending any other session.
+     *
+     * @param expectedToken the token of the session to continue
+     * @param expectedParams the subject and type of the expected token
+     * @param tokens the new tokens of the session with their parameters
+     * @return true if the session was continued, false if the expected token is not stored
+     * @throws IllegalArgumentException if a new token has another subject than the session
+     */
+    @Override
+    boolean compareAndSaveAll(
+            String expectedToken,
+            TokenParameters expectedParams,
+            Map<String, TokenParameters> tokens
+    );
+
+    /**
+     * Moves the expiration of the newest session of the subject and type.
+     *
+     * @param params the subject and type of the session
+     * @param expiresAt the new expiration of the session
+     * @return true if a live session was touched, false otherwise
+     */
+    @Override
+    boolean touch(
+            TokenParameters params,
+            Date expiresAt
+    );
+
+    /**
+     * Returns the live tokens of the sessions of a subject ordered by issue time, oldest first.
+     *
+     * @param subject the subject of the sessions
+     * @return the tokens of the sessions of any type
+     */
+    List<String> getSessions(String subject);
+
+    /**
+     * Returns the maximum number of live sessions kept per subject.
+     *
+     * @return the session cap
+     */
+    int getMaxSessions();
+
+    /**
+     * Returns the number of sessions evicted because their subject reached the cap.
+     *
+     * @return the number of evicted sessions
+     */
+    long getEvictions();
+
+}
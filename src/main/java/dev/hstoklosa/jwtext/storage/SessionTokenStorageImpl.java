@@ -0,0 +1,415 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * In-memory implementation of the SessionTokenStorage interface (thread-safe).
+ *
+ * The sessions of each subject are kept in a set ordered by the issue time of their newest
+ * token, so the least recently issued session is evicted in logarithmic time. Expired tokens of
+ * a subject are dropped whenever the subject saves a token, before the cap is applied.
+ */
+public class SessionTokenStorageImpl implements SessionTokenStorage {
+
+    /** Default maximum number of live sessions per subject. */
+    public static final int DEFAULT_MAX_SESSIONS = 10;
+
+    /** Order of sessions by the issue time of their newest token, then by order of saving. */
+    private static final Comparator<Session> BY_ISSUE_TIME = Comparator
+            .comparingLong((Session session) -> session.issuedAt)
+            .thenComparingLong(session -> session.sequence);
+
+    /** Maximum number of live sessions per subject. */
+    private final int maxSessions;
+
+    /** Stored tokens by token. */
+    private final Map<String, Entry> entries;
+
+    /** Sessions of each subject ordered by issue time. */
+    private final Map<String, TreeSet<Session>> subjectSessions;
+
+    /** Number of session updates, breaking ties between sessions issued at the same time. */
+    private long sequence;
+
+    /** Number of sessions evicted because their subject reached the cap. */
+    private long evictions;
+
+    /** Creates an object keeping the default number of sessions per subject. */
+    public SessionTokenStorageImpl() {
+        this(DEFAULT_MAX_SESSIONS);
+    }
+
+    /**
+     * Creates an object keeping the provided number of sessions per subject.
+     *
+     * @param maxSessions the maximum number of live sessions per subject
+     */
+    public SessionTokenStorageImpl(final int maxSessions) {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("maxSessions must be positive");
+        }
+        this.maxSessions = maxSessions;
+        this.entries = new HashMap<>();
+        this.subjectSessions = new HashMap<>();
+    }
+
+    @Override
+    public synchronized void save(
+            final String token,
+            final TokenParameters params
+    ) {
+        Session session = new Session(params.getSubject());
+        add(session, token, params);
+        insert(session);
+        prune(params.getSubject());
+    }
+
+    /**
+     * Continues the session of the expected token: the expected token and the tokens of its
+     * session with the type of a new token are ended, and the new tokens join the session.
+     */
+    @Override
+    public synchronized boolean compareAndSaveAll(
+            final String expectedToken,
+            final TokenParameters expectedParams,
+            final Map<String, TokenParameters> tokens
+    ) {
+        requireSubject(expectedParams.getSubject(), tokens);
+        Entry expected = live(entries.get(expectedToken));
+        if (expected == null
+                || !expected.session.subject.equals(expectedParams.getSubject())
+                || !expected.type.equals(expectedParams.getType())) {
+            return false;
+        }
+
+        Session session = expected.session;
+        detach(session);
+        Set<String> types = new HashSet<>();
+        tokens.values().forEach(params -> types.add(params.getType()));
+        session.entries.removeIf(entry -> {
+            if (entry != expected && !types.contains(entry.type)) {
+                return false;
+            }
+            entries.remove(entry.token);
+            return true;
+        });
+        tokens.forEach((token, params) -> add(session, token, params));
+        insert(session);
+        prune(session.subject);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean exists(
+            final String token,
+            final TokenParameters params
+    ) {
+        Entry entry = live(entries.get(token));
+        return entry != null
+                && entry.session.subject.equals(params.getSubject())
+                && entry.type.equals(params.getType());
+    }
+
+    @Override
+    public synchronized String get(final TokenParameters params) {
+        Entry entry = newest(params);
+        return entry == null ? null : entry.token;
+    }
+
+    @Override
+    public synchronized boolean touch(
+            final TokenParameters params,
+            final Date expiresAt
+    ) {
+        Entry entry = newest(params);
+        if (entry == null) {
+            return false;
+        }
+        entry.expiresAt = expiresAt.getTime();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(final String token) {
+        Entry entry = entries.get(token);
+        if (entry == null) {
+            return false;
+        }
+        end(entry);
+        return live(entry) != null;
+    }
+
+    @Override
+    public synchronized boolean remove(final TokenParameters params) {
+        TreeSet<Session> sessions = subjectSessions.get(params.getSubject());
+        if (sessions == null) {
+            return false;
+        }
+
+        boolean removed = false;
+        for (Session session : new ArrayList<>(sessions)) {
+            for (Entry entry : new ArrayList<>(session.entries)) {
+                if (entry.type.equals(params.getType())) {
+                    end(entry);
+                    removed |= live(entry) != null;
+                }
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized boolean removeAll(final String subject) {
+        TreeSet<Session> sessions = subjectSessions.remove(subject);
+        if (sessions == null) {
+            return false;
+        }
+
+        boolean removed = false;
+        for (Session session : sessions) {
+            for (Entry entry : session.entries) {
+                entries.remove(entry.token);
+                removed |= live(entry) != null;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the live tokens of a subject ordered by issue time, oldest first.
+     */
+    @Override
+    public synchronized List<String> getSessions(final String subject) {
+        TreeSet<Session> sessions = subjectSessions.get(subject);
+        if (sessions == null) {
+            return List.of();
+        }
+
+        List<Entry> live = new ArrayList<>();
+        for (Session session : sessions) {
+            for (Entry entry : session.entries) {
+                if (live(entry) != null) {
+                    live.add(entry);
+                }
+            }
+        }
+        live.sort(Comparator.comparingLong((Entry entry) -> entry.issuedAt).thenComparingLong(entry -> entry.sequence));
+
+        List<String> tokens = new ArrayList<>(live.size());
+        live.forEach(entry -> tokens.add(entry.token));
+        return tokens;
+    }
+
+    @Override
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Adds a token to a detached session, replacing the token if it is already stored.
+     */
+    private void add(
+            final Session session,
+            final String token,
+            final TokenParameters params
+    ) {
+        Entry previous = entries.get(token);
+        if (previous != null && previous.session == session) {
+            session.entries.remove(previous);
+        } else if (previous != null) {
+            end(previous);
+        }
+
+        Entry entry = new Entry(
+                token,
+                session,
+                params.getType(),
+                params.getIssuedAt().getTime(),
+                params.getExpiredAt().getTime(),
+                sequence++
+        );
+        session.entries.add(entry);
+        entries.put(token, entry);
+    }
+
+    /**
+     * Drops the expired tokens of a subject and evicts its least recently issued sessions
+     * beyond the cap.
+     */
+    private void prune(final String subject) {
+        TreeSet<Session> sessions = subjectSessions.get(subject);
+        if (sessions == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Session session : new ArrayList<>(sessions)) {
+            if (session.entries.stream().anyMatch(entry -> entry.expiresAt <= now)) {
+                detach(session);
+                session.entries.removeIf(entry -> {
+                    if (entry.expiresAt > now) {
+                        return false;
+                    }
+                    entries.remove(entry.token);
+                    return true;
+                });
+                insert(session);
+            }
+        }
+        while (sessions.size() > maxSessions) {
+            sessions.pollFirst().entries.forEach(entry -> entries.remove(entry.token));
+            evictions++;
+        }
+        if (sessions.isEmpty()) {
+            subjectSessions.remove(subject);
+        }
+    }
+
+    private Entry newest(final TokenParameters params) {
+        TreeSet<Session> sessions = subjectSessions.get(params.getSubject());
+        if (sessions == null) {
+            return null;
+        }
+
+        Entry newest = null;
+        for (Session session : sessions) {
+            for (Entry entry : session.entries) {
+                if (entry.type.equals(params.getType())
+                        && live(entry) != null
+                        && (newest == null || entry.issuedAt > newest.issuedAt
+                        || entry.issuedAt == newest.issuedAt && entry.sequence > newest.sequence)) {
+                    newest = entry;
+                }
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Removes a token from its session, and the session from its subject once it is empty.
+     */
+    private void end(final Entry entry) {
+        entries.remove(entry.token);
+        Session session = entry.session;
+        detach(session);
+        session.entries.remove(entry);
+        insert(session);
+
+        TreeSet<Session> sessions = subjectSessions.get(session.subject);
+        if (sessions != null && sessions.isEmpty()) {
+            subjectSessions.remove(session.subject);
+        }
+    }
+
+    /**
+     * Removes a session from the sessions of its subject before its order changes.
+     */
+    private void detach(final Session session) {
+        TreeSet<Session> sessions = subjectSessions.get(session.subject);
+        if (sessions != null) {
+            sessions.remove(session);
+        }
+    }
+
+    /**
+     * Adds a detached session to the sessions of its subject ordered by its newest token, or
+     * forgets it if it has no tokens left.
+     */
+    private void insert(final Session session) {
+        if (session.entries.isEmpty()) {
+            return;
+        }
+
+        long issuedAt = Long.MIN_VALUE;
+        for (Entry entry : session.entries) {
+            issuedAt = Math.max(issuedAt, entry.issuedAt);
+        }
+        session.issuedAt = issuedAt;
+        session.sequence = sequence++;
+        subjectSessions.computeIfAbsent(session.subject, subject -> new TreeSet<>(BY_ISSUE_TIME)).add(session);
+    }
+
+    private static Entry live(final Entry entry) {
+        return entry != null && entry.expiresAt > System.currentTimeMillis() ? entry : null;
+    }
+
+    static void requireSubject(
+            final String subject,
+            final Map<String, TokenParameters> tokens
+    ) {
+        for (TokenParameters params : tokens.values()) {
+            if (!subject.equals(params.getSubject())) {
+                throw new IllegalArgumentException("Tokens of a session must share the subject of the session");
+            }
+        }
+    }
+
+    /**
+     * Tokens of a subject continuing one another, e.g. the tokens of one device. The issue time
+     * and sequence order the session and change only while it is detached from its subject.
+     */
+    private static final class Session {
+
+        private final String subject;
+
+        private final List<Entry> entries;
+
+        private long issuedAt;
+
+        private long sequence;
+
+        private Session(final String subject) {
+            this.subject = subject;
+            this.entries = new ArrayList<>();
+        }
+    }
+
+    /**
+     * A stored token of a session.
+     */
+    private static final class Entry {
+
+        private final String token;
+
+        private final Session session;
+
+        private final String type;
+
+        private final long issuedAt;
+
+        private final long sequence;
+
+        private long expiresAt;
+
+        private Entry(
+                final String token,
+                final Session session,
+                final String type,
+                final long issuedAt,
+                final long expiresAt,
+                final long sequence
+        ) {
+            this.token = token;
+            this.session = session;
+            this.type = type;
+            this.issuedAt = issuedAt;
+            this.expiresAt = expiresAt;
+            this.sequence = sequence;
+        }
+    }
+}
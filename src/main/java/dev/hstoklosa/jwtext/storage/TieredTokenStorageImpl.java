@@ -0,0 +1,504 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.cache.LocalCache;
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+
+/**
+ * Two-tier implementation of the TokenStorage interface.
+ *
+ * A bounded, expiry-aware local cache (L1) is kept in front of a shared storage (L2), usually
+ * RedisTokenStorageImpl. L2 remains the source of truth: every write and removal reaches it, while
+ * reads of hot tokens are served from L1. Tokens changed by other nodes are picked up once their
+ * L1 entry expires, so the L1 time-to-live bounds cross-node staleness (thread-safe if the L2
+ * storage is). Registered with a RedisKeyspaceSubscriber, tokens expired or removed in L2 are
+ * evicted from L1 as soon as their notification arrives. Claim index operations are passed to L2,
+ * removals by claim clear L1, which does not know the claims of its tokens. References are not
+ * kept in L1 and are passed to L2.
+ */
+public class TieredTokenStorageImpl implements ClaimIndexedTokenStorage, ReferenceTokenStorage, TokenEvictionListener {
+
+    /** Default maximum number of tokens kept in L1. */
+    public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    /** Default time after which a token kept in L1 is reloaded from L2. */
+    public static final Duration DEFAULT_TTL = Duration.ofSeconds(30);
+
+    /**
+     * Policy of populating L1 on writes.
+     */
+    public enum WritePolicy {
+
+        /**
+         * Saved tokens are written to L2 and then to L1, so they are read locally right away,
+         * unless another operation on the token was in flight, which drops it from L1 instead.
+         */
+        WRITE_THROUGH,
+
+        /** Saved tokens are written to L2 only and reach L1 on their first read. */
+        WRITE_AROUND
+
+    }
+
+    /** Shared storage holding the tokens. */
+    private final TokenStorage storage;
+
+    /** Local tier of tokens by subject and type. */
+    private final LocalCache<String, CachedToken> cache;
+
+    /** Time after which a token kept in L1 is reloaded from L2. */
+    private final Duration ttl;
+
+    /** Policy of populating L1 on writes. */
+    private final WritePolicy writePolicy;
+
+    /** Number of reads served by L2. */
+    private final LongAdder storageHits;
+
+    /** Number of reads not found in L2. */
+    private final LongAdder storageMisses;
+
+    /** Time spent on L1 reads in nanoseconds. */
+    private final LongAdder cacheNanos;
+
+    /** Time spent on L2 reads in nanoseconds. */
+    private final LongAdder storageNanos;
+
+    /** Source of the versions of operations on L2. */
+    private final AtomicLong sequence;
+
+    /**
+     * Version of the latest operation on L2 in flight by subject and type. An operation caches
+     * its result in L1 only if no other operation on the key started or completed in between.
+     */
+    private final Map<String, Long> versions;
+
+    /**
+     * Creates an object with the default L1 size, time-to-live and the write-through policy.
+     *
+     * @param storage the shared storage holding the tokens
+     */
+    public TieredTokenStorageImpl(final TokenStorage storage) {
+        this(storage, DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL, WritePolicy.WRITE_THROUGH);
+    }
+
+    /**
+     * Creates an object with the provided L1 size, time-to-live and write policy.
+     *
+     * @param storage the shared storage holding the tokens
+     * @param maximumSize the maximum number of tokens kept in L1
+     * @param ttl the time after which a token kept in L1 is reloaded from L2
+     * @param writePolicy the policy of populating L1 on writes
+     */
+    public TieredTokenStorageImpl(
+            final TokenStorage storage,
+            final int maximumSize,
+            final Duration ttl,
+            final WritePolicy writePolicy
+    ) {
+        this.storage = storage;
+        this.cache = new LocalCache<>(maximumSize);
+        this.ttl = ttl;
+        this.writePolicy = writePolicy;
+        this.storageHits = new LongAdder();
+        this.storageMisses = new LongAdder();
+        this.cacheNanos = new LongAdder();
+        this.storageNanos = new LongAdder();
+        this.sequence = new AtomicLong();
+        this.versions = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void save(
+            final String token,
+            final TokenParameters params
+    ) {
+        String key = cacheKey(params);
+        long version = begin(key);
+        CachedToken written = null;
+        try {
+            storage.save(token, params);
+            written = written(token, params);
+        } finally {
+            complete(key, version, written);
+        }
+    }
+
+    @Override
+    public void saveAll(final Map<String, TokenParameters> tokens) {
+        Map<String, Long> started = begin(tokens.values());
+        boolean saved = false;
+        try {
+            storage.saveAll(tokens);
+            saved = true;
+        } finally {
+            completeWrites(started, saved, tokens);
+        }
+    }
+
+    @Override
+    public boolean compareAndSaveAll(
+            final String expectedToken,
+            final TokenParameters expectedParams,
+            final Map<String, TokenParameters> tokens
+    ) {
+        Map<String, Long> started = begin(tokens.values());
+        started.computeIfAbsent(cacheKey(expectedParams), this::begin);
+        boolean saved = false;
+        try {
+            saved = storage.compareAndSaveAll(expectedToken, expectedParams, tokens);
+            return saved;
+        } finally {
+            completeWrites(started, saved, tokens);
+        }
+    }
+
+    @Override
+    public boolean exists(
+            final String token,
+            final TokenParameters params
+    ) {
+        return token.equals(get(params));
+    }
+
+    @Override
+    public String get(final TokenParameters params) {
+        String key = cacheKey(params);
+
+        long start = System.nanoTime();
+        CachedToken cached = cache.get(key);
+        cacheNanos.add(System.nanoTime() - start);
+        if (cached != null) {
+            return cached.token();
+        }
+
+        long version = begin(key);
+        String token = null;
+        try {
+            start = System.nanoTime();
+            token = storage.get(params);
+            storageNanos.add(System.nanoTime() - start);
+            count(token);
+            return token;
+        } finally {
+            complete(key, version, token == null ? null : CachedToken.of(params.getSubject(), token));
+        }
+    }
+
+    /**
+     * Serves the tokens found in L1 and reads the others from L2 in a single batch.
+     */
+    @Override
+    public List<String> getAll(final List<TokenParameters> params) {
+        String[] tokens = new String[params.size()];
+        List<TokenParameters> missed = new ArrayList<>();
+        List<Integer> missedAt = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < tokens.length; i++) {
+            CachedToken cached = cache.get(cacheKey(params.get(i)));
+            if (cached != null) {
+                tokens[i] = cached.token();
+            } else {
+                missed.add(params.get(i));
+                missedAt.add(i);
+            }
+        }
+        cacheNanos.add(System.nanoTime() - start);
+        if (missed.isEmpty()) {
+            return Arrays.asList(tokens);
+        }
+
+        Map<String, Long> started = begin(missed);
+        Map<String, CachedToken> loaded = new HashMap<>();
+        try {
+            start = System.nanoTime();
+            List<String> read = storage.getAll(missed);
+            storageNanos.add(System.nanoTime() - start);
+            for (int i = 0; i < missed.size(); i++) {
+                String token = read.get(i);
+                count(token);
+                tokens[missedAt.get(i)] = token;
+                if (token != null) {
+                    loaded.put(cacheKey(missed.get(i)), CachedToken.of(missed.get(i).getSubject(), token));
+                }
+            }
+        } finally {
+            started.forEach((key, version) -> complete(key, version, loaded.get(key)));
+        }
+        return Arrays.asList(tokens);
+    }
+
+    /**
+     * Moves the expiration in L2 and drops the token from L1, which may hold it until the
+     * previous expiration.
+     */
+    @Override
+    public boolean touch(
+            final TokenParameters params,
+            final Date expiresAt
+    ) {
+        String key = cacheKey(params);
+        long version = begin(key);
+        try {
+            return storage.touch(params, expiresAt);
+        } finally {
+            complete(key, version, null);
+        }
+    }
+
+    @Override
+    public boolean remove(final String token) {
+        boolean removed = storage.remove(token);
+        invalidate((key, cached) -> cached.token().equals(token));
+        return removed;
+    }
+
+    @Override
+    public boolean remove(final TokenParameters params) {
+        String key = cacheKey(params);
+        long version = begin(key);
+        try {
+            return storage.remove(params);
+        } finally {
+            complete(key, version, null);
+        }
+    }
+
+    @Override
+    public boolean removeAll(final String subject) {
+        boolean removed = storage.removeAll(subject);
+        invalidate((key, cached) -> cached.subject().equals(subject));
+        return removed;
+    }
+
+    @Override
+    public Set<String> getIndexedClaims() {
+        return ClaimIndexes.indexedClaims(storage);
+    }
+
+    @Override
+    public List<String> findByClaim(
+            final String claim,
+            final Object value
+    ) {
+        return ClaimIndexes.indexed(storage).findByClaim(claim, value);
+    }
+
+    @Override
+    public boolean removeByClaim(
+            final String claim,
+            final Object value
+    ) {
+        boolean removed = ClaimIndexes.indexed(storage).removeByClaim(claim, value);
+        invalidate((key, cached) -> true);
+        return removed;
+    }
+
+    @Override
+    public void saveReference(
+            final String handle,
+            final String token,
+            final TokenParameters params
+    ) {
+        ClaimIndexes.references(storage).saveReference(handle, token, params);
+    }
+
+    @Override
+    public String getReference(final String handle) {
+        return ClaimIndexes.references(storage).getReference(handle);
+    }
+
+    @Override
+    public boolean removeReference(final String handle) {
+        return ClaimIndexes.references(storage).removeReference(handle);
+    }
+
+    @Override
+    public void onEvict(
+            final String subject,
+            final String type
+    ) {
+        String key = subject + ":" + type;
+        complete(key, begin(key), null);
+    }
+
+    @Override
+    public void onReset() {
+        invalidate((key, cached) -> true);
+    }
+
+    /**
+     * Returns the hit ratio and read latency of the local tier.
+     *
+     * @return the statistics of L1
+     */
+    public TierStatistics getCacheStatistics() {
+        return new TierStatistics(cache.hits(), cache.misses(), cacheNanos.sum());
+    }
+
+    /**
+     * Returns the hit ratio and read latency of the shared tier, which is read on L1 misses only.
+     *
+     * @return the statistics of L2
+     */
+    public TierStatistics getStorageStatistics() {
+        return new TierStatistics(storageHits.sum(), storageMisses.sum(), storageNanos.sum());
+    }
+
+    /**
+     * Returns the local tier, e.g. to read its size and evictions.
+     *
+     * @return the L1 cache
+     */
+    public LocalCache<String, CachedToken> getCache() {
+        return cache;
+    }
+
+    /**
+     * Starts an operation on L2, operations on the key started before it no longer cache
+     * their result.
+     *
+     * @return the version of the operation
+     */
+    private long begin(final String key) {
+        long version = sequence.incrementAndGet();
+        versions.put(key, version);
+        return version;
+    }
+
+    private Map<String, Long> begin(final Collection<TokenParameters> params) {
+        Map<String, Long> started = new HashMap<>();
+        params.forEach(tokenParams -> started.computeIfAbsent(cacheKey(tokenParams), this::begin));
+        return started;
+    }
+
+    /**
+     * Completes an operation on L2. The result is cached if no other operation on the key
+     * started or completed in between, otherwise the token is dropped from L1, as the order
+     * of the operations in L2 is unknown.
+     *
+     * @param cached the token to cache, or null to drop the token from L1
+     */
+    private void complete(
+            final String key,
+            final long version,
+            final CachedToken cached
+    ) {
+        versions.compute(key, (k, current) -> {
+            if (cached != null && current != null && current == version) {
+                cache.put(key, cached, expiration(cached));
+            } else {
+                cache.remove(key);
+            }
+            return null;
+        });
+    }
+
+    private void completeWrites(
+            final Map<String, Long> started,
+            final boolean saved,
+            final Map<String, TokenParameters> tokens
+    ) {
+        Map<String, CachedToken> written = new HashMap<>();
+        if (saved) {
+            tokens.forEach((token, params) -> {
+                CachedToken cached = written(token, params);
+                if (cached != null) {
+                    written.put(cacheKey(params), cached);
+                }
+            });
+        }
+        started.forEach((key, version) -> complete(key, version, written.get(key)));
+    }
+
+    /**
+     * Returns the token to cache after it was written to L2, or null if the write policy does
+     * not populate L1.
+     */
+    private CachedToken written(
+            final String token,
+            final TokenParameters params
+    ) {
+        if (writePolicy != WritePolicy.WRITE_THROUGH) {
+            return null;
+        }
+        return new CachedToken(params.getSubject(), token, params.getExpiredAt().getTime());
+    }
+
+    /**
+     * Drops the matching tokens from L1 after a change in L2 whose keys are unknown. Operations
+     * in flight no longer cache their result, as they may have read L2 before the change.
+     */
+    private void invalidate(final BiPredicate<String, CachedToken> predicate) {
+        versions.clear();
+        cache.removeIf(predicate);
+    }
+
+    private void count(final String token) {
+        if (token == null) {
+            storageMisses.increment();
+        } else {
+            storageHits.increment();
+        }
+    }
+
+    /**
+     * Keeps a token in L1 until its expiration or the time-to-live, whichever comes first. The
+     * expiration of a token read from L2 is its "exp" claim.
+     */
+    private long expiration(final CachedToken cached) {
+        return Math.min(cached.expiresAt(), System.currentTimeMillis() + ttl.toMillis());
+    }
+
+    private String cacheKey(final TokenParameters params) {
+        return params.getSubject() + ":" + params.getType();
+    }
+
+    /**
+     * Read statistics of a single tier.
+     *
+     * @param hits the number of reads that found a token
+     * @param misses the number of reads that found no token
+     * @param totalNanos the total time spent on reads in nanoseconds
+     */
+    public record TierStatistics(
+            long hits,
+            long misses,
+            long totalNanos
+    ) {
+
+        /**
+         * Returns the share of reads that found a token.
+         *
+         * @return the hit ratio between 0 and 1, or 0 if there were no reads
+         */
+        public double hitRatio() {
+            long reads = hits + misses;
+            return reads == 0 ? 0 : (double) hits / reads;
+        }
+
+        /**
+         * Returns the mean time of a read.
+         *
+         * @return the average read latency in nanoseconds, or 0 if there were no reads
+         */
+        public double averageNanos() {
+            long reads = hits + misses;
+            return reads == 0 ? 0 : (double) totalNanos / reads;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package dev.hstoklosa.jwtext.storage;
+
+/**
+ * Listener notified when tokens disappear from a shared storage, e.g. because they expired or
+ * were removed by another node, so that local copies can be evicted.
+ */
+@FunctionalInterface
+public interface TokenEvictionListener {
+
+    /**
+     * Called after the token stored for a subject and type expired or was removed.
+     *
+     * @param subject the subject of the token
+     * @param type the type of the token
+     */
+    void onEvict(
+            String subject,
+            String type
+    );
+
+    /**
+     * Called after a reference handle expired or was removed.
+     *
+     * @param handle the reference handle
+     */
+    default void onEvictReference(final String handle) {
+    }
+
+    /**
+     * Called when notifications may have been missed, e.g. after the connection to the storage
+     * backend was re-established, so that any local copy may be stale.
+     */
+    default void onReset() {
+    }
+}
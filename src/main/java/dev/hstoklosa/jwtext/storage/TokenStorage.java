@@ -2,6 +2,11 @@ package dev.hstoklosa.jwtext.storage;
 
 import dev.hstoklosa.jwtext.model.TokenParameters;
 
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
 public interface TokenStorage {
 
     /**
@@ -15,6 +20,39 @@ public interface TokenStorage {
             TokenParameters params
     );
 
+    /**
+     * Saves the provided tokens to storage. Implementations may write them in a single batch,
+     * the default saves them one by one.
+     *
+     * @param tokens    the JWT tokens mapped to their params
+     */
+    default void saveAll(final Map<String, TokenParameters> tokens) {
+        tokens.forEach(this::save);
+    }
+
+    /**
+     * Saves the provided tokens only if the token currently stored for the expected params
+     * is the expected token. The default implementation is not atomic, implementations that
+     * can be shared between threads or nodes perform the check and the save atomically.
+     *
+     * @param expectedToken     the JWT token expected to be stored
+     * @param expectedParams    the params of the expected JWT token
+     * @param tokens            the JWT tokens to save mapped to their params
+     * @return                  true  - if the expected token was stored and the tokens were saved,
+     *                          false - otherwise
+     */
+    default boolean compareAndSaveAll(
+            final String expectedToken,
+            final TokenParameters expectedParams,
+            final Map<String, TokenParameters> tokens
+    ) {
+        if (!exists(expectedToken, expectedParams)) {
+            return false;
+        }
+        saveAll(tokens);
+        return true;
+    }
+
     /**
      * Checks whether a token is located within the storage.
      *
@@ -36,6 +74,45 @@ public interface TokenStorage {
      */
     String get(TokenParameters params);
 
+    /**
+     * Return tokens from storage based on the provided parameters. Implementations may read
+     * them in a single batch, the default reads them one by one.
+     *
+     * @param params    the params of JWT tokens
+     * @return          the stored JWT tokens in the order of the params, null for missing tokens
+     */
+    default List<String> getAll(final List<TokenParameters> params) {
+        return params.stream()
+                .map(this::get)
+                .toList();
+    }
+
+    /**
+     * Moves the expiration of the stored token without reissuing it, e.g. to slide a session.
+     * Implementations update the expiration in place, the default is not atomic and saves the
+     * stored token again with the new expiration.
+     *
+     * @param params    the params of JWT token
+     * @param expiresAt the new expiration of the stored token
+     * @return          true  - if a token was stored and its expiration moved,
+     *                  false - otherwise
+     */
+    default boolean touch(
+            final TokenParameters params,
+            final Date expiresAt
+    ) {
+        String token = get(params);
+        if (token == null) {
+            return false;
+        }
+        save(token, TokenParameters.builder(params.getSubject(), params.getType(), Duration.ZERO)
+                .claims(params.getClaims())
+                .issuedAt(params.getIssuedAt())
+                .expiredAt(expiresAt)
+                .build());
+        return true;
+    }
+
     /**
      * Removes JWT token from storage.
      *
@@ -52,4 +129,12 @@ public interface TokenStorage {
      */
     boolean remove(TokenParameters params);
 
+    /**
+     * Removes all JWT tokens of a subject from storage.
+     *
+     * @param subject the subject of JWT tokens
+     * @return true - if any JWT token was removed, false - otherwise
+     */
+    boolean removeAll(String subject);
+
 }
\ No newline at end of file
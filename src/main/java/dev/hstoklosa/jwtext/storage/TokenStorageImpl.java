@@ -2,20 +2,60 @@ package dev.hstoklosa.jwtext.storage;
 
 import dev.hstoklosa.jwtext.model.TokenParameters;
 
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
- * Basic implementation of the TokenStorage interface (not thread-safe).
+ * Basic implementation of the ClaimIndexedTokenStorage and ReferenceTokenStorage interfaces
+ * (thread-safe).
  */
-public class TokenStorageImpl implements TokenStorage {
+public class TokenStorageImpl implements ClaimIndexedTokenStorage, ReferenceTokenStorage {
 
     /** Inner map of key-value pairs. */
     private final Map<String, String> tokens;
 
-    /** Creates an object. */
+    /** Expiration times of the stored tokens in milliseconds by key. */
+    private final Map<String, Long> expirations;
+
+    /** Keys of the stored tokens grouped by their subject. */
+    private final Map<String, Set<String>> subjectKeys;
+
+    /** Names of the indexed claims. */
+    private final Set<String> indexedClaims;
+
+    /** Keys of the stored tokens grouped by indexed claim and value. */
+    private final Map<String, Map<String, Set<String>>> claimKeys;
+
+    /** Subject and index entries of the stored tokens carrying indexed claims by key. */
+    private final Map<String, IndexedToken> indexedTokens;
+
+    /** Subjects of the stored references by key. */
+    private final Map<String, String> referenceSubjects;
+
+    /** Creates an object without claim indexes. */
     public TokenStorageImpl() {
+        this(Set.of());
+    }
+
+    /**
+     * Creates an object indexing the provided claims.
+     *
+     * @param indexedClaims the names of the claims to index
+     */
+    public TokenStorageImpl(final Set<String> indexedClaims) {
         this.tokens = new HashMap<>();
+        this.expirations = new HashMap<>();
+        this.subjectKeys = new HashMap<>();
+        this.indexedClaims = Set.copyOf(indexedClaims);
+        this.claimKeys = new HashMap<>();
+        this.indexedTokens = new HashMap<>();
+        this.referenceSubjects = new HashMap<>();
     }
 
     private String subjectTokenKey(
@@ -25,8 +65,12 @@ public class TokenStorageImpl implements TokenStorage {
         return "tokens:" + subject + ":" + type;
     }
 
+    private String referenceKey(final String handle) {
+        return "references:" + handle;
+    }
+
     @Override
-    public void save(
+    public synchronized void save(
             final String token,
             final TokenParameters params
     ) {
@@ -35,10 +79,41 @@ public class TokenStorageImpl implements TokenStorage {
                 params.getType()
         );
         tokens.put(tokenKey, token);
+        expirations.put(tokenKey, params.getExpiredAt().getTime());
+        subjectKeys.computeIfAbsent(params.getSubject(), subject -> new HashSet<>())
+                .add(tokenKey);
+
+        unindex(tokenKey);
+        List<Map.Entry<String, String>> entries = ClaimIndexes.entries(indexedClaims, params);
+        if (!entries.isEmpty()) {
+            indexedTokens.put(tokenKey, new IndexedToken(params.getSubject(), entries));
+            entries.forEach(entry -> claimKeys
+                    .computeIfAbsent(entry.getKey(), claim -> new HashMap<>())
+                    .computeIfAbsent(entry.getValue(), value -> new HashSet<>())
+                    .add(tokenKey));
+        }
     }
 
     @Override
-    public boolean exists(
+    public synchronized void saveAll(final Map<String, TokenParameters> tokens) {
+        tokens.forEach(this::save);
+    }
+
+    @Override
+    public synchronized boolean compareAndSaveAll(
+            final String expectedToken,
+            final TokenParameters expectedParams,
+            final Map<String, TokenParameters> tokens
+    ) {
+        if (!exists(expectedToken, expectedParams)) {
+            return false;
+        }
+        saveAll(tokens);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean exists(
             final String token,
             final TokenParameters params
     ) {
@@ -46,39 +121,212 @@ public class TokenStorageImpl implements TokenStorage {
                 params.getSubject(),
                 params.getType()
         );
-        return token.equals(tokens.get(tokenKey));
+        return token.equals(live(tokenKey));
     }
 
     @Override
-    public String get(final TokenParameters params) {
+    public synchronized String get(final TokenParameters params) {
         String tokenKey = subjectTokenKey(
                 params.getSubject(),
                 params.getType()
         );
-        return tokens.get(tokenKey);
+        return live(tokenKey);
     }
 
     @Override
-    public boolean remove(final String token) {
-        boolean deleted = false;
-        
-        for (Map.Entry<String, String> entry : tokens.entrySet()) {
+    public synchronized boolean touch(
+            final TokenParameters params,
+            final Date expiresAt
+    ) {
+        String tokenKey = subjectTokenKey(
+                params.getSubject(),
+                params.getType()
+        );
+        if (live(tokenKey) == null) {
+            return false;
+        }
+        expirations.put(tokenKey, expiresAt.getTime());
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(final String token) {
+        Set<String> deletedKeys = new HashSet<>();
+
+        Iterator<Map.Entry<String, String>> iterator = tokens.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
             if (entry.getValue().equals(token)) {
-                tokens.remove(entry.getKey());
-                deleted = true;
+                iterator.remove();
+                expirations.remove(entry.getKey());
+                unindex(entry.getKey());
+                deletedKeys.add(entry.getKey());
             }
         }
+        if (!deletedKeys.isEmpty()) {
+            subjectKeys.values().removeIf(keys -> keys.removeAll(deletedKeys) && keys.isEmpty());
+            referenceSubjects.keySet().removeAll(deletedKeys);
+        }
         
-        return deleted;
+        return !deletedKeys.isEmpty();
     }
 
     @Override
-    public boolean remove(final TokenParameters params) {
+    public synchronized boolean remove(final TokenParameters params) {
         String tokenKey = subjectTokenKey(
                 params.getSubject(),
                 params.getType()
         );
 
+        Set<String> keys = subjectKeys.get(params.getSubject());
+        if (keys != null && keys.remove(tokenKey) && keys.isEmpty()) {
+            subjectKeys.remove(params.getSubject());
+        }
+        expirations.remove(tokenKey);
+        unindex(tokenKey);
         return tokens.remove(tokenKey) != null;
     }
-}
\ No newline at end of file
+
+    @Override
+    public synchronized boolean removeAll(final String subject) {
+        Set<String> keys = subjectKeys.remove(subject);
+        if (keys == null) {
+            return false;
+        }
+
+        boolean deleted = false;
+        for (String tokenKey : keys) {
+            expirations.remove(tokenKey);
+            unindex(tokenKey);
+            referenceSubjects.remove(tokenKey);
+            deleted |= tokens.remove(tokenKey) != null;
+        }
+        return deleted;
+    }
+
+    @Override
+    public synchronized void saveReference(
+            final String handle,
+            final String token,
+            final TokenParameters params
+    ) {
+        String referenceKey = referenceKey(handle);
+        removeReference(handle);
+        tokens.put(referenceKey, token);
+        expirations.put(referenceKey, params.getExpiredAt().getTime());
+        referenceSubjects.put(referenceKey, params.getSubject());
+        subjectKeys.computeIfAbsent(params.getSubject(), subject -> new HashSet<>())
+                .add(referenceKey);
+    }
+
+    @Override
+    public synchronized String getReference(final String handle) {
+        return live(referenceKey(handle));
+    }
+
+    @Override
+    public synchronized boolean removeReference(final String handle) {
+        String referenceKey = referenceKey(handle);
+        String subject = referenceSubjects.remove(referenceKey);
+        if (subject == null) {
+            return false;
+        }
+
+        Set<String> keys = subjectKeys.get(subject);
+        if (keys != null && keys.remove(referenceKey) && keys.isEmpty()) {
+            subjectKeys.remove(subject);
+        }
+        expirations.remove(referenceKey);
+        return tokens.remove(referenceKey) != null;
+    }
+
+    @Override
+    public Set<String> getIndexedClaims() {
+        return indexedClaims;
+    }
+
+    @Override
+    public synchronized List<String> findByClaim(
+            final String claim,
+            final Object value
+    ) {
+        return indexedKeys(claim, value).stream()
+                .map(this::live)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @Override
+    public synchronized boolean removeByClaim(
+            final String claim,
+            final Object value
+    ) {
+        boolean deleted = false;
+        for (String tokenKey : indexedKeys(claim, value)) {
+            IndexedToken indexed = unindex(tokenKey);
+            Set<String> keys = subjectKeys.get(indexed.subject());
+            if (keys != null && keys.remove(tokenKey) && keys.isEmpty()) {
+                subjectKeys.remove(indexed.subject());
+            }
+            expirations.remove(tokenKey);
+            deleted |= tokens.remove(tokenKey) != null;
+        }
+        return deleted;
+    }
+
+    /**
+     * Returns a copy of the keys indexed under a claim value.
+     */
+    private List<String> indexedKeys(
+            final String claim,
+            final Object value
+    ) {
+        ClaimIndexes.requireIndexed(indexedClaims, claim);
+        Set<String> keys = claimKeys.getOrDefault(claim, Map.of()).get(String.valueOf(value));
+        return keys == null ? List.of() : List.copyOf(keys);
+    }
+
+    /**
+     * Removes a key from the claim indexes.
+     */
+    private IndexedToken unindex(final String tokenKey) {
+        IndexedToken indexed = indexedTokens.remove(tokenKey);
+        if (indexed == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> entry : indexed.entries()) {
+            Map<String, Set<String>> values = claimKeys.get(entry.getKey());
+            Set<String> keys = values.get(entry.getValue());
+            if (keys.remove(tokenKey) && keys.isEmpty()) {
+                values.remove(entry.getValue());
+                if (values.isEmpty()) {
+                    claimKeys.remove(entry.getKey());
+                }
+            }
+        }
+        return indexed;
+    }
+
+    /**
+     * Returns the token stored under a key unless it has expired.
+     */
+    private String live(final String tokenKey) {
+        Long expiresAt = expirations.get(tokenKey);
+        if (expiresAt != null && expiresAt <= System.currentTimeMillis()) {
+            return null;
+        }
+        return tokens.get(tokenKey);
+    }
+
+    /**
+     * Index entries of a stored token.
+     *
+     * @param subject the subject of the token
+     * @param entries the indexed claims and values carried by the token
+     */
+    private record IndexedToken(
+            String subject,
+            List<Map.Entry<String, String>> entries
+    ) {
+    }
+}
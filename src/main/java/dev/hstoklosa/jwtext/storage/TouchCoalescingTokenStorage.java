@@ -0,0 +1,341 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TokenStorage decorator that coalesces touches of the same token (thread-safe).
+ *
+ * The first touch of a token is written to the underlying storage right away. Touches arriving
+ * within the interval after it are merged into a single pending touch carrying the latest
+ * expiration, which is written once the interval has passed. A busy session therefore moves its
+ * expiration at most once per interval, at the cost of the stored expiration lagging behind the
+ * requested one by up to two intervals. Every other operation is passed through, saves and
+ * removals by params or subject drop pending touches of the replaced or removed tokens, and
+ * pending touches of tokens removed otherwise, e.g. by claim, find no token. The thread writing
+ * pending touches is started with the first deferred touch. Closing the storage writes every
+ * pending touch.
+ */
+public class TouchCoalescingTokenStorage implements ClaimIndexedTokenStorage, ReferenceTokenStorage, AutoCloseable {
+
+    /** Default minimum time between two touches of a token written to the underlying storage. */
+    public static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(1);
+
+    private static final System.Logger LOGGER = System.getLogger(TouchCoalescingTokenStorage.class.getName());
+
+    /** Storage the touches are written to. */
+    private final TokenStorage delegate;
+
+    /** Minimum time between two touches of a token written to the underlying storage in nanoseconds. */
+    private final long intervalNanos;
+
+    /** Touch state by subject and type, kept for tokens touched within the last interval. */
+    private final Map<String, TouchWindow> windows;
+
+    /** Number of touches written to the underlying storage. */
+    private final LongAdder written;
+
+    /** Number of touches merged into a pending touch. */
+    private final LongAdder coalesced;
+
+    /** Thread writing the pending touches, started with the first deferred touch. */
+    private Thread flusher;
+
+    /** Set once the storage is closed. */
+    private volatile boolean closed;
+
+    /**
+     * Creates an object with the default interval.
+     *
+     * @param delegate the storage the touches are written to
+     */
+    public TouchCoalescingTokenStorage(final TokenStorage delegate) {
+        this(delegate, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Creates an object with the provided interval.
+     *
+     * @param delegate the storage the touches are written to
+     * @param interval the minimum time between two touches of a token written to the underlying storage
+     */
+    public TouchCoalescingTokenStorage(
+            final TokenStorage delegate,
+            final Duration interval
+    ) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        this.delegate = delegate;
+        this.intervalNanos = interval.toNanos();
+        this.windows = new ConcurrentHashMap<>();
+        this.written = new LongAdder();
+        this.coalesced = new LongAdder();
+    }
+
+    /**
+     * Drops the pending touch of the replaced token before saving, so that it cannot move the
+     * expiration of the new token.
+     */
+    @Override
+    public void save(
+            final String token,
+            final TokenParameters params
+    ) {
+        windows.remove(key(params));
+        delegate.save(token, params);
+    }
+
+    @Override
+    public void saveAll(final Map<String, TokenParameters> tokens) {
+        tokens.values().forEach(params -> windows.remove(key(params)));
+        delegate.saveAll(tokens);
+    }
+
+    @Override
+    public boolean compareAndSaveAll(
+            final String expectedToken,
+            final TokenParameters expectedParams,
+            final Map<String, TokenParameters> tokens
+    ) {
+        windows.remove(key(expectedParams));
+        tokens.values().forEach(params -> windows.remove(key(params)));
+        return delegate.compareAndSaveAll(expectedToken, expectedParams, tokens);
+    }
+
+    @Override
+    public boolean exists(
+            final String token,
+            final TokenParameters params
+    ) {
+        return delegate.exists(token, params);
+    }
+
+    @Override
+    public String get(final TokenParameters params) {
+        return delegate.get(params);
+    }
+
+    @Override
+    public List<String> getAll(final List<TokenParameters> params) {
+        return delegate.getAll(params);
+    }
+
+    /**
+     * Writes the touch right away if the token was not touched within the interval, otherwise
+     * defers it until the interval has passed.
+     *
+     * @return true  - if the touch was written and the token was stored, or the touch was deferred,
+     *         false - if the touch was written and no token was stored
+     */
+    @Override
+    public boolean touch(
+            final TokenParameters params,
+            final Date expiresAt
+    ) {
+        if (closed) {
+            throw new IllegalStateException("Touch-coalescing storage is closed");
+        }
+        long now = System.nanoTime();
+        boolean[] writeNow = new boolean[1];
+        windows.compute(key(params), (key, window) -> {
+            if (window == null || window.pending() == null && now - window.writtenAt() >= intervalNanos) {
+                writeNow[0] = true;
+                return new TouchWindow(now, null, null);
+            }
+            Date latest = window.pending() == null || expiresAt.after(window.expiresAt())
+                    ? expiresAt
+                    : window.expiresAt();
+            return new TouchWindow(window.writtenAt(), params, latest);
+        });
+
+        if (!writeNow[0]) {
+            coalesced.increment();
+            startFlusher();
+            return true;
+        }
+        written.increment();
+        return delegate.touch(params, expiresAt);
+    }
+
+    @Override
+    public boolean remove(final String token) {
+        return delegate.remove(token);
+    }
+
+    @Override
+    public boolean remove(final TokenParameters params) {
+        windows.remove(key(params));
+        return delegate.remove(params);
+    }
+
+    @Override
+    public boolean removeAll(final String subject) {
+        windows.values().removeIf(window -> window.pending() != null
+                && window.pending().getSubject().equals(subject));
+        return delegate.removeAll(subject);
+    }
+
+    @Override
+    public Set<String> getIndexedClaims() {
+        return ClaimIndexes.indexedClaims(delegate);
+    }
+
+    @Override
+    public List<String> findByClaim(
+            final String claim,
+            final Object value
+    ) {
+        return ClaimIndexes.indexed(delegate).findByClaim(claim, value);
+    }
+
+    @Override
+    public boolean removeByClaim(
+            final String claim,
+            final Object value
+    ) {
+        return ClaimIndexes.indexed(delegate).removeByClaim(claim, value);
+    }
+
+    @Override
+    public void saveReference(
+            final String handle,
+            final String token,
+            final TokenParameters params
+    ) {
+        ClaimIndexes.references(delegate).saveReference(handle, token, params);
+    }
+
+    @Override
+    public String getReference(final String handle) {
+        return ClaimIndexes.references(delegate).getReference(handle);
+    }
+
+    @Override
+    public boolean removeReference(final String handle) {
+        return ClaimIndexes.references(delegate).removeReference(handle);
+    }
+
+    /**
+     * Writes every pending touch to the underlying storage before returning.
+     */
+    public void flush() {
+        writePending(true);
+    }
+
+    /**
+     * Returns the number of touches written to the underlying storage.
+     *
+     * @return the number of written touches
+     */
+    public long getWrittenTouches() {
+        return written.sum();
+    }
+
+    /**
+     * Returns the number of touches merged into a pending touch instead of being written.
+     *
+     * @return the number of coalesced touches
+     */
+    public long getCoalescedTouches() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Stops accepting touches and writes the pending ones.
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            thread = flusher;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    private synchronized void startFlusher() {
+        if (flusher != null || closed) {
+            return;
+        }
+        flusher = new Thread(this::runFlusher, "jwt-ext-touch-coalescer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    private void runFlusher() {
+        while (!closed) {
+            LockSupport.parkNanos(this, intervalNanos);
+            try {
+                writePending(false);
+            } catch (RuntimeException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Failed to write coalesced touches, retrying", e);
+            }
+        }
+    }
+
+    /**
+     * Writes the pending touches whose interval has passed, or all of them if forced, and forgets
+     * tokens not touched within the last interval.
+     */
+    private void writePending(final boolean force) {
+        for (String key : List.copyOf(windows.keySet())) {
+            long now = System.nanoTime();
+            TouchWindow[] due = new TouchWindow[1];
+            windows.computeIfPresent(key, (k, window) -> {
+                if (!force && now - window.writtenAt() < intervalNanos) {
+                    return window;
+                }
+                if (window.pending() == null) {
+                    return null;
+                }
+                due[0] = window;
+                return new TouchWindow(now, null, null);
+            });
+
+            if (due[0] != null) {
+                try {
+                    delegate.touch(due[0].pending(), due[0].expiresAt());
+                    written.increment();
+                } catch (RuntimeException e) {
+                    windows.merge(key, due[0], (current, failed) -> current.pending() == null ? failed : current);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private String key(final TokenParameters params) {
+        return params.getSubject() + ":" + params.getType();
+    }
+
+    /**
+     * Touch state of a token.
+     *
+     * @param writtenAt the time the last touch was written in nanoseconds
+     * @param pending the params of the pending touch, or null if there is none
+     * @param expiresAt the expiration of the pending touch, or null if there is none
+     */
+    private record TouchWindow(
+            long writtenAt,
+            TokenParameters pending,
+            Date expiresAt
+    ) {
+    }
+}
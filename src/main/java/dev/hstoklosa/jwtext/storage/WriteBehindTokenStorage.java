@@ -0,0 +1,439 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * TokenStorage decorator that saves tokens asynchronously in batches (thread-safe).
+ *
+ * Saves are buffered in a bounded queue and written to the underlying storage with saveAll once
+ * the batch size is reached or the oldest buffered save is older than the maximum delay. Buffered
+ * tokens are visible to reads on this node right away, other nodes see them after the flush. When
+ * the queue is full, callers wait for the next flush. Removals are applied synchronously and cancel
+ * buffered saves of the removed tokens. Lookups and removals by claim flush the buffered saves
+ * first, so that buffered tokens are found by their claims. References are passed through
+ * unbuffered. Closing the storage flushes every
+ * buffered save. The flushing thread is started with the first save.
+ */
+public class WriteBehindTokenStorage implements ClaimIndexedTokenStorage, ReferenceTokenStorage, AutoCloseable {
+
+    /** Default maximum number of buffered saves. */
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    /** Default number of saves written in a single batch. */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    /** Default maximum time a save stays buffered. */
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofMillis(50);
+
+    /** Time a caller waits for queue space before checking again. */
+    private static final long BACKPRESSURE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static final System.Logger LOGGER = System.getLogger(WriteBehindTokenStorage.class.getName());
+
+    /** Storage the buffered saves are written to. */
+    private final TokenStorage delegate;
+
+    /** Maximum number of buffered saves. */
+    private final int capacity;
+
+    /** Number of saves written in a single batch. */
+    private final int batchSize;
+
+    /** Maximum time a save stays buffered in nanoseconds. */
+    private final long maxDelayNanos;
+
+    /** Buffered saves in order of arrival, a failed batch is put back at the head. */
+    private final Deque<PendingSave> queue;
+
+    /** Number of buffered saves, reserved before a save is enqueued. */
+    private final AtomicInteger queued;
+
+    /**
+     * Number of saves in the queue, counted once enqueued, so that a batch is only flushed once
+     * the saves reserved for it can be taken.
+     */
+    private final AtomicInteger enqueued;
+
+    /** Latest buffered save by subject and type, serves reads until the save is flushed. */
+    private final Map<String, PendingSave> pending;
+
+    /** Held while a batch is written and while tokens are removed, so removals are not undone. */
+    private final ReentrantLock flushLock;
+
+    /** Thread writing the buffered saves, started with the first save. */
+    private volatile Thread flusher;
+
+    /** Set once the storage is closed. */
+    private volatile boolean closed;
+
+    /**
+     * Creates an object with the default capacity, batch size and maximum delay.
+     *
+     * @param delegate the storage the buffered saves are written to
+     */
+    public WriteBehindTokenStorage(final TokenStorage delegate) {
+        this(delegate, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Creates an object with the provided capacity, batch size and maximum delay.
+     *
+     * @param delegate the storage the buffered saves are written to
+     * @param capacity the maximum number of buffered saves
+     * @param batchSize the number of saves written in a single batch
+     * @param maxDelay the maximum time a save stays buffered
+     */
+    public WriteBehindTokenStorage(
+            final TokenStorage delegate,
+            final int capacity,
+            final int batchSize,
+            final Duration maxDelay
+    ) {
+        if (capacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Capacity and batch size must be positive");
+        }
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.queue = new ConcurrentLinkedDeque<>();
+        this.queued = new AtomicInteger();
+        this.enqueued = new AtomicInteger();
+        this.pending = new ConcurrentHashMap<>();
+        this.flushLock = new ReentrantLock();
+    }
+
+    @Override
+    public void save(
+            final String token,
+            final TokenParameters params
+    ) {
+        reserve();
+        PendingSave save = new PendingSave(key(params), token, params, System.nanoTime());
+        pending.put(save.key(), save);
+        queue.add(save);
+        if (flusher == null) {
+            startFlusher();
+        }
+        if (enqueued.incrementAndGet() >= Math.min(batchSize, capacity)) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    /**
+     * Flushes the buffered saves and then saves the provided tokens synchronously, so that the
+     * expected token is compared with the latest token saved on this node.
+     */
+    @Override
+    public boolean compareAndSaveAll(
+            final String expectedToken,
+            final TokenParameters expectedParams,
+            final Map<String, TokenParameters> tokens
+    ) {
+        flushLock.lock();
+        try {
+            flush();
+            return delegate.compareAndSaveAll(expectedToken, expectedParams, tokens);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean exists(
+            final String token,
+            final TokenParameters params
+    ) {
+        return token.equals(get(params));
+    }
+
+    @Override
+    public String get(final TokenParameters params) {
+        PendingSave save = pending.get(key(params));
+        return save != null ? save.token() : delegate.get(params);
+    }
+
+    /**
+     * Flushes a buffered save of the token first, so that the new expiration is not overwritten
+     * by it.
+     */
+    @Override
+    public boolean touch(
+            final TokenParameters params,
+            final Date expiresAt
+    ) {
+        flushLock.lock();
+        try {
+            if (pending.containsKey(key(params))) {
+                flush();
+            }
+            return delegate.touch(params, expiresAt);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(final String token) {
+        flushLock.lock();
+        try {
+            boolean cancelled = pending.values().removeIf(save -> save.token().equals(token));
+            return delegate.remove(token) || cancelled;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(final TokenParameters params) {
+        flushLock.lock();
+        try {
+            boolean cancelled = pending.remove(key(params)) != null;
+            return delegate.remove(params) || cancelled;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean removeAll(final String subject) {
+        flushLock.lock();
+        try {
+            boolean cancelled = pending.values()
+                    .removeIf(save -> save.params().getSubject().equals(subject));
+            return delegate.removeAll(subject) || cancelled;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public Set<String> getIndexedClaims() {
+        return ClaimIndexes.indexedClaims(delegate);
+    }
+
+    @Override
+    public List<String> findByClaim(
+            final String claim,
+            final Object value
+    ) {
+        ClaimIndexedTokenStorage indexed = ClaimIndexes.indexed(delegate);
+        flushLock.lock();
+        try {
+            flush();
+            return indexed.findByClaim(claim, value);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean removeByClaim(
+            final String claim,
+            final Object value
+    ) {
+        ClaimIndexedTokenStorage indexed = ClaimIndexes.indexed(delegate);
+        flushLock.lock();
+        try {
+            flush();
+            return indexed.removeByClaim(claim, value);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void saveReference(
+            final String handle,
+            final String token,
+            final TokenParameters params
+    ) {
+        ClaimIndexes.references(delegate).saveReference(handle, token, params);
+    }
+
+    @Override
+    public String getReference(final String handle) {
+        return ClaimIndexes.references(delegate).getReference(handle);
+    }
+
+    @Override
+    public boolean removeReference(final String handle) {
+        return ClaimIndexes.references(delegate).removeReference(handle);
+    }
+
+    /**
+     * Writes every buffered save to the underlying storage before returning. Saves buffered while
+     * flushing are written only as far as the number of saves buffered at the start allows, so
+     * that a steady stream of saves cannot keep the caller flushing.
+     */
+    public void flush() {
+        int remaining = queued.get();
+        while (remaining > 0) {
+            int flushed = flushBatch();
+            if (flushed == 0) {
+                return;
+            }
+            remaining -= flushed;
+        }
+    }
+
+    /**
+     * Returns the number of buffered saves.
+     *
+     * @return the number of saves not yet written to the underlying storage
+     */
+    public int size() {
+        return queued.get();
+    }
+
+    /**
+     * Stops accepting saves and flushes the buffered ones.
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            thread = flusher;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    private synchronized void startFlusher() {
+        if (flusher != null || closed) {
+            return;
+        }
+        Thread thread = new Thread(this::runFlusher, "jwt-ext-write-behind");
+        thread.setDaemon(true);
+        thread.start();
+        flusher = thread;
+    }
+
+    private void reserve() {
+        while (true) {
+            if (closed) {
+                throw new IllegalStateException("Write-behind storage is closed");
+            }
+            int current = queued.get();
+            if (current < capacity) {
+                if (queued.compareAndSet(current, current + 1)) {
+                    return;
+                }
+            } else {
+                LockSupport.unpark(flusher);
+                LockSupport.parkNanos(this, BACKPRESSURE_PARK_NANOS);
+            }
+        }
+    }
+
+    private void runFlusher() {
+        while (!closed) {
+            PendingSave oldest = queue.peek();
+            if (oldest == null) {
+                LockSupport.parkNanos(this, maxDelayNanos);
+                continue;
+            }
+            long waited = System.nanoTime() - oldest.queuedAt();
+            if (enqueued.get() < Math.min(batchSize, capacity) && waited < maxDelayNanos) {
+                LockSupport.parkNanos(this, maxDelayNanos - waited);
+                continue;
+            }
+            try {
+                flushBatch();
+            } catch (RuntimeException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Failed to flush buffered tokens, retrying", e);
+                LockSupport.parkNanos(this, maxDelayNanos);
+            }
+        }
+    }
+
+    /**
+     * Writes the next batch of buffered saves.
+     *
+     * @return the number of saves taken from the queue
+     */
+    private int flushBatch() {
+        flushLock.lock();
+        try {
+            List<PendingSave> batch = new ArrayList<>(batchSize);
+            for (PendingSave save = queue.peek(); save != null && batch.size() < batchSize; save = queue.peek()) {
+                batch.add(save);
+                queue.poll();
+            }
+            try {
+                write(batch);
+            } catch (RuntimeException e) {
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    queue.addFirst(batch.get(i));
+                }
+                throw e;
+            }
+            for (PendingSave save : batch) {
+                pending.remove(save.key(), save);
+            }
+            enqueued.addAndGet(-batch.size());
+            queued.addAndGet(-batch.size());
+            return batch.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void write(final List<PendingSave> batch) {
+        Map<String, TokenParameters> tokens = new LinkedHashMap<>();
+        for (PendingSave save : batch) {
+            if (pending.get(save.key()) != save) {
+                continue;
+            }
+            if (tokens.putIfAbsent(save.token(), save.params()) != null) {
+                delegate.saveAll(tokens);
+                tokens.clear();
+                tokens.put(save.token(), save.params());
+            }
+        }
+        delegate.saveAll(tokens);
+    }
+
+    private String key(final TokenParameters params) {
+        return params.getSubject() + ":" + params.getType();
+    }
+
+    /**
+     * A buffered save.
+     *
+     * @param key the subject and type of the token
+     * @param token the JWT token
+     * @param params the params of the token
+     * @param queuedAt the time the save was buffered in nanoseconds
+     */
+    private record PendingSave(
+            String key,
+            String token,
+            TokenParameters params,
+            long queuedAt
+    ) {
+    }
+}
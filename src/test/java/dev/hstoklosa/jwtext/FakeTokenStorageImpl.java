@@ -76,4 +76,10 @@ public class FakeTokenStorageImpl implements TokenStorage {
         
         return tokens.remove(tokenKey) != null;
     }
+
+    @Override
+    public boolean removeAll(final String subject) {
+        return tokens.keySet()
+                .removeIf(tokenKey -> tokenKey.startsWith("tokens:" + subject + ":"));
+    }
 }
\ No newline at end of file
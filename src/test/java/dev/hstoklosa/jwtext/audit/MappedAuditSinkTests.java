@@ -0,0 +1,142 @@
+package dev.hstoklosa.jwtext.audit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedAuditSinkTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsShouldBeReadBackInOrder() throws Exception {
+        Path file = directory.resolve("audit.log");
+        try (MappedAuditSink sink = new MappedAuditSink(file, 16, 16)) {
+            sink.record(AuditEvent.CREATED, "user@example.com", "access", "token", 1_000L);
+            sink.record(AuditEvent.INVALIDATED, null, null, "token", 0);
+            sink.recordClaim("tenant", "acme");
+            sink.record(AuditEvent.REVOKED, "ü".repeat(40), null, null, 2_000L);
+        }
+
+        List<AuditRecord> records = new AuditLogReader(file).read();
+
+        String tokenHash = HexFormat.of().formatHex(
+                MessageDigest.getInstance("SHA-256").digest("token".getBytes(StandardCharsets.UTF_8)),
+                0,
+                16
+        );
+        assertEquals(4, records.size());
+        assertEquals(
+                List.of(AuditEvent.CREATED, AuditEvent.INVALIDATED, AuditEvent.INVALIDATED_CLAIM, AuditEvent.REVOKED),
+                records.stream().map(AuditRecord::event).toList()
+        );
+        assertEquals(List.of(1L, 2L, 3L, 4L), records.stream().map(AuditRecord::sequence).toList());
+        assertEquals("user@example.com", records.get(0).subject());
+        assertEquals("access", records.get(0).type());
+        assertEquals(tokenHash, records.get(0).tokenHash());
+        assertEquals(1_000L, records.get(0).until());
+        assertEquals(tokenHash, records.get(1).tokenHash());
+        assertEquals("", records.get(1).subject());
+        assertEquals("", records.get(2).tokenHash());
+        assertEquals("tenant", records.get(2).claim());
+        assertEquals("acme", records.get(2).value());
+        assertEquals("", records.get(2).subject());
+        assertEquals("", records.get(0).claim());
+        assertEquals("ü".repeat(28), records.get(3).subject());
+        assertTrue(records.get(3).truncated());
+        assertFalse(records.get(0).truncated());
+    }
+
+    @Test
+    void ringBufferShouldKeepLatestRecordsAcrossReopening() {
+        Path file = directory.resolve("audit.log");
+        try (MappedAuditSink sink = new MappedAuditSink(file, 4, 16)) {
+            for (int i = 0; i < 3; i++) {
+                sink.record(AuditEvent.CREATED, "subject" + i, "access", null, 0);
+            }
+        }
+        try (MappedAuditSink sink = new MappedAuditSink(file, 4, 16)) {
+            for (int i = 3; i < 6; i++) {
+                sink.record(AuditEvent.CREATED, "subject" + i, "access", null, 0);
+            }
+        }
+
+        List<AuditRecord> records = new AuditLogReader(file).read();
+
+        assertEquals(List.of(3L, 4L, 5L, 6L), records.stream().map(AuditRecord::sequence).toList());
+        assertEquals("subject5", records.get(3).subject());
+        assertThrows(IllegalArgumentException.class, () -> new MappedAuditSink(file, 8, 16));
+    }
+
+    @Test
+    void capacityBeyondSingleMappingShouldBeRejected() {
+        Path file = directory.resolve("audit.log");
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new MappedAuditSink(file, MappedAuditSink.MAX_CAPACITY + 1, 16)
+        );
+    }
+
+    @Test
+    void everyChangeShouldBeWrittenOrCountedAsDropped() throws Exception {
+        Path file = directory.resolve("audit.log");
+        int threads = 8;
+        int changes = 5_000;
+        MappedAuditSink sink = new MappedAuditSink(file, threads * changes, 64);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < changes; i++) {
+                        sink.record(AuditEvent.CREATED, "subject", "access", "token" + i, i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            sink.close();
+        }
+        sink.record(AuditEvent.CREATED, "subject", "access", "token", 0);
+
+        AuditLogReader reader = new AuditLogReader(file);
+        assertEquals(threads * changes + 1, reader.read().size() + sink.getDropped());
+        assertEquals(sink.getDropped() - 1, reader.getDropped());
+    }
+
+    @Test
+    void exportShouldWriteCsv() {
+        Path file = directory.resolve("audit.log");
+        try (MappedAuditSink sink = new MappedAuditSink(file, 4, 4)) {
+            sink.record(AuditEvent.INVALIDATED_SUBJECT, "Doe, \"John\"", null, null, 0);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new AuditLogReader(file).export(new PrintStream(out, true, StandardCharsets.UTF_8));
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\\R");
+        assertEquals("sequence,recordedAt,event,subject,type,claim,value,tokenHash,until,truncated", lines[0]);
+        assertTrue(lines[1].matches("1,\\d+,INVALIDATED_SUBJECT,\"Doe, \"\"John\"\"\",,,,,0,false"), lines[1]);
+    }
+}
@@ -0,0 +1,60 @@
+package dev.hstoklosa.jwtext.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalCacheTests {
+
+    @Test
+    void getShouldReturnCachedValue() {
+        LocalCache<String, String> cache = new LocalCache<>(10);
+
+        cache.put("key", "value");
+
+        assertEquals("value", cache.get("key"));
+        assertNull(cache.get("otherKey"));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    void getWithExpiredValueShouldReturnNull() {
+        LocalCache<String, String> cache = new LocalCache<>(10);
+
+        cache.put("key", "value", System.currentTimeMillis() - 1);
+
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void putShouldEvictLeastRecentlyUsedValue() {
+        LocalCache<String, String> cache = new LocalCache<>(2);
+
+        cache.put("first", "1");
+        cache.put("second", "2");
+        cache.get("first");
+        cache.put("third", "3");
+
+        assertEquals("1", cache.get("first"));
+        assertNull(cache.get("second"));
+        assertEquals("3", cache.get("third"));
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    void removeIfShouldRemoveMatchingValues() {
+        LocalCache<String, String> cache = new LocalCache<>(10);
+
+        cache.put("first", "token");
+        cache.put("second", "token");
+        cache.put("third", "otherToken");
+
+        assertTrue(cache.removeIf((key, value) -> value.equals("token")));
+        assertEquals(1, cache.size());
+        assertEquals("otherToken", cache.get("third"));
+    }
+}
@@ -0,0 +1,111 @@
+package dev.hstoklosa.jwtext.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RequestCoalescerTests {
+
+    private final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentLoadsOfSameKeyShouldShareOneLoad() throws Exception {
+        Future<String> leader = executor.submit(() -> coalescer.load("key", this::blockingLoad));
+        awaitLoads(1);
+
+        List<Future<String>> followers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            followers.add(executor.submit(() -> coalescer.load("key", this::blockingLoad)));
+        }
+        awaitCoalesced(4);
+        release.countDown();
+
+        assertEquals("value", leader.get());
+        for (Future<String> follower : followers) {
+            assertEquals("value", follower.get());
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failedLoadShouldBeRethrownToAllCallers() throws Exception {
+        Future<String> leader = executor.submit(() -> coalescer.load("key", () -> {
+            blockingLoad();
+            throw new IllegalStateException("unavailable");
+        }));
+        awaitLoads(1);
+        Future<String> follower = executor.submit(() -> coalescer.load("key", this::blockingLoad));
+        awaitCoalesced(1);
+        release.countDown();
+
+        ExecutionException leaderFailure = assertThrows(ExecutionException.class, leader::get);
+        ExecutionException followerFailure = assertThrows(ExecutionException.class, follower::get);
+        assertInstanceOf(IllegalStateException.class, leaderFailure.getCause());
+        assertInstanceOf(IllegalStateException.class, followerFailure.getCause());
+    }
+
+    @Test
+    void loadAfterInvalidateShouldNotJoinEarlierLoad() throws Exception {
+        Future<String> leader = executor.submit(() -> coalescer.load("key", this::blockingLoad));
+        awaitLoads(1);
+
+        coalescer.invalidate("key");
+
+        assertEquals("fresh", coalescer.load("key", () -> "fresh"));
+        release.countDown();
+        assertEquals("value", leader.get());
+        assertEquals(0, coalescer.coalesced());
+    }
+
+    @Test
+    void completedLoadShouldNotBeCached() {
+        assertEquals("first", coalescer.load("key", () -> "first"));
+        assertEquals("second", coalescer.load("key", () -> "second"));
+    }
+
+    private String blockingLoad() {
+        loads.incrementAndGet();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "value";
+    }
+
+    private void awaitLoads(final int expected) throws InterruptedException {
+        while (loads.get() < expected) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitCoalesced(final int expected) throws InterruptedException {
+        while (coalescer.coalesced() < expected) {
+            Thread.sleep(1);
+        }
+    }
+}
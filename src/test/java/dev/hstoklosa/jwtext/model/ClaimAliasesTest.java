@@ -0,0 +1,68 @@
+package dev.hstoklosa.jwtext.model;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ClaimAliasesTest {
+
+    @Test
+    void shouldCompactAndExpandClaims() {
+        ClaimAliases aliases = ClaimAliases.builder()
+                .alias("organizationIdentifier", "oid")
+                .alias("grantedPermissions", "prm")
+                .build();
+        Map<String, Object> claims = Map.of(
+                "organizationIdentifier", "acme",
+                "grantedPermissions", List.of("read"),
+                "locale", "en"
+        );
+
+        Map<String, Object> compacted = aliases.compact(claims);
+
+        assertEquals(Map.of("oid", "acme", "prm", List.of("read"), "locale", "en"), compacted);
+        assertEquals(claims, aliases.expand(compacted));
+        assertEquals("oid", aliases.alias("organizationIdentifier"));
+        assertEquals("locale", aliases.alias("locale"));
+    }
+
+    @Test
+    void shouldRejectClashingAliases() {
+        ClaimAliases.ClaimAliasesBuilder builder = ClaimAliases.builder()
+                .alias("organizationIdentifier", "oid");
+
+        assertThrows(IllegalArgumentException.class, () -> builder.alias("ownerIdentifier", "oid"));
+        assertThrows(IllegalArgumentException.class, () -> builder.alias("organizationIdentifier", "org"));
+        assertThrows(IllegalArgumentException.class, () -> builder.alias("oid", "o"));
+        assertThrows(IllegalArgumentException.class, () -> builder.alias("subject", "sub"));
+        assertThrows(IllegalArgumentException.class, () -> builder.alias("exp", "e"));
+    }
+
+    @Test
+    void buildShouldRejectAliasOfTokenTypeClaim() {
+        ClaimAliases.ClaimAliasesBuilder builder = ClaimAliases.builder()
+                .alias("organizationIdentifier", "tokenType");
+
+        assertThrows(IllegalArgumentException.class, builder::build);
+        assertEquals("typ", ClaimAliases.builder().alias("tokenType", "typ").build().alias("tokenType"));
+    }
+
+    @Test
+    void compactShouldRejectClaimNamedLikeAlias() {
+        ClaimAliases aliases = ClaimAliases.builder()
+                .alias("organizationIdentifier", "oid")
+                .build();
+
+        assertThrows(IllegalArgumentException.class, () -> aliases.compact(Map.of("oid", "acme")));
+    }
+
+    @Test
+    void emptyBuilderShouldReturnNone() {
+        assertSame(ClaimAliases.NONE, ClaimAliases.builder().build());
+    }
+}
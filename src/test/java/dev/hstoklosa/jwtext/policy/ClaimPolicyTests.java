@@ -0,0 +1,78 @@
+package dev.hstoklosa.jwtext.policy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClaimPolicyTests {
+
+    private final Map<String, Object> claims = Map.of(
+            "tenant", "acme",
+            "level", 3,
+            "roles", List.of("user", "admin"),
+            "scope", "read:tokens write:tokens"
+    );
+
+    @Test
+    void satisfiedPolicyShouldAllow() {
+        ClaimPolicy policy = ClaimPolicy.builder()
+                .present("tenant")
+                .equalTo("tenant", "acme")
+                .equalTo("level", 3L)
+                .oneOf("tenant", "acme", "globex")
+                .contains("roles", "admin")
+                .containsAll("scope", "read:tokens", "write:tokens")
+                .matches("level", "at least 2", value -> value instanceof Number n && n.intValue() >= 2)
+                .build();
+
+        PolicyResult result = policy.evaluate(claims);
+
+        assertTrue(result.isAllowed());
+        assertTrue(policy.test(claims));
+        assertEquals(claims, result.claims());
+    }
+
+    @Test
+    void violatedRulesShouldBeReportedInOrder() {
+        ClaimPolicy policy = ClaimPolicy.builder()
+                .equalTo("tenant", "globex")
+                .contains("roles", "owner")
+                .containsAll("scope", "read:tokens", "delete:tokens")
+                .equalTo("level", 3)
+                .build();
+
+        PolicyResult result = policy.evaluate(claims);
+
+        assertFalse(result.isAllowed());
+        assertFalse(policy.test(claims));
+        assertEquals(
+                List.of(
+                        new PolicyResult.Violation("tenant", "equalTo globex", "acme"),
+                        new PolicyResult.Violation("roles", "contains owner", List.of("user", "admin")),
+                        new PolicyResult.Violation("scope", "containsAll [read:tokens, delete:tokens]", "read:tokens write:tokens")
+                ),
+                result.violations()
+        );
+    }
+
+    @Test
+    void missingClaimsShouldFailWithoutException() {
+        ClaimPolicy policy = ClaimPolicy.builder()
+                .present("organization")
+                .equalTo("organization", "acme")
+                .oneOf("organization", "acme")
+                .contains("groups", "admin")
+                .containsAll("permissions", "read")
+                .build();
+
+        PolicyResult result = policy.evaluate(Map.of());
+
+        assertEquals(5, result.violations().size());
+        assertTrue(result.violations().stream().allMatch(violation -> violation.actual() == null));
+    }
+}
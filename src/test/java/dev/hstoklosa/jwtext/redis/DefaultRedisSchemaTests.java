@@ -0,0 +1,53 @@
+package dev.hstoklosa.jwtext.redis;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DefaultRedisSchemaTests {
+
+    private final DefaultRedisSchema redisSchema = new DefaultRedisSchema();
+
+    @Test
+    void binaryKeysShouldEqualEncodedStringKeys() {
+        for (String value : List.of("user@example.com", "", "urn:user:42", "użytkownik", "😀")) {
+            assertArrayEquals(
+                    bytes(redisSchema.subjectTokenKey(value, "access")),
+                    redisSchema.subjectTokenKeyBytes(value, "access")
+            );
+            assertArrayEquals(
+                    bytes(redisSchema.subjectTokenKey("user", value)),
+                    redisSchema.subjectTokenKeyBytes("user", value)
+            );
+            assertArrayEquals(
+                    bytes(redisSchema.subjectIndexKey(value)),
+                    redisSchema.subjectIndexKeyBytes(value)
+            );
+            assertArrayEquals(
+                    bytes(redisSchema.claimIndexKey("tenant", value)),
+                    redisSchema.claimIndexKeyBytes("tenant", value)
+            );
+            assertArrayEquals(
+                    bytes(redisSchema.tokenClaimsKey(redisSchema.subjectTokenKey(value, "access"))),
+                    redisSchema.tokenClaimsKeyBytes(redisSchema.subjectTokenKeyBytes(value, "access"))
+            );
+        }
+    }
+
+    @Test
+    void tokenKeyShouldBeParsedBack() {
+        String key = redisSchema.subjectTokenKey("urn:user:42", "access");
+
+        assertEquals(new RedisSchema.TokenKey("urn:user:42", "access"), redisSchema.parseSubjectTokenKey(key));
+        assertNull(redisSchema.parseSubjectTokenKey("subjects:user:tokens"));
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
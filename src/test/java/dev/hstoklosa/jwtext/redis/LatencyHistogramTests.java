@@ -0,0 +1,39 @@
+package dev.hstoklosa.jwtext.redis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LatencyHistogramTests {
+
+    @Test
+    void recordShouldCountLatenciesInPowerOfTwoBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(500);
+        histogram.record(1_500);
+        histogram.record(3_000);
+        histogram.record(3_999);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(1, histogram.count(0));
+        assertEquals(1, histogram.count(1));
+        assertEquals(2, histogram.count(2));
+        assertEquals(1, histogram.count(LatencyHistogram.BUCKETS - 1));
+        assertEquals(5, histogram.count());
+    }
+
+    @Test
+    void percentileShouldReturnUpperBoundOfBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1_500);
+        }
+        histogram.record(1_000_000);
+
+        assertEquals(2_000, histogram.percentileNanos(50));
+        assertEquals(2_000, histogram.percentileNanos(99));
+        assertEquals(1_024_000, histogram.percentileNanos(100));
+        assertEquals(0, new LatencyHistogram().percentileNanos(50));
+    }
+}
@@ -0,0 +1,102 @@
+package dev.hstoklosa.jwtext.redis;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Testcontainers
+class RedisPoolMonitorTests {
+
+    private JedisPool jedisPool;
+
+    @Container
+    public GenericContainer redis = 
+        new GenericContainer(DockerImageName.parse("redis:5.0.3-alpine")).withExposedPorts(6379);
+
+    @AfterEach
+    void tearDown() {
+        jedisPool.close();
+    }
+
+    @Test
+    void optionsShouldConfigurePool() {
+        RedisPoolOptions options = RedisPoolOptions.builder()
+                .maxTotal(4)
+                .maxWait(Duration.ofMillis(100))
+                .build();
+        jedisPool = options.createPool(redis.getHost(), redis.getMappedPort(6379), null, null);
+
+        assertEquals(4, jedisPool.getMaxTotal());
+        assertEquals(Duration.ofMillis(100), jedisPool.getMaxWaitDuration());
+        assertNull(jedisPool.getJmxName());
+    }
+
+    @Test
+    void executeShouldRecordStatistics() {
+        jedisPool = RedisPoolOptions.builder().build()
+                .createPool(redis.getHost(), redis.getMappedPort(6379), null, null);
+        RedisPoolMonitor monitor = new RedisPoolMonitor(jedisPool);
+
+        assertEquals("PONG", monitor.execute(jedis -> jedis.ping()));
+
+        RedisPoolStatistics statistics = monitor.getStatistics();
+        assertEquals(1, statistics.requests());
+        assertEquals(0, statistics.active());
+        assertEquals(1, statistics.idle());
+        assertEquals(1, monitor.getBorrowWaits().count());
+    }
+
+    @Test
+    void failedBorrowShouldRecordWait() {
+        jedisPool = RedisPoolOptions.builder()
+                .maxTotal(1)
+                .maxWait(Duration.ofMillis(100))
+                .build()
+                .createPool(redis.getHost(), redis.getMappedPort(6379), null, null);
+        RedisPoolMonitor monitor = new RedisPoolMonitor(jedisPool);
+
+        try (Jedis held = jedisPool.getResource()) {
+            assertThrows(JedisException.class, () -> monitor.execute(jedis -> jedis.ping()));
+        }
+
+        assertEquals(1, monitor.getFailedBorrows());
+        assertEquals(1, monitor.getBorrowWaits().count());
+        assertTrue(monitor.getBorrowWaits().percentileNanos(50) >= Duration.ofMillis(100).toNanos());
+        assertEquals("PONG", monitor.execute(jedis -> jedis.ping()));
+    }
+
+    @Test
+    void growModeShouldGrowSaturatedPool() {
+        RedisPoolOptions options = RedisPoolOptions.builder()
+                .maxTotal(1)
+                .adaptiveMode(RedisPoolOptions.AdaptiveMode.GROW)
+                .adaptiveThreshold(0)
+                .adaptiveMaxTotal(3)
+                .build();
+        jedisPool = options.createPool(redis.getHost(), redis.getMappedPort(6379), null, null);
+        RedisPoolMonitor monitor = new RedisPoolMonitor(jedisPool, options);
+
+        for (int i = 0; i < RedisPoolMonitor.WINDOW; i++) {
+            monitor.execute(jedis -> jedis.ping());
+        }
+        assertEquals(2, jedisPool.getMaxTotal());
+
+        for (int i = 0; i < 2 * RedisPoolMonitor.WINDOW; i++) {
+            monitor.execute(jedis -> jedis.ping());
+        }
+        assertEquals(3, jedisPool.getMaxTotal());
+    }
+}
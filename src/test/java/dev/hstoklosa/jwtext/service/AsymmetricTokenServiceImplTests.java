@@ -0,0 +1,164 @@
+package dev.hstoklosa.jwtext.service;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.EllipticCurve;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsymmetricTokenServiceImplTests {
+
+    private final TokenParameters params = TokenParameters.builder("testSubject", "access", Duration.ofMinutes(30))
+            .claim("role", "admin")
+            .build();
+
+    @Test
+    void tokensShouldBeVerifiedWithPublicKeyOnly() throws Exception {
+        for (String curve : List.of("secp256r1", "secp384r1", "secp521r1", "Ed25519", "Ed448")) {
+            KeyPair keyPair = keyPair(curve);
+            AsymmetricTokenServiceImpl issuer = new AsymmetricTokenServiceImpl(keyPair);
+            AsymmetricTokenServiceImpl verifier = new AsymmetricTokenServiceImpl(keyPair.getPublic());
+
+            String token = issuer.create(params);
+
+            assertEquals("testSubject", verifier.getSubject(token), curve);
+            assertEquals("access", verifier.getType(token), curve);
+            assertTrue(verifier.has(token, "role", "admin"), curve);
+            assertFalse(verifier.isExpired(token), curve);
+            assertThrows(UnsupportedOperationException.class, () -> verifier.create(params));
+        }
+    }
+
+    @Test
+    void tokensShouldBeInteroperableWithJjwt() throws Exception {
+        KeyPair keyPair = keyPair("secp256r1");
+        AsymmetricTokenServiceImpl tokenService = new AsymmetricTokenServiceImpl(keyPair);
+
+        Claims claims = Jwts.parser()
+                .verifyWith(keyPair.getPublic())
+                .build()
+                .parseSignedClaims(tokenService.create(params))
+                .getPayload();
+        assertEquals("testSubject", claims.getSubject());
+        assertEquals(params.getExpiredAt().getTime() / 1000, claims.getExpiration().getTime() / 1000);
+
+        String token = Jwts.builder()
+                .subject("otherSubject")
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(keyPair.getPrivate(), Jwts.SIG.ES256)
+                .compact();
+        assertEquals("otherSubject", tokenService.getSubject(token));
+    }
+
+    @Test
+    void tokensOfOtherKeysShouldBeRejected() throws Exception {
+        AsymmetricTokenServiceImpl tokenService = new AsymmetricTokenServiceImpl(keyPair("Ed25519"));
+        String foreign = new AsymmetricTokenServiceImpl(keyPair("Ed25519")).create(params);
+        String otherAlgorithm = new AsymmetricTokenServiceImpl(keyPair("secp256r1")).create(params);
+        String hmac = new TokenServiceImpl(
+                "c29tZWxvbmdzZWNyZXRzdHJpbmdmb3JleGFtcGxlYW5kaXRuZWVkc3RvYmVsb25nDQo="
+        ).create(params);
+
+        assertThrows(SignatureException.class, () -> tokenService.getSubject(foreign));
+        assertThrows(SignatureException.class, () -> tokenService.getSubject(otherAlgorithm));
+        assertThrows(SignatureException.class, () -> tokenService.getSubject(hmac));
+        assertThrows(IllegalArgumentException.class, () -> new AsymmetricTokenServiceImpl(
+                new KeyPair(keyPair("secp256r1").getPublic(), keyPair("Ed25519").getPrivate())
+        ));
+    }
+
+    @Test
+    void signedTokensWithAnotherAlgorithmShouldBeRejected() throws Exception {
+        KeyPair keyPair = keyPair("secp256r1");
+        AsymmetricTokenServiceImpl tokenService = new AsymmetricTokenServiceImpl(keyPair);
+        String token = tokenService.create(params);
+
+        String signingInput = encode("{\"alg\":\"ES384\"}".getBytes(StandardCharsets.UTF_8))
+                + token.substring(token.indexOf('.'), token.lastIndexOf('.'));
+        Signature signature = Signature.getInstance("SHA256withECDSAinP1363Format");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+        String relabelled = signingInput + "." + encode(signature.sign());
+
+        assertEquals("ES256", tokenService.getAlgorithm());
+        assertThrows(UnsupportedJwtException.class, () -> tokenService.getSubject(relabelled));
+    }
+
+    @Test
+    void ecKeysOnOtherCurvesOfTheSameSizeShouldBeRejected() throws Exception {
+        ECPublicKey key = (ECPublicKey) keyPair("secp256r1").getPublic();
+        ECParameterSpec params = key.getParams();
+        EllipticCurve curve = params.getCurve();
+        ECParameterSpec otherParams = new ECParameterSpec(
+                new EllipticCurve(curve.getField(), curve.getA(), curve.getB().add(BigInteger.ONE)),
+                params.getGenerator(),
+                params.getOrder(),
+                params.getCofactor()
+        );
+        ECPublicKey otherKey = new ECPublicKey() {
+
+            @Override
+            public ECPoint getW() {
+                return key.getW();
+            }
+
+            @Override
+            public ECParameterSpec getParams() {
+                return otherParams;
+            }
+
+            @Override
+            public String getAlgorithm() {
+                return "EC";
+            }
+
+            @Override
+            public String getFormat() {
+                return null;
+            }
+
+            @Override
+            public byte[] getEncoded() {
+                return null;
+            }
+        };
+
+        assertEquals("ES256", new AsymmetricTokenServiceImpl(key).getAlgorithm());
+        assertThrows(IllegalArgumentException.class, () -> new AsymmetricTokenServiceImpl(otherKey));
+    }
+
+    private static String encode(final byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    static KeyPair keyPair(final String curve) throws Exception {
+        if (curve.startsWith("Ed")) {
+            return KeyPairGenerator.getInstance(curve).generateKeyPair();
+        }
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec(curve));
+        return generator.generateKeyPair();
+    }
+}
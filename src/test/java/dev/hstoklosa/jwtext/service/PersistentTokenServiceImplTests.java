@@ -1,20 +1,40 @@
 package dev.hstoklosa.jwtext.service;
 
+import dev.hstoklosa.jwtext.exception.RefreshTokenReuseException;
+import dev.hstoklosa.jwtext.exception.RevokedJwtException;
+import dev.hstoklosa.jwtext.model.ClaimAliases;
+import dev.hstoklosa.jwtext.model.TokenPair;
 import dev.hstoklosa.jwtext.model.TokenParameters;
+import dev.hstoklosa.jwtext.model.VerificationResult;
+import dev.hstoklosa.jwtext.model.VerificationStatus;
 import dev.hstoklosa.jwtext.FakeTokenStorageImpl;
+import dev.hstoklosa.jwtext.storage.CachedRevocationStorage;
+import dev.hstoklosa.jwtext.storage.RevocationStorageImpl;
+import dev.hstoklosa.jwtext.storage.SessionTokenStorageImpl;
+import dev.hstoklosa.jwtext.storage.TieredTokenStorageImpl;
 import dev.hstoklosa.jwtext.storage.TokenStorage;
+import dev.hstoklosa.jwtext.storage.TokenStorageImpl;
+import dev.hstoklosa.jwtext.storage.WriteBehindTokenStorage;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class PersistentTokenServiceImplTests {
@@ -235,4 +255,496 @@ class PersistentTokenServiceImplTests {
         String newToken = tokenService.create(newParams);
         assertNotEquals(token, newToken);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldInvalidateAllBySubject() {
+        String subject = "testSubject";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters accessParams = TokenParameters
+                .builder(subject, "access", duration).build();
+        TokenParameters refreshParams = TokenParameters
+                .builder(subject, "refresh", duration).build();
+        String accessToken = tokenService.create(accessParams);
+        String refreshToken = tokenService.create(refreshParams);
+
+        assertTrue(tokenService.invalidateAll(subject));
+
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        TokenParameters newAccessParams = TokenParameters
+                .builder(subject, "access", duration).build();
+        TokenParameters newRefreshParams = TokenParameters
+                .builder(subject, "refresh", duration).build();
+        assertNotEquals(accessToken, tokenService.create(newAccessParams));
+        assertNotEquals(refreshToken, tokenService.create(newRefreshParams));
+    }
+
+    @Test
+    void shouldRejectTokensIssuedBeforeRevocation() {
+        String subject = "testSubject";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters params = TokenParameters.builder(subject, "access", duration)
+                .issuedAt(new Date(System.currentTimeMillis() - 5000))
+                .build();
+        String token = tokenService.create(params);
+
+        tokenService.revoke(subject);
+
+        assertTrue(tokenService.isExpired(token));
+        assertThrows(RevokedJwtException.class, () -> tokenService.claims(token));
+        assertThrows(RevokedJwtException.class, () -> tokenService.getSubject(token));
+    }
+
+    @Test
+    void shouldAcceptTokensIssuedAfterRevocation() {
+        String subject = "testSubject";
+        Duration duration = Duration.ofMinutes(30);
+
+        tokenService.revoke(subject, new Date(System.currentTimeMillis() - 5000));
+
+        TokenParameters params = 
+            TokenParameters.builder(subject, "access", duration).build();
+        String token = tokenService.create(params);
+
+        assertFalse(tokenService.isExpired(token));
+        assertEquals(subject, tokenService.getSubject(token));
+    }
+
+    @Test
+    void shouldRejectTokensIssuedWithinSecondOfRevocation() {
+        String subject = "testSubject";
+        Duration duration = Duration.ofMinutes(30);
+        long second = System.currentTimeMillis() / 1000 * 1000 - 10_000;
+
+        String before = tokenService.create(TokenParameters.builder(subject, "access", duration)
+                .issuedAt(new Date(second + 100))
+                .build());
+        String after = tokenService.create(TokenParameters.builder(subject, "refresh", duration)
+                .issuedAt(new Date(second + 1000))
+                .build());
+        tokenService.revoke(subject, new Date(second + 500));
+
+        assertThrows(RevokedJwtException.class, () -> tokenService.claims(before));
+        assertEquals(subject, tokenService.getSubject(after));
+    }
+
+    @Test
+    void revokeShouldRemoveStoredTokens() {
+        String subject = "testSubject";
+        Duration duration = Duration.ofMinutes(30);
+        TokenStorage tokenStorage = new FakeTokenStorageImpl();
+        PersistentTokenServiceImpl service = PersistentTokenServiceImpl.builder(SECRET_KEY)
+                .tokenStorage(tokenStorage)
+                .revocationStorage(new CachedRevocationStorage(new RevocationStorageImpl()))
+                .build();
+
+        TokenParameters params = 
+            TokenParameters.builder(subject, "access", duration).build();
+        service.create(params);
+        service.revoke(subject);
+
+        assertNull(tokenStorage.get(params));
+    }
+
+    @Test
+    void createAllShouldReuseStoredAndDuplicateTokens() {
+        Duration duration = Duration.ofMinutes(30);
+        TokenParameters stored = TokenParameters.builder("storedSubject", "any", duration).build();
+        String storedToken = tokenService.create(stored);
+
+        List<TokenParameters> params = List.of(
+                TokenParameters.builder("firstSubject", "any", duration).build(),
+                TokenParameters.builder("storedSubject", "any", duration).build(),
+                TokenParameters.builder("secondSubject", "any", duration).build(),
+                TokenParameters.builder("firstSubject", "any", duration).build()
+        );
+        List<String> tokens = new ArrayList<>();
+        tokenService.createAll(params, tokens::add);
+
+        assertEquals(4, tokens.size());
+        assertEquals("firstSubject", tokenService.getSubject(tokens.get(0)));
+        assertEquals(storedToken, tokens.get(1));
+        assertEquals("secondSubject", tokenService.getSubject(tokens.get(2)));
+        assertEquals(tokens.get(0), tokens.get(3));
+        assertEquals(tokens.get(2), tokenService.create(params.get(2)));
+    }
+
+    @Test
+    void revokeShouldSucceedWhenStoredTokensCannotBeRemoved() {
+        String subject = "testSubject";
+        List<String> changes = new ArrayList<>();
+        PersistentTokenServiceImpl service = PersistentTokenServiceImpl.builder(SECRET_KEY)
+                .tokenStorage(new FakeTokenStorageImpl() {
+                    @Override
+                    public boolean removeAll(final String subject) {
+                        throw new IllegalStateException("Storage is down");
+                    }
+                })
+                .auditSink((event, auditedSubject, type, token, until) -> changes.add(event + " " + auditedSubject))
+                .build();
+        String token = service.create(TokenParameters.builder(subject, "access", Duration.ofMinutes(30))
+                .issuedAt(new Date(System.currentTimeMillis() - 5000))
+                .build());
+
+        service.revoke(subject);
+
+        assertEquals(List.of("CREATED testSubject", "REVOKED testSubject"), changes);
+        assertThrows(RevokedJwtException.class, () -> service.claims(token));
+    }
+
+    @Test
+    void verifyAllShouldReportRevokedTokens() {
+        Duration duration = Duration.ofMinutes(30);
+        String revoked = tokenService.create(
+                TokenParameters.builder("revokedSubject", "any", duration)
+                        .issuedAt(new Date(System.currentTimeMillis() - 60_000))
+                        .build()
+        );
+        String valid = tokenService.create(
+                TokenParameters.builder("validSubject", "any", duration).build()
+        );
+        tokenService.revoke("revokedSubject");
+
+        List<VerificationResult> results = new ArrayList<>();
+        tokenService.verifyAll(List.of(revoked, valid), results::add);
+
+        assertEquals(VerificationStatus.REVOKED, results.get(0).status());
+        assertEquals("revokedSubject", results.get(0).claims().get("sub"));
+        assertEquals(VerificationStatus.VALID, results.get(1).status());
+    }
+
+    @Test
+    void rotateShouldReplaceRefreshTokenAndStoreAccessToken() {
+        TokenStorage tokenStorage = new FakeTokenStorageImpl();
+        PersistentTokenServiceImpl service = PersistentTokenServiceImpl.builder(SECRET_KEY)
+                .tokenStorage(tokenStorage)
+                .build();
+        TokenParameters accessParams = TokenParameters
+                .builder("testSubject", "access", Duration.ofMinutes(5)).build();
+        TokenParameters refreshParams = TokenParameters
+                .builder("testSubject", "refresh", Duration.ofDays(1)).build();
+        String refreshToken = service.create(refreshParams);
+
+        TokenPair pair = service.rotate(refreshToken, accessParams, refreshParams);
+
+        assertNotEquals(refreshToken, pair.refreshToken());
+        assertEquals(pair.refreshToken(), tokenStorage.get(refreshParams));
+        assertEquals(pair.accessToken(), tokenStorage.get(accessParams));
+        assertEquals("access", service.getType(pair.accessToken()));
+
+        TokenPair next = service.rotate(pair.refreshToken(), accessParams, refreshParams);
+        assertEquals(next.refreshToken(), tokenStorage.get(refreshParams));
+    }
+
+    @Test
+    void rotateWithReusedRefreshTokenShouldInvalidateSubject() {
+        TokenStorage tokenStorage = new FakeTokenStorageImpl();
+        PersistentTokenServiceImpl service = PersistentTokenServiceImpl.builder(SECRET_KEY)
+                .tokenStorage(tokenStorage)
+                .build();
+        TokenParameters accessParams = TokenParameters
+                .builder("testSubject", "access", Duration.ofMinutes(5)).build();
+        TokenParameters refreshParams = TokenParameters
+                .builder("testSubject", "refresh", Duration.ofDays(1)).build();
+        String refreshToken = service.create(refreshParams);
+        service.rotate(refreshToken, accessParams, refreshParams);
+
+        assertThrows(
+                RefreshTokenReuseException.class,
+                () -> service.rotate(refreshToken, accessParams, refreshParams)
+        );
+        assertNull(tokenStorage.get(refreshParams));
+        assertNull(tokenStorage.get(accessParams));
+    }
+
+    @Test
+    void rotateWithReusedRefreshTokenShouldInvalidateRotatedTokensWithoutSubjectRemoval() {
+        TokenStorage tokenStorage = new FakeTokenStorageImpl() {
+            @Override
+            public boolean removeAll(final String subject) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        PersistentTokenServiceImpl service = PersistentTokenServiceImpl.builder(SECRET_KEY)
+                .tokenStorage(tokenStorage)
+                .build();
+        TokenParameters accessParams = TokenParameters
+                .builder("testSubject", "access", Duration.ofMinutes(5)).build();
+        TokenParameters refreshParams = TokenParameters
+                .builder("testSubject", "refresh", Duration.ofDays(1)).build();
+        String refreshToken = service.create(refreshParams);
+        service.rotate(refreshToken, accessParams, refreshParams);
+
+        assertThrows(
+                RefreshTokenReuseException.class,
+                () -> service.rotate(refreshToken, accessParams, refreshParams)
+        );
+        assertNull(tokenStorage.get(refreshParams));
+        assertNull(tokenStorage.get(accessParams));
+    }
+
+    @Test
+    void rotateWithMismatchingParamsShouldThrow() {
+        TokenParameters refreshParams = TokenParameters
+                .builder("testSubject", "refresh", Duration.ofDays(1)).build();
+        TokenParameters otherParams = TokenParameters
+                .builder("otherSubject", "refresh", Duration.ofDays(1)).build();
+        String refreshToken = tokenService.create(refreshParams);
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> tokenService.rotate(refreshToken, otherParams, otherParams)
+        );
+        assertEquals(refreshToken, tokenService.create(refreshParams));
+    }
+
+    @Test
+    void shouldInvalidateByClaim() {
+        TokenStorageImpl tokenStorage = new TokenStorageImpl(Set.of("tenant"));
+        tokenService = new PersistentTokenServiceImpl(SECRET_KEY, tokenStorage);
+        Duration duration = Duration.ofMinutes(30);
+        TokenParameters acmeParams = TokenParameters.builder("acmeUser", "access", duration)
+                .claim("tenant", "acme")
+                .build();
+        TokenParameters globexParams = TokenParameters.builder("globexUser", "access", duration)
+                .claim("tenant", "globex")
+                .build();
+        tokenService.create(acmeParams);
+        String globexToken = tokenService.create(globexParams);
+
+        assertTrue(tokenService.invalidateByClaim("tenant", "acme"));
+        assertNull(tokenStorage.get(acmeParams));
+        assertEquals(globexToken, tokenStorage.get(globexParams));
+    }
+
+    @Test
+    void shouldInvalidateByClaimThroughDecoratedStorage() {
+        try (WriteBehindTokenStorage writeBehind = new WriteBehindTokenStorage(
+                new TokenStorageImpl(Set.of("tenant")), 100, 100, Duration.ofHours(1)
+        )) {
+            TieredTokenStorageImpl tokenStorage = new TieredTokenStorageImpl(writeBehind);
+            tokenService = new PersistentTokenServiceImpl(SECRET_KEY, tokenStorage);
+            Duration duration = Duration.ofMinutes(30);
+            TokenParameters acmeParams = TokenParameters.builder("acmeUser", "access", duration)
+                    .claim("tenant", "acme")
+                    .build();
+            TokenParameters globexParams = TokenParameters.builder("globexUser", "access", duration)
+                    .claim("tenant", "globex")
+                    .build();
+            String acmeToken = tokenService.create(acmeParams);
+            String globexToken = tokenService.create(globexParams);
+
+            assertEquals(List.of(acmeToken), tokenStorage.findByClaim("tenant", "acme"));
+            assertTrue(tokenService.invalidateByClaim("tenant", "acme"));
+            assertNull(tokenStorage.get(acmeParams));
+            assertEquals(globexToken, tokenStorage.get(globexParams));
+        }
+    }
+
+    @Test
+    void invalidateByClaimThroughStorageWithoutIndexesShouldThrow() {
+        tokenService = new PersistentTokenServiceImpl(
+                SECRET_KEY,
+                new TieredTokenStorageImpl(new FakeTokenStorageImpl())
+        );
+
+        assertThrows(
+                UnsupportedOperationException.class,
+                () -> tokenService.invalidateByClaim("tenant", "acme")
+        );
+    }
+
+    @Test
+    void createSessionShouldEvictOldestSessions() {
+        SessionTokenStorageImpl tokenStorage = new SessionTokenStorageImpl(2);
+        tokenService = new PersistentTokenServiceImpl(SECRET_KEY, tokenStorage);
+        TokenParameters params = TokenParameters.builder("testSubject", "access", Duration.ofMinutes(30))
+                .build();
+
+        String firstToken = tokenService.createSession(params);
+        String secondToken = tokenService.createSession(params);
+        String thirdToken = tokenService.createSession(params);
+
+        assertNotEquals(firstToken, secondToken);
+        assertEquals(List.of(secondToken, thirdToken), tokenStorage.getSessions("testSubject"));
+        assertFalse(tokenStorage.exists(firstToken, params));
+        assertTrue(tokenStorage.exists(thirdToken, params));
+        assertEquals(thirdToken, tokenService.create(params));
+    }
+
+    @Test
+    void rotateShouldContinueSessionWithoutEvictingOtherSessions() {
+        SessionTokenStorageImpl tokenStorage = new SessionTokenStorageImpl(2);
+        tokenService = new PersistentTokenServiceImpl(SECRET_KEY, tokenStorage);
+        TokenParameters accessParams = TokenParameters
+                .builder("testSubject", "access", Duration.ofMinutes(5)).build();
+        TokenParameters refreshParams = TokenParameters
+                .builder("testSubject", "refresh", Duration.ofDays(1)).build();
+        String phoneToken = tokenService.createSession(refreshParams);
+        String laptopToken = tokenService.createSession(refreshParams);
+
+        TokenPair pair = tokenService.rotate(laptopToken, accessParams, refreshParams);
+        TokenPair next = tokenService.rotate(pair.refreshToken(), accessParams, refreshParams);
+
+        assertEquals(
+                List.of(phoneToken, next.refreshToken(), next.accessToken()),
+                tokenStorage.getSessions("testSubject")
+        );
+        assertEquals(0, tokenStorage.getEvictions());
+        assertThrows(
+                RefreshTokenReuseException.class,
+                () -> tokenService.rotate(pair.refreshToken(), accessParams, refreshParams)
+        );
+        assertEquals(0, tokenStorage.getEvictions());
+    }
+
+    @Test
+    void createdAndInvalidatedTokensShouldBeAudited() {
+        List<String> changes = new ArrayList<>();
+        tokenService = PersistentTokenServiceImpl.builder(SECRET_KEY)
+                .tokenStorage(new TokenStorageImpl())
+                .auditSink((event, subject, type, token, until) -> changes.add(
+                        event + " " + subject + " " + type + " " + (token != null)
+                ))
+                .build();
+        TokenParameters params = TokenParameters.builder("testSubject", "access", Duration.ofMinutes(30))
+                .build();
+
+        String token = tokenService.create(params);
+        tokenService.create(params);
+        tokenService.invalidate(token);
+        tokenService.invalidate(token);
+        tokenService.createSession(params);
+        tokenService.invalidateAll("testSubject");
+        tokenService.revoke("testSubject");
+        tokenService.invalidateReference(tokenService.createReference(params));
+
+        assertEquals(
+                List.of(
+                        "CREATED testSubject access true",
+                        "INVALIDATED null null true",
+                        "CREATED testSubject access true",
+                        "INVALIDATED_SUBJECT testSubject null false",
+                        "REVOKED testSubject null false",
+                        "CREATED testSubject access true",
+                        "INVALIDATED_REFERENCE null null true"
+                ),
+                changes
+        );
+    }
+
+    @Test
+    void invalidateByClaimWithoutIndexesShouldThrow() {
+        assertThrows(
+                UnsupportedOperationException.class,
+                () -> tokenService.invalidateByClaim("tenant", "acme")
+        );
+    }
+
+    @Test
+    void aliasedClaimsShouldBeExpandedOnVerification() {
+        PersistentTokenServiceImpl aliasedService = PersistentTokenServiceImpl.builder(SECRET_KEY)
+                .claimAliases(ClaimAliases.builder()
+                        .alias(PersistentTokenServiceImpl.TOKEN_TYPE_KEY, "typ")
+                        .alias("organizationIdentifier", "oid")
+                        .build())
+                .build();
+        Duration duration = Duration.ofMinutes(30);
+        TokenParameters accessParams = TokenParameters.builder("testSubject", "access", duration)
+                .claim("organizationIdentifier", "acme")
+                .build();
+        TokenParameters refreshParams = TokenParameters.builder("testSubject", "refresh", duration)
+                .claim("organizationIdentifier", "acme")
+                .build();
+
+        String refreshToken = aliasedService.create(refreshParams);
+        TokenPair pair = aliasedService.rotate(refreshToken, accessParams, refreshParams);
+
+        assertEquals("access", aliasedService.getType(pair.accessToken()));
+        assertEquals("acme", aliasedService.claims(pair.accessToken()).get("organizationIdentifier"));
+        assertTrue(aliasedService.has(pair.refreshToken(), "organizationIdentifier", "acme"));
+    }
+
+    @Test
+    void referenceShouldResolveToCurrentToken() {
+        tokenService = new PersistentTokenServiceImpl(SECRET_KEY, new TokenStorageImpl());
+        TokenParameters params = TokenParameters
+                .builder("testSubject", "access", Duration.ofMinutes(30)).build();
+
+        String handle = tokenService.createReference(params);
+        String token = tokenService.create(params);
+
+        assertEquals(22, handle.length());
+        assertNotEquals(handle, tokenService.createReference(params));
+        assertEquals(token, tokenService.resolveReference(handle));
+        assertNull(tokenService.resolveReference("unknownHandle"));
+
+        assertTrue(tokenService.invalidate(params));
+        assertNull(tokenService.resolveReference(handle));
+    }
+
+    @Test
+    void invalidatedOrRevokedReferenceShouldNotResolve() {
+        tokenService = new PersistentTokenServiceImpl(SECRET_KEY, new TokenStorageImpl());
+        TokenParameters params = TokenParameters.builder("testSubject", "access", Duration.ofMinutes(30))
+                .issuedAt(new Date(System.currentTimeMillis() - 5000))
+                .build();
+        String invalidated = tokenService.createReference(params);
+        String revoked = tokenService.createReference(params);
+
+        assertTrue(tokenService.invalidateReference(invalidated));
+        assertNull(tokenService.resolveReference(invalidated));
+        assertNotNull(tokenService.resolveReference(revoked));
+
+        tokenService.revoke("testSubject");
+        assertNull(tokenService.resolveReference(revoked));
+    }
+
+    @Test
+    void invalidateAllShouldRemoveReferencesOfSubject() {
+        tokenService = new PersistentTokenServiceImpl(SECRET_KEY, new TokenStorageImpl());
+        TokenParameters params = TokenParameters
+                .builder("testSubject", "access", Duration.ofMinutes(30)).build();
+        String handle = tokenService.createReference(params);
+
+        assertFalse(tokenService.invalidateAll(handle));
+        assertNotNull(tokenService.resolveReference(handle));
+
+        assertTrue(tokenService.invalidateAll("testSubject"));
+        assertNull(tokenService.resolveReference(handle));
+        assertFalse(tokenService.invalidateReference(handle));
+    }
+
+    @Test
+    void referencesWithoutReferenceStorageShouldThrow() {
+        TokenParameters params = TokenParameters
+                .builder("testSubject", "access", Duration.ofMinutes(30)).build();
+
+        assertThrows(UnsupportedOperationException.class, () -> tokenService.createReference(params));
+        assertThrows(UnsupportedOperationException.class, () -> tokenService.resolveReference("handle"));
+        assertThrows(UnsupportedOperationException.class, () -> tokenService.invalidateReference("handle"));
+    }
+
+    @Test
+    void claimsFromBytesShouldRejectRevokedTokens() {
+        String subject = "testSubject";
+        TokenParameters params = TokenParameters.builder(subject, "access", Duration.ofMinutes(30))
+                .issuedAt(new Date(System.currentTimeMillis() - 5000))
+                .build();
+        String token = tokenService.create(params);
+        ByteBuffer buffer = ByteBuffer.wrap(token.getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals(tokenService.claims(token), tokenService.claims(buffer));
+
+        tokenService.revoke(subject);
+
+        assertThrows(RevokedJwtException.class, () -> tokenService.claims(buffer));
+        assertThrows(RevokedJwtException.class, () -> tokenService.claims((CharSequence) token));
+    }
+}
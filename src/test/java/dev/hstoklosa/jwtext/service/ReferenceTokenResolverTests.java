@@ -0,0 +1,74 @@
+package dev.hstoklosa.jwtext.service;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+import dev.hstoklosa.jwtext.storage.TokenStorageImpl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ReferenceTokenResolverTests {
+
+    private static final String SECRET_KEY =
+        "c29tZWxvbmdzZWNyZXRzdHJpbmdmb3JleGFtcGxlYW5kaXRuZWVkc3RvYmVsb25nDQo=";
+
+    private PersistentTokenServiceImpl tokenService;
+
+    @BeforeEach
+    void setup() {
+        tokenService = new PersistentTokenServiceImpl(SECRET_KEY, new TokenStorageImpl());
+    }
+
+    @Test
+    void resolvedClaimsShouldBeCached() {
+        ReferenceTokenResolver resolver = new ReferenceTokenResolver(tokenService);
+        TokenParameters params = TokenParameters.builder("testSubject", "access", Duration.ofMinutes(30))
+                .claim("tenant", "acme")
+                .build();
+        String handle = tokenService.createReference(params);
+
+        Map<String, Object> claims = resolver.claims(handle);
+
+        assertEquals("testSubject", claims.get("sub"));
+        assertEquals("acme", claims.get("tenant"));
+        assertSame(claims, resolver.claims(handle));
+        assertEquals(1, resolver.getCache().hits());
+        assertNull(resolver.claims("unknownHandle"));
+    }
+
+    @Test
+    void invalidatedHandleShouldBeResolvedAgainAfterTtl() throws InterruptedException {
+        ReferenceTokenResolver resolver = new ReferenceTokenResolver(tokenService, 100, Duration.ofMillis(50));
+        TokenParameters params = TokenParameters
+                .builder("testSubject", "access", Duration.ofMinutes(30)).build();
+        String handle = tokenService.createReference(params);
+
+        assertNotNull(resolver.claims(handle));
+        tokenService.invalidateReference(handle);
+        assertNotNull(resolver.claims(handle));
+
+        Thread.sleep(100);
+        assertNull(resolver.claims(handle));
+    }
+
+    @Test
+    void invalidateShouldDropCachedHandle() {
+        ReferenceTokenResolver resolver = new ReferenceTokenResolver(tokenService);
+        TokenParameters params = TokenParameters
+                .builder("testSubject", "access", Duration.ofMinutes(30)).build();
+        String handle = tokenService.createReference(params);
+
+        assertNotNull(resolver.claims(handle));
+        tokenService.invalidateReference(handle);
+        resolver.invalidate(handle);
+
+        assertNull(resolver.claims(handle));
+    }
+}
@@ -0,0 +1,166 @@
+package dev.hstoklosa.jwtext.service;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import io.jsonwebtoken.IncorrectClaimException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TenantTokenServiceImplTests {
+
+    private final Map<String, String> secrets = new ConcurrentHashMap<>(Map.of(
+            "acme", "YWNtZXNlY3JldHN0cmluZ2ZvcmV4YW1wbGVhbmRpdG5lZWRzdG9iZWxvbmcNCg==",
+            "globex", "Z2xvYmV4c2VjcmV0c3RyaW5nZm9yZXhhbXBsZWFuZGl0bmVlZHN0b2JlbG9uZw=="
+    ));
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private TenantTokenServiceImpl tokenService;
+
+    @BeforeEach
+    void setup() {
+        tokenService = TenantTokenServiceImpl.builder(tenant -> {
+            loads.incrementAndGet();
+            return secrets.get(tenant);
+        }).maximumSize(1).build();
+    }
+
+    @Test
+    void tokensShouldBeSignedWithTenantSecret() {
+        String acmeToken = tokenService.create(params("acme"));
+        String globexToken = tokenService.create(params("globex"));
+
+        assertEquals("acme", tokenService.getTenant(acmeToken));
+        assertEquals("globex", tokenService.getTenant(globexToken));
+        assertEquals("testSubject", tokenService.getSubject(acmeToken));
+        assertEquals("globex", tokenService.claims(globexToken).get("tenant"));
+        assertFalse(tokenService.isExpired(acmeToken));
+        assertEquals("testSubject", new TokenServiceImpl(secrets.get("acme")).getSubject(acmeToken));
+        assertThrows(SignatureException.class, () -> new TokenServiceImpl(secrets.get("acme")).getSubject(globexToken));
+    }
+
+    @Test
+    void tokenNamingAnotherTenantShouldBeRejected() {
+        String acmeToken = tokenService.create(params("acme"));
+        String forged = Jwts.builder()
+                .header().add("tid", "globex").and()
+                .subject("testSubject")
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(secrets.get("acme").getBytes(StandardCharsets.UTF_8)))
+                .compact();
+
+        assertEquals("testSubject", tokenService.getSubject(acmeToken));
+        assertThrows(SignatureException.class, () -> tokenService.getSubject(forged));
+    }
+
+    @Test
+    void tokenWithMismatchingTenantClaimShouldBeRejected() {
+        String token = Jwts.builder()
+                .header().add("tid", "acme").and()
+                .subject("testSubject")
+                .claim("tenant", "globex")
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(secrets.get("acme").getBytes(StandardCharsets.UTF_8)))
+                .compact();
+
+        assertEquals("acme", tokenService.getTenant(token));
+        assertThrows(IncorrectClaimException.class, () -> tokenService.getSubject(token));
+        assertThrows(IncorrectClaimException.class, () -> tokenService.claims(token));
+    }
+
+    @Test
+    void unknownTenantShouldBeLoadedOncePerNegativeTtl() {
+        String token = Jwts.builder()
+                .header().add("tid", "initech").and()
+                .subject("testSubject")
+                .signWith(Keys.hmacShaKeyFor(secrets.get("acme").getBytes(StandardCharsets.UTF_8)))
+                .compact();
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(UnsupportedJwtException.class, () -> tokenService.getSubject(token));
+        }
+        assertEquals(1, loads.get());
+
+        secrets.put("initech", secrets.get("acme"));
+        tokenService.invalidate("initech");
+
+        assertEquals("testSubject", tokenService.getSubject(token));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void keysShouldBeLoadedLazilyAndCached() {
+        String acmeToken = tokenService.create(params("acme"));
+        tokenService.getSubject(acmeToken);
+        tokenService.claims(acmeToken);
+        assertEquals(1, loads.get());
+
+        String globexToken = tokenService.create(params("globex"));
+        tokenService.getSubject(globexToken);
+        assertEquals(2, loads.get());
+
+        tokenService.getSubject(acmeToken);
+        assertEquals(3, loads.get());
+        assertEquals(1, tokenService.getCache().size());
+    }
+
+    @Test
+    void invalidatedTenantShouldBeLoadedAgain() {
+        String acmeToken = tokenService.create(params("acme"));
+        secrets.put("acme", secrets.get("globex"));
+        assertEquals("testSubject", tokenService.getSubject(acmeToken));
+
+        tokenService.invalidate("acme");
+
+        assertThrows(SignatureException.class, () -> tokenService.getSubject(acmeToken));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void tenantShouldFallBackToClaim() {
+        String token = Jwts.builder()
+                .subject("testSubject")
+                .claim("tenant", "globex")
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(secrets.get("globex").getBytes(StandardCharsets.UTF_8)))
+                .compact();
+
+        assertEquals("globex", tokenService.getTenant(token));
+        assertEquals("testSubject", tokenService.getSubject(token));
+    }
+
+    @Test
+    void unknownOrMissingTenantShouldBeRejected() {
+        TokenParameters anonymous = TokenParameters.builder("testSubject", "any", Duration.ofMinutes(30)).build();
+        String token = new TokenServiceImpl(secrets.get("acme")).create(anonymous);
+
+        assertThrows(IllegalArgumentException.class, () -> tokenService.create(anonymous));
+        assertThrows(IllegalArgumentException.class, () -> tokenService.create(params("initech")));
+        assertThrows(MalformedJwtException.class, () -> tokenService.getSubject(token));
+        assertThrows(UnsupportedJwtException.class, () -> tokenService.getSubject(
+                Jwts.builder().header().add("tid", "initech").and().subject("testSubject").compact()
+        ));
+    }
+
+    private static TokenParameters params(final String tenant) {
+        return TokenParameters.builder("testSubject", "any", Duration.ofMinutes(30))
+                .claim("tenant", tenant)
+                .build();
+    }
+}
@@ -1,18 +1,33 @@
 package dev.hstoklosa.jwtext.service;
 
+import dev.hstoklosa.jwtext.model.ClaimAliases;
 import dev.hstoklosa.jwtext.model.TokenParameters;
+import dev.hstoklosa.jwtext.model.VerificationResult;
+import dev.hstoklosa.jwtext.model.VerificationStatus;
+import dev.hstoklosa.jwtext.policy.ClaimPolicy;
 import dev.hstoklosa.jwtext.service.TokenServiceImpl;
 
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.security.SignatureException;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TokenServiceImplTest {
@@ -100,6 +115,37 @@ class TokenServiceImplTest {
         assertFalse(tokenService.has(token, "testKey", "invalidValue"));
     }
 
+    @Test
+    void withMissingClaimShouldReturnFalse() {
+        TokenParameters params = TokenParameters.builder("testSubject", "any", Duration.ofMinutes(30)).build();
+        String token = tokenService.create(params);
+
+        assertFalse(tokenService.has(token, "testKey", "testValue"));
+    }
+
+    @Test
+    void claimPolicyShouldBeEvaluatedAgainstAliasedClaims() {
+        ClaimAliases aliases = ClaimAliases.builder()
+                .alias("organization", "org")
+                .build();
+        TokenServiceImpl aliasedService = new TokenServiceImpl(SECRET_KEY, aliases);
+        TokenParameters params = TokenParameters.builder("testSubject", "any", Duration.ofMinutes(30))
+                .claim("organization", "acme")
+                .claim("scope", "read:tokens write:tokens")
+                .build();
+        String token = aliasedService.create(params);
+        ClaimPolicy policy = ClaimPolicy.builder()
+                .equalTo("organization", "acme")
+                .equalTo(TokenServiceImpl.TOKEN_TYPE_KEY, "any")
+                .containsAll("scope", "read:tokens")
+                .build();
+
+        assertTrue(aliasedService.evaluate(token, policy).isAllowed());
+        assertFalse(tokenService.evaluate(tokenService.create(params), ClaimPolicy.builder()
+                .contains("roles", "admin")
+                .build()).isAllowed());
+    }
+
     @Test
     void shouldReturnCorrectSubject() {
         String subject = "testSubject";
@@ -147,4 +193,118 @@ class TokenServiceImplTest {
 
         assertEquals(type, tokenService.getType(token));
     }
-}
\ No newline at end of file
+
+    @Test
+    void createAllShouldPreserveOrderOfParams() {
+        List<TokenParameters> params = new ArrayList<>();
+        for (int i = 0; i < BulkOperations.CHUNK_SIZE + 100; i++) {
+            params.add(TokenParameters.builder("subject" + i, "any", Duration.ofMinutes(30)).build());
+        }
+
+        List<String> tokens = new ArrayList<>();
+        tokenService.createAll(params, tokens::add);
+
+        assertEquals(params.size(), tokens.size());
+        for (int i = 0; i < params.size(); i += 97) {
+            assertEquals("subject" + i, tokenService.getSubject(tokens.get(i)));
+        }
+    }
+
+    @Test
+    void verifyAllShouldReportResultPerToken() {
+        Duration duration = Duration.ofMinutes(30);
+        String valid = tokenService.create(
+                TokenParameters.builder("validSubject", "any", duration).build()
+        );
+        String expired = tokenService.create(
+                TokenParameters.builder("expiredSubject", "any", duration)
+                        .issuedAt(new Date(System.currentTimeMillis() - 120_000))
+                        .expiredAt(new Date(System.currentTimeMillis() - 60_000))
+                        .build()
+        );
+        String badSignature = new TokenServiceImpl(
+                "b3RoZXJsb25nc2VjcmV0c3RyaW5nZm9yZXhhbXBsZWFuZGl0bmVlZHN0b2JlbG9uZw0K"
+        ).create(TokenParameters.builder("otherSubject", "any", duration).build());
+
+        List<VerificationResult> results = new ArrayList<>();
+        tokenService.verifyAll(Stream.of(valid, expired, badSignature, "malformed"), results::add);
+
+        assertEquals(
+                List.of(
+                        VerificationStatus.VALID,
+                        VerificationStatus.EXPIRED,
+                        VerificationStatus.BAD_SIGNATURE,
+                        VerificationStatus.MALFORMED
+                ),
+                results.stream().map(VerificationResult::status).toList()
+        );
+        assertTrue(results.get(0).isValid());
+        assertEquals("validSubject", results.get(0).claims().get("sub"));
+        assertEquals("expiredSubject", results.get(1).claims().get("sub"));
+        assertNull(results.get(2).claims());
+        assertEquals("malformed", results.get(3).token());
+    }
+
+    @Test
+    void aliasedClaimsShouldBeExpandedAndShrinkToken() {
+        ClaimAliases aliases = ClaimAliases.builder()
+                .alias(TokenServiceImpl.TOKEN_TYPE_KEY, "typ")
+                .alias("organizationIdentifier", "oid")
+                .alias("grantedPermissions", "prm")
+                .alias("authenticationMethod", "amr")
+                .build();
+        TokenServiceImpl aliasedService = new TokenServiceImpl(SECRET_KEY, aliases);
+        TokenParameters params = TokenParameters.builder("testSubject", "access", Duration.ofMinutes(30))
+                .claim("organizationIdentifier", "3f1c9a52-7d4e-4b8a-9e61-0c2d5f8b7a13")
+                .claim("grantedPermissions", List.of("orders:read", "orders:write"))
+                .claim("authenticationMethod", "pwd")
+                .build();
+
+        String token = aliasedService.create(params);
+        Map<String, Object> claims = aliasedService.claims(token);
+
+        assertTrue(token.length() < tokenService.create(params).length());
+        assertEquals("access", aliasedService.getType(token));
+        assertTrue(aliasedService.has(token, "authenticationMethod", "pwd"));
+        assertEquals("3f1c9a52-7d4e-4b8a-9e61-0c2d5f8b7a13", claims.get("organizationIdentifier"));
+        assertEquals(List.of("orders:read", "orders:write"), claims.get("grantedPermissions"));
+        assertNull(claims.get("oid"));
+    }
+
+    @Test
+    void claimsFromBytesShouldMatchClaimsFromString() {
+        TokenParameters params = TokenParameters.builder("testSubject", "access", Duration.ofMinutes(30))
+                .claim("roles", List.of("admin", "user"))
+                .build();
+        String token = tokenService.create(params);
+        byte[] header = ("Bearer " + token + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(header.length).put(header).position(7).limit(7 + token.length());
+
+        Map<String, Object> claims = tokenService.claims(token);
+
+        assertEquals(claims, tokenService.claims(new StringBuilder(token)));
+        assertEquals(claims, tokenService.claims(header, 7, token.length()));
+        assertEquals(claims, tokenService.claims(buffer));
+        assertEquals(claims, tokenService.claims(buffer));
+        assertEquals(7, buffer.position());
+    }
+
+    @Test
+    void claimsFromBytesShouldRejectInvalidTokens() {
+        String token = tokenService.create(TokenParameters.builder("testSubject", "access", Duration.ofMinutes(30)).build());
+        String expired = tokenService.create(TokenParameters.builder("testSubject", "access", Duration.ofMinutes(30))
+                .issuedAt(new Date(System.currentTimeMillis() - 120_000))
+                .expiredAt(new Date(System.currentTimeMillis() - 60_000))
+                .build());
+        String foreign = new TokenServiceImpl(SECRET_KEY.replace('c', 'd'))
+                .create(TokenParameters.builder("testSubject", "access", Duration.ofMinutes(30)).build());
+        byte[] tampered = token.getBytes(StandardCharsets.US_ASCII);
+        tampered[token.indexOf('.') + 2] ^= 1;
+
+        assertThrows(SignatureException.class, () -> tokenService.claims(tampered, 0, tampered.length));
+        assertThrows(SignatureException.class, () -> tokenService.claims((CharSequence) foreign));
+        assertThrows(ExpiredJwtException.class, () -> tokenService.claims((CharSequence) expired));
+        assertThrows(MalformedJwtException.class, () -> tokenService.claims((CharSequence) "not.a-token"));
+        assertThrows(MalformedJwtException.class, () -> tokenService.claims((CharSequence) token.replace('.', '!')));
+    }
+}
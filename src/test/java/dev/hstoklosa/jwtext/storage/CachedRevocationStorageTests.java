@@ -0,0 +1,63 @@
+package dev.hstoklosa.jwtext.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CachedRevocationStorageTests {
+
+    private RevocationStorageImpl delegate;
+
+    private CachedRevocationStorage revocationStorage;
+
+    @BeforeEach
+    void setup() {
+        delegate = new RevocationStorageImpl();
+        revocationStorage = new CachedRevocationStorage(delegate, 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void getRevokedBeforeShouldReturnWatermark() {
+        Date issuedBefore = new Date();
+
+        revocationStorage.revoke("testSubject", issuedBefore);
+
+        assertEquals(issuedBefore, revocationStorage.getRevokedBefore("testSubject"));
+        assertNull(revocationStorage.getRevokedBefore("otherSubject"));
+    }
+
+    @Test
+    void revokeShouldNotMoveWatermarkBackwards() {
+        Date issuedBefore = new Date();
+
+        revocationStorage.revoke("testSubject", issuedBefore);
+        revocationStorage.revoke("testSubject", new Date(issuedBefore.getTime() - 1000));
+
+        assertEquals(issuedBefore, revocationStorage.getRevokedBefore("testSubject"));
+    }
+
+    @Test
+    void getRevokedBeforeShouldBeServedFromCache() {
+        revocationStorage.getRevokedBefore("testSubject");
+        revocationStorage.getRevokedBefore("testSubject");
+        revocationStorage.getRevokedBefore("testSubject");
+
+        assertEquals(1, revocationStorage.getCache().misses());
+        assertEquals(2, revocationStorage.getCache().hits());
+    }
+
+    @Test
+    void pushedRevocationShouldEvictCachedWatermark() {
+        assertNull(revocationStorage.getRevokedBefore("testSubject"));
+
+        Date issuedBefore = new Date();
+        delegate.revoke("testSubject", issuedBefore);
+
+        assertEquals(issuedBefore, revocationStorage.getRevokedBefore("testSubject"));
+    }
+}
@@ -0,0 +1,243 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.exception.StorageUnavailableException;
+import dev.hstoklosa.jwtext.model.TokenParameters;
+import dev.hstoklosa.jwtext.storage.CircuitBreakerOptions.ReadFallback;
+import dev.hstoklosa.jwtext.storage.CircuitBreakerTokenStorage.State;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTokenStorageTests {
+
+    private UnreliableTokenStorage storage;
+
+    private CircuitBreakerTokenStorage tokenStorage;
+
+    private final TokenParameters params = TokenParameters.builder("testSubject", "any", Duration.ofMinutes(30)).build();
+
+    @BeforeEach
+    void setup() {
+        storage = new UnreliableTokenStorage();
+    }
+
+    @AfterEach
+    void tearDown() {
+        tokenStorage.close();
+    }
+
+    @Test
+    void slowCallsShouldTimeOutAndOpenBreaker() {
+        tokenStorage = breaker(ReadFallback.FAIL_CLOSED, Duration.ofMinutes(1));
+        storage.delayMillis = 1000;
+
+        long start = System.nanoTime();
+        assertThrows(StorageUnavailableException.class, () -> tokenStorage.get(params));
+        assertThrows(StorageUnavailableException.class, () -> tokenStorage.get(params));
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 900);
+        assertEquals(State.OPEN, tokenStorage.getState());
+
+        assertThrows(StorageUnavailableException.class, () -> tokenStorage.save("testToken", params));
+        assertEquals(2, tokenStorage.getFailedCalls());
+        assertEquals(1, tokenStorage.getRejectedCalls());
+    }
+
+    @Test
+    void localCacheFallbackShouldServeKnownTokens() {
+        tokenStorage = breaker(ReadFallback.LOCAL_CACHE, Duration.ofMinutes(1));
+        TokenParameters unknown = TokenParameters.builder("otherSubject", "any", Duration.ofMinutes(30)).build();
+        tokenStorage.save("testToken", params);
+        storage.failing = true;
+
+        assertEquals("testToken", tokenStorage.get(params));
+        assertTrue(tokenStorage.exists("testToken", params));
+        assertFalse(tokenStorage.exists("otherToken", params));
+        assertThrows(StorageUnavailableException.class, () -> tokenStorage.get(unknown));
+        assertEquals(State.OPEN, tokenStorage.getState());
+        assertEquals(3, tokenStorage.getFallbackReads());
+    }
+
+    @Test
+    void localCacheFallbackShouldNotServeExpiredTokens() throws InterruptedException {
+        tokenStorage = breaker(ReadFallback.LOCAL_CACHE, Duration.ofMinutes(1));
+        long expiresAt = (System.currentTimeMillis() / 1000 + 1) * 1000;
+        String token = jwt("{\"sub\":\"testSubject\",\"exp\":" + expiresAt / 1000 + "}");
+        storage.save(token, params);
+
+        assertEquals(token, tokenStorage.get(params));
+        Thread.sleep(expiresAt - System.currentTimeMillis() + 10);
+        storage.failing = true;
+
+        assertThrows(StorageUnavailableException.class, () -> tokenStorage.get(params));
+        assertEquals(0, tokenStorage.getFallbackReads());
+    }
+
+    @Test
+    void failOpenFallbackShouldAcceptEveryToken() {
+        tokenStorage = breaker(ReadFallback.FAIL_OPEN, Duration.ofMinutes(1));
+        storage.failing = true;
+
+        assertTrue(tokenStorage.exists("testToken", params));
+        assertNull(tokenStorage.get(params));
+        assertThrows(StorageUnavailableException.class, () -> tokenStorage.remove(params));
+    }
+
+    @Test
+    void probeShouldCloseBreakerOnceStorageRecovers() throws InterruptedException {
+        tokenStorage = breaker(ReadFallback.FAIL_CLOSED, Duration.ofMillis(100));
+        storage.failing = true;
+        assertThrows(StorageUnavailableException.class, () -> tokenStorage.get(params));
+        assertThrows(StorageUnavailableException.class, () -> tokenStorage.get(params));
+
+        Thread.sleep(150);
+        assertThrows(StorageUnavailableException.class, () -> tokenStorage.get(params));
+        assertEquals(State.OPEN, tokenStorage.getState());
+
+        storage.failing = false;
+        Thread.sleep(150);
+        tokenStorage.save("testToken", params);
+
+        assertEquals(State.CLOSED, tokenStorage.getState());
+        assertEquals("testToken", tokenStorage.get(params));
+    }
+
+    @Test
+    void lateSuccessShouldNotCloseOpenBreaker() throws Exception {
+        tokenStorage = new CircuitBreakerTokenStorage(storage, CircuitBreakerOptions.builder()
+                .timeout(Duration.ofSeconds(5))
+                .failureThreshold(2)
+                .openDuration(Duration.ofMinutes(1))
+                .readFallback(ReadFallback.FAIL_CLOSED)
+                .build());
+        storage.gate = new CountDownLatch(1);
+        CompletableFuture<String> slowRead = CompletableFuture.supplyAsync(() -> tokenStorage.get(params));
+        storage.entered.await();
+
+        storage.failing = true;
+        assertThrows(StorageUnavailableException.class, () -> tokenStorage.exists("testToken", params));
+        assertThrows(StorageUnavailableException.class, () -> tokenStorage.exists("testToken", params));
+        assertEquals(State.OPEN, tokenStorage.getState());
+
+        storage.gate.countDown();
+        assertNull(slowRead.get());
+        assertEquals(State.OPEN, tokenStorage.getState());
+    }
+
+    @Test
+    void callsRejectedByExecutorShouldNotOpenBreaker() throws Exception {
+        tokenStorage = new CircuitBreakerTokenStorage(storage, CircuitBreakerOptions.builder()
+                .timeout(Duration.ofSeconds(5))
+                .failureThreshold(2)
+                .maxConcurrentCalls(1)
+                .readFallback(ReadFallback.FAIL_CLOSED)
+                .build());
+        storage.gate = new CountDownLatch(1);
+        CompletableFuture<String> slowRead = CompletableFuture.supplyAsync(() -> tokenStorage.get(params));
+        storage.entered.await();
+
+        assertThrows(StorageUnavailableException.class, () -> tokenStorage.save("testToken", params));
+        assertThrows(StorageUnavailableException.class, () -> tokenStorage.save("testToken", params));
+        storage.gate.countDown();
+        slowRead.get();
+
+        assertEquals(State.CLOSED, tokenStorage.getState());
+        assertEquals(2, tokenStorage.getRejectedCalls());
+        assertEquals(0, tokenStorage.getFailedCalls());
+    }
+
+    private CircuitBreakerTokenStorage breaker(
+            final ReadFallback readFallback,
+            final Duration openDuration
+    ) {
+        return new CircuitBreakerTokenStorage(storage, CircuitBreakerOptions.builder()
+                .timeout(Duration.ofMillis(100))
+                .failureThreshold(2)
+                .openDuration(openDuration)
+                .readFallback(readFallback)
+                .build());
+    }
+
+    private static String jwt(final String payload) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8))
+                + ".signature";
+    }
+
+    private static class UnreliableTokenStorage extends TokenStorageImpl {
+
+        private volatile long delayMillis;
+
+        private volatile boolean failing;
+
+        private final CountDownLatch entered = new CountDownLatch(1);
+
+        private volatile CountDownLatch gate;
+
+        @Override
+        public void save(
+                final String token,
+                final TokenParameters params
+        ) {
+            check();
+            super.save(token, params);
+        }
+
+        @Override
+        public String get(final TokenParameters params) {
+            CountDownLatch latch = gate;
+            if (latch != null) {
+                entered.countDown();
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.get(params);
+            }
+            check();
+            return super.get(params);
+        }
+
+        @Override
+        public boolean exists(
+                final String token,
+                final TokenParameters params
+        ) {
+            check();
+            return super.exists(token, params);
+        }
+
+        @Override
+        public boolean remove(final TokenParameters params) {
+            check();
+            return super.remove(params);
+        }
+
+        private void check() {
+            if (failing) {
+                throw new IllegalStateException("Storage is down");
+            }
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
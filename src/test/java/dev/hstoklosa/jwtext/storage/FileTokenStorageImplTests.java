@@ -0,0 +1,228 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileTokenStorageImplTests {
+
+    @TempDir
+    Path directory;
+
+    private FileTokenStorageImpl tokenStorage;
+
+    @BeforeEach
+    void setup() {
+        tokenStorage = new FileTokenStorageImpl(directory, 10, false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        tokenStorage.close();
+    }
+
+    @Test
+    void saveShouldStoreToken() {
+        String subject = "testSubject";
+        String type = "any";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters params = 
+            TokenParameters.builder(subject, type, duration).build();
+        String token = "testToken";
+        tokenStorage.save(token, params);
+
+        assertTrue(tokenStorage.exists(token, params));
+        assertEquals(token, tokenStorage.get(params));
+    }
+
+    @Test
+    void getWithNonExistingTokenShouldReturnNull() {
+        String subject = "testSubject";
+        String type = "any";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters params = 
+            TokenParameters.builder(subject, type, duration).build();
+
+        assertNull(tokenStorage.get(params));
+        assertFalse(tokenStorage.exists("nonExistingToken", params));
+    }
+
+    @Test
+    void shouldInvalidateByToken() {
+        String subject = "testSubject";
+        String type = "any";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters params = TokenParameters
+                .builder(subject, type, duration).build();
+        String token = "testToken";
+
+        tokenStorage.save(token, params);
+
+        assertTrue(tokenStorage.remove(token));
+        assertNull(tokenStorage.get(params));
+    }
+
+    @Test
+    void shouldInvalidateBySubjectAndType() {
+        String subject = "testSubject";
+        String type = "any";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters params = TokenParameters
+                .builder(subject, type, duration).build();
+        String token = "testToken";
+
+        tokenStorage.save(token, params);
+
+        assertTrue(tokenStorage.remove(params));
+        assertNull(tokenStorage.get(params));
+        assertFalse(tokenStorage.remove(params));
+    }
+
+    @Test
+    void shouldRestoreTokensFromSnapshotAndLog() {
+        Duration duration = Duration.ofMinutes(30);
+
+        for (int i = 0; i < 25; i++) {
+            TokenParameters params = TokenParameters
+                    .builder("subject" + i, "any", duration).build();
+            tokenStorage.save("token" + i, params);
+        }
+        tokenStorage.remove(TokenParameters.builder("subject3", "any", duration).build());
+        tokenStorage.remove("token21");
+        tokenStorage.close();
+
+        tokenStorage = new FileTokenStorageImpl(directory, 10, false);
+
+        assertTrue(Files.exists(directory.resolve(FileTokenStorageImpl.SNAPSHOT_FILE)));
+        assertEquals(23, tokenStorage.size());
+        assertNull(tokenStorage.get(TokenParameters.builder("subject3", "any", duration).build()));
+        assertNull(tokenStorage.get(TokenParameters.builder("subject21", "any", duration).build()));
+        assertEquals("token24", tokenStorage.get(TokenParameters.builder("subject24", "any", duration).build()));
+    }
+
+    @Test
+    void compactShouldDropExpiredTokens() {
+        Duration duration = Duration.ofMinutes(30);
+        TokenParameters expired = TokenParameters.builder("expiredSubject", "any", duration)
+                .expiredAt(new Date(System.currentTimeMillis() - 1000))
+                .build();
+        TokenParameters valid = TokenParameters
+                .builder("validSubject", "any", duration).build();
+
+        tokenStorage.save("expiredToken", expired);
+        tokenStorage.save("validToken", valid);
+        tokenStorage.compact();
+
+        assertEquals(1, tokenStorage.size());
+        assertNull(tokenStorage.get(expired));
+        assertEquals("validToken", tokenStorage.get(valid));
+    }
+
+    @Test
+    void shouldIgnoreTornLogRecord() throws IOException {
+        Duration duration = Duration.ofMinutes(30);
+        TokenParameters params = TokenParameters
+                .builder("testSubject", "any", duration).build();
+
+        tokenStorage.save("testToken", params);
+        tokenStorage.close();
+        Files.write(
+                directory.resolve(FileTokenStorageImpl.LOG_FILE),
+                new byte[] {0, 0, 0, 42, 1, 2},
+                StandardOpenOption.APPEND
+        );
+
+        tokenStorage = new FileTokenStorageImpl(directory, 10, false);
+        TokenParameters otherParams = TokenParameters
+                .builder("otherSubject", "any", duration).build();
+        tokenStorage.save("otherToken", otherParams);
+        tokenStorage.close();
+
+        tokenStorage = new FileTokenStorageImpl(directory, 10, false);
+
+        assertEquals("testToken", tokenStorage.get(params));
+        assertEquals("otherToken", tokenStorage.get(otherParams));
+    }
+
+    @Test
+    void shouldInvalidateAllBySubject() {
+        String subject = "testSubject";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters accessParams = TokenParameters
+                .builder(subject, "access", duration).build();
+        TokenParameters refreshParams = TokenParameters
+                .builder(subject, "refresh", duration).build();
+        TokenParameters otherParams = TokenParameters
+                .builder("otherSubject", "access", duration).build();
+
+        tokenStorage.save("accessToken", accessParams);
+        tokenStorage.save("refreshToken", refreshParams);
+        tokenStorage.save("otherToken", otherParams);
+
+        assertTrue(tokenStorage.removeAll(subject));
+        assertNull(tokenStorage.get(accessParams));
+        assertNull(tokenStorage.get(refreshParams));
+        assertEquals("otherToken", tokenStorage.get(otherParams));
+        assertFalse(tokenStorage.removeAll(subject));
+    }
+
+    @Test
+    void touchShouldBeRestoredFromLog() {
+        Duration duration = Duration.ofMinutes(30);
+        TokenParameters touched = TokenParameters.builder("touchedSubject", "any", duration).build();
+        TokenParameters other = TokenParameters.builder("otherSubject", "any", duration).build();
+        tokenStorage.save("touchedToken", touched);
+        tokenStorage.save("otherToken", other);
+
+        assertTrue(tokenStorage.touch(touched, new Date(System.currentTimeMillis() - 1000)));
+        assertFalse(tokenStorage.touch(touched, new Date(System.currentTimeMillis() + 60_000)));
+        tokenStorage.close();
+        tokenStorage = new FileTokenStorageImpl(directory, 10, false);
+
+        assertNull(tokenStorage.get(touched));
+        assertEquals("otherToken", tokenStorage.get(other));
+    }
+
+    @Test
+    void mappedReaderShouldReadAcrossWindows() throws IOException {
+        Path file = directory.resolve("windows");
+        ByteBuffer content = ByteBuffer.allocate(4 + 4 + 9 + 8);
+        content.putInt(7).putInt(9).put("testToken".getBytes(StandardCharsets.UTF_8)).putLong(42L);
+        Files.write(file, content.array());
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            FileTokenStorageImpl.MappedReader reader = new FileTokenStorageImpl.MappedReader(channel, 10);
+
+            assertEquals(7, reader.getInt());
+            assertEquals("testToken", reader.getString());
+            assertEquals(42L, reader.getLong());
+            assertEquals(0, reader.remaining());
+            assertThrows(BufferUnderflowException.class, reader::getInt);
+        }
+    }
+}
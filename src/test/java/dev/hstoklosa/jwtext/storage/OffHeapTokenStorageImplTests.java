@@ -0,0 +1,264 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapTokenStorageImplTests {
+
+    private OffHeapTokenStorageImpl tokenStorage;
+
+    @BeforeEach
+    void setup() {
+        tokenStorage = new OffHeapTokenStorageImpl();
+    }
+
+    @Test
+    void saveShouldStoreToken() {
+        String subject = "testSubject";
+        String type = "any";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters params = 
+            TokenParameters.builder(subject, type, duration).build();
+        String token = "testToken";
+        tokenStorage.save(token, params);
+
+        assertTrue(tokenStorage.exists(token, params));
+    }
+
+    @Test
+    void existsWithNonExistingTokenShouldReturnFalse() {
+        String subject = "testSubject";
+        String type = "any";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters params = 
+            TokenParameters.builder(subject, type, duration).build();
+        String nonExistingToken = "nonExistingToken";
+
+        assertFalse(tokenStorage.exists(nonExistingToken, params));
+    }
+
+    @Test
+    void getWithExistingTokenShouldReturnToken() {
+        String subject = "testSubject";
+        String type = "any";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters params = 
+            TokenParameters.builder(subject, type, duration).build();
+        String token = "testToken";
+        tokenStorage.save(token, params);
+
+        assertEquals(token, tokenStorage.get(params));
+    }
+
+    @Test
+    void getWithNonExistingTokenShouldReturnNull() {
+        String subject = "testSubject";
+        String type = "any";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters params = 
+            TokenParameters.builder(subject, type, duration).build();
+
+        assertNull(tokenStorage.get(params));
+    }
+
+    @Test
+    void getWithExpiredTokenShouldReturnNull() {
+        String subject = "testSubject";
+        String type = "any";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters params = TokenParameters.builder(subject, type, duration)
+                .expiredAt(new Date(System.currentTimeMillis() - 1000))
+                .build();
+        tokenStorage.save("testToken", params);
+
+        assertNull(tokenStorage.get(params));
+        assertFalse(tokenStorage.exists("testToken", params));
+    }
+
+    @Test
+    void saveShouldOverwriteTokenWithDifferentLength() {
+        String subject = "testSubject";
+        String type = "any";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters params = 
+            TokenParameters.builder(subject, type, duration).build();
+        tokenStorage.save("testToken", params);
+        tokenStorage.save("anotherTestToken", params);
+
+        assertEquals("anotherTestToken", tokenStorage.get(params));
+        assertEquals(1, tokenStorage.size());
+    }
+
+    @Test
+    void shouldInvalidateByToken() {
+        String subject = "testSubject";
+        String type = "any";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters params = TokenParameters
+                .builder(subject, type, duration).build();
+        TokenParameters otherParams = TokenParameters
+                .builder(subject, "other", duration).build();
+        String token = "testToken";
+
+        tokenStorage.save(token, params);
+        tokenStorage.save(token, otherParams);
+
+        assertTrue(tokenStorage.remove(token));
+        assertNull(tokenStorage.get(params));
+        assertNull(tokenStorage.get(otherParams));
+        assertFalse(tokenStorage.remove(token));
+    }
+
+    @Test
+    void shouldInvalidateBySubjectAndType() {
+        String subject = "testSubject";
+        String type = "any";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters params = TokenParameters
+                .builder(subject, type, duration).build();
+        String token = "testToken";
+
+        tokenStorage.save(token, params);
+
+        assertTrue(tokenStorage.remove(params));
+        assertNull(tokenStorage.get(params));
+        assertFalse(tokenStorage.remove(params));
+    }
+
+    @Test
+    void shouldKeepAllTokensWhenIndexGrows() {
+        Duration duration = Duration.ofMinutes(30);
+
+        for (int i = 0; i < 5000; i++) {
+            TokenParameters params = TokenParameters
+                    .builder("subject" + i, "any", duration).build();
+            tokenStorage.save("token" + i, params);
+        }
+        for (int i = 0; i < 5000; i += 2) {
+            TokenParameters params = TokenParameters
+                    .builder("subject" + i, "any", duration).build();
+            tokenStorage.remove(params);
+        }
+
+        assertEquals(2500, tokenStorage.size());
+        for (int i = 0; i < 5000; i++) {
+            TokenParameters params = TokenParameters
+                    .builder("subject" + i, "any", duration).build();
+            assertEquals(i % 2 == 0 ? null : "token" + i, tokenStorage.get(params));
+        }
+    }
+
+    @Test
+    void shouldReclaimSpaceOfReplacedAndExpiredTokens() {
+        tokenStorage = new OffHeapTokenStorageImpl(4096);
+        Duration duration = Duration.ofMinutes(30);
+        TokenParameters expired = TokenParameters.builder("expiredSubject", "any", duration)
+                .expiredAt(new Date(System.currentTimeMillis() - 1000))
+                .build();
+        tokenStorage.save("expiredToken", expired);
+
+        for (int i = 0; i < 1000; i++) {
+            TokenParameters params = TokenParameters
+                    .builder("subject" + i % 10, "any", duration).build();
+            tokenStorage.save("token".repeat(1 + i / 10 % 2) + i, params);
+        }
+
+        assertEquals(10, tokenStorage.size());
+        assertTrue(tokenStorage.usedBytes() <= tokenStorage.capacityBytes());
+        for (int i = 990; i < 1000; i++) {
+            TokenParameters params = TokenParameters
+                    .builder("subject" + i % 10, "any", duration).build();
+            assertEquals("token".repeat(1 + i / 10 % 2) + i, tokenStorage.get(params));
+        }
+    }
+
+    @Test
+    void saveWhenFullShouldThrow() {
+        tokenStorage = new OffHeapTokenStorageImpl(512);
+        Duration duration = Duration.ofMinutes(30);
+
+        assertThrows(IllegalStateException.class, () -> {
+            for (int i = 0; i < 100; i++) {
+                TokenParameters params = TokenParameters
+                        .builder("subject" + i, "any", duration).build();
+                tokenStorage.save("token" + i, params);
+            }
+        });
+    }
+
+    @Test
+    void shouldInvalidateAllBySubject() {
+        String subject = "testSubject";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters accessParams = TokenParameters
+                .builder(subject, "access", duration).build();
+        TokenParameters refreshParams = TokenParameters
+                .builder(subject, "refresh", duration).build();
+        TokenParameters otherParams = TokenParameters
+                .builder("otherSubject", "access", duration).build();
+
+        tokenStorage.save("accessToken", accessParams);
+        tokenStorage.save("refreshToken", refreshParams);
+        tokenStorage.save("otherToken", otherParams);
+
+        assertTrue(tokenStorage.removeAll(subject));
+        assertNull(tokenStorage.get(accessParams));
+        assertNull(tokenStorage.get(refreshParams));
+        assertEquals("otherToken", tokenStorage.get(otherParams));
+        assertFalse(tokenStorage.removeAll(subject));
+    }
+
+    @Test
+    void compareAndSaveAllShouldSaveOnlyIfExpectedTokenIsStored() {
+        Duration duration = Duration.ofMinutes(30);
+        TokenParameters accessParams = TokenParameters
+                .builder("testSubject", "access", duration).build();
+        TokenParameters refreshParams = TokenParameters
+                .builder("testSubject", "refresh", duration).build();
+        tokenStorage.save("refreshToken", refreshParams);
+
+        Map<String, TokenParameters> tokens = new LinkedHashMap<>();
+        tokens.put("newRefreshToken", refreshParams);
+        tokens.put("newAccessToken", accessParams);
+
+        assertTrue(tokenStorage.compareAndSaveAll("refreshToken", refreshParams, tokens));
+        assertEquals("newRefreshToken", tokenStorage.get(refreshParams));
+        assertEquals("newAccessToken", tokenStorage.get(accessParams));
+        assertFalse(tokenStorage.compareAndSaveAll("refreshToken", refreshParams, Map.of()));
+    }
+
+    @Test
+    void touchShouldMoveExpirationOfStoredToken() {
+        TokenParameters params = TokenParameters
+                .builder("testSubject", "any", Duration.ofMinutes(30)).build();
+        tokenStorage.save("testToken", params);
+
+        assertTrue(tokenStorage.touch(params, new Date(System.currentTimeMillis() + 60_000)));
+        assertEquals("testToken", tokenStorage.get(params));
+        assertTrue(tokenStorage.touch(params, new Date(System.currentTimeMillis() - 1000)));
+        assertNull(tokenStorage.get(params));
+        assertFalse(tokenStorage.touch(params, new Date(System.currentTimeMillis() + 60_000)));
+    }
+}
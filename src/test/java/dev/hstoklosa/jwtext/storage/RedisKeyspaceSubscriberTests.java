@@ -0,0 +1,161 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+import dev.hstoklosa.jwtext.redis.DefaultRedisSchema;
+import dev.hstoklosa.jwtext.redis.RedisSchema;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Testcontainers
+class RedisKeyspaceSubscriberTests {
+
+    private RedisTokenStorageImpl tokenStorage;
+
+    private RedisKeyspaceSubscriber subscriber;
+
+    @Container
+    public GenericContainer redis =
+        new GenericContainer(DockerImageName.parse("redis:5.0.3-alpine")).withExposedPorts(6379);
+
+    @BeforeEach
+    void setup() {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setJmxEnabled(false);
+
+        JedisPool jedisPool = new JedisPool(
+                config,
+                redis.getHost(),
+                redis.getMappedPort(6379)
+        );
+
+        tokenStorage = new RedisTokenStorageImpl(jedisPool, new DefaultRedisSchema());
+        subscriber = new RedisKeyspaceSubscriber(jedisPool, new DefaultRedisSchema(), 0, Duration.ofMillis(100));
+        subscriber.enableNotifications();
+    }
+
+    @AfterEach
+    void tearDown() {
+        subscriber.close();
+    }
+
+    @Test
+    void removedAndExpiredTokensShouldBeReported() throws InterruptedException {
+        TokenParameters removed = TokenParameters.builder("user:1", "access", Duration.ofMinutes(30)).build();
+        TokenParameters expired = TokenParameters.builder("user:2", "access", Duration.ofSeconds(1)).build();
+        tokenStorage.save("removedToken", removed);
+        tokenStorage.save("expiredToken", expired);
+
+        BlockingQueue<String> evicted = new LinkedBlockingQueue<>();
+        subscriber.addListener((subject, type) -> evicted.add(subject + "/" + type));
+        Thread.sleep(200);
+        tokenStorage.remove(removed);
+
+        assertEquals(
+                Set.of("user:1/access", "user:2/access"),
+                Set.of(evicted.poll(5, TimeUnit.SECONDS), evicted.poll(5, TimeUnit.SECONDS))
+        );
+        assertEquals(2, subscriber.getStatistics().events());
+    }
+
+    @Test
+    void savedAndTouchedTokensShouldBeReported() throws InterruptedException {
+        BlockingQueue<String> evicted = new LinkedBlockingQueue<>();
+        subscriber.addListener((subject, type) -> evicted.add(subject + "/" + type));
+        Thread.sleep(200);
+
+        TokenParameters params = TokenParameters.builder("user:1", "access", Duration.ofMinutes(30)).build();
+        tokenStorage.save("testToken", params);
+        assertEquals("user:1/access", evicted.poll(5, TimeUnit.SECONDS));
+
+        Thread.sleep(200);
+        evicted.clear();
+        tokenStorage.touch(params, new Date(System.currentTimeMillis() + 60_000));
+        assertEquals("user:1/access", evicted.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void tieredStorageShouldDropTokensRemovedByOtherNodes() throws InterruptedException {
+        TieredTokenStorageImpl tieredStorage = new TieredTokenStorageImpl(tokenStorage);
+        subscriber.addListener(tieredStorage);
+        Thread.sleep(200);
+
+        TokenParameters params = TokenParameters.builder("testSubject", "access", Duration.ofMinutes(30)).build();
+        tieredStorage.save("testToken", params);
+        tokenStorage.remove(params);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (tieredStorage.getCache().size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, tieredStorage.getCache().size());
+    }
+
+    @Test
+    void removedReferencesShouldBeReportedAsHandles() throws InterruptedException {
+        TokenParameters params = TokenParameters.builder("user:1", "access", Duration.ofMinutes(30)).build();
+        tokenStorage.saveReference("testHandle", "testToken", params);
+
+        BlockingQueue<String> evicted = new LinkedBlockingQueue<>();
+        subscriber.addListener(new TokenEvictionListener() {
+            @Override
+            public void onEvict(
+                    final String subject,
+                    final String type
+            ) {
+                evicted.add(subject + "/" + type);
+            }
+
+            @Override
+            public void onEvictReference(final String handle) {
+                evicted.add(handle);
+            }
+        });
+        Thread.sleep(200);
+        tokenStorage.removeAll("user:1");
+
+        assertEquals("testHandle", evicted.poll(5, TimeUnit.SECONDS));
+        assertEquals(1, subscriber.getStatistics().events());
+    }
+
+    @Test
+    void probesShouldMeasureLag() throws InterruptedException {
+        subscriber.addListener((subject, type) -> { });
+        Thread.sleep(1000);
+
+        RedisKeyspaceSubscriber.Statistics statistics = subscriber.getStatistics();
+        assertTrue(statistics.probes() > 0);
+        assertTrue(statistics.medianLagNanos() > 0);
+        assertEquals(0, statistics.events());
+    }
+
+    @Test
+    void schemaShouldParseTokenKeys() {
+        RedisSchema schema = new DefaultRedisSchema();
+
+        assertEquals(
+                new RedisSchema.TokenKey("user:1", "access"),
+                schema.parseSubjectTokenKey(schema.subjectTokenKey("user:1", "access"))
+        );
+        assertNull(schema.parseSubjectTokenKey("subjects:user:tokens"));
+        assertNull(schema.parseSubjectTokenKey("tokens:user"));
+    }
+}
@@ -0,0 +1,96 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.redis.DefaultRedisSchema;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@Testcontainers
+class RedisRevocationStorageImplTests {
+
+    private RedisRevocationStorageImpl revocationStorage;
+
+    private RedisRevocationStorageImpl otherNodeStorage;
+
+    @Container
+    public GenericContainer redis = 
+        new GenericContainer(DockerImageName.parse("redis:5.0.3-alpine")).withExposedPorts(6379);
+
+    @BeforeEach
+    void setup() {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setJmxEnabled(false);
+
+        JedisPool jedisPool = new JedisPool(
+                config,
+                redis.getHost(),
+                redis.getMappedPort(6379)
+        );
+
+        revocationStorage = new RedisRevocationStorageImpl(
+                jedisPool,
+                new DefaultRedisSchema(),
+                Duration.ofDays(1)
+        );
+        otherNodeStorage = new RedisRevocationStorageImpl(jedisPool);
+    }
+
+    @AfterEach
+    void tearDown() {
+        revocationStorage.close();
+        otherNodeStorage.close();
+    }
+
+    @Test
+    void getRevokedBeforeShouldReturnWatermark() {
+        Date issuedBefore = new Date();
+
+        revocationStorage.revoke("testSubject", issuedBefore);
+
+        assertEquals(issuedBefore, revocationStorage.getRevokedBefore("testSubject"));
+        assertNull(revocationStorage.getRevokedBefore("otherSubject"));
+    }
+
+    @Test
+    void revokeShouldNotMoveWatermarkBackwards() {
+        Date issuedBefore = new Date();
+
+        revocationStorage.revoke("testSubject", issuedBefore);
+        revocationStorage.revoke("testSubject", new Date(issuedBefore.getTime() - 1000));
+
+        assertEquals(issuedBefore, revocationStorage.getRevokedBefore("testSubject"));
+    }
+
+    @Test
+    void revokeShouldNotifyOtherNodes() throws InterruptedException {
+        CountDownLatch notified = new CountDownLatch(1);
+        otherNodeStorage.addListener(subject -> {
+            if (subject.equals("testSubject")) {
+                notified.countDown();
+            }
+        });
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (notified.getCount() > 0 && System.currentTimeMillis() < deadline) {
+            revocationStorage.revoke("testSubject", new Date());
+            notified.await(100, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(0, notified.getCount());
+    }
+}
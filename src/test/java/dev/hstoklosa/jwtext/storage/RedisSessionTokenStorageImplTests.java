@@ -0,0 +1,207 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+import dev.hstoklosa.jwtext.redis.DefaultRedisSchema;
+import dev.hstoklosa.jwtext.redis.RedisPoolOptions;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Testcontainers
+class RedisSessionTokenStorageImplTests {
+
+    private JedisPool jedisPool;
+
+    private RedisSessionTokenStorageImpl tokenStorage;
+
+    @Container
+    public GenericContainer redis = 
+        new GenericContainer(DockerImageName.parse("redis:5.0.3-alpine")).withExposedPorts(6379);
+
+    @BeforeEach
+    void setup() {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setJmxEnabled(false);
+
+        jedisPool = new JedisPool(
+                config,
+                redis.getHost(),
+                redis.getMappedPort(6379)
+        );
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.flushAll();
+        }
+
+        tokenStorage = new RedisSessionTokenStorageImpl(
+                jedisPool,
+                new DefaultRedisSchema(),
+                RedisPoolOptions.builder().build(),
+                3
+        );
+    }
+
+    @AfterEach
+    void tearDown() {
+        jedisPool.close();
+    }
+
+    @Test
+    void saveShouldEvictOldestSessionsBeyondCap() {
+        for (int i = 0; i < 5; i++) {
+            tokenStorage.save("token" + i, params("testSubject", "access", i, Duration.ofMinutes(30)));
+        }
+
+        assertEquals(List.of("token2", "token3", "token4"), tokenStorage.getSessions("testSubject"));
+        assertFalse(tokenStorage.exists("token0", params("testSubject", "access", 0, Duration.ZERO)));
+        assertTrue(tokenStorage.exists("token2", params("testSubject", "access", 0, Duration.ZERO)));
+        assertFalse(tokenStorage.exists("token2", params("testSubject", "refresh", 0, Duration.ZERO)));
+        assertEquals(2, tokenStorage.getEvictions());
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertFalse(jedis.exists("session:" + RedisSessionTokenStorageImpl.sessionId("token0")));
+            assertTrue(jedis.exists("session:" + RedisSessionTokenStorageImpl.sessionId("token4")));
+            assertTrue(jedis.pttl("sessions:testSubject") > 0);
+        }
+    }
+
+    @Test
+    void getShouldReturnNewestSessionOfType() {
+        tokenStorage.save("newest", params("testSubject", "access", 3, Duration.ofMinutes(30)));
+        tokenStorage.save("oldest", params("testSubject", "access", 1, Duration.ofMinutes(30)));
+        tokenStorage.save("refresh", params("testSubject", "refresh", 2, Duration.ofMinutes(30)));
+
+        assertEquals("newest", tokenStorage.get(params("testSubject", "access", 0, Duration.ZERO)));
+        assertEquals("refresh", tokenStorage.get(params("testSubject", "refresh", 0, Duration.ZERO)));
+        assertNull(tokenStorage.get(params("otherSubject", "access", 0, Duration.ZERO)));
+
+        assertTrue(tokenStorage.touch(params("testSubject", "access", 0, Duration.ZERO), new Date(System.currentTimeMillis() + 60_000)));
+        assertFalse(tokenStorage.touch(params("otherSubject", "access", 0, Duration.ZERO), new Date()));
+    }
+
+    @Test
+    void removeShouldEndSessions() {
+        tokenStorage.save("access1", params("testSubject", "access", 1, Duration.ofMinutes(30)));
+        tokenStorage.save("access2", params("testSubject", "access", 2, Duration.ofMinutes(30)));
+        tokenStorage.save("refresh", params("testSubject", "refresh", 3, Duration.ofMinutes(30)));
+
+        assertTrue(tokenStorage.remove("access2"));
+        assertFalse(tokenStorage.remove("access2"));
+        assertEquals("access1", tokenStorage.get(params("testSubject", "access", 0, Duration.ZERO)));
+        assertTrue(tokenStorage.remove(params("testSubject", "access", 0, Duration.ZERO)));
+        assertEquals(List.of("refresh"), tokenStorage.getSessions("testSubject"));
+
+        assertTrue(tokenStorage.removeAll("testSubject"));
+        assertFalse(tokenStorage.removeAll("testSubject"));
+        assertEquals(List.of(), tokenStorage.getSessions("testSubject"));
+    }
+
+    @Test
+    void concurrentSavesShouldNotExceedCap() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                int session = i;
+                futures.add(executor.submit(() -> tokenStorage.save(
+                        "token" + session,
+                        params("testSubject", "access", session, Duration.ofMinutes(30))
+                )));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(List.of("token47", "token48", "token49"), tokenStorage.getSessions("testSubject"));
+        assertEquals(47, tokenStorage.getEvictions());
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertEquals(3, jedis.zcard("sessions:testSubject"));
+        }
+    }
+
+    @Test
+    void sessionsIssuedAtSameTimeShouldKeepOrderOfSaving() {
+        List<String> tokens = List.of("zulu", "alpha", "mike", "bravo");
+        TokenParameters params = params("testSubject", "access", 1, Duration.ofMinutes(30));
+        tokens.forEach(token -> tokenStorage.save(token, params));
+
+        assertEquals(tokens.subList(1, 4), tokenStorage.getSessions("testSubject"));
+        assertEquals("bravo", tokenStorage.get(params));
+    }
+
+    @Test
+    void compareAndSaveAllShouldContinueSession() {
+        tokenStorage.save("phone", params("testSubject", "refresh", 1, Duration.ofMinutes(30)));
+        tokenStorage.save("laptop", params("testSubject", "refresh", 2, Duration.ofMinutes(30)));
+        tokenStorage.save("laptopAccess", params("testSubject", "access", 3, Duration.ofMinutes(30)));
+
+        assertTrue(tokenStorage.compareAndSaveAll(
+                "laptop",
+                params("testSubject", "refresh", 0, Duration.ZERO),
+                rotation("laptop2", 4)
+        ));
+        assertTrue(tokenStorage.compareAndSaveAll(
+                "laptop2",
+                params("testSubject", "refresh", 0, Duration.ZERO),
+                rotation("laptop3", 5)
+        ));
+        assertFalse(tokenStorage.compareAndSaveAll(
+                "laptop2",
+                params("testSubject", "refresh", 0, Duration.ZERO),
+                rotation("laptop4", 6)
+        ));
+
+        assertEquals(
+                List.of("phone", "laptopAccess", "laptop3", "laptop3Access"),
+                tokenStorage.getSessions("testSubject")
+        );
+        assertEquals(0, tokenStorage.getEvictions());
+    }
+
+    private static Map<String, TokenParameters> rotation(
+            final String token,
+            final int secondsAgo
+    ) {
+        Map<String, TokenParameters> tokens = new LinkedHashMap<>();
+        tokens.put(token, params("testSubject", "refresh", secondsAgo, Duration.ofMinutes(30)));
+        tokens.put(token + "Access", params("testSubject", "access", secondsAgo, Duration.ofMinutes(30)));
+        return tokens;
+    }
+
+    private static TokenParameters params(
+            final String subject,
+            final String type,
+            final int secondsAgo,
+            final Duration remaining
+    ) {
+        long now = System.currentTimeMillis();
+        return TokenParameters.builder(subject, type, Duration.ZERO)
+                .issuedAt(new Date(now - 60_000 + secondsAgo * 1000L))
+                .expiredAt(new Date(now + remaining.toMillis()))
+                .build();
+    }
+}
@@ -2,6 +2,8 @@ package dev.hstoklosa.jwtext.storage;
 
 import dev.hstoklosa.jwtext.model.TokenParameters;
 import dev.hstoklosa.jwtext.redis.DefaultRedisSchema;
+import dev.hstoklosa.jwtext.redis.RedisPoolOptions;
+import dev.hstoklosa.jwtext.redis.RedisScript;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,10 +11,22 @@ import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -22,6 +36,8 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 @Testcontainers
 class RedisTokenStorageImplTests {
 
+    private JedisPool jedisPool;
+
     private RedisTokenStorageImpl tokenStorage;
 
     @Container
@@ -33,7 +49,7 @@ class RedisTokenStorageImplTests {
         JedisPoolConfig config = new JedisPoolConfig();
         config.setJmxEnabled(false);
 
-        JedisPool jedisPool = new JedisPool(
+        jedisPool = new JedisPool(
                 config,
                 redis.getHost(),
                 redis.getMappedPort(6379)
@@ -136,6 +152,29 @@ class RedisTokenStorageImplTests {
         assertNull(existingToken);
     }
 
+    @Test
+    void removeByTokenShouldKeepOtherKeys() {
+        Duration duration = Duration.ofMinutes(30);
+        TokenParameters params = TokenParameters.builder("removedSubject", "access", duration).build();
+        TokenParameters otherParams = TokenParameters.builder("otherSubject", "access", duration).build();
+        tokenStorage.save("removedToken", params);
+        tokenStorage.save("otherToken", otherParams);
+        RedisRevocationStorageImpl revocationStorage = new RedisRevocationStorageImpl(jedisPool);
+        revocationStorage.revoke("otherSubject", new Date());
+        revocationStorage.close();
+
+        assertTrue(tokenStorage.remove("removedToken"));
+        assertFalse(tokenStorage.remove("removedToken"));
+
+        assertNull(tokenStorage.get(params));
+        assertEquals("otherToken", tokenStorage.get(otherParams));
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertTrue(jedis.exists("revocations:otherSubject"));
+            assertTrue(jedis.exists("subjects:otherSubject:tokens"));
+            assertFalse(jedis.exists("subjects:removedSubject:tokens"));
+        }
+    }
+
     @Test
     void shouldInvalidateBySubjectAndType() {
         String subject = "testSubject";
@@ -159,4 +198,204 @@ class RedisTokenStorageImplTests {
         String existingToken = tokenStorage.get(params);
         assertNull(existingToken);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldInvalidateAllBySubject() {
+        String subject = "testSubject";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters accessParams = TokenParameters
+                .builder(subject, "access", duration).build();
+        TokenParameters refreshParams = TokenParameters
+                .builder(subject, "refresh", duration).build();
+        TokenParameters otherParams = TokenParameters
+                .builder("otherSubject", "access", duration).build();
+
+        tokenStorage.save("accessToken", accessParams);
+        tokenStorage.save("refreshToken", refreshParams);
+        tokenStorage.save("otherToken", otherParams);
+
+        assertTrue(tokenStorage.removeAll(subject));
+        assertNull(tokenStorage.get(accessParams));
+        assertNull(tokenStorage.get(refreshParams));
+        assertEquals("otherToken", tokenStorage.get(otherParams));
+        assertFalse(tokenStorage.removeAll(subject));
+    }
+
+    @Test
+    void referencesShouldBeRemovedWithTheirSubject() {
+        TokenParameters params = TokenParameters
+                .builder("testSubject", "access", Duration.ofMinutes(30)).build();
+
+        tokenStorage.save("accessToken", params);
+        tokenStorage.saveReference("removedHandle", "accessToken", params);
+        tokenStorage.saveReference("keptHandle", "accessToken", params);
+
+        assertEquals("accessToken", tokenStorage.getReference("removedHandle"));
+        assertNull(tokenStorage.get(TokenParameters.builder("removedHandle", "access", Duration.ZERO).build()));
+        assertTrue(tokenStorage.removeReference("removedHandle"));
+        assertFalse(tokenStorage.removeReference("removedHandle"));
+        assertNull(tokenStorage.getReference("removedHandle"));
+        assertEquals("accessToken", tokenStorage.getReference("keptHandle"));
+
+        assertTrue(tokenStorage.removeAll("testSubject"));
+        assertNull(tokenStorage.getReference("keptHandle"));
+        assertNull(tokenStorage.get(params));
+    }
+
+    @Test
+    void saveAllShouldStoreTokensInOneBatch() {
+        Duration duration = Duration.ofMinutes(30);
+        TokenParameters accessParams = TokenParameters
+                .builder("testSubject", "access", duration).build();
+        TokenParameters refreshParams = TokenParameters
+                .builder("testSubject", "refresh", duration).build();
+
+        Map<String, TokenParameters> tokens = new LinkedHashMap<>();
+        tokens.put("accessToken", accessParams);
+        tokens.put("refreshToken", refreshParams);
+        tokenStorage.saveAll(tokens);
+
+        assertEquals("accessToken", tokenStorage.get(accessParams));
+        assertEquals("refreshToken", tokenStorage.get(refreshParams));
+        assertTrue(tokenStorage.removeAll("testSubject"));
+    }
+
+    @Test
+    void concurrentGetsShouldReturnStoredToken() throws Exception {
+        TokenParameters params = TokenParameters
+                .builder("testSubject", "access", Duration.ofMinutes(30)).build();
+        tokenStorage.save("testToken", params);
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<String>> reads = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            reads.add(executor.submit(() -> tokenStorage.get(params)));
+        }
+        for (Future<String> read : reads) {
+            assertEquals("testToken", read.get());
+        }
+        executor.shutdown();
+
+        tokenStorage.save("newToken", params);
+        assertEquals("newToken", tokenStorage.get(params));
+    }
+
+    @Test
+    void getAllShouldReturnTokensInOrderOfParams() {
+        Duration duration = Duration.ofMinutes(30);
+        TokenParameters accessParams = TokenParameters
+                .builder("testSubject", "access", duration).build();
+        TokenParameters missingParams = TokenParameters
+                .builder("testSubject", "missing", duration).build();
+        tokenStorage.save("accessToken", accessParams);
+
+        assertEquals(
+                Arrays.asList("accessToken", null),
+                tokenStorage.getAll(List.of(accessParams, missingParams))
+        );
+    }
+
+    @Test
+    void compareAndSaveAllShouldSaveOnlyIfExpectedTokenIsStored() {
+        Duration duration = Duration.ofMinutes(30);
+        TokenParameters accessParams = TokenParameters
+                .builder("testSubject", "access", duration).build();
+        TokenParameters refreshParams = TokenParameters
+                .builder("testSubject", "refresh", duration).build();
+        tokenStorage.save("refreshToken", refreshParams);
+
+        Map<String, TokenParameters> tokens = new LinkedHashMap<>();
+        tokens.put("newRefreshToken", refreshParams);
+        tokens.put("newAccessToken", accessParams);
+
+        assertTrue(tokenStorage.compareAndSaveAll("refreshToken", refreshParams, tokens));
+        assertEquals("newRefreshToken", tokenStorage.get(refreshParams));
+        assertEquals("newAccessToken", tokenStorage.get(accessParams));
+        assertFalse(tokenStorage.compareAndSaveAll("refreshToken", refreshParams, Map.of()));
+        assertTrue(tokenStorage.removeAll("testSubject"));
+    }
+
+    @Test
+    void touchShouldMoveExpirationOfStoredToken() {
+        TokenParameters params = TokenParameters
+                .builder("testSubject", "any", Duration.ofMinutes(30)).build();
+        tokenStorage.save("testToken", params);
+
+        assertTrue(tokenStorage.touch(params, new Date(System.currentTimeMillis() + 60_000)));
+        assertEquals("testToken", tokenStorage.get(params));
+        assertTrue(tokenStorage.touch(params, new Date(System.currentTimeMillis() - 1000)));
+        assertNull(tokenStorage.get(params));
+        assertFalse(tokenStorage.touch(params, new Date(System.currentTimeMillis() + 60_000)));
+    }
+
+    @Test
+    void shouldFindAndRemoveByIndexedClaim() {
+        tokenStorage = new RedisTokenStorageImpl(
+                jedisPool,
+                new DefaultRedisSchema(),
+                RedisPoolOptions.builder().build(),
+                Set.of("tenant", "scope")
+        );
+        Duration duration = Duration.ofMinutes(30);
+        TokenParameters first = TokenParameters.builder("first", "access", duration)
+                .claim("tenant", "acme")
+                .claim("scope", List.of("read", "write"))
+                .build();
+        TokenParameters second = TokenParameters.builder("second", "access", duration)
+                .claim("tenant", "acme")
+                .build();
+        TokenParameters moved = TokenParameters.builder("moved", "access", duration)
+                .claim("tenant", "acme")
+                .build();
+        TokenParameters other = TokenParameters.builder("other", "access", duration)
+                .claim("tenant", "globex")
+                .build();
+        tokenStorage.save("firstToken", first);
+        tokenStorage.saveAll(Map.of("secondToken", second, "otherToken", other));
+        tokenStorage.save("acmeToken", moved);
+        tokenStorage.save("movedToken", TokenParameters.builder("moved", "access", duration)
+                .claim("tenant", "globex")
+                .build());
+
+        assertEquals(
+                Set.of("firstToken", "secondToken"),
+                Set.copyOf(tokenStorage.findByClaim("tenant", "acme"))
+        );
+        assertEquals(List.of("firstToken"), tokenStorage.findByClaim("scope", "write"));
+        assertTrue(tokenStorage.touch(first, new Date(System.currentTimeMillis() + 3_600_000)));
+
+        assertTrue(tokenStorage.removeByClaim("tenant", "acme"));
+        assertNull(tokenStorage.get(first));
+        assertNull(tokenStorage.get(second));
+        assertEquals("movedToken", tokenStorage.get(moved));
+        assertEquals("otherToken", tokenStorage.get(other));
+        assertFalse(tokenStorage.removeByClaim("tenant", "acme"));
+        assertEquals(List.of(), tokenStorage.findByClaim("scope", "write"));
+    }
+
+    @Test
+    void scriptsShouldBeReloadedAfterFlush() {
+        Duration duration = Duration.ofMinutes(30);
+        TokenParameters first = TokenParameters.builder("first", "access", duration).build();
+        TokenParameters second = TokenParameters.builder("second", "access", duration).build();
+        String[] shas = RedisTokenStorageImpl.getScripts().stream()
+                .map(RedisScript::getSha)
+                .toArray(String[]::new);
+
+        tokenStorage.loadScripts();
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertEquals(Collections.nCopies(shas.length, true), jedis.scriptExists(shas));
+            jedis.scriptFlush();
+        }
+        tokenStorage.save("firstToken", first);
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.scriptFlush();
+        }
+        tokenStorage.saveAll(Map.of("secondToken", second));
+
+        assertEquals("firstToken", tokenStorage.get(first));
+        assertEquals("secondToken", tokenStorage.get(second));
+        assertTrue(tokenStorage.removeAll("first"));
+    }
+}
@@ -0,0 +1,154 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionTokenStorageImplTests {
+
+    private SessionTokenStorageImpl tokenStorage;
+
+    @BeforeEach
+    void setup() {
+        tokenStorage = new SessionTokenStorageImpl(3);
+    }
+
+    @Test
+    void saveShouldEvictOldestSessionsBeyondCap() {
+        for (int i = 0; i < 5; i++) {
+            tokenStorage.save("token" + i, params("testSubject", "access", i, Duration.ofMinutes(30)));
+        }
+        tokenStorage.save("otherToken", params("otherSubject", "access", 0, Duration.ofMinutes(30)));
+
+        assertEquals(List.of("token2", "token3", "token4"), tokenStorage.getSessions("testSubject"));
+        assertEquals(List.of("otherToken"), tokenStorage.getSessions("otherSubject"));
+        assertFalse(tokenStorage.exists("token0", params("testSubject", "access", 0, Duration.ZERO)));
+        assertTrue(tokenStorage.exists("token2", params("testSubject", "access", 0, Duration.ZERO)));
+        assertEquals(2, tokenStorage.getEvictions());
+    }
+
+    @Test
+    void sessionsShouldBeOrderedByIssueTime() {
+        tokenStorage.save("newest", params("testSubject", "access", 3, Duration.ofMinutes(30)));
+        tokenStorage.save("oldest", params("testSubject", "access", 1, Duration.ofMinutes(30)));
+        tokenStorage.save("middle", params("testSubject", "refresh", 2, Duration.ofMinutes(30)));
+        tokenStorage.save("latest", params("testSubject", "refresh", 4, Duration.ofMinutes(30)));
+
+        assertEquals(List.of("middle", "newest", "latest"), tokenStorage.getSessions("testSubject"));
+        assertEquals("newest", tokenStorage.get(params("testSubject", "access", 0, Duration.ZERO)));
+        assertEquals("latest", tokenStorage.get(params("testSubject", "refresh", 0, Duration.ZERO)));
+    }
+
+    @Test
+    void expiredSessionsShouldNotCountTowardsCap() {
+        tokenStorage.save("expired", params("testSubject", "access", 0, Duration.ofMillis(-1)));
+        for (int i = 1; i <= 3; i++) {
+            tokenStorage.save("token" + i, params("testSubject", "access", i, Duration.ofMinutes(30)));
+        }
+
+        assertEquals(List.of("token1", "token2", "token3"), tokenStorage.getSessions("testSubject"));
+        assertEquals(0, tokenStorage.getEvictions());
+    }
+
+    @Test
+    void removeShouldEndSessions() {
+        tokenStorage.save("access1", params("testSubject", "access", 1, Duration.ofMinutes(30)));
+        tokenStorage.save("access2", params("testSubject", "access", 2, Duration.ofMinutes(30)));
+        tokenStorage.save("refresh", params("testSubject", "refresh", 3, Duration.ofMinutes(30)));
+
+        assertTrue(tokenStorage.remove("access2"));
+        assertEquals("access1", tokenStorage.get(params("testSubject", "access", 0, Duration.ZERO)));
+        assertTrue(tokenStorage.remove(params("testSubject", "access", 0, Duration.ZERO)));
+        assertNull(tokenStorage.get(params("testSubject", "access", 0, Duration.ZERO)));
+        assertEquals(List.of("refresh"), tokenStorage.getSessions("testSubject"));
+
+        assertTrue(tokenStorage.removeAll("testSubject"));
+        assertFalse(tokenStorage.removeAll("testSubject"));
+        assertEquals(List.of(), tokenStorage.getSessions("testSubject"));
+    }
+
+    @Test
+    void touchShouldExtendNewestSession() {
+        tokenStorage.save("token1", params("testSubject", "access", 1, Duration.ofSeconds(1)));
+        tokenStorage.save("token2", params("testSubject", "access", 2, Duration.ofSeconds(1)));
+
+        assertTrue(tokenStorage.touch(
+                params("testSubject", "access", 0, Duration.ZERO),
+                new Date(System.currentTimeMillis() - 1)
+        ));
+
+        assertEquals("token1", tokenStorage.get(params("testSubject", "access", 0, Duration.ZERO)));
+        assertFalse(tokenStorage.touch(params("otherSubject", "access", 0, Duration.ZERO), new Date()));
+        assertThrows(IllegalArgumentException.class, () -> new SessionTokenStorageImpl(0));
+    }
+
+    @Test
+    void compareAndSaveAllShouldContinueSession() {
+        tokenStorage.save("phone", params("testSubject", "refresh", 1, Duration.ofMinutes(30)));
+        tokenStorage.save("laptop", params("testSubject", "refresh", 2, Duration.ofMinutes(30)));
+        tokenStorage.save("laptopAccess", params("testSubject", "access", 3, Duration.ofMinutes(30)));
+
+        assertTrue(tokenStorage.compareAndSaveAll(
+                "laptop",
+                params("testSubject", "refresh", 0, Duration.ZERO),
+                rotation("laptop2", 4)
+        ));
+        assertTrue(tokenStorage.compareAndSaveAll(
+                "laptop2",
+                params("testSubject", "refresh", 0, Duration.ZERO),
+                rotation("laptop3", 5)
+        ));
+        assertFalse(tokenStorage.compareAndSaveAll(
+                "laptop2",
+                params("testSubject", "refresh", 0, Duration.ZERO),
+                rotation("laptop4", 6)
+        ));
+
+        assertEquals(
+                List.of("phone", "laptopAccess", "laptop3", "laptop3Access"),
+                tokenStorage.getSessions("testSubject")
+        );
+        assertEquals(0, tokenStorage.getEvictions());
+        assertThrows(IllegalArgumentException.class, () -> tokenStorage.compareAndSaveAll(
+                "laptop3",
+                params("testSubject", "refresh", 0, Duration.ZERO),
+                Map.of("other", params("otherSubject", "refresh", 7, Duration.ofMinutes(30)))
+        ));
+    }
+
+    private static Map<String, TokenParameters> rotation(
+            final String token,
+            final int secondsAgo
+    ) {
+        Map<String, TokenParameters> tokens = new LinkedHashMap<>();
+        tokens.put(token, params("testSubject", "refresh", secondsAgo, Duration.ofMinutes(30)));
+        tokens.put(token + "Access", params("testSubject", "access", secondsAgo, Duration.ofMinutes(30)));
+        return tokens;
+    }
+
+    private static TokenParameters params(
+            final String subject,
+            final String type,
+            final int secondsAgo,
+            final Duration remaining
+    ) {
+        long now = System.currentTimeMillis();
+        return TokenParameters.builder(subject, type, Duration.ZERO)
+                .issuedAt(new Date(now - 60_000 + secondsAgo * 1000L))
+                .expiredAt(new Date(now + remaining.toMillis()))
+                .build();
+    }
+}
@@ -0,0 +1,215 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+import dev.hstoklosa.jwtext.storage.TieredTokenStorageImpl.WritePolicy;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TieredTokenStorageImplTests {
+
+    private CountingTokenStorage storage;
+
+    private TieredTokenStorageImpl tokenStorage;
+
+    @BeforeEach
+    void setup() {
+        storage = new CountingTokenStorage();
+        tokenStorage = new TieredTokenStorageImpl(
+                storage, 100, Duration.ofMinutes(1), WritePolicy.WRITE_THROUGH
+        );
+    }
+
+    @Test
+    void writeThroughShouldServeReadsLocally() {
+        TokenParameters params = TokenParameters.builder("testSubject", "any", Duration.ofMinutes(30)).build();
+        tokenStorage.save("testToken", params);
+
+        assertEquals("testToken", tokenStorage.get(params));
+        assertTrue(tokenStorage.exists("testToken", params));
+        assertEquals(0, storage.reads);
+        assertEquals(1.0, tokenStorage.getCacheStatistics().hitRatio());
+    }
+
+    @Test
+    void writeAroundShouldPopulateCacheOnFirstRead() {
+        tokenStorage = new TieredTokenStorageImpl(
+                storage, 100, Duration.ofMinutes(1), WritePolicy.WRITE_AROUND
+        );
+        TokenParameters params = TokenParameters.builder("testSubject", "any", Duration.ofMinutes(30)).build();
+        tokenStorage.save("testToken", params);
+
+        assertEquals("testToken", tokenStorage.get(params));
+        assertEquals("testToken", tokenStorage.get(params));
+        assertEquals(1, storage.reads);
+        assertEquals(1, tokenStorage.getStorageStatistics().hits());
+        assertEquals(1, tokenStorage.getCacheStatistics().hits());
+    }
+
+    @Test
+    void getShouldReloadExpiredCacheEntries() {
+        tokenStorage = new TieredTokenStorageImpl(
+                storage, 100, Duration.ZERO, WritePolicy.WRITE_THROUGH
+        );
+        TokenParameters params = TokenParameters.builder("testSubject", "any", Duration.ofMinutes(30)).build();
+        tokenStorage.save("testToken", params);
+
+        assertEquals("testToken", tokenStorage.get(params));
+        assertEquals(1, storage.reads);
+    }
+
+    @Test
+    void getWithNonExistingTokenShouldReturnNull() {
+        TokenParameters params = TokenParameters.builder("testSubject", "any", Duration.ofMinutes(30)).build();
+
+        assertNull(tokenStorage.get(params));
+        assertEquals(1, tokenStorage.getStorageStatistics().misses());
+    }
+
+    @Test
+    void removeShouldInvalidateBothTiers() {
+        TokenParameters params = TokenParameters.builder("testSubject", "any", Duration.ofMinutes(30)).build();
+        tokenStorage.save("testToken", params);
+
+        assertTrue(tokenStorage.remove(params));
+        assertNull(tokenStorage.get(params));
+        assertNull(storage.get(params));
+
+        tokenStorage.save("testToken", params);
+
+        assertTrue(tokenStorage.remove("testToken"));
+        assertFalse(tokenStorage.exists("testToken", params));
+    }
+
+    @Test
+    void shouldInvalidateAllBySubject() {
+        TokenParameters access = TokenParameters.builder("testSubject", "access", Duration.ofMinutes(30)).build();
+        TokenParameters refresh = TokenParameters.builder("testSubject", "refresh", Duration.ofMinutes(30)).build();
+        TokenParameters other = TokenParameters.builder("otherSubject", "access", Duration.ofMinutes(30)).build();
+        tokenStorage.save("accessToken", access);
+        tokenStorage.save("refreshToken", refresh);
+        tokenStorage.save("otherToken", other);
+
+        assertTrue(tokenStorage.removeAll("testSubject"));
+        assertNull(tokenStorage.get(access));
+        assertNull(tokenStorage.get(refresh));
+        assertEquals("otherToken", tokenStorage.get(other));
+        assertEquals(1, tokenStorage.getCache().size());
+    }
+
+    @Test
+    void getAllShouldReadOnlyMissedTokensFromStorage() {
+        TokenParameters cached = TokenParameters.builder("testSubject", "access", Duration.ofMinutes(30)).build();
+        TokenParameters stored = TokenParameters.builder("testSubject", "refresh", Duration.ofMinutes(30)).build();
+        TokenParameters missing = TokenParameters.builder("otherSubject", "access", Duration.ofMinutes(30)).build();
+        tokenStorage.save("accessToken", cached);
+        storage.save("refreshToken", stored);
+
+        assertEquals(
+                Arrays.asList("accessToken", "refreshToken", null),
+                tokenStorage.getAll(List.of(cached, stored, missing))
+        );
+        assertEquals(2, storage.reads);
+        assertEquals(1, tokenStorage.getStorageStatistics().hits());
+        assertEquals(1, tokenStorage.getStorageStatistics().misses());
+
+        tokenStorage.saveAll(Map.of("newRefreshToken", stored));
+
+        assertEquals(List.of("accessToken", "newRefreshToken"), tokenStorage.getAll(List.of(cached, stored)));
+        assertEquals(2, storage.reads);
+    }
+
+    @Test
+    void getOverlappingSaveShouldNotCacheTokenReadBeforeIt() throws InterruptedException {
+        TokenParameters params = TokenParameters.builder("testSubject", "any", Duration.ofMinutes(30)).build();
+        storage.save("oldToken", params);
+        storage.blockReads();
+
+        Thread reader = new Thread(() -> tokenStorage.get(params));
+        reader.start();
+        storage.awaitBlockedRead();
+        tokenStorage.save("newToken", params);
+        storage.unblockReads();
+        reader.join();
+
+        assertEquals("newToken", storage.get(params));
+        assertEquals("newToken", tokenStorage.get(params));
+    }
+
+    @Test
+    void getShouldNotKeepTokenPastItsExpiration() throws InterruptedException {
+        long expiresAt = (System.currentTimeMillis() / 1000 + 1) * 1000;
+        String token = jwt("{\"sub\":\"testSubject\",\"exp\":" + expiresAt / 1000 + "}");
+        TokenParameters params = TokenParameters.builder("testSubject", "access", Duration.ofMinutes(30)).build();
+        storage.save(token, params);
+
+        assertEquals(token, tokenStorage.get(params));
+        assertEquals(expiresAt, tokenStorage.getCache().get("testSubject:access").expiresAt());
+
+        Thread.sleep(expiresAt - System.currentTimeMillis() + 10);
+
+        assertNull(tokenStorage.getCache().get("testSubject:access"));
+    }
+
+    private static String jwt(final String payload) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8))
+                + ".signature";
+    }
+
+    private static class CountingTokenStorage extends TokenStorageImpl {
+
+        private int reads;
+
+        private CountDownLatch blocked;
+
+        private CountDownLatch unblocked;
+
+        @Override
+        public String get(final TokenParameters params) {
+            reads++;
+            String token = super.get(params);
+            if (blocked != null) {
+                CountDownLatch latch = unblocked;
+                blocked.countDown();
+                blocked = null;
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return token;
+        }
+
+        private void blockReads() {
+            blocked = new CountDownLatch(1);
+            unblocked = new CountDownLatch(1);
+        }
+
+        private void awaitBlockedRead() throws InterruptedException {
+            CountDownLatch latch = blocked;
+            if (latch != null) {
+                latch.await();
+            }
+        }
+
+        private void unblockReads() {
+            unblocked.countDown();
+        }
+    }
+}
@@ -6,10 +6,14 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TokenStorageImplTests {
@@ -128,4 +132,108 @@ class TokenStorageImplTests {
         String existingToken = tokenStorage.get(params);
         assertNull(existingToken);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldInvalidateAllBySubject() {
+        String subject = "testSubject";
+        Duration duration = Duration.ofMinutes(30);
+
+        TokenParameters accessParams = TokenParameters
+                .builder(subject, "access", duration).build();
+        TokenParameters refreshParams = TokenParameters
+                .builder(subject, "refresh", duration).build();
+        TokenParameters otherParams = TokenParameters
+                .builder("otherSubject", "access", duration).build();
+
+        tokenStorage.save("accessToken", accessParams);
+        tokenStorage.save("refreshToken", refreshParams);
+        tokenStorage.save("otherToken", otherParams);
+
+        assertTrue(tokenStorage.removeAll(subject));
+        assertNull(tokenStorage.get(accessParams));
+        assertNull(tokenStorage.get(refreshParams));
+        assertEquals("otherToken", tokenStorage.get(otherParams));
+        assertFalse(tokenStorage.removeAll(subject));
+    }
+
+    @Test
+    void referencesShouldBeRemovedWithTheirSubject() {
+        TokenParameters params = TokenParameters
+                .builder("testSubject", "access", Duration.ofMinutes(30)).build();
+
+        tokenStorage.save("accessToken", params);
+        tokenStorage.saveReference("removedHandle", "accessToken", params);
+        tokenStorage.saveReference("keptHandle", "accessToken", params);
+
+        assertEquals("accessToken", tokenStorage.getReference("removedHandle"));
+        assertNull(tokenStorage.get(TokenParameters.builder("removedHandle", "access", Duration.ZERO).build()));
+        assertTrue(tokenStorage.removeReference("removedHandle"));
+        assertFalse(tokenStorage.removeReference("removedHandle"));
+        assertNull(tokenStorage.getReference("removedHandle"));
+        assertEquals("accessToken", tokenStorage.getReference("keptHandle"));
+
+        assertTrue(tokenStorage.removeAll("testSubject"));
+        assertNull(tokenStorage.getReference("keptHandle"));
+        assertNull(tokenStorage.get(params));
+    }
+
+    @Test
+    void touchShouldMoveExpirationOfStoredToken() {
+        TokenParameters params = TokenParameters
+                .builder("testSubject", "any", Duration.ofMinutes(30)).build();
+        tokenStorage.save("testToken", params);
+
+        assertTrue(tokenStorage.touch(params, new Date(System.currentTimeMillis() + 60_000)));
+        assertEquals("testToken", tokenStorage.get(params));
+        assertTrue(tokenStorage.touch(params, new Date(System.currentTimeMillis() - 1000)));
+        assertNull(tokenStorage.get(params));
+        assertFalse(tokenStorage.touch(params, new Date(System.currentTimeMillis() + 60_000)));
+    }
+
+    @Test
+    void shouldFindAndRemoveByIndexedClaim() {
+        tokenStorage = new TokenStorageImpl(Set.of("tenant", "scope"));
+        Duration duration = Duration.ofMinutes(30);
+        TokenParameters first = TokenParameters.builder("first", "access", duration)
+                .claim("tenant", "acme")
+                .claim("scope", List.of("read", "write"))
+                .build();
+        TokenParameters second = TokenParameters.builder("second", "access", duration)
+                .claim("tenant", "acme")
+                .claim("scope", List.of("read"))
+                .build();
+        TokenParameters other = TokenParameters.builder("other", "access", duration)
+                .claim("tenant", "globex")
+                .build();
+        tokenStorage.save("firstToken", first);
+        tokenStorage.save("secondToken", second);
+        tokenStorage.save("otherToken", other);
+
+        assertEquals(Set.of("firstToken", "secondToken"), Set.copyOf(tokenStorage.findByClaim("tenant", "acme")));
+        assertEquals(List.of("firstToken"), tokenStorage.findByClaim("scope", "write"));
+
+        assertTrue(tokenStorage.removeByClaim("scope", "write"));
+        assertNull(tokenStorage.get(first));
+        assertEquals(List.of("secondToken"), tokenStorage.findByClaim("tenant", "acme"));
+        assertTrue(tokenStorage.removeByClaim("tenant", "acme"));
+        assertFalse(tokenStorage.removeByClaim("tenant", "acme"));
+        assertEquals("otherToken", tokenStorage.get(other));
+        assertFalse(tokenStorage.removeAll("second"));
+    }
+
+    @Test
+    void saveShouldReplaceIndexEntriesOfToken() {
+        tokenStorage = new TokenStorageImpl(Set.of("tenant"));
+        Duration duration = Duration.ofMinutes(30);
+        tokenStorage.save("acmeToken", TokenParameters.builder("testSubject", "access", duration)
+                .claim("tenant", "acme")
+                .build());
+        tokenStorage.save("globexToken", TokenParameters.builder("testSubject", "access", duration)
+                .claim("tenant", "globex")
+                .build());
+
+        assertEquals(List.of(), tokenStorage.findByClaim("tenant", "acme"));
+        assertEquals(List.of("globexToken"), tokenStorage.findByClaim("tenant", "globex"));
+        assertThrows(IllegalArgumentException.class, () -> tokenStorage.findByClaim("role", "admin"));
+    }
+}
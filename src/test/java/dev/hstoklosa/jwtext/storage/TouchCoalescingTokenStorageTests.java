@@ -0,0 +1,153 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TouchCoalescingTokenStorageTests {
+
+    private TouchCountingTokenStorage delegate;
+
+    private TouchCoalescingTokenStorage tokenStorage;
+
+    @AfterEach
+    void tearDown() {
+        tokenStorage.close();
+    }
+
+    @Test
+    void touchesWithinIntervalShouldBeWrittenOnce() {
+        delegate = new TouchCountingTokenStorage();
+        tokenStorage = new TouchCoalescingTokenStorage(delegate, Duration.ofMinutes(1));
+        TokenParameters params = params("testSubject");
+        tokenStorage.save("testToken", params);
+
+        long now = System.currentTimeMillis();
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(tokenStorage.touch(params, new Date(now + i * 1000L)));
+        }
+
+        assertEquals(1, delegate.touches);
+        assertEquals(1, tokenStorage.getWrittenTouches());
+        assertEquals(99, tokenStorage.getCoalescedTouches());
+
+        tokenStorage.flush();
+        assertEquals(2, delegate.touches);
+        assertEquals(now + 100_000L, delegate.lastExpiresAt.getTime());
+    }
+
+    @Test
+    void pendingTouchShouldBeWrittenAfterInterval() throws InterruptedException {
+        delegate = new TouchCountingTokenStorage();
+        tokenStorage = new TouchCoalescingTokenStorage(delegate, Duration.ofMillis(20));
+        TokenParameters params = params("testSubject");
+        tokenStorage.save("testToken", params);
+
+        tokenStorage.touch(params, new Date(System.currentTimeMillis() + 60_000));
+        tokenStorage.touch(params, new Date(System.currentTimeMillis() + 120_000));
+
+        for (int i = 0; i < 200 && delegate.touchCount() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, delegate.touchCount());
+    }
+
+    @Test
+    void firstTouchOfMissingTokenShouldReturnFalse() {
+        delegate = new TouchCountingTokenStorage();
+        tokenStorage = new TouchCoalescingTokenStorage(delegate, Duration.ofMinutes(1));
+
+        assertFalse(tokenStorage.touch(params("testSubject"), new Date(System.currentTimeMillis() + 60_000)));
+    }
+
+    @Test
+    void removeShouldDropPendingTouch() {
+        delegate = new TouchCountingTokenStorage();
+        tokenStorage = new TouchCoalescingTokenStorage(delegate, Duration.ofMinutes(1));
+        TokenParameters params = params("testSubject");
+        tokenStorage.save("testToken", params);
+
+        tokenStorage.touch(params, new Date(System.currentTimeMillis() + 60_000));
+        tokenStorage.touch(params, new Date(System.currentTimeMillis() + 120_000));
+        assertTrue(tokenStorage.remove(params));
+        tokenStorage.flush();
+
+        assertEquals(1, delegate.touches);
+    }
+
+    @Test
+    void saveShouldDropPendingTouch() {
+        delegate = new TouchCountingTokenStorage();
+        tokenStorage = new TouchCoalescingTokenStorage(delegate, Duration.ofMinutes(1));
+        TokenParameters params = params("testSubject");
+        tokenStorage.save("oldToken", params);
+
+        tokenStorage.touch(params, new Date(System.currentTimeMillis() + 60_000));
+        tokenStorage.touch(params, new Date(System.currentTimeMillis() + 120_000));
+        tokenStorage.save("newToken", params);
+        tokenStorage.flush();
+
+        assertEquals(1, delegate.touches);
+        assertEquals("newToken", delegate.get(params));
+    }
+
+    @Test
+    void closeShouldWritePendingTouches() {
+        delegate = new TouchCountingTokenStorage();
+        tokenStorage = new TouchCoalescingTokenStorage(delegate, Duration.ofMinutes(1));
+        TokenParameters params = params("testSubject");
+        tokenStorage.save("testToken", params);
+
+        tokenStorage.touch(params, new Date(System.currentTimeMillis() + 60_000));
+        tokenStorage.touch(params, new Date(System.currentTimeMillis() + 120_000));
+        tokenStorage.close();
+
+        assertEquals(2, delegate.touches);
+    }
+
+    private TokenParameters params(final String subject) {
+        return TokenParameters.builder(subject, "any", Duration.ofMinutes(30)).build();
+    }
+
+    private static class TouchCountingTokenStorage extends TokenStorageImpl {
+
+        private int touches;
+
+        private Date lastExpiresAt;
+
+        @Override
+        public synchronized boolean touch(
+                final TokenParameters params,
+                final Date expiresAt
+        ) {
+            touches++;
+            lastExpiresAt = expiresAt;
+            return super.touch(params, expiresAt);
+        }
+
+        @Override
+        public synchronized void save(
+                final String token,
+                final TokenParameters params
+        ) {
+            super.save(token, params);
+        }
+
+        @Override
+        public synchronized boolean remove(final TokenParameters params) {
+            return super.remove(params);
+        }
+
+        private synchronized int touchCount() {
+            return touches;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package dev.hstoklosa.jwtext.storage;
+
+import dev.hstoklosa.jwtext.model.TokenParameters;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindTokenStorageTests {
+
+    private final BatchCountingTokenStorage delegate = new BatchCountingTokenStorage();
+
+    private WriteBehindTokenStorage tokenStorage;
+
+    @AfterEach
+    void tearDown() {
+        tokenStorage.close();
+    }
+
+    @Test
+    void bufferedTokenShouldBeReadLocally() {
+        tokenStorage = new WriteBehindTokenStorage(delegate, 100, 100, Duration.ofHours(1));
+        TokenParameters params = params("testSubject", "any");
+
+        tokenStorage.save("testToken", params);
+
+        assertEquals("testToken", tokenStorage.get(params));
+        assertTrue(tokenStorage.exists("testToken", params));
+        assertNull(delegate.get(params));
+        assertEquals(1, tokenStorage.size());
+    }
+
+    @Test
+    void flushShouldWriteBufferedTokensInBatches() {
+        tokenStorage = new WriteBehindTokenStorage(delegate, 100, 4, Duration.ofHours(1));
+        for (int i = 0; i < 3; i++) {
+            tokenStorage.save("token" + i, params("subject" + i, "any"));
+        }
+
+        tokenStorage.flush();
+
+        assertEquals(0, tokenStorage.size());
+        assertEquals(1, delegate.batches);
+        assertEquals("token2", delegate.get(params("subject2", "any")));
+    }
+
+    @Test
+    void fullBatchShouldBeFlushedInBackground() throws InterruptedException {
+        tokenStorage = new WriteBehindTokenStorage(delegate, 100, 2, Duration.ofHours(1));
+        tokenStorage.save("token0", params("subject0", "any"));
+        tokenStorage.save("token1", params("subject1", "any"));
+
+        awaitFlushed();
+
+        assertEquals("token1", delegate.get(params("subject1", "any")));
+    }
+
+    @Test
+    void delayedSaveShouldBeFlushedInBackground() throws InterruptedException {
+        tokenStorage = new WriteBehindTokenStorage(delegate, 100, 100, Duration.ofMillis(10));
+        tokenStorage.save("testToken", params("testSubject", "any"));
+
+        awaitFlushed();
+
+        assertEquals("testToken", delegate.get(params("testSubject", "any")));
+    }
+
+    @Test
+    void fullQueueShouldWaitForFlush() {
+        tokenStorage = new WriteBehindTokenStorage(delegate, 2, 100, Duration.ofHours(1));
+        for (int i = 0; i < 10; i++) {
+            tokenStorage.save("token" + i, params("subject" + i, "any"));
+        }
+
+        assertTrue(tokenStorage.size() <= 2);
+        tokenStorage.flush();
+        assertEquals("token9", delegate.get(params("subject9", "any")));
+    }
+
+    @Test
+    void onlyLatestSaveOfTokenKeyShouldBeWritten() {
+        tokenStorage = new WriteBehindTokenStorage(delegate, 100, 100, Duration.ofHours(1));
+        TokenParameters params = params("testSubject", "any");
+        tokenStorage.save("oldToken", params);
+        tokenStorage.save("newToken", params);
+
+        tokenStorage.flush();
+
+        assertEquals(1, delegate.saved);
+        assertEquals("newToken", delegate.get(params));
+    }
+
+    @Test
+    void failedBatchShouldBeWrittenBeforeLaterSaves() {
+        tokenStorage = new WriteBehindTokenStorage(delegate, 100, 2, Duration.ofHours(1));
+        delegate.failures = 1;
+        for (int i = 0; i < 3; i++) {
+            tokenStorage.save("token" + i, params("subject" + i, "any"));
+        }
+
+        // the first batch fails either here or in the background
+        try {
+            tokenStorage.flush();
+        } catch (IllegalStateException e) {
+            tokenStorage.flush();
+        }
+
+        assertEquals(0, tokenStorage.size());
+        assertEquals(List.of(List.of("token0", "token1"), List.of("token2")), delegate.written);
+    }
+
+    @Test
+    void removeShouldCancelBufferedSave() {
+        tokenStorage = new WriteBehindTokenStorage(delegate, 100, 100, Duration.ofHours(1));
+        TokenParameters params = params("testSubject", "any");
+        tokenStorage.save("testToken", params);
+
+        assertTrue(tokenStorage.remove(params));
+        tokenStorage.flush();
+
+        assertNull(tokenStorage.get(params));
+        assertNull(delegate.get(params));
+    }
+
+    @Test
+    void shouldInvalidateAllBySubject() {
+        tokenStorage = new WriteBehindTokenStorage(delegate, 100, 100, Duration.ofHours(1));
+        tokenStorage.save("accessToken", params("testSubject", "access"));
+        tokenStorage.flush();
+        tokenStorage.save("refreshToken", params("testSubject", "refresh"));
+        tokenStorage.save("otherToken", params("otherSubject", "access"));
+
+        assertTrue(tokenStorage.removeAll("testSubject"));
+        tokenStorage.flush();
+
+        assertFalse(tokenStorage.exists("accessToken", params("testSubject", "access")));
+        assertFalse(tokenStorage.exists("refreshToken", params("testSubject", "refresh")));
+        assertTrue(tokenStorage.exists("otherToken", params("otherSubject", "access")));
+    }
+
+    @Test
+    void closeShouldDrainBufferedSaves() {
+        tokenStorage = new WriteBehindTokenStorage(delegate, 100, 100, Duration.ofHours(1));
+        TokenParameters params = params("testSubject", "any");
+        tokenStorage.save("testToken", params);
+
+        tokenStorage.close();
+
+        assertEquals("testToken", delegate.get(params));
+        assertThrows(IllegalStateException.class, () -> tokenStorage.save("testToken", params));
+    }
+
+    private void awaitFlushed() throws InterruptedException {
+        for (int i = 0; i < 200 && tokenStorage.size() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, tokenStorage.size());
+    }
+
+    private TokenParameters params(
+            final String subject,
+            final String type
+    ) {
+        return TokenParameters.builder(subject, type, Duration.ofMinutes(30)).build();
+    }
+
+    private static class BatchCountingTokenStorage extends TokenStorageImpl {
+
+        private int batches;
+
+        private int saved;
+
+        private int failures;
+
+        private final List<List<String>> written = new ArrayList<>();
+
+        @Override
+        public synchronized void saveAll(final Map<String, TokenParameters> tokens) {
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("Storage is down");
+            }
+            batches++;
+            saved += tokens.size();
+            written.add(List.copyOf(tokens.keySet()));
+            super.saveAll(tokens);
+        }
+
+        @Override
+        public synchronized String get(final TokenParameters params) {
+            return super.get(params);
+        }
+    }
+}